@@ -19,6 +19,10 @@
  */
 package uk.ac.ncl.cs.csc2024.busstop;
 
+import org.hibernate.annotations.Index;
+import org.hibernate.annotations.QueryHints;
+import uk.ac.ncl.cs.csc2024.config.HibernateSettings;
+
 import javax.persistence.*;
 
 /**
@@ -34,14 +38,37 @@ import javax.persistence.*;
 
 @Entity
 @NamedQueries({
-        @NamedQuery(name = BusStop.SELECT_ALL, query = BusStop.SELECT_ALL_HQL_QUERY),
-        @NamedQuery(name = BusStop.SELECT_MAX_ID, query = BusStop.SELECT_MAX_ID_HQL_QUERY)
+        @NamedQuery(name = BusStop.SELECT_ALL, query = BusStop.SELECT_ALL_HQL_QUERY, hints = {
+                @QueryHint(name = QueryHints.CACHEABLE, value = "true"),
+                @QueryHint(name = QueryHints.CACHE_REGION, value = HibernateSettings.QUERY_CACHE_REGION)
+        }),
+        @NamedQuery(name = BusStop.SELECT_MAX_ID, query = BusStop.SELECT_MAX_ID_HQL_QUERY, hints = {
+                @QueryHint(name = QueryHints.CACHEABLE, value = "true"),
+                @QueryHint(name = QueryHints.CACHE_REGION, value = HibernateSettings.QUERY_CACHE_REGION)
+        }),
+        @NamedQuery(name = BusStop.SELECT_ALL_SUMMARIES, query = BusStop.SELECT_ALL_SUMMARIES_HQL_QUERY, hints = {
+                @QueryHint(name = QueryHints.CACHEABLE, value = "true"),
+                @QueryHint(name = QueryHints.CACHE_REGION, value = HibernateSettings.QUERY_CACHE_REGION)
+        }),
+        @NamedQuery(name = BusStop.SELECT_PAGE_AFTER, query = BusStop.SELECT_PAGE_AFTER_HQL_QUERY, hints = {
+                @QueryHint(name = QueryHints.CACHEABLE, value = "true"),
+                @QueryHint(name = QueryHints.CACHE_REGION, value = HibernateSettings.QUERY_CACHE_REGION)
+        }),
+        @NamedQuery(name = BusStop.SELECT_BY_ID, query = BusStop.SELECT_BY_ID_HQL_QUERY, hints = {
+                @QueryHint(name = QueryHints.CACHEABLE, value = "true"),
+                @QueryHint(name = QueryHints.CACHE_REGION, value = HibernateSettings.QUERY_CACHE_REGION)
+        })
 
 })
 
-@Table(name = "bus_stop")
+@Table(name = BusStop.TABLE_NAME)
 public class BusStop {
 
+    /**
+     * The name of the table that bus stops are stored in.
+     */
+    public static final String TABLE_NAME = "bus_stop";
+
     /**
      * The name of the 'select all bus stops' query.
      */
@@ -62,6 +89,40 @@ public class BusStop {
      */
     public static final String SELECT_ALL_HQL_QUERY = "select b from BusStop b order by b.id asc";
 
+    /**
+     * The name of the 'select a summary of every bus stop' query.
+     */
+    public static final String SELECT_ALL_SUMMARIES = "BusStop.selectAllSummaries";
+
+    /**
+     * The HQL query to select a BusStopSummary of every bus stop, in the same order as the select all query.
+     */
+    public static final String SELECT_ALL_SUMMARIES_HQL_QUERY = "select new uk.ac.ncl.cs.csc2024.busstop.BusStopSummary(" +
+            "b.id, b.description) from BusStop b order by b.id asc";
+
+    /**
+     * The name of the 'select the next page of bus stops after an id' query.
+     */
+    public static final String SELECT_PAGE_AFTER = "BusStop.selectPageAfter";
+
+    /**
+     * The HQL query to select the bus stops after the id in the 'after' parameter, in the same order as the select
+     * all query. Limited to a page of results, it seeks straight to the page through the primary key's index.
+     */
+    public static final String SELECT_PAGE_AFTER_HQL_QUERY = "select b from BusStop b where b.id > :after order by b.id asc";
+
+    /**
+     * The name of the 'select the bus stop with an id' query.
+     */
+    public static final String SELECT_BY_ID = "BusStop.selectById";
+
+    /**
+     * The HQL query to select the bus stop with the id in the 'id' parameter, by primary key. With the maximum id
+     * taken from TableStatistics, it selects the same bus stop as the select max id query, without scanning for
+     * the maximum.
+     */
+    public static final String SELECT_BY_ID_HQL_QUERY = "select b from BusStop b where b.id = :id";
+
     /**
      * The primary key for the BusStop entirety.
      */
@@ -70,9 +131,11 @@ public class BusStop {
     private int id;
 
     /**
-     * The bus stop description.
+     * The bus stop description; indexed, as the queries select routes and operators by the description of their
+     * stops.
      */
     @Column(name = "description")
+    @Index(name = "bus_stop_description_idx")
     private String description;
 
     /**
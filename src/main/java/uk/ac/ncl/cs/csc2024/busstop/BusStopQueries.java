@@ -23,7 +23,14 @@ import org.hibernate.Criteria;
 import org.hibernate.Query;
 import org.hibernate.Session;
 import org.hibernate.criterion.Order;
+import org.hibernate.criterion.Projections;
+import org.hibernate.criterion.Restrictions;
+import org.hibernate.type.IntegerType;
+import uk.ac.ncl.cs.csc2024.config.HibernateSettings;
 import uk.ac.ncl.cs.csc2024.query.ExampleQuery;
+import uk.ac.ncl.cs.csc2024.query.QueryUtilities;
+import uk.ac.ncl.cs.csc2024.stats.TableStatistics;
+import uk.ac.ncl.cs.csc2024.util.CSVRow;
 
 import java.util.Map;
 
@@ -65,11 +72,100 @@ public class BusStopQueries {
         return session;
     }
 
+    /**
+     * Inserts a bus stop from a typed csv row; equivalent to insert(Map, Session), but the id is parsed straight
+     * from the row's buffer rather than via an intermediate String.
+     *
+     * @param row the csv row to insert.
+     * @param session the session to persist the new bus stop to.
+     * @return the session the bus stop was persisted to.
+     */
+    public static Session insert(CSVRow row, Session session) {
+        BusStop busStop = new BusStop();
+        busStop.setId(row.getInt("id"));
+        busStop.setDescription(row.getString("description"));
+
+        session.save(busStop);
+
+        return session;
+    }
+
+    /**
+     * Inserts every row passed in, as insert(Map, Session) does, with the default batch size.
+     *
+     * @param rows the csv rows to insert.
+     * @param session the session to persist the new bus stops to.
+     * @return the session the bus stops were persisted to.
+     */
+    public static Session insertAll(Iterable<Map<String, String>> rows, Session session) {
+        return insertAll(rows, session, HibernateSettings.DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Inserts every row passed in, as insert(Map, Session) does, but flushes and clears the session every
+     * 'batchSize' rows so that the session's first-level cache does not grow without bound. The batch size should
+     * match the JDBC batch size applied by HibernateSettings.applyBatching(...), so that each flush sends full
+     * batches.
+     *
+     * Entities belonging to the session before this method was called are detached by the clears.
+     *
+     * @param rows the csv rows to insert.
+     * @param session the session to persist the new bus stops to.
+     * @param batchSize the number of rows to insert between each flush and clear.
+     * @return the session the bus stops were persisted to.
+     * @throws IllegalArgumentException if the batch size is less than 1; no row is inserted.
+     */
+    public static Session insertAll(Iterable<Map<String, String>> rows, Session session, int batchSize) {
+        return QueryUtilities.insertAll(rows, session, batchSize, new QueryUtilities.RowInserter() {
+            @Override
+            public void insert(Map<String, String> row, Session session) {
+                BusStopQueries.insert(row, session);
+            }
+        });
+    }
+
+    /**
+     * Updates the bus stop with the id in the row passed in so that it matches the row.
+     *
+     * @param row the csv row holding the bus stop's new values, keyed by column name.
+     * @param session the session to update the bus stop within.
+     * @return the session the bus stop was updated within.
+     * @throws IllegalArgumentException if there is no bus stop with the row's id.
+     */
+    public static Session update(Map<String, String> row, Session session) {
+        int busStopId = Integer.parseInt(row.get("id"));
+        BusStop busStop = (BusStop) session.get(BusStop.class, busStopId);
+        if (busStop == null) {
+            throw new IllegalArgumentException("There is no bus stop with id " + busStopId + " to update");
+        }
+
+        busStop.setDescription(row.get("description"));
+
+        return session;
+    }
+
+    /**
+     * Deletes the bus stop with the id passed in, if it exists. Any routes which start or finish at the bus stop
+     * must have been deleted or changed first.
+     *
+     * @param id the id of the bus stop to delete.
+     * @param session the session to delete the bus stop within.
+     * @return the session the bus stop was deleted within.
+     */
+    public static Session delete(int id, Session session) {
+        BusStop busStop = (BusStop) session.get(BusStop.class, id);
+        if (busStop != null) {
+            session.delete(busStop);
+        }
+
+        return session;
+    }
+
     public static ExampleQuery selectAll() {
         return new ExampleQuery() {
             @Override
             public Query getQuery(Session session) {
-                return session.createQuery(BusStop.SELECT_ALL_HQL_QUERY);
+                return QueryUtilities.cacheable(session.createQuery(BusStop.SELECT_ALL_HQL_QUERY));
             }
 
             @Override
@@ -82,7 +178,7 @@ public class BusStopQueries {
                 Criteria criteria = session.createCriteria(BusStop.class, "b");
                 Order ascendingOrder = Order.asc("b.id");
                 criteria.addOrder(ascendingOrder);
-                return criteria;
+                return QueryUtilities.cacheable(criteria);
             }
         };
     }
@@ -91,7 +187,7 @@ public class BusStopQueries {
         return new ExampleQuery() {
             @Override
             public Query getQuery(Session session) {
-                return session.createQuery(BusStop.SELECT_MAX_ID_HQL_QUERY);
+                return QueryUtilities.cacheable(session.createQuery(BusStop.SELECT_MAX_ID_HQL_QUERY));
             }
 
             @Override
@@ -111,10 +207,137 @@ public class BusStopQueries {
 
                 criteria.setMaxResults(1);
 
-                return criteria;
+                return QueryUtilities.cacheable(criteria);
             }
         };
     }
 
+    /**
+     * Selects the bus stop with the maximum id, as selectMaxId() does, but with the maximum id taken from the
+     * table statistics passed in rather than found by the database; each form then looks the bus stop up by
+     * primary key. Nothing is selected if there are no bus stops.
+     *
+     * @param statistics the statistics of the session factory the queries are to be run with.
+     * @return the queries selecting the bus stop with the maximum id.
+     * @throws IllegalArgumentException if the statistics are null.
+     */
+    public static ExampleQuery selectMaxId(final TableStatistics statistics) {
+        if (statistics == null) {
+            throw new IllegalArgumentException("The table statistics are required");
+        }
+
+        return new ExampleQuery() {
+            @Override
+            public Query getQuery(Session session) {
+                Integer maxId = statistics.maxId(BusStop.class);
+                return QueryUtilities.cacheable(session.createQuery(BusStop.SELECT_BY_ID_HQL_QUERY)
+                        .setParameter("id", maxId, IntegerType.INSTANCE));
+            }
+
+            @Override
+            public String getNamedQueryName() {
+                return BusStop.SELECT_BY_ID;
+            }
+
+            @Override
+            public Query getNamedQuery(Session session) {
+                Integer maxId = statistics.maxId(BusStop.class);
+                return session.getNamedQuery(getNamedQueryName()).setParameter("id", maxId, IntegerType.INSTANCE);
+            }
+
+            @Override
+            public Criteria getCriteria(Session session) {
+                Integer maxId = statistics.maxId(BusStop.class);
+                Criteria criteria = session.createCriteria(BusStop.class, "b");
+                // No bus stop has a null id, so an empty table selects nothing.
+                criteria.add(maxId == null ? Restrictions.isNull("b.id") : Restrictions.idEq(maxId));
+                return QueryUtilities.cacheable(criteria);
+            }
+        };
+    }
+
+    /**
+     * Selects a BusStopSummary of every bus stop, ordered by id, for listings which only need the bus stops'
+     * columns. The summaries are built straight from each row, so none of the bus stops are loaded into (or
+     * tracked by) the session.
+     *
+     * @return the queries selecting a summary of every bus stop.
+     */
+    public static ExampleQuery selectAllSummaries() {
+        return new ExampleQuery() {
+            @Override
+            public Query getQuery(Session session) {
+                return QueryUtilities.cacheable(session.createQuery(BusStop.SELECT_ALL_SUMMARIES_HQL_QUERY));
+            }
+
+            @Override
+            public String getNamedQueryName() {
+                return BusStop.SELECT_ALL_SUMMARIES;
+            }
+
+            @Override
+            public Criteria getCriteria(Session session) {
+                Criteria criteria = session.createCriteria(BusStop.class, "b");
+                criteria.setProjection(Projections.projectionList()
+                        .add(Projections.property("b.id"))
+                        .add(Projections.property("b.description")));
+                criteria.addOrder(Order.asc("b.id"));
+                criteria.setResultTransformer(QueryUtilities.constructorTransformer(BusStopSummary.class,
+                        int.class, String.class));
+                return QueryUtilities.cacheable(criteria);
+            }
+        };
+    }
+
+    /**
+     * Selects the page of bus stops which follows the bus stop with the id specified, in the same order as
+     * selectAll(). Each page is found by seeking past the previous page's last id rather than by skipping an
+     * offset, so a page deep into the results costs no more than the first; pass the last id of each page to
+     * fetch the next, until a page comes back with fewer than pageSize results.
+     *
+     * @param afterId the id of the last bus stop on the previous page, or null for the first page.
+     * @param pageSize the largest number of bus stops to select.
+     * @return the queries selecting the page of bus stops.
+     * @throws IllegalArgumentException if the page size is less than 1.
+     */
+    public static ExampleQuery selectPageAfter(final Integer afterId, final int pageSize) {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("The page size must be at least 1, not " + pageSize);
+        }
+
+        return new ExampleQuery() {
+            @Override
+            public Query getQuery(Session session) {
+                Query query = afterId == null ? session.createQuery(BusStop.SELECT_ALL_HQL_QUERY)
+                        : session.createQuery(BusStop.SELECT_PAGE_AFTER_HQL_QUERY).setParameter("after", afterId);
+                return QueryUtilities.cacheable(query.setMaxResults(pageSize));
+            }
+
+            @Override
+            public String getNamedQueryName() {
+                return afterId == null ? BusStop.SELECT_ALL : BusStop.SELECT_PAGE_AFTER;
+            }
+
+            @Override
+            public Query getNamedQuery(Session session) {
+                Query query = session.getNamedQuery(getNamedQueryName());
+                if (afterId != null) {
+                    query.setParameter("after", afterId);
+                }
+                return query.setMaxResults(pageSize);
+            }
+
+            @Override
+            public Criteria getCriteria(Session session) {
+                Criteria criteria = session.createCriteria(BusStop.class, "b");
+                if (afterId != null) {
+                    criteria.add(Restrictions.gt("b.id", afterId));
+                }
+                criteria.addOrder(Order.asc("b.id"));
+                criteria.setMaxResults(pageSize);
+                return QueryUtilities.cacheable(criteria);
+            }
+        };
+    }
 
 }
@@ -0,0 +1,89 @@
+/**
+ * csc2024-hibernate-assignment
+ *
+ * Copyright (c) 2015 Newcastle University
+ * Email: <h.firth@ncl.ac.uk/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ncl.cs.csc2024.busstop;
+
+import java.util.Objects;
+
+/**
+ * An immutable, read-only view of a bus stop, projected straight from the bus_stop table by the queries of
+ * BusStopQueries.selectAllSummaries() rather than loaded as a managed BusStop entity.
+ *
+ * @author Dylan McKee
+ */
+public final class BusStopSummary {
+
+    private final int id;
+    private final String description;
+
+    /**
+     * Creates a summary of a bus stop; called by Hibernate with the columns a summary query projects.
+     *
+     * @param id the id of the bus stop.
+     * @param description the description of the bus stop.
+     */
+    public BusStopSummary(int id, String description) {
+        this.id = id;
+        this.description = description;
+    }
+
+    /**
+     * Returns the id of this bus stop.
+     * @return the id of this bus stop.
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Returns the description of this bus stop.
+     * @return the description of this bus stop.
+     */
+    public String getDescription() {
+        return description;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+
+        BusStopSummary that = (BusStopSummary) o;
+
+        return id == that.id && Objects.equals(description, that.description);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id, description);
+    }
+
+    @Override
+    public String toString() {
+        return "BusStopSummary{" +
+                "id=" + id +
+                ", description='" + description + '\'' +
+                '}';
+    }
+
+}
@@ -0,0 +1,75 @@
+/**
+ * csc2024-hibernate-assignment
+ *
+ * Copyright (c) 2015 Newcastle University
+ * Email: <h.firth@ncl.ac.uk/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ncl.cs.csc2024.config;
+
+import org.hibernate.Session;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.dialect.H2Dialect;
+import org.hibernate.dialect.MySQLDialect;
+import org.hibernate.dialect.PostgreSQL81Dialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+
+/**
+ * The databases that vendor specific SQL (such as upserts and bulk loads) is written for, as detected from the
+ * Hibernate dialect in use.
+ *
+ * @author Dylan McKee
+ */
+public enum DatabaseVendor {
+
+    H2,
+    POSTGRESQL,
+    MYSQL,
+
+    /**
+     * Any other database; vendor specific SQL is not available.
+     */
+    OTHER;
+
+    /**
+     * Returns the vendor of the database a dialect is for.
+     *
+     * @param dialect the dialect to examine.
+     * @return the matching vendor, or OTHER if the dialect is not for a known vendor.
+     */
+    public static DatabaseVendor of(Dialect dialect) {
+        if (dialect instanceof H2Dialect) {
+            return H2;
+        }
+        if (dialect instanceof PostgreSQL81Dialect) {
+            return POSTGRESQL;
+        }
+        if (dialect instanceof MySQLDialect) {
+            return MYSQL;
+        }
+        return OTHER;
+    }
+
+    /**
+     * Returns the vendor of the database a session is connected to.
+     *
+     * @param session the session to examine.
+     * @return the matching vendor, or OTHER if the session's dialect is not for a known vendor.
+     */
+    public static DatabaseVendor of(Session session) {
+        return of(((SessionFactoryImplementor) session.getSessionFactory()).getDialect());
+    }
+
+}
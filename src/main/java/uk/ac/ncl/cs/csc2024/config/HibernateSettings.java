@@ -0,0 +1,272 @@
+/**
+ * csc2024-hibernate-assignment
+ *
+ * Copyright (c) 2015 Newcastle University
+ * Email: <h.firth@ncl.ac.uk/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ncl.cs.csc2024.config;
+
+import org.hibernate.cfg.Configuration;
+import org.hibernate.mapping.Collection;
+import org.hibernate.mapping.Column;
+import org.hibernate.mapping.Index;
+import org.hibernate.mapping.Table;
+import uk.ac.ncl.cs.csc2024.busstop.BusStop;
+import uk.ac.ncl.cs.csc2024.operator.Operator;
+import uk.ac.ncl.cs.csc2024.route.Route;
+
+/**
+ * Convenience methods to apply groups of related Hibernate settings to a Configuration before its SessionFactory
+ * is built, so that each deployment can tune them without having to know every individual property involved.
+ *
+ * @author Dylan McKee
+ */
+public final class HibernateSettings {
+
+    /**
+     * The system property which, if set, overrides the default JDBC batch size.
+     */
+    public static final String BATCH_SIZE_PROPERTY = "csc2024.jdbc.batch_size";
+
+    /**
+     * The number of statements sent to the database per JDBC batch, and the number of rows inserted between each
+     * flush and clear of the session by the 'Queries' classes' insertAll methods, unless overridden.
+     */
+    public static final int DEFAULT_BATCH_SIZE = Integer.getInteger(BATCH_SIZE_PROPERTY, 50);
+
+    /**
+     * The system property which, if set, overrides the default JDBC fetch size of streamed query results.
+     */
+    public static final String FETCH_SIZE_PROPERTY = "csc2024.jdbc.fetch_size";
+
+    /**
+     * The number of rows fetched from the database per round trip by ResultStreams, unless overridden.
+     */
+    public static final int DEFAULT_FETCH_SIZE = Integer.getInteger(FETCH_SIZE_PROPERTY, 500);
+
+    /**
+     * The system property which, if set, overrides the default id allocation size.
+     */
+    public static final String ID_ALLOCATION_SIZE_PROPERTY = "csc2024.id.allocation_size";
+
+    /**
+     * The number of ids a PooledIdGenerator allocates from the database at a time, unless overridden.
+     */
+    public static final int DEFAULT_ID_ALLOCATION_SIZE = Integer.getInteger(ID_ALLOCATION_SIZE_PROPERTY, 50);
+
+    /**
+     * The system property which, if set, overrides the classpath resource the cache regions are configured from.
+     */
+    public static final String CACHE_CONFIGURATION_PROPERTY = "csc2024.cache.configuration";
+
+    /**
+     * The classpath resource the cache regions' sizes and expiry times are configured from, unless overridden.
+     */
+    public static final String DEFAULT_CACHE_CONFIGURATION = System.getProperty(CACHE_CONFIGURATION_PROPERTY,
+            "/ehcache.xml");
+
+    /**
+     * The query cache region holding the results of the 'Queries' classes' queries and of the reference lookups
+     * in QueryUtilities.
+     */
+    public static final String QUERY_CACHE_REGION = "uk.ac.ncl.cs.csc2024.queries";
+
+    /**
+     * The system property which, if set, overrides the default collection batch size.
+     */
+    public static final String COLLECTION_BATCH_SIZE_PROPERTY = "csc2024.fetch.collection_batch_size";
+
+    /**
+     * The number of uninitialised Operator.routes or Route.operators collections initialised together by a single
+     * select, unless overridden.
+     */
+    public static final int DEFAULT_COLLECTION_BATCH_SIZE = Integer.getInteger(COLLECTION_BATCH_SIZE_PROPERTY, 25);
+
+    /**
+     * The system property which, if set to true, enables subselect fetching of collections by default.
+     */
+    public static final String SUBSELECT_FETCH_PROPERTY = "csc2024.fetch.subselect";
+
+    /**
+     * Whether collections are subselect fetched by default.
+     */
+    public static final boolean DEFAULT_SUBSELECT_FETCH = Boolean.getBoolean(SUBSELECT_FETCH_PROPERTY);
+
+    /**
+     * The cache concurrency strategy used for every cached entity and collection. The reference data is rarely
+     * written, but is written through Hibernate, so the cache must stay consistent with those writes.
+     */
+    private static final String CACHE_CONCURRENCY_STRATEGY = "read-write";
+
+    /**
+     * Static methods only; not to be instantiated.
+     */
+    private HibernateSettings() {
+    }
+
+    /**
+     * Enables JDBC batching of inserts and updates with the batch size specified. Inserts and updates are also
+     * ordered by entity type (and collection role, for the operator_route join rows), so that consecutive
+     * statements can share a batch rather than each type breaking the previous type's batch.
+     *
+     * Operator inserts can be batched as Operator ids come from a PooledIdGenerator, which allocates them in
+     * memory rather than requiring an immediate insert to obtain each id.
+     *
+     * @param configuration the configuration to apply the settings to.
+     * @param batchSize the number of statements per JDBC batch.
+     * @return the configuration passed in.
+     */
+    public static Configuration applyBatching(Configuration configuration, int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("The batch size must be at least 1, not " + batchSize);
+        }
+
+        configuration.setProperty("hibernate.jdbc.batch_size", Integer.toString(batchSize));
+        configuration.setProperty("hibernate.order_inserts", "true");
+        configuration.setProperty("hibernate.order_updates", "true");
+        configuration.setProperty("hibernate.jdbc.batch_versioned_data", "true");
+        return configuration;
+    }
+
+    /**
+     * Enables the second-level cache, backed by an in-process Ehcache, for the BusStop, Operator and Route
+     * entities and the Route.operators collection, and enables the query cache, which the 'Queries' classes'
+     * queries and the named queries opt in to. Each entity, the collection and the query cache region are sized
+     * and expired by their own region in the cache configuration (see DEFAULT_CACHE_CONFIGURATION). Statistics
+     * are collected so that the hit and miss counts of each region can be read with CacheStatistics.
+     *
+     * Caching is applied here rather than with annotations on the entities, as a cache annotation stops a
+     * session factory being built at all unless a cache region factory is configured.
+     *
+     * Writes made with plain SQL rather than through Hibernate (such as a snapshot restore or a bulk load) are
+     * not seen by the cache, so those loaders evict the cache once they have finished.
+     *
+     * @param configuration the configuration to apply the settings to.
+     * @return the configuration passed in.
+     */
+    public static Configuration applyCaching(Configuration configuration) {
+        configuration.setProperty("hibernate.cache.use_second_level_cache", "true");
+        configuration.setProperty("hibernate.cache.use_query_cache", "true");
+        configuration.setProperty("hibernate.cache.region.factory_class",
+                "org.hibernate.cache.ehcache.SingletonEhCacheRegionFactory");
+        configuration.setProperty("net.sf.ehcache.configurationResourceName", DEFAULT_CACHE_CONFIGURATION);
+        configuration.setProperty("hibernate.generate_statistics", "true");
+
+        configuration.setCacheConcurrencyStrategy(BusStop.class.getName(), CACHE_CONCURRENCY_STRATEGY);
+        configuration.setCacheConcurrencyStrategy(Operator.class.getName(), CACHE_CONCURRENCY_STRATEGY);
+        configuration.setCacheConcurrencyStrategy(Route.class.getName(), CACHE_CONCURRENCY_STRATEGY);
+        configuration.setCollectionCacheConcurrencyStrategy(Route.OPERATORS_ROLE, CACHE_CONCURRENCY_STRATEGY);
+        return configuration;
+    }
+
+    /**
+     * Sets how the Operator.routes and Route.operators collections are initialised, so that touching the
+     * collections of many operators (or routes) does not cost a select against operator_route for each one.
+     *
+     * With batch fetching, initialising one collection also initialises up to batchSize - 1 other uninitialised
+     * collections of the same role in the session, in the same select. With subselect fetching, initialising one
+     * collection of the entities returned by a query initialises every one of them at once, with a select which
+     * repeats the query as a subselect; batch fetching still applies to collections of entities loaded otherwise.
+     *
+     * The collections' mappings are changed directly (rather than through annotations on the entities) so that
+     * the batch size can be tuned per deployment; the mappings are built here if they have not been already.
+     *
+     * @param configuration the configuration to apply the settings to.
+     * @param batchSize the number of collections to initialise per select; 1 disables batch fetching.
+     * @param subselect whether to enable subselect fetching.
+     * @return the configuration passed in.
+     */
+    public static Configuration applyCollectionFetching(Configuration configuration, int batchSize,
+                                                        boolean subselect) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("The collection batch size must be at least 1, not " + batchSize);
+        }
+
+        configuration.buildMappings();
+        for (String role : new String[] {Operator.ROUTES_ROLE, Route.OPERATORS_ROLE}) {
+            Collection collection = configuration.getCollectionMapping(role);
+            collection.setBatchSize(batchSize);
+            collection.setSubselectLoadable(subselect);
+            if (subselect) {
+                collection.getOwner().setSubselectLoadableCollections(true);
+            }
+        }
+        return configuration;
+    }
+
+    /**
+     * Sets how the Operator.routes and Route.operators collections are initialised, using the default batch
+     * size and subselect setting; see applyCollectionFetching(Configuration, int, boolean).
+     *
+     * @param configuration the configuration to apply the settings to.
+     * @return the configuration passed in.
+     */
+    public static Configuration applyCollectionFetching(Configuration configuration) {
+        return applyCollectionFetching(configuration, DEFAULT_COLLECTION_BATCH_SIZE, DEFAULT_SUBSELECT_FETCH);
+    }
+
+    /**
+     * Adds a composite index to the operator_route join table for each direction the queries join it in, route to
+     * operators (route_id, operator_id) and operator to routes (operator_id, route_id), so that either side's
+     * collection can be read from an index alone. The table's primary key already covers one of the directions,
+     * so an index is only added for a direction which the primary key does not start with.
+     *
+     * The other indexes the queries rely on are declared on the entities, but Hibernate cannot declare an index
+     * on a join table shared by two collections, so these are added to the mapping here, before the schema is
+     * generated; the mappings are built here if they have not been already.
+     *
+     * @param configuration the configuration to apply the settings to.
+     * @return the configuration passed in.
+     */
+    public static Configuration applyIndexes(Configuration configuration) {
+        configuration.buildMappings();
+        Table joinTable = configuration.getCollectionMapping(Route.OPERATORS_ROLE).getCollectionTable();
+        addIndex(joinTable, "operator_route_route_idx", "route_id", "operator_id");
+        addIndex(joinTable, "operator_route_operator_idx", "operator_id", "route_id");
+        return configuration;
+    }
+
+    /**
+     * Adds an index on the columns specified to the table, unless its primary key starts with the same column.
+     */
+    private static void addIndex(Table table, String name, String... columnNames) {
+        if (table.hasPrimaryKey() && table.getPrimaryKey().getColumn(0).getName().equals(columnNames[0])) {
+            return;
+        }
+
+        Index index = table.getOrCreateIndex(name);
+        for (String columnName : columnNames) {
+            Column column = table.getColumn(new Column(columnName));
+            if (column == null) {
+                throw new IllegalArgumentException(table.getName() + " has no column " + columnName);
+            }
+            if (!index.containsColumn(column)) {
+                index.addColumn(column);
+            }
+        }
+    }
+
+    /**
+     * Enables JDBC batching of inserts and updates with the default batch size.
+     *
+     * @param configuration the configuration to apply the settings to.
+     * @return the configuration passed in.
+     */
+    public static Configuration applyBatching(Configuration configuration) {
+        return applyBatching(configuration, DEFAULT_BATCH_SIZE);
+    }
+
+}
@@ -0,0 +1,129 @@
+/**
+ * csc2024-hibernate-assignment
+ *
+ * Copyright (c) 2015 Newcastle University
+ * Email: <h.firth@ncl.ac.uk/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ncl.cs.csc2024.config;
+
+import org.hibernate.MappingException;
+import org.hibernate.Session;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+import org.hibernate.jdbc.Work;
+import org.hibernate.type.Type;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Properties;
+
+/**
+ * A sequence generator which hands out ids from blocks allocated in memory, so that saving an entity needs no
+ * database round trip and its insert can join a JDBC batch. A block of 'increment_size' ids is taken from the
+ * database sequence (or, on databases without sequences, from a single row table of the same name) whenever the
+ * previous block runs out, using Hibernate's "pooled-lo" optimizer.
+ *
+ * The block size defaults to HibernateSettings.DEFAULT_ID_ALLOCATION_SIZE unless the mapping sets the
+ * 'increment_size' parameter itself. Larger blocks mean fewer round trips, but leave larger gaps in the ids when
+ * a session factory is closed part way through a block.
+ *
+ * @author Dylan McKee
+ */
+public class PooledIdGenerator extends SequenceStyleGenerator {
+
+    /**
+     * The fully qualified name of this class, for use as the strategy of a GenericGenerator.
+     */
+    public static final String STRATEGY = "uk.ac.ncl.cs.csc2024.config.PooledIdGenerator";
+
+    /**
+     * The optimizer used to allocate ids in memory. With "pooled-lo", the value read from the database is the
+     * first id of the block, so the database value always stays ahead of every id handed out.
+     */
+    private static final String OPTIMIZER = "pooled-lo";
+
+    @Override
+    public void configure(Type type, Properties params, Dialect dialect) throws MappingException {
+        Properties pooledParams = new Properties();
+        pooledParams.putAll(params);
+        if (!pooledParams.containsKey(INCREMENT_PARAM)) {
+            pooledParams.setProperty(INCREMENT_PARAM, Integer.toString(HibernateSettings.DEFAULT_ID_ALLOCATION_SIZE));
+        }
+        if (!pooledParams.containsKey(OPT_PARAM)) {
+            pooledParams.setProperty(OPT_PARAM, OPTIMIZER);
+        }
+        super.configure(type, pooledParams, dialect);
+    }
+
+    /**
+     * Moves the database sequence (or table) backing a PooledIdGenerator past the highest id in the table
+     * specified, so that the next block allocated does not collide with ids inserted without the generator, for
+     * example by a snapshot restore or a bulk load. The sequence is never moved backwards.
+     *
+     * Blocks already allocated in memory by a session factory are not affected, so this should be called before
+     * the session factory saves any entities using the generator.
+     *
+     * @param session the session whose connection (and transaction) to update the sequence with.
+     * @param sequenceName the name of the generator's sequence.
+     * @param tableName the table holding the ids.
+     * @param idColumnName the id column of the table.
+     * @return the session passed in.
+     */
+    public static Session advancePastMaxId(Session session, final String sequenceName, final String tableName,
+                                           final String idColumnName) {
+        final Dialect dialect = ((SessionFactoryImplementor) session.getSessionFactory()).getDialect();
+
+        session.doWork(new Work() {
+            @Override
+            public void execute(Connection connection) throws SQLException {
+                long nextId;
+                try (Statement statement = connection.createStatement();
+                     ResultSet maxId = statement.executeQuery("select max(" + idColumnName + ") from " + tableName)) {
+                    maxId.next();
+                    nextId = maxId.getLong(1) + 1;
+                }
+
+                if (dialect.supportsSequences()) {
+                    long current;
+                    try (Statement statement = connection.createStatement();
+                         ResultSet next = statement.executeQuery(dialect.getSequenceNextValString(sequenceName))) {
+                        next.next();
+                        current = next.getLong(1);
+                    }
+                    if (current < nextId) {
+                        try (Statement statement = connection.createStatement()) {
+                            statement.executeUpdate("alter sequence " + sequenceName + " restart with " + nextId);
+                        }
+                    }
+                } else {
+                    try (PreparedStatement statement = connection.prepareStatement("update " + sequenceName +
+                            " set " + DEF_VALUE_COLUMN + " = ? where " + DEF_VALUE_COLUMN + " < ?")) {
+                        statement.setLong(1, nextId);
+                        statement.setLong(2, nextId);
+                        statement.executeUpdate();
+                    }
+                }
+            }
+        });
+
+        return session;
+    }
+
+}
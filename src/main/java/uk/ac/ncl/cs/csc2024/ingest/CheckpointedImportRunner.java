@@ -0,0 +1,493 @@
+/**
+ * csc2024-hibernate-assignment
+ *
+ * Copyright (c) 2015 Newcastle University
+ * Email: <h.firth@ncl.ac.uk/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ncl.cs.csc2024.ingest;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.hibernate.jdbc.ReturningWork;
+import org.hibernate.jdbc.Work;
+import uk.ac.ncl.cs.csc2024.busstop.BusStopQueries;
+import uk.ac.ncl.cs.csc2024.config.HibernateSettings;
+import uk.ac.ncl.cs.csc2024.operator.OperatorQueries;
+import uk.ac.ncl.cs.csc2024.query.QueryUtilities;
+import uk.ac.ncl.cs.csc2024.query.ReferenceResolver;
+import uk.ac.ncl.cs.csc2024.route.RouteQueries;
+import uk.ac.ncl.cs.csc2024.util.SimpleCSVReader;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.*;
+
+/**
+ * Imports a bus stops, operators and routes feed in chunks of rows, committing each chunk in its own transaction
+ * rather than running the whole load as one transaction. The position reached (the csv file's name and the number
+ * of its rows processed) is recorded in the import_checkpoint table, keyed by the state directory, and a run started
+ * while a checkpoint exists resumes from it. The checkpoint is deleted once every file has been imported.
+ *
+ * If a chunk fails to commit, it is rolled back and replayed one row per transaction, so that the rows which
+ * fail can be told apart from those which do not. Each failed row is appended to a reject file in the state
+ * directory named after its csv file (for example "routes.csv.rejects.csv"), with its line number and the reason
+ * it failed, and the load carries on. A line which cannot be parsed as a csv row at all still aborts the load,
+ * leaving the checkpoint at the start of its chunk. A load which is not resuming from a checkpoint starts new
+ * reject files.
+ *
+ * The checkpoint is updated in the same transaction as the rows it covers, so it never disagrees with them after
+ * a crash, and a resumed load never replays a committed row. A rejected row is written to its reject file before
+ * the checkpoint moves past it, so a resumed load first discards any rejects at or after the checkpoint before
+ * replaying those rows; it then leaves the same rows and reject files as a load which never stopped.
+ *
+ * @author Dylan McKee
+ */
+public final class CheckpointedImportRunner {
+
+    /**
+     * The default number of rows committed per transaction.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 10000;
+
+    /**
+     * The name of the table the checkpoints are kept in; it is created on first use.
+     */
+    public static final String CHECKPOINT_TABLE_NAME = "import_checkpoint";
+
+    /**
+     * The suffix appended to a csv file's name to give the name of its reject file.
+     */
+    public static final String REJECTS_FILE_SUFFIX = ".rejects.csv";
+
+    private static final String CREATE_CHECKPOINT_TABLE_SQL = "create table if not exists " +
+            CHECKPOINT_TABLE_NAME + " (state_directory varchar(512) not null primary key, " +
+            "file_name varchar(255) not null, row_count bigint not null)";
+    private static final String SELECT_CHECKPOINT_SQL = "select file_name, row_count from " +
+            CHECKPOINT_TABLE_NAME + " where state_directory = ?";
+    private static final String UPDATE_CHECKPOINT_SQL = "update " + CHECKPOINT_TABLE_NAME +
+            " set file_name = ?, row_count = ? where state_directory = ?";
+    private static final String INSERT_CHECKPOINT_SQL = "insert into " + CHECKPOINT_TABLE_NAME +
+            " (file_name, row_count, state_directory) values (?, ?, ?)";
+    private static final String DELETE_CHECKPOINT_SQL = "delete from " + CHECKPOINT_TABLE_NAME +
+            " where state_directory = ?";
+
+    /**
+     * Inserts a single row of a csv file.
+     */
+    private interface RowWriter {
+        void insert(Map<String, String> row, Session session, ReferenceResolver resolver);
+    }
+
+    private static final RowWriter BUS_STOP_WRITER = new RowWriter() {
+        @Override
+        public void insert(Map<String, String> row, Session session, ReferenceResolver resolver) {
+            BusStopQueries.insert(row, session);
+        }
+    };
+
+    private static final RowWriter OPERATOR_WRITER = new RowWriter() {
+        @Override
+        public void insert(Map<String, String> row, Session session, ReferenceResolver resolver) {
+            OperatorQueries.insert(row, session);
+        }
+    };
+
+    private static final RowWriter ROUTE_WRITER = new RowWriter() {
+        @Override
+        public void insert(Map<String, String> row, Session session, ReferenceResolver resolver) {
+            RouteQueries.insert(row, session, resolver);
+        }
+    };
+
+    /**
+     * The number of rows imported, rejected and skipped (as they were processed by an earlier, interrupted run)
+     * by a run.
+     */
+    public static final class Result {
+        long imported;
+        long rejected;
+        long skipped;
+
+        public long getImported() {
+            return imported;
+        }
+
+        public long getRejected() {
+            return rejected;
+        }
+
+        public long getSkipped() {
+            return skipped;
+        }
+
+        @Override
+        public String toString() {
+            return "Result{" +
+                    "imported=" + imported +
+                    ", rejected=" + rejected +
+                    ", skipped=" + skipped +
+                    '}';
+        }
+    }
+
+    private final SessionFactory sessionFactory;
+    private final Path stateDirectory;
+    private final int chunkSize;
+
+    /**
+     * The key of this runner's checkpoint; the absolute path of its state directory.
+     */
+    private final String checkpointKey;
+
+    /**
+     * The session the current chunk is written with, and the resolver for route references within it. Both are
+     * replaced whenever a transaction fails, as a session cannot be used after a failed flush.
+     */
+    private Session session;
+    private ReferenceResolver resolver;
+
+    /**
+     * Creates a runner which commits DEFAULT_CHUNK_SIZE rows per transaction.
+     *
+     * @param sessionFactory the factory to open sessions from.
+     * @param stateDirectory the directory to keep the checkpoint and reject files in.
+     */
+    public CheckpointedImportRunner(SessionFactory sessionFactory, Path stateDirectory) {
+        this(sessionFactory, stateDirectory, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Creates a runner.
+     *
+     * @param sessionFactory the factory to open sessions from.
+     * @param stateDirectory the directory to keep the checkpoint and reject files in.
+     * @param chunkSize the number of rows committed per transaction; ideally a multiple of the JDBC batch size.
+     */
+    public CheckpointedImportRunner(SessionFactory sessionFactory, Path stateDirectory, int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("The chunk size must be at least 1, not " + chunkSize);
+        }
+
+        this.sessionFactory = sessionFactory;
+        this.stateDirectory = stateDirectory;
+        this.chunkSize = chunkSize;
+        this.checkpointKey = stateDirectory.toAbsolutePath().normalize().toString();
+    }
+
+    /**
+     * Imports the three csv files passed in, resuming from the checkpoint if there is one.
+     *
+     * @param busStopsCsv the bus stops csv file.
+     * @param operatorsCsv the operators csv file.
+     * @param routesCsv the routes csv file.
+     * @return the number of rows imported, rejected and skipped by this run.
+     * @throws IOException if a csv file could not be read, or a reject file could not be written.
+     * @throws IllegalArgumentException if the checkpoint refers to a file other than those passed in.
+     */
+    public Result run(Path busStopsCsv, Path operatorsCsv, Path routesCsv) throws IOException {
+        Map<Path, RowWriter> files = new LinkedHashMap<>();
+        files.put(busStopsCsv, BUS_STOP_WRITER);
+        files.put(operatorsCsv, OPERATOR_WRITER);
+        files.put(routesCsv, ROUTE_WRITER);
+
+        Files.createDirectories(stateDirectory);
+
+        Result result = new Result();
+        openSession();
+        try {
+            String[] checkpoint = readCheckpoint();
+
+            // Skip the files that were finished before the checkpoint was written.
+            long resumeRow = 0;
+            if (checkpoint != null) {
+                boolean found = false;
+                for (Iterator<Path> csvs = files.keySet().iterator(); csvs.hasNext() && !found; ) {
+                    if (csvs.next().getFileName().toString().equals(checkpoint[0])) {
+                        found = true;
+                    } else {
+                        csvs.remove();
+                    }
+                }
+                if (!found) {
+                    throw new IllegalArgumentException("The checkpoint for " + checkpointKey + " is for " +
+                            checkpoint[0] + ", which is not one of the files being imported");
+                }
+                resumeRow = Long.parseLong(checkpoint[1]);
+            }
+
+            for (Map.Entry<Path, RowWriter> file : files.entrySet()) {
+                importFile(file.getKey(), file.getValue(), resumeRow, result);
+                resumeRow = 0;
+            }
+
+            deleteCheckpoint();
+        } finally {
+            session.close();
+        }
+
+        return result;
+    }
+
+    private void importFile(Path csv, RowWriter writer, long resumeRow, Result result) throws IOException {
+        String fileName = csv.getFileName().toString();
+        Path rejectsFile = stateDirectory.resolve(fileName + REJECTS_FILE_SUFFIX);
+        discardRejects(rejectsFile, resumeRow);
+
+        try (SimpleCSVReader reader = new SimpleCSVReader(csv)) {
+            long row = 0;
+            while (row < resumeRow && reader.hasNext()) {
+                reader.next();
+                row++;
+            }
+            result.skipped += row;
+
+            List<Map<String, String>> chunk = new ArrayList<>(chunkSize);
+            while (reader.hasNext()) {
+                chunk.add(reader.next());
+                if (chunk.size() == chunkSize || !reader.hasNext()) {
+                    importChunk(chunk, fileName, row, writer, reader.getKeys(), rejectsFile, result);
+                    row += chunk.size();
+                    chunk.clear();
+                }
+            }
+        }
+    }
+
+    /**
+     * Commits a chunk of rows in one transaction or, if that fails, one row per transaction, rejecting the rows
+     * that fail.
+     *
+     * @param firstRow the index of the chunk's first row within its csv file.
+     */
+    private void importChunk(List<Map<String, String>> chunk, String fileName, long firstRow, RowWriter writer,
+                             List<String> keys, Path rejectsFile, Result result) throws IOException {
+        if (commit(chunk, writer, fileName, firstRow + chunk.size()) == null) {
+            result.imported += chunk.size();
+            return;
+        }
+
+        for (int i = 0; i < chunk.size(); i++) {
+            long nextRow = firstRow + i + 1;
+            RuntimeException failure = commit(Collections.singletonList(chunk.get(i)), writer, fileName, nextRow);
+            if (failure == null) {
+                result.imported++;
+            } else {
+                reject(rejectsFile, keys, chunk.get(i), firstRow + i, failure);
+                result.rejected++;
+
+                // Move the checkpoint past the rejected row on its own.
+                List<Map<String, String>> noRows = Collections.emptyList();
+                RuntimeException checkpointFailure = commit(noRows, writer, fileName, nextRow);
+                if (checkpointFailure != null) {
+                    throw checkpointFailure;
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the rows passed in and moves the checkpoint to the position after them, committing both in one
+     * transaction.
+     *
+     * @param nextRow the index within fileName of the first row after those passed in.
+     * @return null if the rows were committed, or the reason they were not.
+     */
+    private RuntimeException commit(List<Map<String, String>> rows, RowWriter writer, String fileName,
+                                    long nextRow) {
+        Transaction transaction = session.beginTransaction();
+        try {
+            int rowCount = 0;
+            for (Map<String, String> row : rows) {
+                writer.insert(row, session, resolver);
+                QueryUtilities.flushBatch(session, ++rowCount, HibernateSettings.DEFAULT_BATCH_SIZE);
+            }
+            writeCheckpoint(fileName, nextRow);
+            transaction.commit();
+            session.clear();
+            return null;
+        } catch (RuntimeException e) {
+            try {
+                transaction.rollback();
+            } finally {
+                session.close();
+                openSession();
+            }
+            return e;
+        }
+    }
+
+    private void openSession() {
+        session = sessionFactory.openSession();
+        resolver = ReferenceResolver.lazy(session);
+    }
+
+    /**
+     * Appends a failed row to its csv file's reject file, in the order of the csv file's columns, followed by its
+     * line number and the reason it failed.
+     */
+    private static void reject(Path rejectsFile, List<String> keys, Map<String, String> row, long rowIndex,
+                               RuntimeException failure) throws IOException {
+        boolean newFile = !Files.exists(rejectsFile);
+        try (BufferedWriter out = Files.newBufferedWriter(rejectsFile, Charset.defaultCharset(),
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            if (newFile) {
+                for (String key : keys) {
+                    out.write(key);
+                    out.write(',');
+                }
+                out.write("line,reason");
+                out.newLine();
+            }
+
+            for (String key : keys) {
+                out.write(row.get(key));
+                out.write(',');
+            }
+            // The header is line 1, so the first row is line 2.
+            out.write(Long.toString(rowIndex + 2));
+            out.write(',');
+            out.write(reason(failure));
+            out.newLine();
+        }
+    }
+
+    /**
+     * Describes why a row failed, in a form that fits in a single csv field.
+     */
+    private static String reason(Throwable failure) {
+        Throwable cause = failure;
+        while (cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        String message = cause.getMessage() == null ? cause.getClass().getName() : cause.getMessage();
+        return message.replaceAll("[,\\r\\n]+", " ");
+    }
+
+    /**
+     * Discards the rejects at or after the row passed in from a reject file, as they were written by an earlier
+     * run which stopped before its checkpoint moved past them, and are about to be written again.
+     *
+     * @param fromRow the index of the first row whose rejects are discarded; if 0, the whole file is deleted.
+     */
+    private static void discardRejects(Path rejectsFile, long fromRow) throws IOException {
+        if (fromRow == 0) {
+            Files.deleteIfExists(rejectsFile);
+            return;
+        }
+        if (!Files.exists(rejectsFile)) {
+            return;
+        }
+
+        List<String> lines = Files.readAllLines(rejectsFile, Charset.defaultCharset());
+        List<String> kept = new ArrayList<>(lines.size());
+        kept.add(lines.get(0));
+        for (String line : lines.subList(1, lines.size())) {
+            // The line number is the second last field, as the reason contains no commas.
+            int reasonStart = line.lastIndexOf(',');
+            int lineStart = line.lastIndexOf(',', reasonStart - 1) + 1;
+            if (Long.parseLong(line.substring(lineStart, reasonStart)) < fromRow + 2) {
+                kept.add(line);
+            }
+        }
+
+        if (kept.size() < lines.size()) {
+            Path absolute = rejectsFile.toAbsolutePath();
+            Path temporary = Files.createTempFile(absolute.getParent(), absolute.getFileName().toString(), ".tmp");
+            try {
+                Files.write(temporary, kept, Charset.defaultCharset());
+                Files.move(temporary, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temporary);
+            }
+        }
+    }
+
+    /**
+     * Reads this runner's checkpoint, creating the checkpoint table if it does not exist yet.
+     *
+     * @return the name of the file and the number of its rows processed, or null if there is no checkpoint.
+     */
+    private String[] readCheckpoint() {
+        Transaction transaction = session.beginTransaction();
+        String[] checkpoint = session.doReturningWork(new ReturningWork<String[]>() {
+            @Override
+            public String[] execute(Connection connection) throws SQLException {
+                try (PreparedStatement create = connection.prepareStatement(CREATE_CHECKPOINT_TABLE_SQL)) {
+                    create.executeUpdate();
+                }
+                try (PreparedStatement select = connection.prepareStatement(SELECT_CHECKPOINT_SQL)) {
+                    select.setString(1, checkpointKey);
+                    try (ResultSet results = select.executeQuery()) {
+                        return results.next() ?
+                                new String[] { results.getString(1), Long.toString(results.getLong(2)) } : null;
+                    }
+                }
+            }
+        });
+        transaction.commit();
+        return checkpoint;
+    }
+
+    /**
+     * Records the position reached, within the session's current transaction.
+     */
+    private void writeCheckpoint(final String fileName, final long row) {
+        session.doWork(new Work() {
+            @Override
+            public void execute(Connection connection) throws SQLException {
+                int updated;
+                try (PreparedStatement update = connection.prepareStatement(UPDATE_CHECKPOINT_SQL)) {
+                    update.setString(1, fileName);
+                    update.setLong(2, row);
+                    update.setString(3, checkpointKey);
+                    updated = update.executeUpdate();
+                }
+                if (updated == 0) {
+                    try (PreparedStatement insert = connection.prepareStatement(INSERT_CHECKPOINT_SQL)) {
+                        insert.setString(1, fileName);
+                        insert.setLong(2, row);
+                        insert.setString(3, checkpointKey);
+                        insert.executeUpdate();
+                    }
+                }
+            }
+        });
+    }
+
+    private void deleteCheckpoint() {
+        Transaction transaction = session.beginTransaction();
+        session.doWork(new Work() {
+            @Override
+            public void execute(Connection connection) throws SQLException {
+                try (PreparedStatement delete = connection.prepareStatement(DELETE_CHECKPOINT_SQL)) {
+                    delete.setString(1, checkpointKey);
+                    delete.executeUpdate();
+                }
+            }
+        });
+        transaction.commit();
+    }
+
+}
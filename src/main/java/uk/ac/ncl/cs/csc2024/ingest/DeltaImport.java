@@ -0,0 +1,147 @@
+/**
+ * csc2024-hibernate-assignment
+ *
+ * Copyright (c) 2015 Newcastle University
+ * Email: <h.firth@ncl.ac.uk/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ncl.cs.csc2024.ingest;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * The outcome of a DeltaImporter run: the number of rows inserted, updated, deleted and left unchanged in each
+ * table, along with the fingerprints of the imported feed.
+ *
+ * @author Dylan McKee
+ */
+public final class DeltaImport {
+
+    /**
+     * The number of rows of a single table affected by the import.
+     */
+    public static final class TableDelta {
+        int inserted;
+        int updated;
+        int deleted;
+        int unchanged;
+
+        /**
+         * Returns the number of rows new in this import, and so inserted.
+         * @return the number of rows inserted.
+         */
+        public int getInserted() {
+            return inserted;
+        }
+
+        /**
+         * Returns the number of rows whose fingerprint changed since the previous import, and so updated.
+         * @return the number of rows updated.
+         */
+        public int getUpdated() {
+            return updated;
+        }
+
+        /**
+         * Returns the number of rows in the previous import but missing from this one, and so deleted.
+         * @return the number of rows deleted.
+         */
+        public int getDeleted() {
+            return deleted;
+        }
+
+        /**
+         * Returns the number of rows whose fingerprint matched the previous import, and so were not touched.
+         * @return the number of rows left unchanged.
+         */
+        public int getUnchanged() {
+            return unchanged;
+        }
+
+        @Override
+        public String toString() {
+            return "TableDelta{" +
+                    "inserted=" + inserted +
+                    ", updated=" + updated +
+                    ", deleted=" + deleted +
+                    ", unchanged=" + unchanged +
+                    '}';
+        }
+    }
+
+    private final TableDelta busStops = new TableDelta();
+    private final TableDelta operators = new TableDelta();
+    private final TableDelta routes = new TableDelta();
+
+    /**
+     * The fingerprints of the imported feed, and where to record them.
+     */
+    private final RowFingerprints fingerprints;
+    private final Path fingerprintsFile;
+
+    DeltaImport(RowFingerprints fingerprints, Path fingerprintsFile) {
+        this.fingerprints = fingerprints;
+        this.fingerprintsFile = fingerprintsFile;
+    }
+
+    /**
+     * Returns the changes made to the bus_stop table.
+     * @return the bus stop counts.
+     */
+    public TableDelta getBusStops() {
+        return busStops;
+    }
+
+    /**
+     * Returns the changes made to the operator table.
+     * @return the operator counts.
+     */
+    public TableDelta getOperators() {
+        return operators;
+    }
+
+    /**
+     * Returns the changes made to the route table, including routes whose operators changed.
+     * @return the route counts.
+     */
+    public TableDelta getRoutes() {
+        return routes;
+    }
+
+    /**
+     * Records the fingerprints of this import, so that the next import is compared against it. Should only be
+     * called once the transaction the import ran in has committed.
+     *
+     * @throws IOException if the fingerprints file could not be written.
+     */
+    public void recordAsPrevious() throws IOException {
+        fingerprints.save(fingerprintsFile);
+    }
+
+    /**
+     * A human readable representation of the DeltaImport class.
+     * @return a String describing the changes made by this import.
+     */
+    @Override
+    public String toString() {
+        return "DeltaImport{" +
+                "busStops=" + busStops +
+                ", operators=" + operators +
+                ", routes=" + routes +
+                '}';
+    }
+
+}
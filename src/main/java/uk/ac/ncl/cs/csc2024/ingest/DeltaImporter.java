@@ -0,0 +1,204 @@
+/**
+ * csc2024-hibernate-assignment
+ *
+ * Copyright (c) 2015 Newcastle University
+ * Email: <h.firth@ncl.ac.uk/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ncl.cs.csc2024.ingest;
+
+import org.hibernate.Session;
+import uk.ac.ncl.cs.csc2024.busstop.BusStopQueries;
+import uk.ac.ncl.cs.csc2024.operator.OperatorQueries;
+import uk.ac.ncl.cs.csc2024.route.RouteQueries;
+import uk.ac.ncl.cs.csc2024.util.SimpleCSVReader;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Imports a bus stops, operators and routes feed incrementally, by comparing the fingerprint of each row against
+ * the fingerprints recorded by the previous import (see RowFingerprints) and only issuing the inserts, updates and
+ * deletes needed for the rows that differ. A change to a route's set of operators changes its fingerprint, so is
+ * applied as an update of that route.
+ *
+ * The csv files are streamed, and unchanged rows are never touched, so an import costs the size of the change
+ * rather than the size of the dataset (plus one pass over the files). Changes are applied in dependency order:
+ * new and changed bus stops and operators, then new and changed routes, then removed routes, operators and
+ * finally bus stops.
+ *
+ * The import runs within the caller's transaction; once that transaction has committed, call
+ * DeltaImport.recordAsPrevious() so that the next import is compared against this one. If no fingerprints have
+ * been recorded yet, every row is treated as new.
+ *
+ * @author Dylan McKee
+ */
+public final class DeltaImporter {
+
+    /**
+     * Applies the changes for a single csv file's rows.
+     */
+    private interface RowWriter {
+        Session insert(Map<String, String> row, Session session);
+        Session update(Map<String, String> row, Session session);
+        Session delete(String key, Session session);
+    }
+
+    private static final RowWriter BUS_STOP_WRITER = new RowWriter() {
+        @Override
+        public Session insert(Map<String, String> row, Session session) {
+            return BusStopQueries.insert(row, session);
+        }
+
+        @Override
+        public Session update(Map<String, String> row, Session session) {
+            return BusStopQueries.update(row, session);
+        }
+
+        @Override
+        public Session delete(String key, Session session) {
+            return BusStopQueries.delete(Integer.parseInt(key), session);
+        }
+    };
+
+    private static final RowWriter OPERATOR_WRITER = new RowWriter() {
+        @Override
+        public Session insert(Map<String, String> row, Session session) {
+            return OperatorQueries.insert(row, session);
+        }
+
+        @Override
+        public Session update(Map<String, String> row, Session session) {
+            return OperatorQueries.update(row, session);
+        }
+
+        @Override
+        public Session delete(String key, Session session) {
+            return OperatorQueries.delete(key, session);
+        }
+    };
+
+    private static final RowWriter ROUTE_WRITER = new RowWriter() {
+        @Override
+        public Session insert(Map<String, String> row, Session session) {
+            return RouteQueries.insert(row, session);
+        }
+
+        @Override
+        public Session update(Map<String, String> row, Session session) {
+            return RouteQueries.update(row, session);
+        }
+
+        @Override
+        public Session delete(String key, Session session) {
+            return RouteQueries.delete(key, session);
+        }
+    };
+
+    /**
+     * The file in which the fingerprints of the previous import are recorded.
+     */
+    private final Path fingerprintsFile;
+
+    /**
+     * Creates an importer which compares against, and records to, the fingerprints file specified.
+     * @param fingerprintsFile the path of the fingerprints file.
+     */
+    public DeltaImporter(Path fingerprintsFile) {
+        this.fingerprintsFile = fingerprintsFile;
+    }
+
+    /**
+     * Applies the differences between the csv files passed in and the previous import to the database.
+     *
+     * @param busStopsCsv the path of the bus stops csv file.
+     * @param operatorsCsv the path of the operators csv file.
+     * @param routesCsv the path of the routes csv file.
+     * @param session the session to apply the changes within.
+     * @return a summary of the changes applied, which should be recorded once the transaction has committed.
+     * @throws IOException if a csv file or the fingerprints file could not be read.
+     */
+    public DeltaImport importDelta(Path busStopsCsv, Path operatorsCsv, Path routesCsv, Session session)
+            throws IOException {
+        RowFingerprints previous = RowFingerprints.load(fingerprintsFile);
+        RowFingerprints current = new RowFingerprints();
+        DeltaImport delta = new DeltaImport(current, fingerprintsFile);
+
+        applyUpserts(busStopsCsv, "id", previous.getBusStops(), current.getBusStops(), BUS_STOP_WRITER,
+                delta.getBusStops(), session);
+        applyUpserts(operatorsCsv, "name", previous.getOperators(), current.getOperators(), OPERATOR_WRITER,
+                delta.getOperators(), session);
+        applyUpserts(routesCsv, "number", previous.getRoutes(), current.getRoutes(), ROUTE_WRITER,
+                delta.getRoutes(), session);
+
+        // Routes go first, as they reference the bus stops and operators.
+        applyDeletes(previous.getRoutes(), current.getRoutes(), ROUTE_WRITER, delta.getRoutes(), session);
+        applyDeletes(previous.getOperators(), current.getOperators(), OPERATOR_WRITER, delta.getOperators(), session);
+        applyDeletes(previous.getBusStops(), current.getBusStops(), BUS_STOP_WRITER, delta.getBusStops(), session);
+
+        session.flush();
+
+        return delta;
+    }
+
+    /**
+     * Streams the csv file, recording the fingerprint of every row and inserting or updating those rows which are
+     * new or have changed since the previous import.
+     */
+    private static void applyUpserts(Path csv, String keyColumn, Map<String, Long> previous,
+                                     Map<String, Long> current, RowWriter writer, DeltaImport.TableDelta counts,
+                                     Session session) throws IOException {
+        try (SimpleCSVReader reader = new SimpleCSVReader(csv)) {
+            for (Map<String, String> row : SimpleCSVReader.iterable(reader)) {
+                String key = row.get(keyColumn);
+                long fingerprint = RowFingerprints.fingerprint(row);
+                current.put(key, fingerprint);
+
+                Long previousFingerprint = previous.get(key);
+                if (previousFingerprint == null) {
+                    writer.insert(row, session);
+                    counts.inserted++;
+                } else if (previousFingerprint != fingerprint) {
+                    writer.update(row, session);
+                    counts.updated++;
+                } else {
+                    counts.unchanged++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Deletes the rows which were present in the previous import but are missing from the current one.
+     */
+    private static void applyDeletes(Map<String, Long> previous, Map<String, Long> current, RowWriter writer,
+                                     DeltaImport.TableDelta counts, Session session) {
+        List<String> removed = new ArrayList<>();
+        for (String key : previous.keySet()) {
+            if (!current.containsKey(key)) {
+                removed.add(key);
+            }
+        }
+
+        for (String key : removed) {
+            writer.delete(key, session);
+            counts.deleted++;
+        }
+    }
+
+}
@@ -0,0 +1,320 @@
+/**
+ * csc2024-hibernate-assignment
+ *
+ * Copyright (c) 2015 Newcastle University
+ * Email: <h.firth@ncl.ac.uk/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ncl.cs.csc2024.ingest;
+
+import org.hibernate.Session;
+import org.hibernate.jdbc.Work;
+import uk.ac.ncl.cs.csc2024.busstop.BusStop;
+import uk.ac.ncl.cs.csc2024.config.DatabaseVendor;
+import uk.ac.ncl.cs.csc2024.config.PooledIdGenerator;
+import uk.ac.ncl.cs.csc2024.operator.Operator;
+import uk.ac.ncl.cs.csc2024.query.QueryUtilities;
+import uk.ac.ncl.cs.csc2024.route.OperatorFrequencies;
+import uk.ac.ncl.cs.csc2024.route.Route;
+import uk.ac.ncl.cs.csc2024.stats.TableStatistics;
+import uk.ac.ncl.cs.csc2024.util.SimpleCSVReader;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Loads a bus stops, operators and routes feed into an empty database without going through Hibernate entities
+ * at all. On H2, the bus_stop, operator and route tables are each filled by a single insert ... select from the
+ * database's own CSVREAD function; on other databases, each file is streamed into batched JDBC inserts instead.
+ * Either way, the routes' operator_route join rows are then added by a streaming pass over the routes file,
+ * which expands each row's '|' separated operator names into batched inserts that look each operator up by name.
+ *
+ * The end state is the same as inserting every row with the 'Queries' classes' insert methods: operators are
+ * numbered from 1 in file order (as Operator's id generator would number them in an empty database), stops which
+ * do not exist are left null, a route naming an operator which does not exist fails the load (as it fails
+ * RouteQueries.insert(...)), and the operator id generator is then moved past the loaded ids. Values are read
+ * exactly as FileUtils.readSimpleCSV(...) reads them, with no unquoting or trimming.
+ *
+ * CSVREAD reads the files on the database server, so the H2 path is only suitable for an embedded database, or
+ * a server which can see the same files. The load runs on the session's connection, within the caller's
+ * transaction, and evicts any cached entities and query results (and rebuilds the operator frequency summary, if it
+ * is maintained, and invalidates any TableStatistics) once it has finished.
+ *
+ * @author Dylan McKee
+ */
+public final class NativeBulkLoader {
+
+    /**
+     * The number of rows sent to the database per JDBC batch.
+     */
+    private static final int BATCH_SIZE = 1000;
+
+    /**
+     * The CSVREAD options which make it read values as String.split(",") does: column names as written, no quote
+     * character and no trimming. CSVREAD still reads an empty value as null, so each value is coalesced back to
+     * an empty String.
+     */
+    private static final String H2_CSVREAD_OPTIONS = "caseSensitiveColumnNames=true preserveWhitespace=true " +
+            "fieldDelimiter= charset=";
+
+    private static final String H2_INSERT_BUS_STOPS_SQL = "insert into " + BusStop.TABLE_NAME +
+            " (id, description) select cast(\"id\" as int), coalesce(\"description\", '') from %s";
+
+    private static final String H2_INSERT_OPERATORS_SQL = "insert into " + Operator.TABLE_NAME +
+            " (id, name, street, town, postcode, email, phone) select rownum(), coalesce(\"name\", ''), " +
+            "coalesce(\"street\", ''), coalesce(\"town\", ''), coalesce(\"postcode\", ''), " +
+            "coalesce(\"email\", ''), coalesce(\"phone\", '') from %s";
+
+    private static final String H2_INSERT_ROUTES_SQL = "insert into " + Route.TABLE_NAME +
+            " (number, frequency, start_stop_id, destination_stop_id) select coalesce(\"number\", ''), " +
+            "cast(\"frequency\" as int), " +
+            "(select id from " + BusStop.TABLE_NAME + " where id = cast(\"start\" as int)), " +
+            "(select id from " + BusStop.TABLE_NAME + " where id = cast(\"destination\" as int)) from %s";
+
+    private static final String INSERT_BUS_STOP_SQL = "insert into " + BusStop.TABLE_NAME +
+            " (id, description) values (?, ?)";
+
+    private static final String INSERT_OPERATOR_SQL = "insert into " + Operator.TABLE_NAME +
+            " (id, name, street, town, postcode, email, phone) values (?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String INSERT_ROUTE_SQL = "insert into " + Route.TABLE_NAME +
+            " (number, frequency, start_stop_id, destination_stop_id) values (?, ?, " +
+            "(select id from " + BusStop.TABLE_NAME + " where id = ?), " +
+            "(select id from " + BusStop.TABLE_NAME + " where id = ?))";
+
+    /**
+     * Adds a route's join row for a named operator; nothing is inserted if there is no operator with that name.
+     */
+    private static final String INSERT_OPERATOR_ROUTE_SQL = "insert into " + Route.OPERATORS_JOIN_TABLE_NAME +
+            " (route_id, operator_id) select r.number, o.id from " + Route.TABLE_NAME + " r, " +
+            Operator.TABLE_NAME + " o where r.number = ? and o.name = ?";
+
+    private static final String[] TABLE_NAMES = {
+            BusStop.TABLE_NAME, Operator.TABLE_NAME, Route.TABLE_NAME, Route.OPERATORS_JOIN_TABLE_NAME
+    };
+
+    /**
+     * Static methods only; not to be instantiated.
+     */
+    private NativeBulkLoader() {
+    }
+
+    /**
+     * Loads the three csv files passed in using the session passed in.
+     *
+     * @param busStopsCsv the bus stops csv file.
+     * @param operatorsCsv the operators csv file.
+     * @param routesCsv the routes csv file.
+     * @param session the Hibernate session whose connection (and transaction) the rows should be inserted with.
+     * @return the session the rows were loaded with.
+     * @throws IOException if a csv file could not be read.
+     * @throws IllegalArgumentException if any of the tables already holds rows, or if a route names an operator
+     * that does not exist. The caller's transaction should then be rolled back, as some rows may have been
+     * loaded.
+     */
+    public static Session load(Path busStopsCsv, Path operatorsCsv, Path routesCsv, Session session)
+            throws IOException {
+        return load(busStopsCsv, operatorsCsv, routesCsv, session, DatabaseVendor.of(session) == DatabaseVendor.H2);
+    }
+
+    /**
+     * Loads the three csv files passed in using the session passed in, filling the bus_stop, operator and route
+     * tables with CSVREAD (which is only available on H2) if csvRead is true, or with batched JDBC inserts if not.
+     */
+    static Session load(final Path busStopsCsv, final Path operatorsCsv, final Path routesCsv, Session session,
+                        final boolean csvRead) throws IOException {
+        session.flush();
+
+        try {
+            session.doWork(new Work() {
+                @Override
+                public void execute(Connection connection) throws SQLException {
+                    requireEmpty(connection);
+                    try {
+                        if (csvRead) {
+                            executeUpdate(connection, String.format(H2_INSERT_BUS_STOPS_SQL, csvRead(busStopsCsv)));
+                            executeUpdate(connection, String.format(H2_INSERT_OPERATORS_SQL, csvRead(operatorsCsv)));
+                            executeUpdate(connection, String.format(H2_INSERT_ROUTES_SQL, csvRead(routesCsv)));
+                        } else {
+                            loadBusStops(connection, busStopsCsv);
+                            loadOperators(connection, operatorsCsv);
+                            loadRoutes(connection, routesCsv);
+                        }
+                        loadOperatorRoutes(connection, routesCsv);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        PooledIdGenerator.advancePastMaxId(session, Operator.ID_GENERATOR_NAME, Operator.TABLE_NAME, "id");
+        OperatorFrequencies.rebuild(session);
+        TableStatistics.invalidate(session);
+        return QueryUtilities.evictCachedData(session);
+    }
+
+    private static void requireEmpty(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            for (String table : TABLE_NAMES) {
+                try (ResultSet count = statement.executeQuery("select count(*) from " + table)) {
+                    count.next();
+                    if (count.getLong(1) != 0) {
+                        throw new IllegalArgumentException("A bulk load needs empty tables, but " + table +
+                                " holds " + count.getLong(1) + " rows");
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the CSVREAD call reading the csv file specified, for use as the source of an insert ... select.
+     */
+    private static String csvRead(Path csv) {
+        String options = H2_CSVREAD_OPTIONS + Charset.defaultCharset().name();
+        return "csvread(" + literal(csv.toAbsolutePath().toString()) + ", null, " + literal(options) + ")";
+    }
+
+    private static String literal(String value) {
+        return "'" + value.replace("'", "''") + "'";
+    }
+
+    private static void executeUpdate(Connection connection, String sql) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate(sql);
+        }
+    }
+
+    private static void loadBusStops(Connection connection, Path csv) throws SQLException, IOException {
+        try (SimpleCSVReader reader = new SimpleCSVReader(csv);
+             PreparedStatement statement = connection.prepareStatement(INSERT_BUS_STOP_SQL)) {
+            int batched = 0;
+            while (reader.hasNext()) {
+                Map<String, String> row = reader.next();
+                statement.setInt(1, Integer.parseInt(row.get("id")));
+                statement.setString(2, row.get("description"));
+                batched = addToBatch(statement, batched);
+            }
+            statement.executeBatch();
+        }
+    }
+
+    private static void loadOperators(Connection connection, Path csv) throws SQLException, IOException {
+        try (SimpleCSVReader reader = new SimpleCSVReader(csv);
+             PreparedStatement statement = connection.prepareStatement(INSERT_OPERATOR_SQL)) {
+            int batched = 0;
+            int id = 0;
+            while (reader.hasNext()) {
+                Map<String, String> row = reader.next();
+                statement.setInt(1, ++id);
+                statement.setString(2, row.get("name"));
+                statement.setString(3, row.get("street"));
+                statement.setString(4, row.get("town"));
+                statement.setString(5, row.get("postcode"));
+                statement.setString(6, row.get("email"));
+                statement.setString(7, row.get("phone"));
+                batched = addToBatch(statement, batched);
+            }
+            statement.executeBatch();
+        }
+    }
+
+    private static void loadRoutes(Connection connection, Path csv) throws SQLException, IOException {
+        try (SimpleCSVReader reader = new SimpleCSVReader(csv);
+             PreparedStatement statement = connection.prepareStatement(INSERT_ROUTE_SQL)) {
+            int batched = 0;
+            while (reader.hasNext()) {
+                Map<String, String> row = reader.next();
+                statement.setString(1, row.get("number"));
+                statement.setInt(2, Integer.parseInt(row.get("frequency")));
+                statement.setInt(3, Integer.parseInt(row.get("start")));
+                statement.setInt(4, Integer.parseInt(row.get("destination")));
+                batched = addToBatch(statement, batched);
+            }
+            statement.executeBatch();
+        }
+    }
+
+    /**
+     * Expands each route's '|' separated operator names into join rows.
+     */
+    private static void loadOperatorRoutes(Connection connection, Path csv) throws SQLException, IOException {
+        try (SimpleCSVReader reader = new SimpleCSVReader(csv);
+             PreparedStatement statement = connection.prepareStatement(INSERT_OPERATOR_ROUTE_SQL)) {
+            // The route number and operator name of each join row in the batch, for reporting an unknown operator.
+            List<String[]> batch = new ArrayList<>(BATCH_SIZE);
+            while (reader.hasNext()) {
+                Map<String, String> row = reader.next();
+                // A name listed twice would otherwise insert a duplicate join row.
+                Set<String> operatorNames = new LinkedHashSet<>(QueryUtilities.splitOperatorNames(row.get("operators")));
+                for (String operatorName : operatorNames) {
+                    statement.setString(1, row.get("number"));
+                    statement.setString(2, operatorName);
+                    statement.addBatch();
+                    batch.add(new String[] { row.get("number"), operatorName });
+                    if (batch.size() == BATCH_SIZE) {
+                        executeOperatorRouteBatch(statement, batch);
+                    }
+                }
+            }
+            executeOperatorRouteBatch(statement, batch);
+        }
+    }
+
+    /**
+     * Executes a batch of join row inserts, failing if any of them matched no operator.
+     */
+    private static void executeOperatorRouteBatch(PreparedStatement statement, List<String[]> batch)
+            throws SQLException {
+        int[] updateCounts = statement.executeBatch();
+        for (int i = 0; i < updateCounts.length; i++) {
+            if (updateCounts[i] == 0) {
+                throw new IllegalArgumentException("Route " + batch.get(i)[0] + " names operator '" +
+                        batch.get(i)[1] + "', which does not exist");
+            }
+        }
+        batch.clear();
+    }
+
+    /**
+     * Adds the current parameters to the statement's batch, executing the batch once it is full.
+     *
+     * @return the number of rows now waiting in the batch.
+     */
+    private static int addToBatch(PreparedStatement statement, int batched) throws SQLException {
+        statement.addBatch();
+        if (++batched == BATCH_SIZE) {
+            statement.executeBatch();
+            return 0;
+        }
+        return batched;
+    }
+
+}
@@ -0,0 +1,408 @@
+/**
+ * csc2024-hibernate-assignment
+ *
+ * Copyright (c) 2015 Newcastle University
+ * Email: <h.firth@ncl.ac.uk/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ncl.cs.csc2024.ingest;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import uk.ac.ncl.cs.csc2024.busstop.BusStop;
+import uk.ac.ncl.cs.csc2024.busstop.BusStopQueries;
+import uk.ac.ncl.cs.csc2024.config.HibernateSettings;
+import uk.ac.ncl.cs.csc2024.operator.Operator;
+import uk.ac.ncl.cs.csc2024.operator.OperatorQueries;
+import uk.ac.ncl.cs.csc2024.query.QueryUtilities;
+import uk.ac.ncl.cs.csc2024.query.ReferenceResolver;
+import uk.ac.ncl.cs.csc2024.route.Route;
+import uk.ac.ncl.cs.csc2024.util.SimpleCSVReader;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Loads a bus stops, operators and routes feed into an empty database by running csv parsing, reference resolution
+ * and database writes as concurrent stages, rather than one after the other on a single thread:
+ *
+ *   parser thread (one per file) -> parsed batches -> resolver thread -> resolved batches -> writer threads
+ *
+ * The queues between the stages are bounded, so a stage that gets ahead of the next one blocks rather than
+ * buffering the whole file in memory. Each writer thread has its own Session, and commits each batch it takes in
+ * its own transaction, with JDBC batching applied (see HibernateSettings.applyBatching(...)).
+ *
+ * The load runs in two phases. Bus stops and operators are loaded together in the first; routes, which reference
+ * them, are only parsed once every bus stop and operator batch has been committed. The routes' resolver stage
+ * looks each operator name and stop id up in a ReferenceResolver preloaded at the start of the second phase, so
+ * the writers only ever see ids and never query for references. A route naming an operator that does not exist
+ * fails the load, as it would fail RouteQueries.insert(...).
+ *
+ * If any stage fails, every other stage is interrupted and the first failure is thrown. Batches committed before
+ * the failure remain committed, so a failed load should be re-run against an empty database.
+ *
+ * @author Dylan McKee
+ */
+public final class PipelinedLoader {
+
+    /**
+     * The default number of writer threads, and so of concurrent database sessions.
+     */
+    public static final int DEFAULT_WRITER_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors() / 2);
+
+    /**
+     * The default number of batches each queue may hold before the stage filling it blocks.
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = 16;
+
+    /**
+     * A row that has been parsed and resolved, and only needs saving.
+     */
+    private interface ResolvedRow {
+        void save(Session session);
+    }
+
+    /**
+     * Converts a parsed csv row into a row ready to save.
+     */
+    private interface RowResolver {
+        ResolvedRow resolve(Map<String, String> row);
+    }
+
+    /**
+     * A batch of parsed rows, with the resolver for the file they came from. The batch with no rows marks the
+     * end of the parser stage.
+     */
+    private static final class ParsedBatch {
+        final RowResolver resolver;
+        final List<Map<String, String>> rows;
+
+        ParsedBatch(RowResolver resolver, List<Map<String, String>> rows) {
+            this.resolver = resolver;
+            this.rows = rows;
+        }
+    }
+
+    private static final ParsedBatch END_OF_PARSED_BATCHES =
+            new ParsedBatch(null, Collections.<Map<String, String>>emptyList());
+
+    private static final List<ResolvedRow> END_OF_RESOLVED_BATCHES = Collections.emptyList();
+
+    private static final RowResolver BUS_STOP_RESOLVER = new RowResolver() {
+        @Override
+        public ResolvedRow resolve(final Map<String, String> row) {
+            return new ResolvedRow() {
+                @Override
+                public void save(Session session) {
+                    BusStopQueries.insert(row, session);
+                }
+            };
+        }
+    };
+
+    private static final RowResolver OPERATOR_RESOLVER = new RowResolver() {
+        @Override
+        public ResolvedRow resolve(final Map<String, String> row) {
+            return new ResolvedRow() {
+                @Override
+                public void save(Session session) {
+                    OperatorQueries.insert(row, session);
+                }
+            };
+        }
+    };
+
+    private final SessionFactory sessionFactory;
+    private final int writerThreads;
+    private final int batchSize;
+    private final int queueCapacity;
+
+    /**
+     * Creates a loader with the default number of writer threads, batch size and queue capacity.
+     *
+     * @param sessionFactory the factory to open each writer's session from.
+     */
+    public PipelinedLoader(SessionFactory sessionFactory) {
+        this(sessionFactory, DEFAULT_WRITER_THREADS, HibernateSettings.DEFAULT_BATCH_SIZE, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * Creates a loader.
+     *
+     * @param sessionFactory the factory to open each writer's session from.
+     * @param writerThreads the number of writer threads, and so of concurrent database sessions.
+     * @param batchSize the number of rows per batch, and so per writer transaction; this should match the JDBC
+     *                  batch size the session factory was configured with.
+     * @param queueCapacity the number of batches each queue between stages may hold.
+     */
+    public PipelinedLoader(SessionFactory sessionFactory, int writerThreads, int batchSize, int queueCapacity) {
+        if (writerThreads < 1 || batchSize < 1 || queueCapacity < 1) {
+            throw new IllegalArgumentException("The writer threads, batch size and queue capacity must all be at " +
+                    "least 1, not " + writerThreads + ", " + batchSize + " and " + queueCapacity);
+        }
+
+        this.sessionFactory = sessionFactory;
+        this.writerThreads = writerThreads;
+        this.batchSize = batchSize;
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * Loads the three csv files passed in.
+     *
+     * @param busStopsCsv the bus stops csv file.
+     * @param operatorsCsv the operators csv file.
+     * @param routesCsv the routes csv file.
+     * @return the number of rows loaded, across all three files.
+     * @throws IOException if a csv file could not be read.
+     * @throws InterruptedException if the calling thread was interrupted while waiting for the load.
+     * @throws IllegalArgumentException if a route names an operator that does not exist.
+     */
+    public int load(Path busStopsCsv, Path operatorsCsv, Path routesCsv) throws IOException, InterruptedException {
+        Map<Path, RowResolver> referenceData = new LinkedHashMap<>();
+        referenceData.put(busStopsCsv, BUS_STOP_RESOLVER);
+        referenceData.put(operatorsCsv, OPERATOR_RESOLVER);
+        int loaded = runPhase(referenceData);
+
+        // Every bus stop and operator has now been committed, so the routes' references can be resolved.
+        Session resolverSession = sessionFactory.openSession();
+        try {
+            resolverSession.setDefaultReadOnly(true);
+            ReferenceResolver resolver = ReferenceResolver.preload(resolverSession);
+            loaded += runPhase(Collections.singletonMap(routesCsv, routeResolver(resolver)));
+        } finally {
+            resolverSession.close();
+        }
+
+        return loaded;
+    }
+
+    /**
+     * Resolves each route row's operator names to operator ids, and checks that its stops exist, so that the
+     * writers can attach the references with Session.load(...) without querying for them. Stops which do not
+     * exist are left null, as RouteQueries.insert(...) leaves them. An operator name which does not exist fails
+     * the row, and so the load, as it fails RouteQueries.insert(...).
+     */
+    private static RowResolver routeResolver(final ReferenceResolver resolver) {
+        return new RowResolver() {
+            @Override
+            public ResolvedRow resolve(Map<String, String> row) {
+                final String number = row.get("number");
+                final int frequency = Integer.parseInt(row.get("frequency"));
+                final Integer startStopId = existingBusStopId(row.get("start"));
+                final Integer destinationStopId = existingBusStopId(row.get("destination"));
+
+                List<String> operatorNames = QueryUtilities.splitOperatorNames(row.get("operators"));
+                final List<Integer> operatorIds = new ArrayList<>(operatorNames.size());
+                for (String operatorName : operatorNames) {
+                    Operator operator = resolver.findOperatorByName(operatorName);
+                    if (operator == null) {
+                        throw new IllegalArgumentException("Route " + number + " names operator '" + operatorName +
+                                "', which does not exist");
+                    }
+                    operatorIds.add(operator.getId());
+                }
+
+                return new ResolvedRow() {
+                    @Override
+                    public void save(Session session) {
+                        Route route = new Route();
+                        route.setNumber(number);
+                        route.setFrequency(frequency);
+                        route.setStartStop(busStopReference(session, startStopId));
+                        route.setDestinationStop(busStopReference(session, destinationStopId));
+
+                        Set<Operator> operators = new HashSet<>();
+                        for (Integer operatorId : operatorIds) {
+                            operators.add((Operator) session.load(Operator.class, operatorId));
+                        }
+                        route.setOperators(operators);
+
+                        session.save(route);
+                    }
+                };
+            }
+
+            private Integer existingBusStopId(String idString) {
+                int id = Integer.parseInt(idString);
+                return resolver.findBusStopWithID(id) == null ? null : id;
+            }
+        };
+    }
+
+    private static BusStop busStopReference(Session session, Integer id) {
+        return id == null ? null : (BusStop) session.load(BusStop.class, id);
+    }
+
+    /**
+     * Runs the parser, resolver and writer stages over the files passed in, and waits for every batch to be
+     * committed.
+     *
+     * @return the number of rows committed.
+     */
+    private int runPhase(Map<Path, RowResolver> files) throws IOException, InterruptedException {
+        final BlockingQueue<ParsedBatch> parsed = new ArrayBlockingQueue<>(queueCapacity);
+        final BlockingQueue<List<ResolvedRow>> resolved = new ArrayBlockingQueue<>(queueCapacity);
+        final AtomicInteger runningParsers = new AtomicInteger(files.size());
+        final AtomicInteger committedRows = new AtomicInteger();
+
+        ExecutorService executor = Executors.newFixedThreadPool(files.size() + 1 + writerThreads);
+        CompletionService<Void> stages = new ExecutorCompletionService<>(executor);
+        int stageCount = 0;
+        try {
+            for (final Map.Entry<Path, RowResolver> file : files.entrySet()) {
+                stages.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        parse(file.getKey(), file.getValue(), parsed);
+                        // The last parser to finish tells the resolver that there is nothing more to come.
+                        if (runningParsers.decrementAndGet() == 0) {
+                            parsed.put(END_OF_PARSED_BATCHES);
+                        }
+                        return null;
+                    }
+                });
+                stageCount++;
+            }
+
+            stages.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    resolve(parsed, resolved);
+                    return null;
+                }
+            });
+            stageCount++;
+
+            for (int i = 0; i < writerThreads; i++) {
+                stages.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        write(resolved, committedRows);
+                        return null;
+                    }
+                });
+                stageCount++;
+            }
+
+            // Wait for every stage, in the order they finish, so that the first failure is seen as soon as it
+            // happens rather than after the stages submitted before it.
+            for (int i = 0; i < stageCount; i++) {
+                try {
+                    stages.take().get();
+                } catch (ExecutionException e) {
+                    throw rethrow(e.getCause());
+                }
+            }
+        } finally {
+            // Interrupts any stage still blocked on a queue, if another stage failed.
+            executor.shutdownNow();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        }
+
+        return committedRows.get();
+    }
+
+    /**
+     * The parser stage: reads a csv file into batches of 'batchSize' rows.
+     */
+    private void parse(Path csv, RowResolver resolver, BlockingQueue<ParsedBatch> parsed)
+            throws IOException, InterruptedException {
+        try (SimpleCSVReader reader = new SimpleCSVReader(csv)) {
+            List<Map<String, String>> rows = new ArrayList<>(batchSize);
+            while (reader.hasNext()) {
+                rows.add(reader.next());
+                if (rows.size() == batchSize) {
+                    parsed.put(new ParsedBatch(resolver, rows));
+                    rows = new ArrayList<>(batchSize);
+                }
+            }
+            if (!rows.isEmpty()) {
+                parsed.put(new ParsedBatch(resolver, rows));
+            }
+        }
+    }
+
+    /**
+     * The resolver stage: resolves each parsed batch into a batch of rows ready to save, then tells every writer
+     * that there is nothing more to come.
+     */
+    private void resolve(BlockingQueue<ParsedBatch> parsed, BlockingQueue<List<ResolvedRow>> resolved)
+            throws InterruptedException {
+        for (ParsedBatch batch = parsed.take(); batch != END_OF_PARSED_BATCHES; batch = parsed.take()) {
+            List<ResolvedRow> rows = new ArrayList<>(batch.rows.size());
+            for (Map<String, String> row : batch.rows) {
+                rows.add(batch.resolver.resolve(row));
+            }
+            resolved.put(rows);
+        }
+
+        for (int i = 0; i < writerThreads; i++) {
+            resolved.put(END_OF_RESOLVED_BATCHES);
+        }
+    }
+
+    /**
+     * The writer stage: saves and commits each resolved batch in its own transaction, in a session private to
+     * this writer.
+     */
+    private void write(BlockingQueue<List<ResolvedRow>> resolved, AtomicInteger committedRows)
+            throws InterruptedException {
+        Session session = sessionFactory.openSession();
+        try {
+            for (List<ResolvedRow> batch = resolved.take(); batch != END_OF_RESOLVED_BATCHES; batch = resolved.take()) {
+                Transaction transaction = session.beginTransaction();
+                try {
+                    for (ResolvedRow row : batch) {
+                        row.save(session);
+                    }
+                    transaction.commit();
+                } catch (RuntimeException e) {
+                    transaction.rollback();
+                    throw e;
+                }
+                session.clear();
+                committedRows.addAndGet(batch.size());
+            }
+        } finally {
+            session.close();
+        }
+    }
+
+    /**
+     * Rethrows the failure of a stage as the exception load(...) declares, or wrapped in an IllegalStateException
+     * if it is not one.
+     */
+    private static IOException rethrow(Throwable cause) throws InterruptedException {
+        if (cause instanceof IOException) {
+            return (IOException) cause;
+        }
+        if (cause instanceof InterruptedException) {
+            throw (InterruptedException) cause;
+        }
+        if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        throw new IllegalStateException("A pipelined load stage failed", cause);
+    }
+
+}
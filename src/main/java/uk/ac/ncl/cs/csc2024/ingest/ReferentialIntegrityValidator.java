@@ -0,0 +1,260 @@
+/**
+ * csc2024-hibernate-assignment
+ *
+ * Copyright (c) 2015 Newcastle University
+ * Email: <h.firth@ncl.ac.uk/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ncl.cs.csc2024.ingest;
+
+import uk.ac.ncl.cs.csc2024.query.QueryUtilities;
+import uk.ac.ncl.cs.csc2024.util.IntHashSet;
+import uk.ac.ncl.cs.csc2024.util.ParallelCSVReader;
+import uk.ac.ncl.cs.csc2024.util.SimpleCSVReader;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Checks that every route in a feed references bus stops and operators which exist in the same feed, before any
+ * of it is written to the database, so that a bad reference is reported up front rather than surfacing as a
+ * failed (or, for a missing stop, a null) reference part way through a load.
+ *
+ * The bus stop ids are held in a BitSet and the operator names in a HashSet, both built by streaming the bus stops
+ * and operators files. The routes file is then read with the ParallelCSVReader and its rows are checked as tasks
+ * on a ForkJoinPool. Every violation is reported, in file order, with the line number it was found on.
+ *
+ * @author Dylan McKee
+ */
+public final class ReferentialIntegrityValidator {
+
+    /**
+     * The smallest number of route rows worth checking as a separate task.
+     */
+    private static final int MIN_ROWS_PER_TASK = 4096;
+
+    /**
+     * The largest number of violations listed in the message of the exception thrown by requireValid(...).
+     */
+    private static final int MAX_VIOLATIONS_IN_MESSAGE = 20;
+
+    /**
+     * A reference from a route row which does not match any bus stop or operator, or which could not be parsed.
+     */
+    public static final class Violation {
+        private final long lineNumber;
+        private final String column;
+        private final String value;
+        private final String reason;
+
+        Violation(long lineNumber, String column, String value, String reason) {
+            this.lineNumber = lineNumber;
+            this.column = column;
+            this.value = value;
+            this.reason = reason;
+        }
+
+        /**
+         * Returns the line of the routes file the violation is on; the header is line 1.
+         * @return the line number of the violation.
+         */
+        public long getLineNumber() {
+            return lineNumber;
+        }
+
+        public String getColumn() {
+            return column;
+        }
+
+        public String getValue() {
+            return value;
+        }
+
+        public String getReason() {
+            return reason;
+        }
+
+        @Override
+        public String toString() {
+            return "line " + lineNumber + ", " + column + " '" + value + "': " + reason;
+        }
+    }
+
+    /**
+     * The bus stop ids and operator names that route rows may reference.
+     */
+    private static final class References {
+        // BitSet cannot hold negative ids, so those (if there ever are any) are held separately.
+        final BitSet busStopIds = new BitSet();
+        final IntHashSet negativeBusStopIds = new IntHashSet();
+        final Set<String> operatorNames = new HashSet<>();
+
+        void addBusStop(int id) {
+            if (id >= 0) {
+                busStopIds.set(id);
+            } else {
+                negativeBusStopIds.add(id);
+            }
+        }
+
+        boolean hasBusStop(int id) {
+            return id >= 0 ? busStopIds.get(id) : negativeBusStopIds.contains(id);
+        }
+    }
+
+    /**
+     * Static methods only; not to be instantiated.
+     */
+    private ReferentialIntegrityValidator() {
+    }
+
+    /**
+     * Checks the routes file against the bus stops and operators files, on the common ForkJoinPool.
+     *
+     * @param busStopsCsv the bus stops csv file.
+     * @param operatorsCsv the operators csv file.
+     * @param routesCsv the routes csv file.
+     * @return every violation found, in file order; empty if the routes are valid.
+     * @throws IOException if a csv file could not be read.
+     */
+    public static List<Violation> validate(Path busStopsCsv, Path operatorsCsv, Path routesCsv) throws IOException {
+        return validate(busStopsCsv, operatorsCsv, routesCsv, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Checks the routes file against the bus stops and operators files, on the ForkJoinPool specified.
+     *
+     * @param busStopsCsv the bus stops csv file.
+     * @param operatorsCsv the operators csv file.
+     * @param routesCsv the routes csv file.
+     * @param pool the pool to read and check the routes on.
+     * @return every violation found, in file order; empty if the routes are valid.
+     * @throws IOException if a csv file could not be read.
+     */
+    public static List<Violation> validate(Path busStopsCsv, Path operatorsCsv, Path routesCsv, ForkJoinPool pool)
+            throws IOException {
+        References references = new References();
+
+        try (SimpleCSVReader busStops = new SimpleCSVReader(busStopsCsv)) {
+            while (busStops.hasNext()) {
+                try {
+                    references.addBusStop(Integer.parseInt(busStops.next().get("id")));
+                } catch (NumberFormatException e) {
+                    // Not a valid bus stop, so nothing can reference it; the bus stop's own insert will fail.
+                }
+            }
+        }
+
+        try (SimpleCSVReader operators = new SimpleCSVReader(operatorsCsv)) {
+            while (operators.hasNext()) {
+                references.operatorNames.add(operators.next().get("name"));
+            }
+        }
+
+        List<Map<String, String>> routes = ParallelCSVReader.readSimpleCSV(routesCsv, pool);
+        return pool.invoke(new CheckRoutesTask(routes, references, 0, routes.size()));
+    }
+
+    /**
+     * Checks the routes file against the bus stops and operators files, failing if there are any violations.
+     *
+     * @param busStopsCsv the bus stops csv file.
+     * @param operatorsCsv the operators csv file.
+     * @param routesCsv the routes csv file.
+     * @throws IOException if a csv file could not be read.
+     * @throws IllegalArgumentException if any route references a bus stop or operator that does not exist.
+     */
+    public static void requireValid(Path busStopsCsv, Path operatorsCsv, Path routesCsv) throws IOException {
+        List<Violation> violations = validate(busStopsCsv, operatorsCsv, routesCsv);
+        if (violations.isEmpty()) {
+            return;
+        }
+
+        StringBuilder message = new StringBuilder("The routes in ").append(routesCsv).append(" have ")
+                .append(violations.size()).append(" invalid reference(s):");
+        for (Violation violation : violations.subList(0, Math.min(violations.size(), MAX_VIOLATIONS_IN_MESSAGE))) {
+            message.append("\n  ").append(violation);
+        }
+        if (violations.size() > MAX_VIOLATIONS_IN_MESSAGE) {
+            message.append("\n  and ").append(violations.size() - MAX_VIOLATIONS_IN_MESSAGE).append(" more");
+        }
+        throw new IllegalArgumentException(message.toString());
+    }
+
+    /**
+     * Checks a range of the route rows, splitting it in two while it is large enough to be worth sharing.
+     */
+    private static final class CheckRoutesTask extends RecursiveTask<List<Violation>> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<Map<String, String>> routes;
+        private final References references;
+        private final int from;
+        private final int to;
+
+        CheckRoutesTask(List<Map<String, String>> routes, References references, int from, int to) {
+            this.routes = routes;
+            this.references = references;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected List<Violation> compute() {
+            if (to - from > MIN_ROWS_PER_TASK) {
+                int middle = (from + to) >>> 1;
+                CheckRoutesTask second = new CheckRoutesTask(routes, references, middle, to);
+                second.fork();
+                List<Violation> violations = new CheckRoutesTask(routes, references, from, middle).compute();
+                violations.addAll(second.join());
+                return violations;
+            }
+
+            List<Violation> violations = new ArrayList<>();
+            for (int i = from; i < to; i++) {
+                checkRoute(routes.get(i), i + 2L, violations);
+            }
+            return violations;
+        }
+
+        private void checkRoute(Map<String, String> route, long lineNumber, List<Violation> violations) {
+            checkBusStop(route, "start", lineNumber, violations);
+            checkBusStop(route, "destination", lineNumber, violations);
+
+            for (String operatorName : QueryUtilities.splitOperatorNames(route.get("operators"))) {
+                if (!references.operatorNames.contains(operatorName)) {
+                    violations.add(new Violation(lineNumber, "operators", operatorName, "no such operator"));
+                }
+            }
+        }
+
+        private void checkBusStop(Map<String, String> route, String column, long lineNumber,
+                                  List<Violation> violations) {
+            String value = route.get(column);
+            try {
+                if (!references.hasBusStop(Integer.parseInt(value))) {
+                    violations.add(new Violation(lineNumber, column, value, "no such bus stop"));
+                }
+            } catch (NumberFormatException e) {
+                violations.add(new Violation(lineNumber, column, value, "not a bus stop id"));
+            }
+        }
+    }
+
+}
@@ -0,0 +1,223 @@
+/**
+ * csc2024-hibernate-assignment
+ *
+ * Copyright (c) 2015 Newcastle University
+ * Email: <h.firth@ncl.ac.uk/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ncl.cs.csc2024.ingest;
+
+import uk.ac.ncl.cs.csc2024.query.QueryUtilities;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * The fingerprints of every row seen by an import, keyed by each row's natural key, for each of the bus stops,
+ * operators and routes csv files. Comparing the fingerprints of a new feed against those recorded by the previous
+ * import tells the DeltaImporter which rows were added, changed or removed.
+ *
+ * A row's fingerprint is a 64-bit FNV-1a hash of its column names and values. The routes 'operators' column is
+ * hashed with its names sorted, so re-ordering a route's operators is not mistaken for a change.
+ *
+ * @author Dylan McKee
+ */
+public final class RowFingerprints {
+
+    /**
+     * The first four bytes of a fingerprints file ("FPRT").
+     */
+    private static final int MAGIC = 0x46505254;
+
+    /**
+     * The version of the fingerprints file format.
+     */
+    private static final short VERSION = 1;
+
+    /**
+     * FNV-1a 64-bit parameters.
+     */
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /**
+     * The csv column holding the '|' separated operator names of a route.
+     */
+    private static final String OPERATORS_COLUMN = "operators";
+
+    /**
+     * The fingerprints of each table's rows, keyed by natural key.
+     */
+    private final Map<String, Long> busStops;
+    private final Map<String, Long> operators;
+    private final Map<String, Long> routes;
+
+    /**
+     * Creates an empty set of fingerprints; as seen before the first ever import.
+     */
+    public RowFingerprints() {
+        this(new HashMap<String, Long>(), new HashMap<String, Long>(), new HashMap<String, Long>());
+    }
+
+    private RowFingerprints(Map<String, Long> busStops, Map<String, Long> operators, Map<String, Long> routes) {
+        this.busStops = busStops;
+        this.operators = operators;
+        this.routes = routes;
+    }
+
+    /**
+     * Returns the bus stop fingerprints, keyed by bus stop id.
+     * @return a mutable map of bus stop id to fingerprint.
+     */
+    public Map<String, Long> getBusStops() {
+        return busStops;
+    }
+
+    /**
+     * Returns the operator fingerprints, keyed by operator name.
+     * @return a mutable map of operator name to fingerprint.
+     */
+    public Map<String, Long> getOperators() {
+        return operators;
+    }
+
+    /**
+     * Returns the route fingerprints, keyed by route number.
+     * @return a mutable map of route number to fingerprint.
+     */
+    public Map<String, Long> getRoutes() {
+        return routes;
+    }
+
+    /**
+     * Calculates the fingerprint of a csv row.
+     *
+     * @param row the row to fingerprint, keyed by column name.
+     * @return the row's fingerprint.
+     */
+    public static long fingerprint(Map<String, String> row) {
+        // Visit the columns in a fixed order, as the row's own iteration order is unspecified.
+        List<String> columns = new ArrayList<>(row.keySet());
+        Collections.sort(columns);
+
+        long hash = FNV_OFFSET_BASIS;
+        for (String column : columns) {
+            String value = row.get(column);
+            if (OPERATORS_COLUMN.equals(column) && value != null) {
+                value = sortedOperatorNames(value);
+            }
+            hash = hash(hash, column);
+            hash = hash(hash, value == null ? "" : value);
+        }
+        return hash;
+    }
+
+    /**
+     * Loads the fingerprints recorded at the path specified, or returns an empty set of fingerprints if there is
+     * no file there yet.
+     *
+     * @param file the path of the fingerprints file.
+     * @return the fingerprints recorded in the file.
+     * @throws IOException if the file exists but could not be read.
+     */
+    public static RowFingerprints load(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return new RowFingerprints();
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readShort() != VERSION) {
+                throw new IllegalArgumentException("The file at " + file + " is not a recognised fingerprints file");
+            }
+            Map<String, Long> busStops = readTable(in);
+            Map<String, Long> operators = readTable(in);
+            Map<String, Long> routes = readTable(in);
+            return new RowFingerprints(busStops, operators, routes);
+        }
+    }
+
+    /**
+     * Records these fingerprints at the path specified, replacing any previous file atomically.
+     *
+     * @param file the path of the fingerprints file.
+     * @throws IOException if the file could not be written.
+     */
+    public void save(Path file) throws IOException {
+        Path absolute = file.toAbsolutePath();
+        Path temporary = Files.createTempFile(absolute.getParent(), absolute.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+                out.writeInt(MAGIC);
+                out.writeShort(VERSION);
+                writeTable(out, busStops);
+                writeTable(out, operators);
+                writeTable(out, routes);
+            }
+            Files.move(temporary, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    private static Map<String, Long> readTable(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        Map<String, Long> table = new HashMap<>((size * 4 / 3) + 1);
+        for (int i = 0; i < size; i++) {
+            table.put(in.readUTF(), in.readLong());
+        }
+        return table;
+    }
+
+    private static void writeTable(DataOutputStream out, Map<String, Long> table) throws IOException {
+        out.writeInt(table.size());
+        for (Map.Entry<String, Long> entry : table.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeLong(entry.getValue());
+        }
+    }
+
+    /**
+     * Folds the characters of a String, followed by a separator, into an FNV-1a hash.
+     */
+    private static long hash(long hash, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            hash = (hash ^ (c & 0xff)) * FNV_PRIME;
+            hash = (hash ^ (c >>> 8)) * FNV_PRIME;
+        }
+        // Mark the end of the field, so that ("ab", "c") and ("a", "bc") hash differently.
+        return (hash ^ 0x1f) * FNV_PRIME;
+    }
+
+    /**
+     * Returns the '|' separated operator names passed in, sorted and re-joined.
+     */
+    private static String sortedOperatorNames(String encodedOperators) {
+        List<String> names = new ArrayList<>(QueryUtilities.splitOperatorNames(encodedOperators));
+        Collections.sort(names);
+        StringBuilder sorted = new StringBuilder(encodedOperators.length());
+        for (String name : names) {
+            if (sorted.length() > 0) {
+                sorted.append('|');
+            }
+            sorted.append(name);
+        }
+        return sorted.toString();
+    }
+
+}
@@ -0,0 +1,419 @@
+/**
+ * csc2024-hibernate-assignment
+ *
+ * Copyright (c) 2015 Newcastle University
+ * Email: <h.firth@ncl.ac.uk/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ncl.cs.csc2024.ingest;
+
+import org.hibernate.Session;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.id.IdentifierGenerator;
+import org.hibernate.jdbc.Work;
+import uk.ac.ncl.cs.csc2024.busstop.BusStop;
+import uk.ac.ncl.cs.csc2024.config.DatabaseVendor;
+import uk.ac.ncl.cs.csc2024.config.HibernateSettings;
+import uk.ac.ncl.cs.csc2024.operator.Operator;
+import uk.ac.ncl.cs.csc2024.query.QueryUtilities;
+import uk.ac.ncl.cs.csc2024.route.OperatorFrequencies;
+import uk.ac.ncl.cs.csc2024.route.Route;
+import uk.ac.ncl.cs.csc2024.stats.TableStatistics;
+import uk.ac.ncl.cs.csc2024.util.SimpleCSVReader;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.*;
+
+/**
+ * Imports a bus stops, operators and routes feed into a database which may already hold some or all of it,
+ * inserting the rows that are new and updating the rows that already exist, rather than failing (or duplicating
+ * rows) as the 'Queries' classes' insert methods would. Bus stops are matched on their id, operators on their
+ * name and routes on their number.
+ *
+ * Each batch of rows is sent as a single JDBC batch of the database's own upsert statement (MERGE on H2,
+ * INSERT ... ON CONFLICT on PostgreSQL and INSERT ... ON DUPLICATE KEY UPDATE on MySQL), so the database decides
+ * whether each row is an insert or an update, with no select per row. Each route's operators are then
+ * reconciled in bulk, by deleting the batch's join rows and re-inserting them from the operators' names. As
+ * with RouteQueries.insert(...), stops which do not exist are left null, and a route naming an operator which does
+ * not exist fails the import.
+ *
+ * New operators are given ids by Operator's id generator, so those ids never collide with the ids the generator
+ * hands out to operators saved through Hibernate. An id is taken for every operator row, so operators which
+ * already existed leave a gap in the ids.
+ *
+ * The import runs on the session's connection, within the caller's transaction. As the session's persistence
+ * context knows nothing of the imported rows, entities already loaded in the session should not be relied upon
+ * afterwards. Any cached entities and query results are evicted, the operator frequency summary (see
+ * OperatorFrequencies) is rebuilt if it is maintained, and any TableStatistics are invalidated.
+ *
+ * @author Dylan McKee
+ */
+public final class UpsertImporter {
+
+    /**
+     * A column written by an upsert.
+     */
+    private static final class UpsertColumn {
+        final String name;
+        final int jdbcType;
+        final String h2Type;
+        final String valueTemplate;
+        final boolean updatable;
+
+        /**
+         * @param name the name of the column.
+         * @param jdbcType the java.sql.Types type of the column's parameter.
+         * @param h2Type the SQL type H2 should cast the column's parameter to; H2 cannot infer the type of a
+         *               parameter in the source of a MERGE.
+         * @param valueTemplate the SQL of the value written to the column, with '%s' in place of the parameter.
+         * @param updatable true iff the column is overwritten when the row already exists.
+         */
+        UpsertColumn(String name, int jdbcType, String h2Type, String valueTemplate, boolean updatable) {
+            this.name = name;
+            this.jdbcType = jdbcType;
+            this.h2Type = h2Type;
+            this.valueTemplate = valueTemplate;
+            this.updatable = updatable;
+        }
+    }
+
+    /**
+     * Converts a csv row into the parameters of an upsert, in column order.
+     */
+    private interface RowParameters {
+        Object[] of(Map<String, String> row);
+    }
+
+    private static final UpsertColumn[] BUS_STOP_COLUMNS = {
+            new UpsertColumn("id", Types.INTEGER, "int", "%s", false),
+            new UpsertColumn("description", Types.VARCHAR, "varchar", "%s", true)
+    };
+
+    private static final UpsertColumn[] OPERATOR_COLUMNS = {
+            new UpsertColumn("id", Types.INTEGER, "int", "%s", false),
+            new UpsertColumn("name", Types.VARCHAR, "varchar", "%s", false),
+            new UpsertColumn("street", Types.VARCHAR, "varchar", "%s", true),
+            new UpsertColumn("town", Types.VARCHAR, "varchar", "%s", true),
+            new UpsertColumn("postcode", Types.VARCHAR, "varchar", "%s", true),
+            new UpsertColumn("email", Types.VARCHAR, "varchar", "%s", true),
+            new UpsertColumn("phone", Types.VARCHAR, "varchar", "%s", true)
+    };
+
+    /**
+     * A stop which does not exist is written as null, rather than failing the route's foreign key.
+     */
+    private static final String EXISTING_BUS_STOP_ID_TEMPLATE = "(select id from " + BusStop.TABLE_NAME +
+            " where id = %s)";
+
+    private static final UpsertColumn[] ROUTE_COLUMNS = {
+            new UpsertColumn("number", Types.VARCHAR, "varchar", "%s", false),
+            new UpsertColumn("frequency", Types.INTEGER, "int", "%s", true),
+            new UpsertColumn("start_stop_id", Types.INTEGER, "int", EXISTING_BUS_STOP_ID_TEMPLATE, true),
+            new UpsertColumn("destination_stop_id", Types.INTEGER, "int", EXISTING_BUS_STOP_ID_TEMPLATE, true)
+    };
+
+    private static final String DELETE_OPERATOR_ROUTES_SQL = "delete from " + Route.OPERATORS_JOIN_TABLE_NAME +
+            " where route_id = ?";
+
+    private static final RowParameters BUS_STOP_PARAMETERS = new RowParameters() {
+        @Override
+        public Object[] of(Map<String, String> row) {
+            return new Object[] {Integer.parseInt(row.get("id")), row.get("description")};
+        }
+    };
+
+    private static final RowParameters ROUTE_PARAMETERS = new RowParameters() {
+        @Override
+        public Object[] of(Map<String, String> row) {
+            return new Object[] {
+                    row.get("number"),
+                    Integer.parseInt(row.get("frequency")),
+                    Integer.parseInt(row.get("start")),
+                    Integer.parseInt(row.get("destination"))
+            };
+        }
+    };
+
+    /**
+     * Static methods only; not to be instantiated.
+     */
+    private UpsertImporter() {
+    }
+
+    /**
+     * Upserts the three csv files passed in, with the default batch size.
+     *
+     * @param busStopsCsv the bus stops csv file.
+     * @param operatorsCsv the operators csv file.
+     * @param routesCsv the routes csv file.
+     * @param session the session whose connection (and transaction) to upsert the rows with.
+     * @return the session the rows were upserted with.
+     * @throws IOException if a csv file could not be read.
+     * @throws IllegalArgumentException if upserts are not supported for the session's database, or if a route
+     * names an operator that does not exist.
+     */
+    public static Session upsert(Path busStopsCsv, Path operatorsCsv, Path routesCsv, Session session)
+            throws IOException {
+        int batchSize = HibernateSettings.DEFAULT_BATCH_SIZE;
+
+        try (SimpleCSVReader busStops = new SimpleCSVReader(busStopsCsv)) {
+            upsertBusStops(SimpleCSVReader.iterable(busStops), session, batchSize);
+        }
+        try (SimpleCSVReader operators = new SimpleCSVReader(operatorsCsv)) {
+            upsertOperators(SimpleCSVReader.iterable(operators), session, batchSize);
+        }
+        try (SimpleCSVReader routes = new SimpleCSVReader(routesCsv)) {
+            upsertRoutes(SimpleCSVReader.iterable(routes), session, batchSize);
+        }
+
+        return session;
+    }
+
+    /**
+     * Inserts or updates each bus stop row passed in, matching existing bus stops on id.
+     *
+     * @param rows the csv rows to upsert, keyed by column name.
+     * @param session the session whose connection (and transaction) to upsert the rows with.
+     * @param batchSize the number of rows per JDBC batch.
+     * @return the session the rows were upserted with.
+     */
+    public static Session upsertBusStops(Iterable<Map<String, String>> rows, Session session, int batchSize) {
+        String sql = upsertSql(DatabaseVendor.of(session), BusStop.TABLE_NAME, "id", BUS_STOP_COLUMNS);
+        return upsert(rows, session, batchSize, sql, BUS_STOP_COLUMNS, BUS_STOP_PARAMETERS, false);
+    }
+
+    /**
+     * Inserts or updates each operator row passed in, matching existing operators on name.
+     *
+     * @param rows the csv rows to upsert, keyed by column name.
+     * @param session the session whose connection (and transaction) to upsert the rows with.
+     * @param batchSize the number of rows per JDBC batch.
+     * @return the session the rows were upserted with.
+     */
+    public static Session upsertOperators(Iterable<Map<String, String>> rows, final Session session, int batchSize) {
+        String sql = upsertSql(DatabaseVendor.of(session), Operator.TABLE_NAME, "name", OPERATOR_COLUMNS);
+
+        final IdentifierGenerator idGenerator = ((SessionFactoryImplementor) session.getSessionFactory())
+                .getIdentifierGenerator(Operator.class.getName());
+        RowParameters operatorParameters = new RowParameters() {
+            @Override
+            public Object[] of(Map<String, String> row) {
+                Number id = (Number) idGenerator.generate((SessionImplementor) session, null);
+                return new Object[] {
+                        id.intValue(),
+                        row.get("name"),
+                        row.get("street"),
+                        row.get("town"),
+                        row.get("postcode"),
+                        row.get("email"),
+                        row.get("phone")
+                };
+            }
+        };
+
+        return upsert(rows, session, batchSize, sql, OPERATOR_COLUMNS, operatorParameters, false);
+    }
+
+    /**
+     * Inserts or updates each route row passed in, matching existing routes on number, and replaces each route's
+     * operators with those named in its row.
+     *
+     * @param rows the csv rows to upsert, keyed by column name.
+     * @param session the session whose connection (and transaction) to upsert the rows with.
+     * @param batchSize the number of rows per JDBC batch.
+     * @return the session the rows were upserted with.
+     * @throws IllegalArgumentException if a route names an operator that does not exist.
+     */
+    public static Session upsertRoutes(Iterable<Map<String, String>> rows, Session session, int batchSize) {
+        String sql = upsertSql(DatabaseVendor.of(session), Route.TABLE_NAME, "number", ROUTE_COLUMNS);
+        return upsert(rows, session, batchSize, sql, ROUTE_COLUMNS, ROUTE_PARAMETERS, true);
+    }
+
+    /**
+     * Sends the rows passed in to the database in batches of upserts.
+     */
+    private static Session upsert(Iterable<Map<String, String>> rows, Session session, int batchSize,
+                                  String sql, UpsertColumn[] columns, RowParameters parameters,
+                                  boolean reconcileOperators) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("The batch size must be at least 1, not " + batchSize);
+        }
+
+        // Send any pending changes first, so that they are not overwritten by (or do not overwrite) the upserts.
+        session.flush();
+
+        String insertOperatorRouteSql = insertOperatorRouteSql(DatabaseVendor.of(session));
+        List<Map<String, String>> batch = new ArrayList<>(batchSize);
+        for (Map<String, String> row : rows) {
+            batch.add(row);
+            if (batch.size() == batchSize) {
+                upsertBatch(batch, session, sql, columns, parameters, reconcileOperators, insertOperatorRouteSql);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            upsertBatch(batch, session, sql, columns, parameters, reconcileOperators, insertOperatorRouteSql);
+        }
+
+        OperatorFrequencies.rebuild(session);
+        TableStatistics.invalidate(session);
+        return QueryUtilities.evictCachedData(session);
+    }
+
+    private static void upsertBatch(final List<Map<String, String>> batch, Session session, final String sql,
+                                    final UpsertColumn[] columns, RowParameters parameters,
+                                    final boolean reconcileOperators, final String insertOperatorRouteSql) {
+        // Convert the rows before borrowing the connection, as generating an operator id may need to use it.
+        final List<Object[]> batchParameters = new ArrayList<>(batch.size());
+        for (Map<String, String> row : batch) {
+            batchParameters.add(parameters.of(row));
+        }
+
+        session.doWork(new Work() {
+            @Override
+            public void execute(Connection connection) throws SQLException {
+                try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                    for (Object[] rowParameters : batchParameters) {
+                        for (int i = 0; i < columns.length; i++) {
+                            statement.setObject(i + 1, rowParameters[i], columns[i].jdbcType);
+                        }
+                        statement.addBatch();
+                    }
+                    statement.executeBatch();
+                }
+
+                if (reconcileOperators) {
+                    reconcileOperatorRoutes(connection, batch, insertOperatorRouteSql);
+                }
+            }
+        });
+    }
+
+    /**
+     * Replaces the operator_route join rows of each route in the batch with rows for the operators named in the
+     * route's csv row, using one batch of deletes and one batch of inserts. An insert which matched no operator
+     * means the route names an operator that does not exist, which fails the import.
+     */
+    private static void reconcileOperatorRoutes(Connection connection, List<Map<String, String>> batch,
+                                                String insertOperatorRouteSql) throws SQLException {
+        try (PreparedStatement delete = connection.prepareStatement(DELETE_OPERATOR_ROUTES_SQL)) {
+            for (Map<String, String> row : batch) {
+                delete.setString(1, row.get("number"));
+                delete.addBatch();
+            }
+            delete.executeBatch();
+        }
+
+        List<String[]> inserted = new ArrayList<>();
+        try (PreparedStatement insert = connection.prepareStatement(insertOperatorRouteSql)) {
+            for (Map<String, String> row : batch) {
+                // A name listed twice would otherwise insert a duplicate join row.
+                Set<String> operatorNames = new LinkedHashSet<>(QueryUtilities.splitOperatorNames(row.get("operators")));
+                for (String operatorName : operatorNames) {
+                    insert.setString(1, row.get("number"));
+                    insert.setString(2, operatorName);
+                    insert.addBatch();
+                    inserted.add(new String[] { row.get("number"), operatorName });
+                }
+            }
+
+            int[] updateCounts = insert.executeBatch();
+            for (int i = 0; i < updateCounts.length; i++) {
+                if (updateCounts[i] == 0) {
+                    String[] operatorRoute = inserted.get(i);
+                    throw new IllegalArgumentException("Route " + operatorRoute[0] + " names operator '" +
+                            operatorRoute[1] + "', which does not exist");
+                }
+            }
+        }
+    }
+
+    /**
+     * Builds the upsert statement for a table in the database's own dialect of SQL.
+     */
+    private static String upsertSql(DatabaseVendor vendor, String table, String keyColumn, UpsertColumn[] columns) {
+        StringBuilder names = new StringBuilder();
+        StringBuilder values = new StringBuilder();
+        for (UpsertColumn column : columns) {
+            if (names.length() > 0) {
+                names.append(", ");
+                values.append(", ");
+            }
+            names.append(column.name);
+            values.append(value(vendor, column));
+        }
+
+        StringBuilder sql = new StringBuilder();
+        switch (vendor) {
+            case H2:
+                sql.append("merge into ").append(table).append(" t using (select ");
+                for (int i = 0; i < columns.length; i++) {
+                    sql.append(i == 0 ? "" : ", ").append(value(vendor, columns[i])).append(" as ").append(columns[i].name);
+                }
+                sql.append(") v on t.").append(keyColumn).append(" = v.").append(keyColumn);
+                sql.append(" when matched then update set ");
+                appendUpdates(sql, columns, "t.%1$s = v.%1$s");
+                sql.append(" when not matched then insert (").append(names).append(") values (");
+                for (int i = 0; i < columns.length; i++) {
+                    sql.append(i == 0 ? "" : ", ").append("v.").append(columns[i].name);
+                }
+                return sql.append(')').toString();
+            case POSTGRESQL:
+                sql.append("insert into ").append(table).append(" (").append(names).append(") values (")
+                        .append(values).append(") on conflict (").append(keyColumn).append(") do update set ");
+                appendUpdates(sql, columns, "%1$s = excluded.%1$s");
+                return sql.toString();
+            case MYSQL:
+                sql.append("insert into ").append(table).append(" (").append(names).append(") values (")
+                        .append(values).append(") on duplicate key update ");
+                appendUpdates(sql, columns, "%1$s = values(%1$s)");
+                return sql.toString();
+            default:
+                throw new IllegalArgumentException("Upserts are not supported for this database");
+        }
+    }
+
+    /**
+     * Builds the statement inserting a route's join row for a named operator; nothing is inserted if there is no
+     * operator with that name.
+     */
+    private static String insertOperatorRouteSql(DatabaseVendor vendor) {
+        String routeNumber = vendor == DatabaseVendor.H2 ? "cast(? as varchar)" : "?";
+        return "insert into " + Route.OPERATORS_JOIN_TABLE_NAME + " (route_id, operator_id) select " + routeNumber +
+                ", id from " + Operator.TABLE_NAME + " where name = ?";
+    }
+
+    private static String value(DatabaseVendor vendor, UpsertColumn column) {
+        String parameter = vendor == DatabaseVendor.H2 ? "cast(? as " + column.h2Type + ")" : "?";
+        return String.format(column.valueTemplate, parameter);
+    }
+
+    private static void appendUpdates(StringBuilder sql, UpsertColumn[] columns, String assignmentTemplate) {
+        boolean first = true;
+        for (UpsertColumn column : columns) {
+            if (column.updatable) {
+                sql.append(first ? "" : ", ").append(String.format(assignmentTemplate, column.name));
+                first = false;
+            }
+        }
+    }
+
+}
@@ -19,6 +19,11 @@
  */
 package uk.ac.ncl.cs.csc2024.operator;
 
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.annotations.QueryHints;
+import uk.ac.ncl.cs.csc2024.config.HibernateSettings;
+import uk.ac.ncl.cs.csc2024.config.PooledIdGenerator;
 import uk.ac.ncl.cs.csc2024.route.Route;
 
 import javax.persistence.*;
@@ -38,15 +43,57 @@ import java.util.Set;
 
 @Entity
 @NamedQueries({
-        @NamedQuery(name = Operator.SELECT_ALL, query = Operator.SELECT_ALL_HQL_QUERY),
-        @NamedQuery(name = Operator.SELECT_ALL_DIAMOND_BUSES_ROUTES, query = Operator.SELECT_DIAMOND_BUSES_ROUTES_HQL_QUERY),
-        @NamedQuery(name = Operator.SELECT_ALL_PARK_GATES_OPERATORS, query = Operator.SELECT_ALL_PARK_GATE_OPERATORS_HQL_QUERY)
+        @NamedQuery(name = Operator.SELECT_ALL, query = Operator.SELECT_ALL_HQL_QUERY, hints = {
+                @QueryHint(name = QueryHints.CACHEABLE, value = "true"),
+                @QueryHint(name = QueryHints.CACHE_REGION, value = HibernateSettings.QUERY_CACHE_REGION)
+        }),
+        @NamedQuery(name = Operator.SELECT_ALL_DIAMOND_BUSES_ROUTES, query = Operator.SELECT_DIAMOND_BUSES_ROUTES_HQL_QUERY, hints = {
+                @QueryHint(name = QueryHints.CACHEABLE, value = "true"),
+                @QueryHint(name = QueryHints.CACHE_REGION, value = HibernateSettings.QUERY_CACHE_REGION)
+        }),
+        @NamedQuery(name = Operator.SELECT_ALL_PARK_GATES_OPERATORS, query = Operator.SELECT_ALL_PARK_GATE_OPERATORS_HQL_QUERY, hints = {
+                @QueryHint(name = QueryHints.CACHEABLE, value = "true"),
+                @QueryHint(name = QueryHints.CACHE_REGION, value = HibernateSettings.QUERY_CACHE_REGION)
+        }),
+        @NamedQuery(name = Operator.SELECT_ROUTES_BY_OPERATOR, query = Operator.SELECT_ROUTES_BY_OPERATOR_HQL_QUERY, hints = {
+                @QueryHint(name = QueryHints.CACHEABLE, value = "true"),
+                @QueryHint(name = QueryHints.CACHE_REGION, value = HibernateSettings.QUERY_CACHE_REGION)
+        }),
+        @NamedQuery(name = Operator.SELECT_OPERATORS_SERVING_STOP, query = Operator.SELECT_OPERATORS_SERVING_STOP_HQL_QUERY, hints = {
+                @QueryHint(name = QueryHints.CACHEABLE, value = "true"),
+                @QueryHint(name = QueryHints.CACHE_REGION, value = HibernateSettings.QUERY_CACHE_REGION)
+        }),
+        @NamedQuery(name = Operator.SELECT_ALL_SUMMARIES, query = Operator.SELECT_ALL_SUMMARIES_HQL_QUERY, hints = {
+                @QueryHint(name = QueryHints.CACHEABLE, value = "true"),
+                @QueryHint(name = QueryHints.CACHE_REGION, value = HibernateSettings.QUERY_CACHE_REGION)
+        }),
+        @NamedQuery(name = Operator.SELECT_PAGE_AFTER, query = Operator.SELECT_PAGE_AFTER_HQL_QUERY, hints = {
+                @QueryHint(name = QueryHints.CACHEABLE, value = "true"),
+                @QueryHint(name = QueryHints.CACHE_REGION, value = HibernateSettings.QUERY_CACHE_REGION)
+        }),
+        // The fetch join query is not cached; see FetchPlan.
+        @NamedQuery(name = Operator.SELECT_ALL_JOIN_FETCH, query = Operator.SELECT_ALL_JOIN_FETCH_HQL_QUERY)
 
 })
 
-@Table(name = "operator")
+@Table(name = Operator.TABLE_NAME)
 public class Operator {
 
+    /**
+     * The name of the table that operators are stored in.
+     */
+    public static final String TABLE_NAME = "operator";
+
+    /**
+     * The name of the id generator, and of the database sequence (or table) backing it.
+     */
+    public static final String ID_GENERATOR_NAME = "operator_id_seq";
+
+    /**
+     * The role of the routes collection, by which its mapping is configured.
+     */
+    public static final String ROUTES_ROLE = "uk.ac.ncl.cs.csc2024.operator.Operator.routes";
+
     /**
      * The name of the select all operators query.
      */
@@ -77,18 +124,93 @@ public class Operator {
      */
     public static final String SELECT_ALL_PARK_GATE_OPERATORS_HQL_QUERY = "select o from Operator o join o.routes r where r.startStop.description='Park Gates' or r.destinationStop.description='Park Gates'";
 
+    /**
+     * The name of the 'select all routes operated by an operator' query.
+     */
+    public static final String SELECT_ROUTES_BY_OPERATOR = "Operator.selectRoutesByOperator";
+
+    /**
+     * The HQL Query to select the routes operated by the operator named in the 'name' parameter, ordered by
+     * number. Unlike the Diamond Buses query, the name is bound rather than written into the query, so the same
+     * query plan and JDBC statement serve every operator.
+     */
+    public static final String SELECT_ROUTES_BY_OPERATOR_HQL_QUERY = "select r from Route r join r.operators o " +
+            "where o.name = :name order by r.number asc";
+
+    /**
+     * The name of the 'select all operators of routes that start/end at a stop' query.
+     */
+    public static final String SELECT_OPERATORS_SERVING_STOP = "Operator.selectOperatorsServingStop";
+
+    /**
+     * The HQL Query to select each operator of a route which starts or ends at a stop with the description in the
+     * 'description' parameter, once, ordered by name. Unlike the Park Gates query, which returns an operator once
+     * per matching route, the operators are distinct.
+     */
+    public static final String SELECT_OPERATORS_SERVING_STOP_HQL_QUERY = "select distinct o from Operator o " +
+            "join o.routes r left join r.startStop s left join r.destinationStop d " +
+            "where s.description = :description or d.description = :description order by o.name asc";
+
+    /**
+     * The name of the 'select a summary of every operator' query.
+     */
+    public static final String SELECT_ALL_SUMMARIES = "Operator.selectAllSummaries";
+
+    /**
+     * The HQL Query to select an OperatorSummary of every operator, in the same order as the select all query.
+     */
+    public static final String SELECT_ALL_SUMMARIES_HQL_QUERY = "select new uk.ac.ncl.cs.csc2024.operator.OperatorSummary(" +
+            "o.name, o.town, o.email, o.phone) from Operator o order by o.name asc";
+
+    /**
+     * The name of the 'select the next page of operators after a name' query.
+     */
+    public static final String SELECT_PAGE_AFTER = "Operator.selectPageAfter";
+
+    /**
+     * The HQL Query to select the operators after the name in the 'after' parameter, in the same order as the
+     * select all query. Limited to a page of results, it seeks straight to the page through the name's unique index.
+     */
+    public static final String SELECT_PAGE_AFTER_HQL_QUERY = "select o from Operator o where o.name > :after order by o.name asc";
+
+    /**
+     * The name of the 'select all operators, with their routes' query.
+     */
+    public static final String SELECT_ALL_JOIN_FETCH = "Operator.selectAllJoinFetch";
+
+    /**
+     * The HQL Query for the 'select all operators, with their routes' query, which fetches the routes (and their
+     * stops) in the same select as the operators (see FetchPlan.JOIN).
+     */
+    public static final String SELECT_ALL_JOIN_FETCH_HQL_QUERY = "select distinct o from Operator o " +
+            "left join fetch o.routes r left join fetch r.startStop left join fetch r.destinationStop " +
+            "order by o.name asc";
+
+    /**
+     * The HQL Query which initialises the routes (and their stops) of the operators whose ids are in the 'ids'
+     * list parameter (see FetchPlan.BATCH).
+     */
+    public static final String FETCH_ROUTES_HQL_QUERY = "select distinct o from Operator o " +
+            "left join fetch o.routes r left join fetch r.startStop left join fetch r.destinationStop " +
+            "where o.id in (:ids)";
+
     /**
      * The primary key for the Operator entirety.
      */
     @Id
-    @GeneratedValue
+    @GeneratedValue(generator = Operator.ID_GENERATOR_NAME)
+    @GenericGenerator(
+            name = Operator.ID_GENERATOR_NAME,
+            strategy = PooledIdGenerator.STRATEGY,
+            parameters = @Parameter(name = PooledIdGenerator.SEQUENCE_PARAM, value = Operator.ID_GENERATOR_NAME)
+    )
     @Column(name = "id")
     private int id;
 
     /**
-     * The operator name.
+     * The operator name; unique, as operators are referenced by name in the routes csv file.
      */
-    @Column(name = "name")
+    @Column(name = "name", unique = true)
     private String name;
 
     /**
@@ -129,7 +251,7 @@ public class Operator {
             cascade = {CascadeType.PERSIST, CascadeType.PERSIST}
     )
     @JoinTable(
-            name = "operator_route",
+            name = Route.OPERATORS_JOIN_TABLE_NAME,
             joinColumns = @JoinColumn(name = "operator_id"),
             inverseJoinColumns = @JoinColumn(name = "route_id")
     )
@@ -20,14 +20,21 @@
 package uk.ac.ncl.cs.csc2024.operator;
 
 import org.hibernate.Criteria;
+import org.hibernate.FetchMode;
 import org.hibernate.Query;
 import org.hibernate.Session;
 import org.hibernate.criterion.Disjunction;
 import org.hibernate.criterion.Order;
+import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
 import org.hibernate.criterion.SimpleExpression;
+import org.hibernate.sql.JoinType;
+import uk.ac.ncl.cs.csc2024.config.HibernateSettings;
 import uk.ac.ncl.cs.csc2024.query.ExampleQuery;
+import uk.ac.ncl.cs.csc2024.query.FetchPlan;
+import uk.ac.ncl.cs.csc2024.query.QueryUtilities;
 import uk.ac.ncl.cs.csc2024.route.Route;
+import uk.ac.ncl.cs.csc2024.util.CSVRow;
 
 import java.util.Map;
 
@@ -86,11 +93,112 @@ public class OperatorQueries {
 
     }
 
+    /**
+     * Inserts an operator from a typed csv row; equivalent to insert(Map, Session), but without building a Map
+     * for the row first.
+     *
+     * @param row the csv row to insert.
+     * @param session the session to persist the new operator to.
+     * @return the session the operator was persisted to.
+     */
+    public static Session insert(CSVRow row, Session session) {
+        Operator operator = new Operator();
+        operator.setName(row.getString("name"));
+        operator.setStreet(row.getString("street"));
+        operator.setTown(row.getString("town"));
+        operator.setPostcode(row.getString("postcode"));
+        operator.setEmail(row.getString("email"));
+        operator.setPhone(row.getString("phone"));
+
+        session.save(operator);
+
+        return session;
+    }
+
+    /**
+     * Inserts every row passed in, as insert(Map, Session) does, with the default batch size.
+     *
+     * @param rows the csv rows to insert.
+     * @param session the session to persist the new operators to.
+     * @return the session the operators were persisted to.
+     */
+    public static Session insertAll(Iterable<Map<String, String>> rows, Session session) {
+        return insertAll(rows, session, HibernateSettings.DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Inserts every row passed in, as insert(Map, Session) does, but flushes and clears the session every
+     * 'batchSize' rows so that the session's first-level cache does not grow without bound. The batch size should
+     * match the JDBC batch size applied by HibernateSettings.applyBatching(...), so that each flush sends full
+     * batches.
+     *
+     * Entities belonging to the session before this method was called are detached by the clears.
+     *
+     * @param rows the csv rows to insert.
+     * @param session the session to persist the new operators to.
+     * @param batchSize the number of rows to insert between each flush and clear.
+     * @return the session the operators were persisted to.
+     * @throws IllegalArgumentException if the batch size is less than 1; no row is inserted.
+     */
+    public static Session insertAll(Iterable<Map<String, String>> rows, Session session, int batchSize) {
+        return QueryUtilities.insertAll(rows, session, batchSize, new QueryUtilities.RowInserter() {
+            @Override
+            public void insert(Map<String, String> row, Session session) {
+                OperatorQueries.insert(row, session);
+            }
+        });
+    }
+
+    /**
+     * Updates the operator with the name in the row passed in so that it matches the row.
+     *
+     * @param row the csv row holding the operator's new values, keyed by column name.
+     * @param session the session to update the operator within.
+     * @return the session the operator was updated within.
+     * @throws IllegalArgumentException if there is no operator with the row's name.
+     */
+    public static Session update(Map<String, String> row, Session session) {
+        String name = row.get("name");
+        Operator operator = QueryUtilities.findOperatorByName(session, name);
+        if (operator == null) {
+            throw new IllegalArgumentException("There is no operator named '" + name + "' to update");
+        }
+
+        operator.setStreet(row.get("street"));
+        operator.setTown(row.get("town"));
+        operator.setPostcode(row.get("postcode"));
+        operator.setEmail(row.get("email"));
+        operator.setPhone(row.get("phone"));
+
+        return session;
+    }
+
+    /**
+     * Deletes the operator with the name passed in, if it exists, along with its links to the routes it operates.
+     *
+     * @param name the name of the operator to delete.
+     * @param session the session to delete the operator within.
+     * @return the session the operator was deleted within.
+     */
+    public static Session delete(String name, Session session) {
+        Operator operator = QueryUtilities.findOperatorByName(session, name);
+        if (operator != null) {
+            // Deleting the operator removes its join rows through Operator.routes, which the cached Route.operators
+            // collections of its routes know nothing about, so evict them.
+            for (Route route : operator.getRoutes()) {
+                session.getSessionFactory().getCache().evictCollection(Route.OPERATORS_ROLE, route.getNumber());
+            }
+            session.delete(operator);
+        }
+
+        return session;
+    }
+
     public static ExampleQuery selectAll() {
         return new ExampleQuery() {
             @Override
             public Query getQuery(Session session) {
-                return session.createQuery(Operator.SELECT_ALL_HQL_QUERY);
+                return QueryUtilities.cacheable(session.createQuery(Operator.SELECT_ALL_HQL_QUERY));
             }
 
             @Override
@@ -103,6 +211,67 @@ public class OperatorQueries {
                 Criteria criteria = session.createCriteria(Operator.class, "o");
                 Order ascendingOrder = Order.asc("o.name");
                 criteria.addOrder(ascendingOrder);
+                return QueryUtilities.cacheable(criteria);
+            }
+        };
+    }
+
+    /**
+     * Selects every operator, as selectAll() does, loading each operator's routes (and their stops) as the fetch
+     * plan specifies, so that a listing which goes on to use them, as Operator.toString() does, costs a fixed
+     * number of statements rather than a few per operator.
+     *
+     * @param fetchPlan how the operators' routes should be loaded.
+     * @return the queries selecting every operator.
+     * @throws IllegalArgumentException if the fetch plan is null.
+     */
+    public static ExampleQuery selectAll(final FetchPlan fetchPlan) {
+        if (fetchPlan == null) {
+            throw new IllegalArgumentException("A fetch plan must be specified");
+        }
+        if (fetchPlan == FetchPlan.LAZY) {
+            return selectAll();
+        }
+
+        return new ExampleQuery() {
+            @Override
+            public Query getQuery(Session session) {
+                if (fetchPlan == FetchPlan.JOIN) {
+                    return session.createQuery(Operator.SELECT_ALL_JOIN_FETCH_HQL_QUERY);
+                }
+                return session.createQuery(Operator.SELECT_ALL_HQL_QUERY)
+                        .setResultTransformer(FetchPlan.batchFetching(session, Operator.FETCH_ROUTES_HQL_QUERY));
+            }
+
+            @Override
+            public String getNamedQueryName() {
+                return fetchPlan == FetchPlan.JOIN ? Operator.SELECT_ALL_JOIN_FETCH : Operator.SELECT_ALL;
+            }
+
+            @Override
+            public Query getNamedQuery(Session session) {
+                Query query = session.getNamedQuery(getNamedQueryName());
+                if (fetchPlan == FetchPlan.BATCH) {
+                    // The select all query is cacheable, but a fetch plan's queries should not be; see FetchPlan.
+                    query.setCacheable(false);
+                    query.setResultTransformer(FetchPlan.batchFetching(session, Operator.FETCH_ROUTES_HQL_QUERY));
+                }
+                return query;
+            }
+
+            @Override
+            public Criteria getCriteria(Session session) {
+                Criteria criteria = session.createCriteria(Operator.class, "o");
+                criteria.addOrder(Order.asc("o.name"));
+
+                if (fetchPlan == FetchPlan.JOIN) {
+                    criteria.setFetchMode("routes", FetchMode.JOIN);
+                    criteria.setFetchMode("routes.startStop", FetchMode.JOIN);
+                    criteria.setFetchMode("routes.destinationStop", FetchMode.JOIN);
+                    criteria.setResultTransformer(Criteria.DISTINCT_ROOT_ENTITY);
+                } else {
+                    criteria.setResultTransformer(FetchPlan.batchFetching(session, Operator.FETCH_ROUTES_HQL_QUERY));
+                }
                 return criteria;
             }
         };
@@ -113,7 +282,7 @@ public class OperatorQueries {
             @Override
             public Query getQuery(Session session) {
                 // I looked up the use of Hibernate joins at https://stackoverflow.com/questions/3475171/hql-hibernate-query-with-manytomany
-                return session.createQuery(Operator.SELECT_DIAMOND_BUSES_ROUTES_HQL_QUERY);
+                return QueryUtilities.cacheable(session.createQuery(Operator.SELECT_DIAMOND_BUSES_ROUTES_HQL_QUERY));
             }
 
             @Override
@@ -133,7 +302,7 @@ public class OperatorQueries {
                 criteria.add(nameEqualsConstraint);
 
 
-                return criteria;
+                return QueryUtilities.cacheable(criteria);
 
             }
         };
@@ -143,7 +312,7 @@ public class OperatorQueries {
         return new ExampleQuery() {
             @Override
             public Query getQuery(Session session) {
-                return session.createQuery(Operator.SELECT_ALL_PARK_GATE_OPERATORS_HQL_QUERY);
+                return QueryUtilities.cacheable(session.createQuery(Operator.SELECT_ALL_PARK_GATE_OPERATORS_HQL_QUERY));
             }
 
             @Override
@@ -174,8 +343,188 @@ public class OperatorQueries {
                 criteria.add(logicalOrOperation);
 
 
-                return criteria;
+                return QueryUtilities.cacheable(criteria);
+
+            }
+        };
+    }
+
+    /**
+     * Selects the routes operated by the operator with the name specified, ordered by number; the same routes as
+     * selectAllRoutesByDiamondBuses() selects for Diamond Buses. The name is bound as a parameter in each form,
+     * so each form's query plan and JDBC statement are the same whichever operator is asked for, and can be
+     * reused rather than prepared again for each name.
+     *
+     * @param operatorName the name of the operator.
+     * @return the queries selecting the operator's routes.
+     * @throws IllegalArgumentException if the name is null.
+     */
+    public static ExampleQuery routesByOperator(final String operatorName) {
+        if (operatorName == null) {
+            throw new IllegalArgumentException("An operator name is required");
+        }
+
+        return new ExampleQuery() {
+            @Override
+            public Query getQuery(Session session) {
+                return QueryUtilities.cacheable(session.createQuery(Operator.SELECT_ROUTES_BY_OPERATOR_HQL_QUERY)
+                        .setParameter("name", operatorName));
+            }
+
+            @Override
+            public String getNamedQueryName() {
+                return Operator.SELECT_ROUTES_BY_OPERATOR;
+            }
+
+            @Override
+            public Query getNamedQuery(Session session) {
+                return session.getNamedQuery(getNamedQueryName()).setParameter("name", operatorName);
+            }
+
+            @Override
+            public Criteria getCriteria(Session session) {
+                Criteria criteria = session.createCriteria(Route.class, "r");
+                criteria.createAlias("r.operators", "o");
+                criteria.add(Restrictions.eq("o.name", operatorName));
+                criteria.addOrder(Order.asc("r.number"));
+                return QueryUtilities.cacheable(criteria);
+            }
+        };
+    }
+
+    /**
+     * Selects each operator of a route which starts or ends at a stop with the description specified, once,
+     * ordered by name. The description is bound as a parameter in each form, so the same query plan and JDBC
+     * statement serve every stop.
+     *
+     * The operators are those that selectAllForParkGates() selects for Park Gates, but deliberately not the same
+     * list: that query returns an operator once for every matching route it runs, in no particular order, whereas
+     * this one returns each operator once.
+     *
+     * @param stopDescription the description of the stop.
+     * @return the queries selecting the operators serving the stop.
+     * @throws IllegalArgumentException if the description is null.
+     */
+    public static ExampleQuery operatorsServingStop(final String stopDescription) {
+        if (stopDescription == null) {
+            throw new IllegalArgumentException("A stop description is required");
+        }
+
+        return new ExampleQuery() {
+            @Override
+            public Query getQuery(Session session) {
+                return QueryUtilities.cacheable(session.createQuery(Operator.SELECT_OPERATORS_SERVING_STOP_HQL_QUERY)
+                        .setParameter("description", stopDescription));
+            }
+
+            @Override
+            public String getNamedQueryName() {
+                return Operator.SELECT_OPERATORS_SERVING_STOP;
+            }
+
+            @Override
+            public Query getNamedQuery(Session session) {
+                return session.getNamedQuery(getNamedQueryName()).setParameter("description", stopDescription);
+            }
+
+            @Override
+            public Criteria getCriteria(Session session) {
+                Criteria criteria = session.createCriteria(Operator.class, "o");
+                criteria.createAlias("o.routes", "r");
+                criteria.createAlias("r.startStop", "s", JoinType.LEFT_OUTER_JOIN);
+                criteria.createAlias("r.destinationStop", "d", JoinType.LEFT_OUTER_JOIN);
+                criteria.add(Restrictions.or(Restrictions.eq("s.description", stopDescription),
+                        Restrictions.eq("d.description", stopDescription)));
+                criteria.addOrder(Order.asc("o.name"));
+                // Each operator is joined once per matching route.
+                criteria.setResultTransformer(Criteria.DISTINCT_ROOT_ENTITY);
+                return QueryUtilities.cacheable(criteria);
+            }
+        };
+    }
 
+    /**
+     * Selects an OperatorSummary of every operator, ordered by name, for listings which only need the operators'
+     * contact details. The summaries are built straight from each row, so none of the operators (or their
+     * routes) are loaded into the session.
+     *
+     * @return the queries selecting a summary of every operator.
+     */
+    public static ExampleQuery selectAllSummaries() {
+        return new ExampleQuery() {
+            @Override
+            public Query getQuery(Session session) {
+                return QueryUtilities.cacheable(session.createQuery(Operator.SELECT_ALL_SUMMARIES_HQL_QUERY));
+            }
+
+            @Override
+            public String getNamedQueryName() {
+                return Operator.SELECT_ALL_SUMMARIES;
+            }
+
+            @Override
+            public Criteria getCriteria(Session session) {
+                Criteria criteria = session.createCriteria(Operator.class, "o");
+                criteria.setProjection(Projections.projectionList()
+                        .add(Projections.property("o.name"))
+                        .add(Projections.property("o.town"))
+                        .add(Projections.property("o.email"))
+                        .add(Projections.property("o.phone")));
+                criteria.addOrder(Order.asc("o.name"));
+                criteria.setResultTransformer(QueryUtilities.constructorTransformer(OperatorSummary.class,
+                        String.class, String.class, String.class, String.class));
+                return QueryUtilities.cacheable(criteria);
+            }
+        };
+    }
+
+    /**
+     * Selects the page of operators which follows the operator with the name specified, in the same order as
+     * selectAll(). Each page is found by seeking past the previous page's last name rather than by skipping an
+     * offset, so a page deep into the results costs no more than the first; pass the last name of each page to
+     * fetch the next, until a page comes back with fewer than pageSize results.
+     *
+     * @param afterName the name of the last operator on the previous page, or null for the first page.
+     * @param pageSize the largest number of operators to select.
+     * @return the queries selecting the page of operators.
+     * @throws IllegalArgumentException if the page size is less than 1.
+     */
+    public static ExampleQuery selectPageAfter(final String afterName, final int pageSize) {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("The page size must be at least 1, not " + pageSize);
+        }
+
+        return new ExampleQuery() {
+            @Override
+            public Query getQuery(Session session) {
+                Query query = afterName == null ? session.createQuery(Operator.SELECT_ALL_HQL_QUERY)
+                        : session.createQuery(Operator.SELECT_PAGE_AFTER_HQL_QUERY).setParameter("after", afterName);
+                return QueryUtilities.cacheable(query.setMaxResults(pageSize));
+            }
+
+            @Override
+            public String getNamedQueryName() {
+                return afterName == null ? Operator.SELECT_ALL : Operator.SELECT_PAGE_AFTER;
+            }
+
+            @Override
+            public Query getNamedQuery(Session session) {
+                Query query = session.getNamedQuery(getNamedQueryName());
+                if (afterName != null) {
+                    query.setParameter("after", afterName);
+                }
+                return query.setMaxResults(pageSize);
+            }
+
+            @Override
+            public Criteria getCriteria(Session session) {
+                Criteria criteria = session.createCriteria(Operator.class, "o");
+                if (afterName != null) {
+                    criteria.add(Restrictions.gt("o.name", afterName));
+                }
+                criteria.addOrder(Order.asc("o.name"));
+                criteria.setMaxResults(pageSize);
+                return QueryUtilities.cacheable(criteria);
             }
         };
     }
@@ -0,0 +1,115 @@
+/**
+ * csc2024-hibernate-assignment
+ *
+ * Copyright (c) 2015 Newcastle University
+ * Email: <h.firth@ncl.ac.uk/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ncl.cs.csc2024.operator;
+
+import java.util.Objects;
+
+/**
+ * An immutable, read-only view of an operator's contact details, projected straight from the operator table by
+ * the queries of OperatorQueries.selectAllSummaries() rather than loaded as a managed Operator entity. Unlike an
+ * Operator, a summary has no routes collection, so nothing further is loaded when it is used.
+ *
+ * @author Dylan McKee
+ */
+public final class OperatorSummary {
+
+    private final String name;
+    private final String town;
+    private final String email;
+    private final String phone;
+
+    /**
+     * Creates a summary of an operator; called by Hibernate with the columns a summary query projects.
+     *
+     * @param name the name of the operator.
+     * @param town the town of the operator.
+     * @param email the email address of the operator.
+     * @param phone the phone number of the operator.
+     */
+    public OperatorSummary(String name, String town, String email, String phone) {
+        this.name = name;
+        this.town = town;
+        this.email = email;
+        this.phone = phone;
+    }
+
+    /**
+     * Returns the name of this operator.
+     * @return the name of the operator.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the town of this operator.
+     * @return the town of the operator.
+     */
+    public String getTown() {
+        return town;
+    }
+
+    /**
+     * Returns the email address of this operator.
+     * @return the email address of the operator.
+     */
+    public String getEmail() {
+        return email;
+    }
+
+    /**
+     * Returns the phone number of this operator.
+     * @return the phone number of the operator.
+     */
+    public String getPhone() {
+        return phone;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+
+        OperatorSummary that = (OperatorSummary) o;
+
+        return Objects.equals(name, that.name) && Objects.equals(town, that.town) &&
+                Objects.equals(email, that.email) && Objects.equals(phone, that.phone);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(name, town, email, phone);
+    }
+
+    @Override
+    public String toString() {
+        return "OperatorSummary{" +
+                "name='" + name + '\'' +
+                ", town='" + town + '\'' +
+                ", email='" + email + '\'' +
+                ", phone='" + phone + '\'' +
+                '}';
+    }
+
+}
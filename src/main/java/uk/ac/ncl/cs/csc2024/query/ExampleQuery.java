@@ -22,6 +22,9 @@ package uk.ac.ncl.cs.csc2024.query;
 import org.hibernate.Criteria;
 import org.hibernate.Query;
 import org.hibernate.Session;
+import uk.ac.ncl.cs.csc2024.config.HibernateSettings;
+
+import java.util.stream.Stream;
 
 /**
  * The interface which each object returned from a task method should implement.
@@ -34,5 +37,42 @@ public interface ExampleQuery {
     String getNamedQueryName();
     Criteria getCriteria(Session session);
 
+    /**
+     * Returns the named query, ready to run. Queries whose named query takes parameters (or limits its results)
+     * override this to bind them; otherwise it is just the named query itself.
+     *
+     * @param session the Hibernate session to create the query within.
+     * @return the named query, with any parameters bound.
+     */
+    default Query getNamedQuery(Session session) {
+        return session.getNamedQuery(getNamedQueryName());
+    }
+
+    /**
+     * Streams the results of the query, scrolling forward through them rather than loading them all at once; see
+     * ResultStreams. The entities the stream loads are evicted from the session once it has moved on from
+     * them, but the session's other entities and unflushed changes are left alone. The stream should be closed unless it is read
+     * to the end.
+     *
+     * @param session the Hibernate session to run the query within.
+     * @param fetchSize the number of rows to fetch per round trip.
+     * @param <T> the type of each result.
+     * @return a sequential stream of the results.
+     */
+    default <T> Stream<T> stream(Session session, int fetchSize) {
+        return ResultStreams.stream(getQuery(session), session, fetchSize);
+    }
+
+    /**
+     * Streams the results of the query with the default fetch size; see stream(Session, int).
+     *
+     * @param session the Hibernate session to run the query within.
+     * @param <T> the type of each result.
+     * @return a sequential stream of the results.
+     */
+    default <T> Stream<T> stream(Session session) {
+        return stream(session, HibernateSettings.DEFAULT_FETCH_SIZE);
+    }
+
 
 }
@@ -0,0 +1,88 @@
+/**
+ * csc2024-hibernate-assignment
+ *
+ * Copyright (c) 2015 Newcastle University
+ * Email: <h.firth@ncl.ac.uk/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ncl.cs.csc2024.query;
+
+import org.hibernate.Session;
+import org.hibernate.transform.BasicTransformerAdapter;
+import org.hibernate.transform.ResultTransformer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * How the associations of the entities selected by a query are loaded, so that a listing which goes on to use
+ * them can choose to load them up front in a fixed number of statements rather than with a select per entity.
+ *
+ * A query using a fetch plan other than LAZY is not cached in the query cache, as a cache hit would load each
+ * cached entity (and its associations) individually, which is exactly what the plan is there to avoid.
+ *
+ * @author Dylan McKee
+ */
+public enum FetchPlan {
+
+    /**
+     * Associations are loaded as the entities' mappings specify: each collection with its own select the first
+     * time it is used.
+     */
+    LAZY,
+
+    /**
+     * Associations are fetched by outer joins in the same select as the entities, so the whole listing is a single
+     * statement. The results repeat each entity's columns once per element of its collections.
+     */
+    JOIN,
+
+    /**
+     * The entities are selected on their own, and their collections are then initialised together by a further
+     * select per QueryUtilities.MAX_IN_LIST_SIZE entities, so no row is repeated.
+     */
+    BATCH;
+
+    /**
+     * Returns a result transformer which leaves a query's results as they are, but first runs an HQL query which
+     * fetch joins their associations, selecting them by id with an 'in (:ids)' list parameter. The associations
+     * of the already loaded results are initialised by that query, so a BATCH fetch plan can be applied to an HQL,
+     * named or criteria query alike.
+     *
+     * @param session the Hibernate session the query is run within.
+     * @param fetchHqlQuery the HQL query fetching the associations of the entities with the ids in ':ids'.
+     * @return the result transformer.
+     */
+    public static ResultTransformer batchFetching(final Session session, final String fetchHqlQuery) {
+        return new BasicTransformerAdapter() {
+            @Override
+            public Object transformTuple(Object[] tuple, String[] aliases) {
+                return tuple[tuple.length - 1];
+            }
+
+            @Override
+            @SuppressWarnings("rawtypes")
+            public List transformList(List list) {
+                List<Object> ids = new ArrayList<Object>(list.size());
+                for (Object entity : list) {
+                    ids.add(session.getIdentifier(entity));
+                }
+                QueryUtilities.listByIds(session, fetchHqlQuery, ids);
+                return list;
+            }
+        };
+    }
+
+}
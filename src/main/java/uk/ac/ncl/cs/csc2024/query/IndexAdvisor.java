@@ -0,0 +1,271 @@
+/**
+ * csc2024-hibernate-assignment
+ *
+ * Copyright (c) 2015 Newcastle University
+ * Email: <h.firth@ncl.ac.uk/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ncl.cs.csc2024.query;
+
+import org.hibernate.Criteria;
+import org.hibernate.Query;
+import org.hibernate.SQLQuery;
+import org.hibernate.Session;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.internal.CriteriaImpl;
+import org.hibernate.jdbc.Work;
+import org.hibernate.loader.criteria.CriteriaLoader;
+import org.hibernate.persister.entity.OuterJoinLoadable;
+import uk.ac.ncl.cs.csc2024.config.DatabaseVendor;
+
+import java.sql.*;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Runs the SQL of each form of an ExampleQuery under the database's EXPLAIN, and reports any table the database
+ * plans to read in full rather than through an index, so that the indexes the queries rely on (see the entities
+ * and HibernateSettings.applyIndexes(...)) can be checked against a real schema and real data.
+ *
+ * Every parameter is bound to null, as only the plan is wanted. A full scan is expected for a query which reads
+ * every row of a table, such as a selectAll() query; it is a filtered query scanning a table which suggests a
+ * missing index. EXPLAIN is supported on H2, PostgreSQL and MySQL.
+ *
+ * @author Dylan McKee
+ */
+public final class IndexAdvisor {
+
+    /**
+     * Matches a table read in full in an H2 plan, such as "PUBLIC.ROUTE.tableScan".
+     */
+    private static final Pattern H2_TABLE_SCAN = Pattern.compile("(\\w+)\\.tableScan");
+
+    /**
+     * Matches a table read in full in a PostgreSQL plan, such as "Seq Scan on route r".
+     */
+    private static final Pattern POSTGRESQL_SEQ_SCAN = Pattern.compile("Seq Scan on (\\w+)");
+
+    /**
+     * The access type MySQL's EXPLAIN reports for a table read in full.
+     */
+    private static final String MYSQL_FULL_SCAN_TYPE = "ALL";
+
+    /**
+     * The form of an ExampleQuery whose SQL was explained.
+     */
+    public enum Form {
+        QUERY,
+        NAMED_QUERY,
+        CRITERIA
+    }
+
+    /**
+     * The plan of one SQL statement run by a form of a query, and the tables it reads in full.
+     */
+    public static final class Finding {
+        private final String queryName;
+        private final Form form;
+        private final String sql;
+        private final String plan;
+        private final List<String> fullyScannedTables;
+
+        Finding(String queryName, Form form, String sql, String plan, List<String> fullyScannedTables) {
+            this.queryName = queryName;
+            this.form = form;
+            this.sql = sql;
+            this.plan = plan;
+            this.fullyScannedTables = Collections.unmodifiableList(fullyScannedTables);
+        }
+
+        public String getQueryName() {
+            return queryName;
+        }
+
+        public Form getForm() {
+            return form;
+        }
+
+        public String getSql() {
+            return sql;
+        }
+
+        /**
+         * Returns the plan as the database reported it, one line per row of EXPLAIN's results.
+         * @return the plan.
+         */
+        public String getPlan() {
+            return plan;
+        }
+
+        /**
+         * Returns the tables the plan reads in full, in lower case, in the order they appear in the plan.
+         * @return the fully scanned tables; empty if every table is read through an index.
+         */
+        public List<String> getFullyScannedTables() {
+            return fullyScannedTables;
+        }
+
+        public boolean hasFullScan() {
+            return !fullyScannedTables.isEmpty();
+        }
+
+        @Override
+        public String toString() {
+            return queryName + " (" + form + "): " + (hasFullScan() ? "full scan of " + fullyScannedTables
+                    : "no full scans");
+        }
+    }
+
+    /**
+     * Static methods only; not to be instantiated.
+     */
+    private IndexAdvisor() {
+    }
+
+    /**
+     * Explains the SQL of the query, named query and Criteria forms of the query passed in.
+     *
+     * @param session the session to explain the queries with.
+     * @param queryName the name to report the query under.
+     * @param query the query to explain.
+     * @return a finding for each SQL statement of each form.
+     * @throws IllegalArgumentException if EXPLAIN is not supported for the session's database.
+     */
+    public static List<Finding> explain(Session session, String queryName, ExampleQuery query) {
+        List<Finding> findings = new ArrayList<>();
+        for (String sql : sqlOf(session, query.getQuery(session))) {
+            findings.add(explain(session, queryName, Form.QUERY, sql));
+        }
+        for (String sql : sqlOf(session, query.getNamedQuery(session))) {
+            findings.add(explain(session, queryName, Form.NAMED_QUERY, sql));
+        }
+        findings.add(explain(session, queryName, Form.CRITERIA, sqlOf(query.getCriteria(session))));
+        return findings;
+    }
+
+    /**
+     * Explains every form of each query passed in; see explain(Session, String, ExampleQuery).
+     *
+     * @param session the session to explain the queries with.
+     * @param queries the queries to explain, keyed by the name to report each under.
+     * @return a finding for each SQL statement of each form of each query, in the order of the map.
+     * @throws IllegalArgumentException if EXPLAIN is not supported for the session's database.
+     */
+    public static List<Finding> explainAll(Session session, Map<String, ExampleQuery> queries) {
+        List<Finding> findings = new ArrayList<>();
+        for (Map.Entry<String, ExampleQuery> query : queries.entrySet()) {
+            findings.addAll(explain(session, query.getKey(), query.getValue()));
+        }
+        return findings;
+    }
+
+    /**
+     * Returns a report of the findings passed in, one line per finding, each flagged if it has a full scan.
+     *
+     * @param findings the findings to report.
+     * @return the report, one finding per line.
+     */
+    public static String report(List<Finding> findings) {
+        StringBuilder report = new StringBuilder();
+        for (Finding finding : findings) {
+            report.append(finding.hasFullScan() ? "FULL SCAN " : "ok        ").append(finding).append('\n');
+        }
+        return report.toString();
+    }
+
+    /**
+     * Returns the SQL an HQL (or native SQL) query runs.
+     */
+    private static String[] sqlOf(Session session, Query query) {
+        if (query instanceof SQLQuery) {
+            return new String[] {query.getQueryString()};
+        }
+        SessionFactoryImplementor factory = (SessionFactoryImplementor) session.getSessionFactory();
+        return factory.getQueryPlanCache().getHQLQueryPlan(query.getQueryString(), false,
+                Collections.emptyMap()).getSqlStrings();
+    }
+
+    /**
+     * Returns the SQL a Criteria query runs, as generated by the loader which would run it.
+     */
+    private static String sqlOf(Criteria criteria) {
+        CriteriaImpl criteriaImpl = (CriteriaImpl) criteria;
+        SessionImplementor session = criteriaImpl.getSession();
+        SessionFactoryImplementor factory = session.getFactory();
+        String entityName = criteriaImpl.getEntityOrClassName();
+        OuterJoinLoadable persister = (OuterJoinLoadable) factory.getEntityPersister(
+                factory.getImplementors(entityName)[0]);
+        return new CriteriaLoader(persister, factory, criteriaImpl, persister.getEntityName(),
+                session.getLoadQueryInfluencers()).getSQLString();
+    }
+
+    private static Finding explain(Session session, final String queryName, final Form form, final String sql) {
+        final DatabaseVendor vendor = DatabaseVendor.of(session);
+        if (vendor == DatabaseVendor.OTHER) {
+            throw new IllegalArgumentException("EXPLAIN is not supported for this database");
+        }
+
+        final Finding[] finding = new Finding[1];
+        session.doWork(new Work() {
+            @Override
+            public void execute(Connection connection) throws SQLException {
+                try (PreparedStatement statement = connection.prepareStatement("explain " + sql)) {
+                    int parameterCount = statement.getParameterMetaData().getParameterCount();
+                    for (int i = 1; i <= parameterCount; i++) {
+                        statement.setNull(i, Types.NULL);
+                    }
+
+                    StringBuilder plan = new StringBuilder();
+                    Set<String> fullyScannedTables = new LinkedHashSet<>();
+                    try (ResultSet rows = statement.executeQuery()) {
+                        while (rows.next()) {
+                            if (vendor == DatabaseVendor.MYSQL) {
+                                readMySqlRow(rows, plan, fullyScannedTables);
+                            } else {
+                                String line = rows.getString(1);
+                                plan.append(line).append('\n');
+                                Matcher matcher = (vendor == DatabaseVendor.H2 ? H2_TABLE_SCAN : POSTGRESQL_SEQ_SCAN)
+                                        .matcher(line);
+                                while (matcher.find()) {
+                                    fullyScannedTables.add(matcher.group(1).toLowerCase(Locale.ROOT));
+                                }
+                            }
+                        }
+                    }
+                    finding[0] = new Finding(queryName, form, sql, plan.toString(),
+                            new ArrayList<>(fullyScannedTables));
+                }
+            }
+        });
+        return finding[0];
+    }
+
+    /**
+     * Reads a row of MySQL's tabular EXPLAIN results, one row per table.
+     */
+    private static void readMySqlRow(ResultSet row, StringBuilder plan, Set<String> fullyScannedTables)
+            throws SQLException {
+        String table = row.getString("table");
+        String type = row.getString("type");
+        plan.append(table).append(": type=").append(type).append(", key=").append(row.getString("key"))
+                .append('\n');
+        if (MYSQL_FULL_SCAN_TYPE.equals(type)) {
+            fullyScannedTables.add(table.toLowerCase(Locale.ROOT));
+        }
+    }
+
+}
@@ -1,12 +1,17 @@
 package uk.ac.ncl.cs.csc2024.query;
 
+import org.hibernate.Cache;
+import org.hibernate.Criteria;
 import org.hibernate.Query;
 import org.hibernate.Session;
+import org.hibernate.transform.AliasToBeanConstructorResultTransformer;
+import org.hibernate.transform.ResultTransformer;
 import uk.ac.ncl.cs.csc2024.busstop.BusStop;
+import uk.ac.ncl.cs.csc2024.config.HibernateSettings;
 import uk.ac.ncl.cs.csc2024.operator.Operator;
 
-import java.util.HashSet;
-import java.util.Set;
+import java.lang.reflect.Constructor;
+import java.util.*;
 
 /**
  * Convenience methods to find operator by name and find a bus stop by ID number, and parse the | separated string of
@@ -27,10 +32,28 @@ public class QueryUtilities {
     private static final String FIND_OPERATOR_BY_NAME_HQL_QUERY = "select o from Operator o where o.name=:name";
 
     /**
-     * The HQL Query to find a bus stop by name, to be used in and have the 'id' variable placeholder populated
-     * by the findBusStopWithID method.
+     * The HQL Query to find all of the operators with the names in a list, to be used in and have the 'names'
+     * list placeholder populated by the findOperatorsByNames method.
      */
-    private static final String FIND_BUS_STOP_BY_ID_HQL_QUERY = "select s from BusStop s where s.id=:id";
+    private static final String FIND_OPERATORS_BY_NAMES_HQL_QUERY = "select o from Operator o where o.name in (:names)";
+
+    /**
+     * The HQL Query to find all of the bus stops with the ids in a list, to be used in and have the 'ids' list
+     * placeholder populated by the findBusStopsWithIDs method.
+     */
+    private static final String FIND_BUS_STOPS_BY_IDS_HQL_QUERY = "select s from BusStop s where s.id in (:ids)";
+
+    /**
+     * The largest number of values bound to a single 'in (...)' list. Longer lists are split across several
+     * queries, keeping well within the bind parameter limits of every common database (Oracle's 1000 being the
+     * lowest).
+     */
+    public static final int MAX_IN_LIST_SIZE = 500;
+
+    /**
+     * The smallest number of values bound to an 'in (...)' list; see padInList(...).
+     */
+    private static final int MIN_IN_LIST_SIZE = 8;
 
     /**
      * Finds the Operator instance from the operators entirety table that matches the name passed into this method.
@@ -42,7 +65,7 @@ public class QueryUtilities {
      */
     public static Operator findOperatorByName(Session session, String name) {
         // Look for the operator with the name we've been passed...
-        Query operatorQuery = session.createQuery(FIND_OPERATOR_BY_NAME_HQL_QUERY);
+        Query operatorQuery = cacheable(session.createQuery(FIND_OPERATOR_BY_NAME_HQL_QUERY));
         operatorQuery.setString("name", name);
 
         return (Operator) operatorQuery.uniqueResult();
@@ -57,10 +80,229 @@ public class QueryUtilities {
      * @return the Bus Stop instance that matches the ID being searched for, if one exists. Otherwise null.
      */
     public static BusStop findBusStopWithID(Session session, int id) {
-        Query busStopIdQuery = session.createQuery(FIND_BUS_STOP_BY_ID_HQL_QUERY);
-        busStopIdQuery.setInteger("id", id);
+        // Looked up by primary key rather than with a query, so that the second-level cache is used if enabled.
+        return (BusStop) session.get(BusStop.class, id);
+    }
+
+    /**
+     * Finds every Operator whose name is in the collection passed in, with one query per MAX_IN_LIST_SIZE names
+     * rather than one query per name.
+     *
+     * @param session the Hibernate session to run the queries within.
+     * @param names the names of the Operators to search for.
+     * @return the matching Operators, keyed by name; names with no matching Operator are absent from the Map.
+     */
+    public static Map<String, Operator> findOperatorsByNames(Session session, Collection<String> names) {
+        Map<String, Operator> operators = new HashMap<String, Operator>();
+
+        List<String> distinctNames = new ArrayList<String>(new LinkedHashSet<String>(names));
+        for (int from = 0; from < distinctNames.size(); from += MAX_IN_LIST_SIZE) {
+            List<String> chunk = distinctNames.subList(from, Math.min(from + MAX_IN_LIST_SIZE, distinctNames.size()));
+
+            Query operatorsQuery = session.createQuery(FIND_OPERATORS_BY_NAMES_HQL_QUERY);
+            operatorsQuery.setParameterList("names", padInList(chunk));
+
+            @SuppressWarnings("unchecked")
+            List<Operator> results = operatorsQuery.list();
+            for (Operator operator : results) {
+                operators.put(operator.getName(), operator);
+            }
+        }
+
+        return operators;
+    }
+
+    /**
+     * Finds every BusStop whose id is in the collection passed in, with one query per MAX_IN_LIST_SIZE ids rather
+     * than one query per id.
+     *
+     * @param session the Hibernate session to run the queries within.
+     * @param ids the ids of the BusStops to search for.
+     * @return the matching BusStops, keyed by id; ids with no matching BusStop are absent from the Map.
+     */
+    public static Map<Integer, BusStop> findBusStopsWithIDs(Session session, Collection<Integer> ids) {
+        Map<Integer, BusStop> busStops = new HashMap<Integer, BusStop>();
+
+        List<Integer> distinctIds = new ArrayList<Integer>(new LinkedHashSet<Integer>(ids));
+        for (int from = 0; from < distinctIds.size(); from += MAX_IN_LIST_SIZE) {
+            List<Integer> chunk = distinctIds.subList(from, Math.min(from + MAX_IN_LIST_SIZE, distinctIds.size()));
 
-        return (BusStop) busStopIdQuery.uniqueResult();
+            Query busStopsQuery = session.createQuery(FIND_BUS_STOPS_BY_IDS_HQL_QUERY);
+            busStopsQuery.setParameterList("ids", padInList(chunk));
+
+            @SuppressWarnings("unchecked")
+            List<BusStop> results = busStopsQuery.list();
+            for (BusStop busStop : results) {
+                busStops.put(busStop.getId(), busStop);
+            }
+        }
+
+        return busStops;
+    }
+
+    /**
+     * Runs an HQL query with an 'ids' list parameter once per MAX_IN_LIST_SIZE of the ids passed in, rather than
+     * once per id, returning every result.
+     *
+     * @param session the Hibernate session to run the query within.
+     * @param hqlQuery the HQL query, selecting by 'in (:ids)'.
+     * @param ids the ids to bind; duplicates are ignored.
+     * @return the results of every run of the query, in the order they were returned.
+     */
+    public static List<?> listByIds(Session session, String hqlQuery, Collection<?> ids) {
+        List<Object> results = new ArrayList<Object>();
+
+        List<Object> distinctIds = new ArrayList<Object>(new LinkedHashSet<Object>(ids));
+        for (int from = 0; from < distinctIds.size(); from += MAX_IN_LIST_SIZE) {
+            List<Object> chunk = distinctIds.subList(from, Math.min(from + MAX_IN_LIST_SIZE, distinctIds.size()));
+
+            Query query = session.createQuery(hqlQuery);
+            query.setParameterList("ids", padInList(chunk));
+            @SuppressWarnings("unchecked")
+            List<Object> chunkResults = query.list();
+            results.addAll(chunkResults);
+        }
+
+        return results;
+    }
+
+    /**
+     * Pads a list of 'in (...)' values up to the next power of two (of at least MIN_IN_LIST_SIZE) by repeating its
+     * last value. Each distinct list length produces a distinct SQL statement, so padding limits the number of
+     * different statements a batch lookup can generate, and lets the database and driver re-use their plans.
+     * Repeating a value does not change the result of an 'in (...)' test.
+     */
+    private static <T> List<T> padInList(List<T> values) {
+        int paddedSize = MIN_IN_LIST_SIZE;
+        while (paddedSize < values.size()) {
+            paddedSize <<= 1;
+        }
+        paddedSize = Math.min(paddedSize, Math.max(MAX_IN_LIST_SIZE, values.size()));
+
+        List<T> padded = new ArrayList<T>(paddedSize);
+        padded.addAll(values);
+        T last = values.get(values.size() - 1);
+        while (padded.size() < paddedSize) {
+            padded.add(last);
+        }
+        return padded;
+    }
+
+    /**
+     * Marks a query's results as cacheable in the query cache region, if the query cache has been enabled (see
+     * HibernateSettings.applyCaching(...)); otherwise has no effect.
+     *
+     * @param query the query to mark as cacheable.
+     * @return the query passed in.
+     */
+    public static Query cacheable(Query query) {
+        return query.setCacheable(true).setCacheRegion(HibernateSettings.QUERY_CACHE_REGION);
+    }
+
+    /**
+     * Marks a criteria query's results as cacheable in the query cache region, if the query cache has been
+     * enabled (see HibernateSettings.applyCaching(...)); otherwise has no effect.
+     *
+     * @param criteria the criteria query to mark as cacheable.
+     * @return the criteria query passed in.
+     */
+    public static Criteria cacheable(Criteria criteria) {
+        return criteria.setCacheable(true).setCacheRegion(HibernateSettings.QUERY_CACHE_REGION);
+    }
+
+    /**
+     * Returns a result transformer which turns each row of a criteria query's projection into an instance of the
+     * type specified, by passing the row's columns, in order, to the type's constructor. This is the criteria
+     * equivalent of an HQL 'select new ...' query.
+     *
+     * @param type the type to construct from each row.
+     * @param parameterTypes the types of the constructor's parameters, matching the projection's columns.
+     * @return the result transformer.
+     * @throws IllegalArgumentException if the type has no public constructor with the parameter types specified.
+     */
+    public static ResultTransformer constructorTransformer(Class<?> type, Class<?>... parameterTypes) {
+        try {
+            Constructor<?> constructor = type.getConstructor(parameterTypes);
+            return new AliasToBeanConstructorResultTransformer(constructor);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalArgumentException(type.getName() + " has no public constructor taking " +
+                    Arrays.toString(parameterTypes), e);
+        }
+    }
+
+    /**
+     * Evicts every cached entity, collection and query result, for use after the tables have been written with
+     * plain SQL, which the second-level and query caches cannot see. Has no effect if caching is not enabled.
+     *
+     * @param session a session of the session factory whose caches should be evicted.
+     * @return the session passed in.
+     */
+    public static Session evictCachedData(Session session) {
+        Cache cache = session.getSessionFactory().getCache();
+        cache.evictEntityRegions();
+        cache.evictCollectionRegions();
+        cache.evictDefaultQueryRegion();
+        cache.evictQueryRegions();
+        return session;
+    }
+
+    /**
+     * Inserts a single csv row into the session passed in; see insertAll(...).
+     */
+    public interface RowInserter {
+        void insert(Map<String, String> row, Session session);
+    }
+
+    /**
+     * Inserts every row passed in with the inserter specified, flushing and clearing the session every 'batchSize'
+     * rows (see flushBatch(...)) and once more after the last row, so that every row has been sent to the database
+     * and the session is empty when this method returns.
+     *
+     * @param rows the csv rows to insert.
+     * @param session the Hibernate session to insert the rows within.
+     * @param batchSize the number of rows to insert between each flush and clear.
+     * @param inserter the inserter to insert each row with.
+     * @return the session the rows were inserted within.
+     * @throws IllegalArgumentException if the batch size is less than 1; no row is inserted.
+     */
+    public static Session insertAll(Iterable<Map<String, String>> rows, Session session, int batchSize,
+                                    RowInserter inserter) {
+        requireValidBatchSize(batchSize);
+
+        int rowCount = 0;
+        for (Map<String, String> row : rows) {
+            inserter.insert(row, session);
+            flushBatch(session, ++rowCount, batchSize);
+        }
+
+        session.flush();
+        session.clear();
+
+        return session;
+    }
+
+    /**
+     * Flushes the session's pending inserts to the database and clears its first-level cache once every
+     * 'batchSize' rows, so that the memory used by a bulk insert stays bounded however many rows it inserts.
+     * Intended to be called after each row has been saved.
+     *
+     * @param session the Hibernate session the rows are being saved within.
+     * @param rowCount the number of rows saved so far.
+     * @param batchSize the number of rows to save between each flush and clear.
+     * @throws IllegalArgumentException if the batch size is less than 1.
+     */
+    public static void flushBatch(Session session, int rowCount, int batchSize) {
+        requireValidBatchSize(batchSize);
+        if (rowCount % batchSize == 0) {
+            session.flush();
+            session.clear();
+        }
+    }
+
+    private static void requireValidBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("The batch size must be at least 1, not " + batchSize);
+        }
     }
 
     /**
@@ -75,26 +317,48 @@ public class QueryUtilities {
         // A placeholder array to hold the route's potentially multiple operators in...
         Set<Operator> operators = new HashSet<Operator>();
 
-        // Parse the '|' separated string of operators, if there's more than one...
-        if (encodedOperatorStrings.contains("|")) {
-            // Continue with parse by splitting on | char
-            String[] encodedNamesSplit = encodedOperatorStrings.split("\\|");
-
-            // Add them all to the list...
-            for (String operatorName : encodedNamesSplit) {
-                // Instantiate Operator from name; add to operators array
-                Operator operator = findOperatorByName(session, operatorName);
-                operators.add(operator);
-            }
-        } else {
-            // Single operator; no parse necessary - just add the 1 operator name to the array and continue
-            // Instantiate Operator from name; add to operators array
-            Operator operator = findOperatorByName(session, encodedOperatorStrings);
+        // Instantiate an Operator from each name; add to operators array
+        for (String operatorName : splitOperatorNames(encodedOperatorStrings)) {
+            Operator operator = findOperatorByName(session, operatorName);
             operators.add(operator);
         }
 
         return operators;
     }
 
+    /**
+     * Splits a String of Operator names, separated by the '|' char., into the individual names; scanning for the
+     * separator directly rather than compiling a regular expression for every route as String.split(...) would.
+     *
+     * Names are split by the same rules as String.split("\\|"), so a String with no separators is a single name,
+     * and any empty names at the end of the String are discarded.
+     *
+     * @param encodedOperatorStrings the String to split the Operator names from.
+     * @return the Operator names, in the order they appear in the String.
+     */
+    public static List<String> splitOperatorNames(String encodedOperatorStrings) {
+        int separator = encodedOperatorStrings.indexOf('|');
+        if (separator < 0) {
+            // Single operator; no parse necessary.
+            return Collections.singletonList(encodedOperatorStrings);
+        }
+
+        List<String> names = new ArrayList<String>();
+        int nameStart = 0;
+        while (separator >= 0) {
+            names.add(encodedOperatorStrings.substring(nameStart, separator));
+            nameStart = separator + 1;
+            separator = encodedOperatorStrings.indexOf('|', nameStart);
+        }
+        names.add(encodedOperatorStrings.substring(nameStart));
+
+        // Discard any trailing empty names, as String.split(...) would.
+        while (!names.isEmpty() && names.get(names.size() - 1).isEmpty()) {
+            names.remove(names.size() - 1);
+        }
+
+        return names;
+    }
+
 
 }
@@ -0,0 +1,257 @@
+/**
+ * csc2024-hibernate-assignment
+ *
+ * Copyright (c) 2015 Newcastle University
+ * Email: <h.firth@ncl.ac.uk/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ncl.cs.csc2024.query;
+
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+import uk.ac.ncl.cs.csc2024.busstop.BusStop;
+import uk.ac.ncl.cs.csc2024.operator.Operator;
+import uk.ac.ncl.cs.csc2024.util.IntHashSet;
+
+import java.util.*;
+
+/**
+ * Resolves the operator names and bus stop ids referenced by route rows in memory, rather than with one query per
+ * reference as QueryUtilities.findOperatorByName(...) and QueryUtilities.findBusStopWithID(...) do.
+ *
+ * A resolver is scoped to a single load. It either preloads every operator and every bus stop id up front (two
+ * queries in total), or looks each reference up the first time it is seen and caches the result, including
+ * references that turn out not to exist. Operators are held as entities, keyed by name, so the same Operator
+ * instance (and its name) is re-used by every route that references it. Bus stops are held only as a set of
+ * primitive ids; a known id is resolved to a reference with Session.load(...), which does not hit the database.
+ *
+ * Operator instances survive the session being cleared as detached entities, which is all a route needs in order
+ * to save its join rows, so a resolver can be used across the flush/clear cycles of the insertAll methods.
+ *
+ * @author Dylan McKee
+ */
+public final class ReferenceResolver {
+
+    /**
+     * The HQL query to load every operator, to be used when preloading.
+     */
+    private static final String SELECT_ALL_OPERATORS_HQL_QUERY = "select o from Operator o";
+
+    /**
+     * The HQL query to load every bus stop id, to be used when preloading.
+     */
+    private static final String SELECT_ALL_BUS_STOP_IDS_HQL_QUERY = "select b.id from BusStop b";
+
+    /**
+     * The session that references are resolved within.
+     */
+    private final Session session;
+
+    /**
+     * True iff every operator and bus stop id was loaded up front, in which case a reference missing from the
+     * caches does not exist and the database need not be asked.
+     */
+    private final boolean preloaded;
+
+    /**
+     * Operators keyed by name. Names looked up lazily which do not exist are mapped to null.
+     */
+    private final Map<String, Operator> operatorsByName = new HashMap<>();
+
+    /**
+     * The ids of the bus stops known to exist, and (when resolving lazily) those known not to exist.
+     */
+    private final IntHashSet busStopIds;
+    private final IntHashSet missingBusStopIds = new IntHashSet();
+
+    private ReferenceResolver(Session session, boolean preloaded, IntHashSet busStopIds) {
+        this.session = session;
+        this.preloaded = preloaded;
+        this.busStopIds = busStopIds;
+    }
+
+    /**
+     * Creates a resolver which loads every operator and bus stop id up front. Best suited to loads which will
+     * reference most of the operators and bus stops, such as a full route import.
+     *
+     * @param session the Hibernate session to resolve references within.
+     * @return a preloaded resolver.
+     */
+    public static ReferenceResolver preload(Session session) {
+        // Scroll through the ids rather than listing them, so that they are never all held as boxed Integers.
+        IntHashSet busStopIds = new IntHashSet();
+        ScrollableResults ids = session.createQuery(SELECT_ALL_BUS_STOP_IDS_HQL_QUERY).scroll(ScrollMode.FORWARD_ONLY);
+        try {
+            while (ids.next()) {
+                busStopIds.add(ids.getInteger(0));
+            }
+        } finally {
+            ids.close();
+        }
+
+        ReferenceResolver resolver = new ReferenceResolver(session, true, busStopIds);
+
+        @SuppressWarnings("unchecked")
+        List<Operator> operators = session.createQuery(SELECT_ALL_OPERATORS_HQL_QUERY).list();
+        for (Operator operator : operators) {
+            resolver.register(operator);
+        }
+
+        return resolver;
+    }
+
+    /**
+     * Creates a resolver which looks up each operator and bus stop the first time it is referenced, and caches
+     * the result. Best suited to loads which only reference a small part of the reference data.
+     *
+     * @param session the Hibernate session to resolve references within.
+     * @return a lazily populated resolver.
+     */
+    public static ReferenceResolver lazy(Session session) {
+        return new ReferenceResolver(session, false, new IntHashSet());
+    }
+
+    /**
+     * Makes an operator saved after this resolver was created resolvable by name.
+     * @param operator the operator to register.
+     */
+    public void register(Operator operator) {
+        operatorsByName.put(operator.getName(), operator);
+    }
+
+    /**
+     * Makes a bus stop saved after this resolver was created resolvable by id.
+     * @param busStop the bus stop to register.
+     */
+    public void register(BusStop busStop) {
+        busStopIds.add(busStop.getId());
+    }
+
+    /**
+     * Resolves every operator name passed in that has not already been resolved, using a batched 'in (...)'
+     * lookup rather than one query per name. Intended for lazy resolvers, ahead of resolving a batch of routes.
+     *
+     * @param names the operator names to resolve.
+     */
+    public void prefetchOperators(Collection<String> names) {
+        if (preloaded) {
+            return;
+        }
+
+        List<String> unresolved = new ArrayList<>();
+        for (String name : names) {
+            if (!operatorsByName.containsKey(name)) {
+                unresolved.add(name);
+            }
+        }
+        if (unresolved.isEmpty()) {
+            return;
+        }
+
+        Map<String, Operator> found = QueryUtilities.findOperatorsByNames(session, unresolved);
+        for (String name : unresolved) {
+            operatorsByName.put(name, found.get(name));
+        }
+    }
+
+    /**
+     * Resolves every bus stop id passed in that has not already been resolved, using a batched 'in (...)' lookup
+     * rather than one query per id. Intended for lazy resolvers, ahead of resolving a batch of routes.
+     *
+     * @param ids the bus stop ids to resolve.
+     */
+    public void prefetchBusStops(Collection<Integer> ids) {
+        if (preloaded) {
+            return;
+        }
+
+        List<Integer> unresolved = new ArrayList<>();
+        for (Integer id : ids) {
+            if (!busStopIds.contains(id) && !missingBusStopIds.contains(id)) {
+                unresolved.add(id);
+            }
+        }
+        if (unresolved.isEmpty()) {
+            return;
+        }
+
+        Map<Integer, BusStop> found = QueryUtilities.findBusStopsWithIDs(session, unresolved);
+        for (Integer id : unresolved) {
+            if (found.containsKey(id)) {
+                busStopIds.add(id);
+            } else {
+                missingBusStopIds.add(id);
+            }
+        }
+    }
+
+    /**
+     * Finds the Operator with the name passed in.
+     *
+     * @param name the name of the operator to find.
+     * @return the matching Operator, or null if there is no operator with that name.
+     */
+    public Operator findOperatorByName(String name) {
+        if (preloaded || operatorsByName.containsKey(name)) {
+            return operatorsByName.get(name);
+        }
+
+        Operator operator = QueryUtilities.findOperatorByName(session, name);
+        operatorsByName.put(name, operator);
+        return operator;
+    }
+
+    /**
+     * Finds the BusStop with the id passed in. The BusStop returned is a reference which is only initialised from
+     * the database if its state (other than its id) is accessed.
+     *
+     * @param id the id of the bus stop to find.
+     * @return a reference to the matching BusStop, or null if there is no bus stop with that id.
+     */
+    public BusStop findBusStopWithID(int id) {
+        if (busStopIds.contains(id)) {
+            return (BusStop) session.load(BusStop.class, id);
+        }
+        if (preloaded || missingBusStopIds.contains(id)) {
+            return null;
+        }
+
+        BusStop busStop = QueryUtilities.findBusStopWithID(session, id);
+        if (busStop == null) {
+            missingBusStopIds.add(id);
+        } else {
+            busStopIds.add(id);
+        }
+        return busStop;
+    }
+
+    /**
+     * Parses a String of Operator names, separated by the '|' char., into a Set of the Operator instances that
+     * match those names; as QueryUtilities.parseOperatorsFromEncodedString(...) does, but resolving each name in
+     * memory where possible.
+     *
+     * @param encodedOperatorStrings the String to parse the Operator names from.
+     * @return a Set of Operator instances.
+     */
+    public Set<Operator> parseOperatorsFromEncodedString(String encodedOperatorStrings) {
+        Set<Operator> operators = new HashSet<>();
+        for (String operatorName : QueryUtilities.splitOperatorNames(encodedOperatorStrings)) {
+            operators.add(findOperatorByName(operatorName));
+        }
+        return operators;
+    }
+
+}
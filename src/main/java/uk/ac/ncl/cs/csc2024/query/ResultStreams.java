@@ -0,0 +1,259 @@
+/**
+ * csc2024-hibernate-assignment
+ *
+ * Copyright (c) 2015 Newcastle University
+ * Email: <h.firth@ncl.ac.uk/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ncl.cs.csc2024.query;
+
+import org.hibernate.Criteria;
+import org.hibernate.Query;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+import org.hibernate.engine.spi.EntityEntry;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.proxy.HibernateProxy;
+import org.hibernate.proxy.LazyInitializer;
+import org.hibernate.type.Type;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Runs a query as a forward-only scroll over its results, returning them one at a time through an Iterator or a
+ * Stream rather than materialising them all in a List, so that every row of a large table can be exported or
+ * aggregated in constant memory.
+ *
+ * Rows are fetched from the database fetchSize at a time. Everything the scroll loads to read a row (its entities,
+ * and any entities they load eagerly in turn) is loaded read-only, and is evicted from the session once the
+ * stream has moved on to the next row, so that the persistence context does not grow with the number of rows
+ * read; results are therefore detached once the stream has moved on from them. Entities which were already in
+ * the session, and are not read-only, are left as they are, so the session's other entities and unflushed
+ * changes are unaffected by a stream. Entities loaded lazily from a result after it has been returned are not
+ * evicted.
+ *
+ * Each row is returned as list() would return it: a single value (such as an entity) for a query which selects
+ * one, and an Object[] for a query which selects several.
+ *
+ * @author Dylan McKee
+ */
+public final class ResultStreams {
+
+    /**
+     * Static methods only; not to be instantiated.
+     */
+    private ResultStreams() {
+    }
+
+    /**
+     * An iterator over the scrolled results of a query, which closes its underlying JDBC result set once the last
+     * result has been returned. An iterator which is abandoned before then must be closed.
+     *
+     * @param <T> the type of each result.
+     */
+    public static final class ScrollingIterator<T> implements Iterator<T>, AutoCloseable {
+
+        private final ScrollableResults results;
+        private final Session session;
+        private Boolean hasNext;
+        private boolean closed;
+
+        /**
+         * The row read by the last call to results.next(), whose entities are evicted once the stream moves on.
+         */
+        private Object[] row;
+
+        private ScrollingIterator(ScrollableResults results, Session session) {
+            this.results = results;
+            this.session = session;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (closed) {
+                return false;
+            }
+            if (hasNext == null) {
+                // Only the row already handed out is evicted, never the row about to be read.
+                evictRow();
+
+                // Loading the row with the session read-only marks everything it loads (but nothing which was
+                // already in the session) as read-only, which is how evictRow() tells them apart.
+                boolean defaultReadOnly = session.isDefaultReadOnly();
+                session.setDefaultReadOnly(true);
+                try {
+                    hasNext = results.next();
+                    row = hasNext ? results.get() : null;
+                } finally {
+                    session.setDefaultReadOnly(defaultReadOnly);
+                }
+                if (!hasNext) {
+                    close();
+                }
+            }
+            return hasNext;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            hasNext = null;
+            return (T) (row.length == 1 ? row[0] : row);
+        }
+
+        private void evictRow() {
+            if (row != null) {
+                for (Object value : row) {
+                    evictIfLoadedByScroll(value);
+                }
+                row = null;
+            }
+        }
+
+        /**
+         * Evicts the value passed in if it is a read-only entity, along with any read-only entities it references
+         * directly.
+         */
+        private void evictIfLoadedByScroll(Object value) {
+            Object entity = value;
+            if (value instanceof HibernateProxy) {
+                LazyInitializer initializer = ((HibernateProxy) value).getHibernateLazyInitializer();
+                if (initializer.isUninitialized()) {
+                    return;
+                }
+                entity = initializer.getImplementation();
+            }
+
+            EntityEntry entry = entity == null ? null :
+                    ((SessionImplementor) session).getPersistenceContext().getEntry(entity);
+            if (entry == null || !entry.isReadOnly()) {
+                return;
+            }
+
+            // Read the references before evicting, as the entry (and with it the persister) goes with the entity.
+            EntityPersister persister = entry.getPersister();
+            Type[] types = persister.getPropertyTypes();
+            Object[] values = persister.getPropertyValues(entity);
+            session.evict(value);
+            for (int i = 0; i < types.length; i++) {
+                if (types[i].isEntityType()) {
+                    evictIfLoadedByScroll(values[i]);
+                }
+            }
+        }
+
+        /**
+         * Closes the underlying JDBC result set; has no effect if it has already been closed.
+         */
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                row = null;
+                results.close();
+            }
+        }
+    }
+
+    /**
+     * Scrolls through the results of the query passed in.
+     *
+     * @param query the query to run.
+     * @param session the Hibernate session the query was created within.
+     * @param fetchSize the number of rows to fetch per round trip.
+     * @param <T> the type of each result.
+     * @return an iterator over the results, which must be closed if it is not read to the end.
+     * @throws IllegalArgumentException if the fetch size is less than 1.
+     */
+    public static <T> ScrollingIterator<T> iterator(Query query, Session session, int fetchSize) {
+        requireFetchSize(fetchSize);
+        ScrollableResults results = query.setReadOnly(true).setFetchSize(fetchSize).scroll(ScrollMode.FORWARD_ONLY);
+        return new ScrollingIterator<>(results, session);
+    }
+
+    /**
+     * Scrolls through the results of the criteria query passed in.
+     *
+     * @param criteria the criteria query to run.
+     * @param session the Hibernate session the criteria query was created within.
+     * @param fetchSize the number of rows to fetch per round trip.
+     * @param <T> the type of each result.
+     * @return an iterator over the results, which must be closed if it is not read to the end.
+     * @throws IllegalArgumentException if the fetch size is less than 1.
+     */
+    public static <T> ScrollingIterator<T> iterator(Criteria criteria, Session session, int fetchSize) {
+        requireFetchSize(fetchSize);
+        ScrollableResults results = criteria.setReadOnly(true).setFetchSize(fetchSize)
+                .scroll(ScrollMode.FORWARD_ONLY);
+        return new ScrollingIterator<>(results, session);
+    }
+
+    /**
+     * Streams the results of the query passed in. The stream should be closed (for example, with
+     * try-with-resources) unless it is read to the end.
+     *
+     * @param query the query to run.
+     * @param session the Hibernate session the query was created within.
+     * @param fetchSize the number of rows to fetch per round trip.
+     * @param <T> the type of each result.
+     * @return a sequential stream of the results.
+     * @throws IllegalArgumentException if the fetch size is less than 1.
+     */
+    public static <T> Stream<T> stream(Query query, Session session, int fetchSize) {
+        return stream(ResultStreams.<T>iterator(query, session, fetchSize));
+    }
+
+    /**
+     * Streams the results of the criteria query passed in. The stream should be closed (for example, with
+     * try-with-resources) unless it is read to the end.
+     *
+     * @param criteria the criteria query to run.
+     * @param session the Hibernate session the criteria query was created within.
+     * @param fetchSize the number of rows to fetch per round trip.
+     * @param <T> the type of each result.
+     * @return a sequential stream of the results.
+     * @throws IllegalArgumentException if the fetch size is less than 1.
+     */
+    public static <T> Stream<T> stream(Criteria criteria, Session session, int fetchSize) {
+        return stream(ResultStreams.<T>iterator(criteria, session, fetchSize));
+    }
+
+    private static <T> Stream<T> stream(final ScrollingIterator<T> iterator) {
+        Spliterator<T> spliterator = Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED);
+        return StreamSupport.stream(spliterator, false).onClose(new Runnable() {
+            @Override
+            public void run() {
+                iterator.close();
+            }
+        });
+    }
+
+    private static void requireFetchSize(int fetchSize) {
+        if (fetchSize < 1) {
+            throw new IllegalArgumentException("The fetch size must be at least 1, not " + fetchSize);
+        }
+    }
+
+}
@@ -0,0 +1,194 @@
+/**
+ * csc2024-hibernate-assignment
+ *
+ * Copyright (c) 2015 Newcastle University
+ * Email: <h.firth@ncl.ac.uk/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ncl.cs.csc2024.route;
+
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+import uk.ac.ncl.cs.csc2024.config.HibernateSettings;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Calculates the cumulative frequency of every operator in memory, as an alternative to
+ * RouteQueries.cumulativeFrequencyByOperator() for route tables so large that the database's grouped select
+ * (and the count of each route's operators it makes for every row) is the bottleneck.
+ *
+ * The routes' operator names are scrolled through in route order, so only a single plain select is run and no
+ * more than a fetch's worth of rows is held at once. The select only reads values, not entities, so nothing is
+ * added to (or removed from) the session's persistence context, and the session's own entities and unflushed
+ * changes are left alone. The rows are read on the calling
+ * thread, as a session may only be used by one thread, and gathered into chunks of routes; each chunk's shares
+ * are then credited to its operators as a task on a ForkJoinPool, while the next chunk is read, and the totals of
+ * the chunks are summed as they complete.
+ *
+ * @author Dylan McKee
+ */
+public final class CumulativeFrequencyCalculator {
+
+    /**
+     * The number of routes whose shares are credited by each task.
+     */
+    private static final int ROUTES_PER_TASK = 4096;
+
+    /**
+     * The number of tasks (per thread of the pool) which may be waiting to be summed before reading pauses for
+     * the oldest, so that the totals held in memory stay bounded however large the tables are.
+     */
+    private static final int PENDING_TASKS_PER_THREAD = 4;
+
+    /**
+     * A route's frequency and the names of its operators.
+     */
+    private static final class RouteOperators {
+        final int frequency;
+        final List<String> operatorNames = new ArrayList<>();
+
+        RouteOperators(int frequency) {
+            this.frequency = frequency;
+        }
+    }
+
+    /**
+     * Static methods only; not to be instantiated.
+     */
+    private CumulativeFrequencyCalculator() {
+    }
+
+    /**
+     * Calculates the cumulative frequency of every operator which operates a route, with the default fetch size,
+     * on the common ForkJoinPool.
+     *
+     * @param session the Hibernate session to read the routes with.
+     * @return each operator's cumulative frequency, keyed and ordered by operator name.
+     */
+    public static SortedMap<String, Long> calculate(Session session) {
+        return calculate(session, HibernateSettings.DEFAULT_FETCH_SIZE, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Calculates the cumulative frequency of every operator which operates a route, as
+     * RouteQueries.cumulativeFrequencyByOperator() does; each route's frequency is divided by its number of
+     * operators with integer division, as it is in the query.
+     *
+     * @param session the Hibernate session to read the routes with.
+     * @param fetchSize the number of rows to fetch per round trip.
+     * @param pool the pool to credit the routes' shares on.
+     * @return each operator's cumulative frequency, keyed and ordered by operator name.
+     * @throws IllegalArgumentException if the fetch size is less than 1.
+     */
+    public static SortedMap<String, Long> calculate(Session session, int fetchSize, ForkJoinPool pool) {
+        if (fetchSize < 1) {
+            throw new IllegalArgumentException("The fetch size must be at least 1, not " + fetchSize);
+        }
+
+        SortedMap<String, Long> frequencies = new TreeMap<>();
+        Deque<ForkJoinTask<Map<String, Long>>> pendingTasks = new ArrayDeque<>();
+        int maxPendingTasks = pool.getParallelism() * PENDING_TASKS_PER_THREAD;
+
+        List<RouteOperators> chunk = new ArrayList<>(ROUTES_PER_TASK);
+        String routeNumber = null;
+        RouteOperators route = null;
+        ScrollableResults rows = session.createQuery(Route.SELECT_OPERATOR_NAMES_BY_ROUTE_HQL_QUERY)
+                .setFetchSize(fetchSize).scroll(ScrollMode.FORWARD_ONLY);
+        try {
+            while (rows.next()) {
+                Object[] row = rows.get();
+                // The rows are ordered by route, so a new number means the previous route has all its operators.
+                if (!row[0].equals(routeNumber)) {
+                    if (chunk.size() == ROUTES_PER_TASK) {
+                        pendingTasks.add(pool.submit(new CreditSharesTask(chunk)));
+                        chunk = new ArrayList<>(ROUTES_PER_TASK);
+                        if (pendingTasks.size() > maxPendingTasks) {
+                            addAll(frequencies, pendingTasks.remove().join());
+                        }
+                    }
+                    routeNumber = (String) row[0];
+                    route = new RouteOperators((Integer) row[1]);
+                    chunk.add(route);
+                }
+                route.operatorNames.add((String) row[2]);
+            }
+        } finally {
+            rows.close();
+        }
+
+        if (!chunk.isEmpty()) {
+            pendingTasks.add(pool.submit(new CreditSharesTask(chunk)));
+        }
+        while (!pendingTasks.isEmpty()) {
+            addAll(frequencies, pendingTasks.remove().join());
+        }
+        return frequencies;
+    }
+
+    /**
+     * Returns the results of RouteQueries.cumulativeFrequencyByOperator() as a Map.
+     *
+     * @param rows the results of the query, each an Object[] of an operator name and its cumulative frequency.
+     * @return each operator's cumulative frequency, keyed and ordered by operator name.
+     */
+    public static SortedMap<String, Long> toMap(List<?> rows) {
+        SortedMap<String, Long> frequencies = new TreeMap<>();
+        for (Object row : rows) {
+            Object[] columns = (Object[]) row;
+            frequencies.put((String) columns[0], ((Number) columns[1]).longValue());
+        }
+        return frequencies;
+    }
+
+    private static void addAll(Map<String, Long> frequencies, Map<String, Long> chunkFrequencies) {
+        for (Map.Entry<String, Long> entry : chunkFrequencies.entrySet()) {
+            Long frequency = frequencies.get(entry.getKey());
+            frequencies.put(entry.getKey(), frequency == null ? entry.getValue() : frequency + entry.getValue());
+        }
+    }
+
+    /**
+     * Credits each operator of a chunk of routes with its share of the route's frequency.
+     */
+    private static final class CreditSharesTask extends RecursiveTask<Map<String, Long>> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<RouteOperators> routes;
+
+        CreditSharesTask(List<RouteOperators> routes) {
+            this.routes = routes;
+        }
+
+        @Override
+        protected Map<String, Long> compute() {
+            Map<String, Long> frequencies = new HashMap<>();
+            for (RouteOperators route : routes) {
+                long share = route.frequency / route.operatorNames.size();
+                for (String operatorName : route.operatorNames) {
+                    Long frequency = frequencies.get(operatorName);
+                    frequencies.put(operatorName, frequency == null ? share : frequency + share);
+                }
+            }
+            return frequencies;
+        }
+    }
+
+}
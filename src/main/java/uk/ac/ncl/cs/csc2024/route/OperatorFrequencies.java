@@ -0,0 +1,195 @@
+/**
+ * csc2024-hibernate-assignment
+ *
+ * Copyright (c) 2015 Newcastle University
+ * Email: <h.firth@ncl.ac.uk/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ncl.cs.csc2024.route;
+
+import org.hibernate.Criteria;
+import org.hibernate.Query;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.criterion.DetachedCriteria;
+import org.hibernate.criterion.Projections;
+import org.hibernate.criterion.Restrictions;
+import org.hibernate.criterion.Subqueries;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.jdbc.Work;
+import uk.ac.ncl.cs.csc2024.operator.Operator;
+import uk.ac.ncl.cs.csc2024.query.ExampleQuery;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Maintains each operator's cumulative frequency (as calculated by RouteQueries.cumulativeFrequencyByOkTravel()
+ * for OK Travel) in the operator_frequency summary table, so that it can be read for any operator with a single
+ * primary key lookup, rather than by summing over every route the operator runs with a count of each route's
+ * operators. The route_operator_share table records each route's operator count and the share of its frequency
+ * each of its operators was credited with, so that the shares can be taken back off when the route changes.
+ *
+ * The summary is opt-in: its entities are added to a Configuration with addTo(...), and the SessionFactory built
+ * from it is then passed to maintain(...), which registers the listeners that keep the summary up to date with
+ * every route and operator inserted, updated or deleted (and every change to a route's operators) through a
+ * Session. The summary is updated just before each transaction commits, as part of it, so the totals read by other
+ * transactions are always those of the committed routes; see OperatorFrequencyListener for how concurrent writers
+ * are kept from losing each other's changes.
+ *
+ * Writes made with plain SQL rather than through a Session (such as a snapshot restore, a bulk load or an upsert)
+ * are not seen by the listeners, so those loaders rebuild the summary once they have finished.
+ *
+ * @author Dylan McKee
+ */
+public final class OperatorFrequencies {
+
+    private static final String[] REBUILD_SQL = {
+            "delete from " + RouteOperatorShare.TABLE_NAME,
+            "delete from " + OperatorFrequency.TABLE_NAME,
+            "insert into " + RouteOperatorShare.TABLE_NAME + " (route_id, operator_id, operator_count, share) " +
+                    "select j.route_id, j.operator_id, c.operator_count, r.frequency / c.operator_count from " +
+                    Route.OPERATORS_JOIN_TABLE_NAME + " j join " + Route.TABLE_NAME + " r on r.number = j.route_id " +
+                    "join (select route_id, count(*) as operator_count from " + Route.OPERATORS_JOIN_TABLE_NAME +
+                    " group by route_id) c on c.route_id = j.route_id",
+            "insert into " + OperatorFrequency.TABLE_NAME + " (operator_id, route_count, cumulative_frequency) " +
+                    "select o.id, count(s.route_id), coalesce(sum(s.share), 0) from " + Operator.TABLE_NAME + " o " +
+                    "left join " + RouteOperatorShare.TABLE_NAME + " s on s.operator_id = o.id group by o.id"
+    };
+
+    /**
+     * Static methods only; not to be instantiated.
+     */
+    private OperatorFrequencies() {
+    }
+
+    /**
+     * Adds the summary's entities to the configuration, so that its tables are mapped (and created, if the schema
+     * is generated).
+     *
+     * @param configuration the configuration to add the entities to.
+     * @return the configuration passed in.
+     */
+    public static Configuration addTo(Configuration configuration) {
+        configuration.addAnnotatedClass(OperatorFrequency.class);
+        configuration.addAnnotatedClass(RouteOperatorShare.class);
+        return configuration;
+    }
+
+    /**
+     * Registers the listeners which keep the summary up to date with the routes and operators written through the
+     * session factory's sessions. The summary should be rebuilt once, before the first such write, if the tables
+     * already hold routes.
+     *
+     * @param sessionFactory a session factory built from a configuration passed to addTo(...).
+     * @return the session factory passed in.
+     * @throws IllegalArgumentException if the summary's entities are not mapped by the session factory.
+     */
+    public static SessionFactory maintain(SessionFactory sessionFactory) {
+        if (!isMapped(sessionFactory)) {
+            throw new IllegalArgumentException("The operator frequency summary is not mapped; add it to the " +
+                    "configuration with OperatorFrequencies.addTo(...) first");
+        }
+
+        EventListenerRegistry registry = ((SessionFactoryImplementor) sessionFactory).getServiceRegistry()
+                .getService(EventListenerRegistry.class);
+        OperatorFrequencyListener listener = new OperatorFrequencyListener();
+        registry.appendListeners(EventType.POST_INSERT, listener);
+        registry.appendListeners(EventType.POST_UPDATE, listener);
+        registry.appendListeners(EventType.POST_DELETE, listener);
+        registry.appendListeners(EventType.POST_COLLECTION_RECREATE, listener);
+        registry.appendListeners(EventType.POST_COLLECTION_UPDATE, listener);
+        registry.appendListeners(EventType.POST_COLLECTION_REMOVE, listener);
+        return sessionFactory;
+    }
+
+    /**
+     * Recalculates the whole summary from the routes, operators and operator_route join rows, with set-based
+     * SQL. Intended for after the tables have been written with plain SQL, while nothing else is writing to them.
+     * Has no effect if the summary is not mapped.
+     *
+     * @param session the session whose connection (and transaction) to rebuild the summary with.
+     * @return the session passed in.
+     */
+    public static Session rebuild(Session session) {
+        if (!isMapped(session.getSessionFactory())) {
+            return session;
+        }
+
+        session.flush();
+        session.doWork(new Work() {
+            @Override
+            public void execute(Connection connection) throws SQLException {
+                try (Statement statement = connection.createStatement()) {
+                    for (String sql : REBUILD_SQL) {
+                        statement.executeUpdate(sql);
+                    }
+                }
+            }
+        });
+        return session;
+    }
+
+    /**
+     * Selects the cumulative frequency of the operator with the name specified from the summary; the same total
+     * as RouteQueries.cumulativeFrequencyByOkTravel() calculates for OK Travel, as a Long. Nothing is selected if
+     * there is no operator with that name.
+     *
+     * The query is not cacheable, as the summary is written with plain SQL, which the query cache cannot see.
+     *
+     * @param operatorName the name of the operator.
+     * @return the queries selecting the operator's cumulative frequency.
+     */
+    public static ExampleQuery cumulativeFrequencyOf(final String operatorName) {
+        return new ExampleQuery() {
+            @Override
+            public Query getQuery(Session session) {
+                return session.createQuery(OperatorFrequency.SELECT_CUMULATIVE_FREQUENCY_HQL_QUERY)
+                        .setParameter("name", operatorName);
+            }
+
+            @Override
+            public String getNamedQueryName() {
+                return OperatorFrequency.SELECT_CUMULATIVE_FREQUENCY;
+            }
+
+            @Override
+            public Query getNamedQuery(Session session) {
+                return session.getNamedQuery(getNamedQueryName()).setParameter("name", operatorName);
+            }
+
+            @Override
+            public Criteria getCriteria(Session session) {
+                DetachedCriteria operatorId = DetachedCriteria.forClass(Operator.class)
+                        .add(Restrictions.eq("name", operatorName))
+                        .setProjection(Projections.id());
+
+                Criteria criteria = session.createCriteria(OperatorFrequency.class);
+                criteria.add(Subqueries.propertyEq("operatorId", operatorId));
+                criteria.setProjection(Projections.property("cumulativeFrequency"));
+                return criteria;
+            }
+        };
+    }
+
+    private static boolean isMapped(SessionFactory sessionFactory) {
+        return sessionFactory.getClassMetadata(OperatorFrequency.class) != null;
+    }
+
+}
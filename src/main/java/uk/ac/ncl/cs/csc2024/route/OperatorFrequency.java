@@ -0,0 +1,108 @@
+/**
+ * csc2024-hibernate-assignment
+ *
+ * Copyright (c) 2015 Newcastle University
+ * Email: <h.firth@ncl.ac.uk/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ncl.cs.csc2024.route;
+
+import javax.persistence.*;
+
+/**
+ * Hibernate entity for a row of the operator_frequency summary table, which holds each operator's cumulative
+ * frequency (the sum, over every route it operates, of the route's frequency divided by its number of operators)
+ * so that it can be read by primary key rather than recomputed from every route. The rows are maintained by
+ * OperatorFrequencies, not written through this entity.
+ *
+ * @author Dylan McKee
+ */
+@Entity
+@NamedQueries({
+        // Not cached: the summary is written with plain SQL, which the query cache cannot see.
+        @NamedQuery(name = OperatorFrequency.SELECT_CUMULATIVE_FREQUENCY, query = OperatorFrequency.SELECT_CUMULATIVE_FREQUENCY_HQL_QUERY)
+})
+@Table(name = OperatorFrequency.TABLE_NAME)
+public class OperatorFrequency {
+
+    /**
+     * The name of the table that the operators' cumulative frequencies are stored in.
+     */
+    public static final String TABLE_NAME = "operator_frequency";
+
+    /**
+     * The name of the 'select the cumulative frequency of an operator' query.
+     */
+    public static final String SELECT_CUMULATIVE_FREQUENCY = "OperatorFrequency.selectCumulativeFrequency";
+
+    /**
+     * The HQL Query to select the cumulative frequency of the operator named in the 'name' parameter.
+     */
+    public static final String SELECT_CUMULATIVE_FREQUENCY_HQL_QUERY = "select f.cumulativeFrequency " +
+            "from OperatorFrequency f, Operator o where f.operatorId = o.id and o.name = :name";
+
+    /**
+     * The id of the operator; not a foreign key, as the row is removed after the operator is.
+     */
+    @Id
+    @Column(name = "operator_id")
+    private int operatorId;
+
+    /**
+     * The number of routes the operator operates.
+     */
+    @Column(name = "route_count")
+    private int routeCount;
+
+    /**
+     * The sum of the operator's share of the frequency of each route it operates.
+     */
+    @Column(name = "cumulative_frequency")
+    private long cumulativeFrequency;
+
+    public int getOperatorId() {
+        return operatorId;
+    }
+
+    public void setOperatorId(int operatorId) {
+        this.operatorId = operatorId;
+    }
+
+    public int getRouteCount() {
+        return routeCount;
+    }
+
+    public void setRouteCount(int routeCount) {
+        this.routeCount = routeCount;
+    }
+
+    public long getCumulativeFrequency() {
+        return cumulativeFrequency;
+    }
+
+    public void setCumulativeFrequency(long cumulativeFrequency) {
+        this.cumulativeFrequency = cumulativeFrequency;
+    }
+
+    @Override
+    public String toString() {
+        return "OperatorFrequency{" +
+                "operatorId=" + operatorId +
+                ", routeCount=" + routeCount +
+                ", cumulativeFrequency=" + cumulativeFrequency +
+                '}';
+    }
+
+}
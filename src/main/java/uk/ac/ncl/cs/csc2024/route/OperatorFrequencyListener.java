@@ -0,0 +1,305 @@
+/**
+ * csc2024-hibernate-assignment
+ *
+ * Copyright (c) 2015 Newcastle University
+ * Email: <h.firth@ncl.ac.uk/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ncl.cs.csc2024.route;
+
+import org.hibernate.action.spi.AfterTransactionCompletionProcess;
+import org.hibernate.action.spi.BeforeTransactionCompletionProcess;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.event.spi.*;
+import org.hibernate.jdbc.Work;
+import uk.ac.ncl.cs.csc2024.operator.Operator;
+
+import java.io.Serializable;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.*;
+
+/**
+ * Listens for changes to routes, operators and the operator_route join rows between them, and brings the
+ * operator_frequency and route_operator_share summary tables up to date with them just before each transaction
+ * commits, in the same transaction. See OperatorFrequencies.
+ *
+ * Only the routes which changed are recalculated. Each is locked first, in route number order, so that two
+ * transactions changing the same route recalculate it one after the other, each from the other's committed
+ * shares. The difference each makes to an operator's totals is then added to the operator's row, in operator id
+ * order; as additions commute, transactions changing different routes of the same operator do not conflict.
+ *
+ * @author Dylan McKee
+ */
+final class OperatorFrequencyListener implements PostInsertEventListener, PostUpdateEventListener,
+        PostDeleteEventListener, PostCollectionRecreateEventListener, PostCollectionUpdateEventListener,
+        PostCollectionRemoveEventListener {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Takes the route's row lock; the update changes nothing.
+     */
+    private static final String LOCK_ROUTE_SQL = "update " + Route.TABLE_NAME +
+            " set frequency = frequency where number = ?";
+
+    private static final String SELECT_SHARES_SQL = "select operator_id, share from " +
+            RouteOperatorShare.TABLE_NAME + " where route_id = ?";
+
+    private static final String DELETE_SHARES_SQL = "delete from " + RouteOperatorShare.TABLE_NAME +
+            " where route_id = ?";
+
+    private static final String SELECT_OPERATORS_SQL = "select j.operator_id, r.frequency from " +
+            Route.TABLE_NAME + " r join " + Route.OPERATORS_JOIN_TABLE_NAME + " j on j.route_id = r.number " +
+            "where r.number = ?";
+
+    private static final String INSERT_SHARE_SQL = "insert into " + RouteOperatorShare.TABLE_NAME +
+            " (route_id, operator_id, operator_count, share) values (?, ?, ?, ?)";
+
+    /**
+     * Selects the routes an operator was credited with, and the routes it now operates.
+     */
+    private static final String SELECT_OPERATOR_ROUTES_SQL = "select route_id from " +
+            RouteOperatorShare.TABLE_NAME + " where operator_id = ? union select route_id from " +
+            Route.OPERATORS_JOIN_TABLE_NAME + " where operator_id = ?";
+
+    private static final String INSERT_OPERATOR_SQL = "insert into " + OperatorFrequency.TABLE_NAME +
+            " (operator_id, route_count, cumulative_frequency) values (?, 0, 0)";
+
+    private static final String UPDATE_OPERATOR_SQL = "update " + OperatorFrequency.TABLE_NAME +
+            " set route_count = route_count + ?, cumulative_frequency = cumulative_frequency + ? " +
+            "where operator_id = ?";
+
+    private static final String DELETE_OPERATOR_SQL = "delete from " + OperatorFrequency.TABLE_NAME +
+            " where operator_id = ?";
+
+    /**
+     * The changes made in each session's current transaction which have yet to be applied to the summary.
+     */
+    private final transient Map<EventSource, Changes> pendingChanges =
+            Collections.synchronizedMap(new IdentityHashMap<EventSource, Changes>());
+
+    @Override
+    public void onPostInsert(PostInsertEvent event) {
+        if (event.getEntity() instanceof Route) {
+            changesFor(event.getSession()).routeNumbers.add((String) event.getId());
+        } else if (event.getEntity() instanceof Operator) {
+            changesFor(event.getSession()).insertedOperatorIds.add((Integer) event.getId());
+        }
+    }
+
+    @Override
+    public void onPostUpdate(PostUpdateEvent event) {
+        if (event.getEntity() instanceof Route) {
+            changesFor(event.getSession()).routeNumbers.add((String) event.getId());
+        }
+    }
+
+    @Override
+    public void onPostDelete(PostDeleteEvent event) {
+        if (event.getEntity() instanceof Route) {
+            changesFor(event.getSession()).routeNumbers.add((String) event.getId());
+        } else if (event.getEntity() instanceof Operator) {
+            Changes changes = changesFor(event.getSession());
+            changes.operatorIdsWithChangedRoutes.add((Integer) event.getId());
+            changes.deletedOperatorIds.add((Integer) event.getId());
+        }
+    }
+
+    @Override
+    public void onPostRecreateCollection(PostCollectionRecreateEvent event) {
+        onCollectionChanged(event);
+    }
+
+    @Override
+    public void onPostUpdateCollection(PostCollectionUpdateEvent event) {
+        onCollectionChanged(event);
+    }
+
+    @Override
+    public void onPostRemoveCollection(PostCollectionRemoveEvent event) {
+        onCollectionChanged(event);
+    }
+
+    /**
+     * Records the route, or the operator, whose operator_route join rows have changed. An operator's routes are
+     * found from the tables when the changes are applied, so that its collection need not be initialised here.
+     */
+    private void onCollectionChanged(AbstractCollectionEvent event) {
+        String role = event.getCollection().getRole();
+        Serializable ownerId = event.getAffectedOwnerIdOrNull();
+        if (ownerId == null) {
+            return;
+        }
+
+        if (Route.OPERATORS_ROLE.equals(role)) {
+            changesFor(event.getSession()).routeNumbers.add((String) ownerId);
+        } else if (Operator.ROUTES_ROLE.equals(role)) {
+            changesFor(event.getSession()).operatorIdsWithChangedRoutes.add((Integer) ownerId);
+        }
+    }
+
+    /**
+     * Returns the changes pending in the session's current transaction, registering them to be applied before
+     * it completes (and forgotten once it has) if they are the first.
+     */
+    private Changes changesFor(final EventSource session) {
+        Changes changes = pendingChanges.get(session);
+        if (changes != null) {
+            return changes;
+        }
+
+        final Changes newChanges = new Changes();
+        pendingChanges.put(session, newChanges);
+        session.getActionQueue().registerProcess(new BeforeTransactionCompletionProcess() {
+            @Override
+            public void doBeforeTransactionCompletion(SessionImplementor sessionImplementor) {
+                pendingChanges.remove(session);
+                session.doWork(new Work() {
+                    @Override
+                    public void execute(Connection connection) throws SQLException {
+                        apply(newChanges, connection);
+                    }
+                });
+            }
+        });
+        session.getActionQueue().registerProcess(new AfterTransactionCompletionProcess() {
+            @Override
+            public void doAfterTransactionCompletion(boolean success, SessionImplementor sessionImplementor) {
+                // The transaction may have been rolled back before the changes were applied.
+                pendingChanges.remove(session);
+            }
+        });
+        return newChanges;
+    }
+
+    /**
+     * The routes and operators changed by a transaction.
+     */
+    private static final class Changes {
+        final SortedSet<String> routeNumbers = new TreeSet<>();
+        final SortedSet<Integer> operatorIdsWithChangedRoutes = new TreeSet<>();
+        final SortedSet<Integer> insertedOperatorIds = new TreeSet<>();
+        final SortedSet<Integer> deletedOperatorIds = new TreeSet<>();
+    }
+
+    /**
+     * The difference that recalculating the changed routes makes to one operator's totals.
+     */
+    private static final class Delta {
+        int routeCount;
+        long cumulativeFrequency;
+    }
+
+    private static void apply(Changes changes, Connection connection) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(INSERT_OPERATOR_SQL)) {
+            for (int operatorId : changes.insertedOperatorIds) {
+                statement.setInt(1, operatorId);
+                statement.addBatch();
+            }
+            statement.executeBatch();
+        }
+
+        try (PreparedStatement statement = connection.prepareStatement(SELECT_OPERATOR_ROUTES_SQL)) {
+            for (int operatorId : changes.operatorIdsWithChangedRoutes) {
+                statement.setInt(1, operatorId);
+                statement.setInt(2, operatorId);
+                try (ResultSet routes = statement.executeQuery()) {
+                    while (routes.next()) {
+                        changes.routeNumbers.add(routes.getString(1));
+                    }
+                }
+            }
+        }
+
+        SortedMap<Integer, Delta> deltas = new TreeMap<>();
+        try (PreparedStatement lockRoute = connection.prepareStatement(LOCK_ROUTE_SQL);
+             PreparedStatement selectShares = connection.prepareStatement(SELECT_SHARES_SQL);
+             PreparedStatement deleteShares = connection.prepareStatement(DELETE_SHARES_SQL);
+             PreparedStatement selectOperators = connection.prepareStatement(SELECT_OPERATORS_SQL);
+             PreparedStatement insertShare = connection.prepareStatement(INSERT_SHARE_SQL)) {
+            for (String routeNumber : changes.routeNumbers) {
+                lockRoute.setString(1, routeNumber);
+                lockRoute.executeUpdate();
+
+                // Take back the shares the route's operators were credited with...
+                selectShares.setString(1, routeNumber);
+                try (ResultSet shares = selectShares.executeQuery()) {
+                    while (shares.next()) {
+                        addDelta(deltas, shares.getInt(1), -1, -shares.getInt(2));
+                    }
+                }
+                deleteShares.setString(1, routeNumber);
+                deleteShares.executeUpdate();
+
+                // ...then credit its current operators with their shares, as the route now stands.
+                List<Integer> operatorIds = new ArrayList<>();
+                int frequency = 0;
+                selectOperators.setString(1, routeNumber);
+                try (ResultSet operators = selectOperators.executeQuery()) {
+                    while (operators.next()) {
+                        operatorIds.add(operators.getInt(1));
+                        frequency = operators.getInt(2);
+                    }
+                }
+                for (int operatorId : operatorIds) {
+                    int share = frequency / operatorIds.size();
+                    insertShare.setString(1, routeNumber);
+                    insertShare.setInt(2, operatorId);
+                    insertShare.setInt(3, operatorIds.size());
+                    insertShare.setInt(4, share);
+                    insertShare.addBatch();
+                    addDelta(deltas, operatorId, 1, share);
+                }
+                insertShare.executeBatch();
+            }
+        }
+
+        try (PreparedStatement statement = connection.prepareStatement(UPDATE_OPERATOR_SQL)) {
+            for (Map.Entry<Integer, Delta> entry : deltas.entrySet()) {
+                Delta delta = entry.getValue();
+                if (delta.routeCount == 0 && delta.cumulativeFrequency == 0) {
+                    continue;
+                }
+                statement.setInt(1, delta.routeCount);
+                statement.setLong(2, delta.cumulativeFrequency);
+                statement.setInt(3, entry.getKey());
+                statement.addBatch();
+            }
+            statement.executeBatch();
+        }
+
+        try (PreparedStatement statement = connection.prepareStatement(DELETE_OPERATOR_SQL)) {
+            for (int operatorId : changes.deletedOperatorIds) {
+                statement.setInt(1, operatorId);
+                statement.addBatch();
+            }
+            statement.executeBatch();
+        }
+    }
+
+    private static void addDelta(Map<Integer, Delta> deltas, int operatorId, int routeCount, int frequency) {
+        Delta delta = deltas.get(operatorId);
+        if (delta == null) {
+            delta = new Delta();
+            deltas.put(operatorId, delta);
+        }
+        delta.routeCount += routeCount;
+        delta.cumulativeFrequency += frequency;
+    }
+
+}
@@ -19,7 +19,10 @@
  */
 package uk.ac.ncl.cs.csc2024.route;
 
+import org.hibernate.annotations.Index;
+import org.hibernate.annotations.QueryHints;
 import uk.ac.ncl.cs.csc2024.busstop.BusStop;
+import uk.ac.ncl.cs.csc2024.config.HibernateSettings;
 import uk.ac.ncl.cs.csc2024.operator.Operator;
 
 import javax.persistence.*;
@@ -38,14 +41,61 @@ import java.util.Set;
  */
 @Entity
 @NamedQueries({
-        @NamedQuery(name = Route.SELECT_ALL, query = Route.SELECT_ALL_HQL_QUERY),
-        @NamedQuery(name = Route.SELECT_ALL_FOR_RAILWAY_STATION, query = Route.SELECT_ALL_RAILWAY_STATION_ROUTES_HQL_QUERY),
-        @NamedQuery(name = Route.CUMULATIVE_FREQUENCY_BY_OK_TRAVEL, query = Route.SELECT_CUMULATIVE_FREQUENCY_FOR_OK_TRAVEL_HQL_QUERY)
+        @NamedQuery(name = Route.SELECT_ALL, query = Route.SELECT_ALL_HQL_QUERY, hints = {
+                @QueryHint(name = QueryHints.CACHEABLE, value = "true"),
+                @QueryHint(name = QueryHints.CACHE_REGION, value = HibernateSettings.QUERY_CACHE_REGION)
+        }),
+        @NamedQuery(name = Route.SELECT_ALL_FOR_RAILWAY_STATION, query = Route.SELECT_ALL_RAILWAY_STATION_ROUTES_HQL_QUERY, hints = {
+                @QueryHint(name = QueryHints.CACHEABLE, value = "true"),
+                @QueryHint(name = QueryHints.CACHE_REGION, value = HibernateSettings.QUERY_CACHE_REGION)
+        }),
+        @NamedQuery(name = Route.CUMULATIVE_FREQUENCY_BY_OK_TRAVEL, query = Route.SELECT_CUMULATIVE_FREQUENCY_FOR_OK_TRAVEL_HQL_QUERY, hints = {
+                @QueryHint(name = QueryHints.CACHEABLE, value = "true"),
+                @QueryHint(name = QueryHints.CACHE_REGION, value = HibernateSettings.QUERY_CACHE_REGION)
+        }),
+        @NamedQuery(name = Route.SELECT_ROUTES_SERVING_STOP, query = Route.SELECT_ROUTES_SERVING_STOP_HQL_QUERY, hints = {
+                @QueryHint(name = QueryHints.CACHEABLE, value = "true"),
+                @QueryHint(name = QueryHints.CACHE_REGION, value = HibernateSettings.QUERY_CACHE_REGION)
+        }),
+        @NamedQuery(name = Route.CUMULATIVE_FREQUENCY_OF_OPERATOR, query = Route.SELECT_CUMULATIVE_FREQUENCY_OF_OPERATOR_HQL_QUERY, hints = {
+                @QueryHint(name = QueryHints.CACHEABLE, value = "true"),
+                @QueryHint(name = QueryHints.CACHE_REGION, value = HibernateSettings.QUERY_CACHE_REGION)
+        }),
+        @NamedQuery(name = Route.CUMULATIVE_FREQUENCY_BY_OPERATOR, query = Route.SELECT_CUMULATIVE_FREQUENCY_BY_OPERATOR_HQL_QUERY, hints = {
+                @QueryHint(name = QueryHints.CACHEABLE, value = "true"),
+                @QueryHint(name = QueryHints.CACHE_REGION, value = HibernateSettings.QUERY_CACHE_REGION)
+        }),
+        @NamedQuery(name = Route.SELECT_ALL_SUMMARIES, query = Route.SELECT_ALL_SUMMARIES_HQL_QUERY, hints = {
+                @QueryHint(name = QueryHints.CACHEABLE, value = "true"),
+                @QueryHint(name = QueryHints.CACHE_REGION, value = HibernateSettings.QUERY_CACHE_REGION)
+        }),
+        @NamedQuery(name = Route.SELECT_PAGE_AFTER, query = Route.SELECT_PAGE_AFTER_HQL_QUERY, hints = {
+                @QueryHint(name = QueryHints.CACHEABLE, value = "true"),
+                @QueryHint(name = QueryHints.CACHE_REGION, value = HibernateSettings.QUERY_CACHE_REGION)
+        }),
+        // The fetch join queries are not cached; see FetchPlan.
+        @NamedQuery(name = Route.SELECT_ALL_JOIN_FETCH, query = Route.SELECT_ALL_JOIN_FETCH_HQL_QUERY),
+        @NamedQuery(name = Route.SELECT_ALL_STOPS_JOIN_FETCH, query = Route.SELECT_ALL_STOPS_JOIN_FETCH_HQL_QUERY)
 })
 
-@Table(name = "route")
+@Table(name = Route.TABLE_NAME)
 public class Route {
 
+    /**
+     * The name of the table that routes are stored in.
+     */
+    public static final String TABLE_NAME = "route";
+
+    /**
+     * The name of the join table linking routes to their operators.
+     */
+    public static final String OPERATORS_JOIN_TABLE_NAME = "operator_route";
+
+    /**
+     * The role of the operators collection, which names its cache region and by which its mapping is configured.
+     */
+    public static final String OPERATORS_ROLE = "uk.ac.ncl.cs.csc2024.route.Route.operators";
+
     /**
      * The name of the 'select all routes' query.
      */
@@ -76,6 +126,110 @@ public class Route {
      */
     public static final String SELECT_CUMULATIVE_FREQUENCY_FOR_OK_TRAVEL_HQL_QUERY = "select sum(r.frequency / r.operators.size) from Route r join r.operators o where o.name = 'OK Travel'";
 
+    /**
+     * The name of the 'select all routes that start/end at a stop' query.
+     */
+    public static final String SELECT_ROUTES_SERVING_STOP = "Route.selectRoutesServingStop";
+
+    /**
+     * The HQL Query to select the routes which start or end at a stop with the description in the 'description'
+     * parameter, ordered by number. Unlike the Railway Station query, the description is bound rather than
+     * written into the query, so the same query plan and JDBC statement serve every stop; the stops are outer
+     * joined, so that a route missing one of its stops can still be selected by the other.
+     */
+    public static final String SELECT_ROUTES_SERVING_STOP_HQL_QUERY = "select distinct r from Route r " +
+            "left join r.startStop s left join r.destinationStop d " +
+            "where s.description = :description or d.description = :description order by r.number asc";
+
+    /**
+     * The name of the 'select the cumulative frequency of an operator' query.
+     */
+    public static final String CUMULATIVE_FREQUENCY_OF_OPERATOR = "Route.cumulativeFrequencyOfOperator";
+
+    /**
+     * The HQL Query to select the cumulative frequency of the operator named in the 'name' parameter, calculated
+     * as the OK Travel query calculates it.
+     */
+    public static final String SELECT_CUMULATIVE_FREQUENCY_OF_OPERATOR_HQL_QUERY = "select sum(r.frequency / " +
+            "r.operators.size) from Route r join r.operators o where o.name = :name";
+
+    /**
+     * The name of the 'select the cumulative frequency of every operator' query.
+     */
+    public static final String CUMULATIVE_FREQUENCY_BY_OPERATOR = "Route.cumulativeFrequencyByOperator";
+
+    /**
+     * The HQL Query to select the name and cumulative frequency of every operator which operates a route, ordered
+     * by name, in a single grouped select over the routes and their operators.
+     */
+    public static final String SELECT_CUMULATIVE_FREQUENCY_BY_OPERATOR_HQL_QUERY = "select o.name, " +
+            "sum(r.frequency / r.operators.size) from Route r join r.operators o group by o.name order by o.name asc";
+
+    /**
+     * The HQL Query to select the number, frequency and name of each operator of every route, with the rows of
+     * each route together, for calculating the cumulative frequencies in memory (see CumulativeFrequencyCalculator).
+     */
+    public static final String SELECT_OPERATOR_NAMES_BY_ROUTE_HQL_QUERY = "select r.number, r.frequency, o.name " +
+            "from Route r join r.operators o order by r.number asc";
+
+    /**
+     * The name of the 'select a summary of every route' query.
+     */
+    public static final String SELECT_ALL_SUMMARIES = "Route.selectAllSummaries";
+
+    /**
+     * The HQL Query to select a RouteSummary of every route, in the same order as the 'select all routes' query.
+     * The stops are outer joined, so that a route whose stops do not exist is still selected.
+     */
+    public static final String SELECT_ALL_SUMMARIES_HQL_QUERY = "select new uk.ac.ncl.cs.csc2024.route.RouteSummary(" +
+            "r.number, r.frequency, s.description, d.description) from Route r left join r.startStop s " +
+            "left join r.destinationStop d order by r.number asc";
+
+    /**
+     * The name of the 'select the next page of routes after a number' query.
+     */
+    public static final String SELECT_PAGE_AFTER = "Route.selectPageAfter";
+
+    /**
+     * The HQL Query to select the routes after the number in the 'after' parameter, in the same order as the
+     * 'select all routes' query. Limited to a page of results, it seeks straight to the page through the primary
+     * key's index.
+     */
+    public static final String SELECT_PAGE_AFTER_HQL_QUERY = "select r from Route r where r.number > :after order by r.number asc";
+
+    /**
+     * The name of the 'select all routes, with their stops and operators' query.
+     */
+    public static final String SELECT_ALL_JOIN_FETCH = "Route.selectAllJoinFetch";
+
+    /**
+     * The HQL Query for the 'select all routes, with their stops and operators' query, which fetches them in the
+     * same select as the routes (see FetchPlan.JOIN).
+     */
+    public static final String SELECT_ALL_JOIN_FETCH_HQL_QUERY = "select distinct r from Route r " +
+            "left join fetch r.startStop left join fetch r.destinationStop left join fetch r.operators " +
+            "order by r.number asc";
+
+    /**
+     * The name of the 'select all routes, with their stops' query.
+     */
+    public static final String SELECT_ALL_STOPS_JOIN_FETCH = "Route.selectAllStopsJoinFetch";
+
+    /**
+     * The HQL Query for the 'select all routes, with their stops' query. The stops are mapped eagerly, so
+     * otherwise they would each be loaded by a select of their own; fetching them by join does not repeat any
+     * route's row, so a BATCH fetch plan fetches them this way too.
+     */
+    public static final String SELECT_ALL_STOPS_JOIN_FETCH_HQL_QUERY = "select r from Route r " +
+            "left join fetch r.startStop left join fetch r.destinationStop order by r.number asc";
+
+    /**
+     * The HQL Query which initialises the operators of the routes whose numbers are in the 'ids' list parameter
+     * (see FetchPlan.BATCH).
+     */
+    public static final String FETCH_OPERATORS_HQL_QUERY = "select distinct r from Route r " +
+            "left join fetch r.operators where r.number in (:ids)";
+
     /**
      * The primary key for the Route entirety.
      *
@@ -101,6 +255,7 @@ public class Route {
      */
     @OneToOne(cascade = CascadeType.REMOVE)
     @JoinColumn(name = "start_stop_id")
+    @Index(name = "route_start_stop_idx")
     private BusStop startStop;
 
     /**
@@ -108,6 +263,7 @@ public class Route {
      */
     @OneToOne(cascade = CascadeType.REMOVE)
     @JoinColumn(name = "destination_stop_id")
+    @Index(name = "route_destination_stop_idx")
     private BusStop destinationStop;
 
     /**
@@ -118,7 +274,7 @@ public class Route {
             cascade = {CascadeType.REMOVE, CascadeType.REMOVE}
     )
     @JoinTable(
-            name = "operator_route",
+            name = Route.OPERATORS_JOIN_TABLE_NAME,
             joinColumns = @JoinColumn(name = "route_id"),
             inverseJoinColumns = @JoinColumn(name = "operator_id")
     )
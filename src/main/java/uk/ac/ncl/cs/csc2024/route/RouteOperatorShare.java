@@ -0,0 +1,165 @@
+/**
+ * csc2024-hibernate-assignment
+ *
+ * Copyright (c) 2015 Newcastle University
+ * Email: <h.firth@ncl.ac.uk/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ncl.cs.csc2024.route;
+
+import javax.persistence.*;
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * Hibernate entity for a row of the route_operator_share summary table, which records the share of a route's
+ * frequency that one of its operators was last credited with in operator_frequency, along with the route's
+ * number of operators at the time. When the route or its operators change, these are the shares which are taken
+ * back off each operator before the new ones are added. The rows are maintained by OperatorFrequencies, not
+ * written through this entity.
+ *
+ * @author Dylan McKee
+ */
+@Entity
+@IdClass(RouteOperatorShare.Key.class)
+@Table(name = RouteOperatorShare.TABLE_NAME)
+public class RouteOperatorShare {
+
+    /**
+     * The name of the table that the routes' operator shares are stored in.
+     */
+    public static final String TABLE_NAME = "route_operator_share";
+
+    /**
+     * The primary key of a RouteOperatorShare: the route number and operator id.
+     */
+    public static class Key implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private String routeNumber;
+        private int operatorId;
+
+        public Key() {
+        }
+
+        public Key(String routeNumber, int operatorId) {
+            this.routeNumber = routeNumber;
+            this.operatorId = operatorId;
+        }
+
+        public String getRouteNumber() {
+            return routeNumber;
+        }
+
+        public void setRouteNumber(String routeNumber) {
+            this.routeNumber = routeNumber;
+        }
+
+        public int getOperatorId() {
+            return operatorId;
+        }
+
+        public void setOperatorId(int operatorId) {
+            this.operatorId = operatorId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return operatorId == key.operatorId && Objects.equals(routeNumber, key.routeNumber);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(routeNumber, operatorId);
+        }
+    }
+
+    /**
+     * The number of the route; not a foreign key, as the row is removed after the route is.
+     */
+    @Id
+    @Column(name = "route_id")
+    private String routeNumber;
+
+    /**
+     * The id of the operator; not a foreign key, as the row is removed after the operator is.
+     */
+    @Id
+    @Column(name = "operator_id")
+    private int operatorId;
+
+    /**
+     * The number of operators the route had when the share was calculated.
+     */
+    @Column(name = "operator_count")
+    private int operatorCount;
+
+    /**
+     * The route's frequency divided by its number of operators.
+     */
+    @Column(name = "share")
+    private int share;
+
+    public String getRouteNumber() {
+        return routeNumber;
+    }
+
+    public void setRouteNumber(String routeNumber) {
+        this.routeNumber = routeNumber;
+    }
+
+    public int getOperatorId() {
+        return operatorId;
+    }
+
+    public void setOperatorId(int operatorId) {
+        this.operatorId = operatorId;
+    }
+
+    public int getOperatorCount() {
+        return operatorCount;
+    }
+
+    public void setOperatorCount(int operatorCount) {
+        this.operatorCount = operatorCount;
+    }
+
+    public int getShare() {
+        return share;
+    }
+
+    public void setShare(int share) {
+        this.share = share;
+    }
+
+    @Override
+    public String toString() {
+        return "RouteOperatorShare{" +
+                "routeNumber='" + routeNumber + '\'' +
+                ", operatorId=" + operatorId +
+                ", operatorCount=" + operatorCount +
+                ", share=" + share +
+                '}';
+    }
+
+}
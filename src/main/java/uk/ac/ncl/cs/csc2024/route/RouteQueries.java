@@ -20,15 +20,22 @@
 package uk.ac.ncl.cs.csc2024.route;
 
 import org.hibernate.Criteria;
+import org.hibernate.FetchMode;
 import org.hibernate.Query;
 import org.hibernate.Session;
 import org.hibernate.criterion.*;
+import org.hibernate.sql.JoinType;
 import org.hibernate.type.DoubleType;
+import org.hibernate.type.LongType;
 import org.hibernate.type.Type;
 import uk.ac.ncl.cs.csc2024.busstop.BusStop;
+import uk.ac.ncl.cs.csc2024.config.HibernateSettings;
 import uk.ac.ncl.cs.csc2024.operator.Operator;
 import uk.ac.ncl.cs.csc2024.query.ExampleQuery;
+import uk.ac.ncl.cs.csc2024.query.FetchPlan;
 import uk.ac.ncl.cs.csc2024.query.QueryUtilities;
+import uk.ac.ncl.cs.csc2024.query.ReferenceResolver;
+import uk.ac.ncl.cs.csc2024.util.CSVRow;
 
 import java.util.Map;
 import java.util.Set;
@@ -66,6 +73,14 @@ public class RouteQueries {
      */
     private static final String CALCULATE_CUMULATIVE_OPERATOR_FREQUENCY_SQL_QUERY = "SUM(frequency / (select count(*) from operator_route where route_id=number)) as operator_frequency";
 
+    /**
+     * The SQL projection summing each route's frequency divided by its number of operators, qualified by the
+     * route's alias so that it can be grouped by operator; used in the 'cumulativeFrequencyByOperator' and
+     * 'cumulativeFrequencyOfOperator' methods.
+     */
+    private static final String CALCULATE_CUMULATIVE_FREQUENCY_BY_OPERATOR_SQL_QUERY = "sum({alias}.frequency / " +
+            "(select count(*) from operator_route where route_id = {alias}.number)) as operator_frequency";
+
     public static Session insert(Map<String, String> row, Session session) {
         Route route = new Route();
 
@@ -116,11 +131,146 @@ public class RouteQueries {
 
     }
 
+    /**
+     * Inserts a route, as insert(Map, Session) does, but resolves the route's operators and stops through the
+     * resolver passed in rather than with a query per reference.
+     *
+     * @param row the csv row to insert, keyed by column name.
+     * @param session the session to persist the new route to.
+     * @param resolver the resolver to find the route's operators and stops with.
+     * @return the session the route was persisted to.
+     */
+    public static Session insert(Map<String, String> row, Session session, ReferenceResolver resolver) {
+        Route route = new Route();
+        route.setNumber(row.get("number"));
+        route.setFrequency(Integer.parseInt(row.get("frequency")));
+        route.setOperators(resolver.parseOperatorsFromEncodedString(row.get("operators")));
+        route.setStartStop(resolver.findBusStopWithID(Integer.parseInt(row.get("start"))));
+        route.setDestinationStop(resolver.findBusStopWithID(Integer.parseInt(row.get("destination"))));
+
+        session.save(route);
+
+        return session;
+    }
+
+    /**
+     * Inserts a route from a typed csv row; equivalent to insert(Map, Session), but the frequency and stop ids
+     * are parsed straight from the row's buffer rather than via intermediate Strings.
+     *
+     * @param row the csv row to insert.
+     * @param session the session to persist the new route to.
+     * @return the session the route was persisted to.
+     */
+    public static Session insert(CSVRow row, Session session) {
+        Route route = new Route();
+        route.setNumber(row.getString("number"));
+        route.setFrequency(row.getInt("frequency"));
+
+        Set<Operator> operators = QueryUtilities.parseOperatorsFromEncodedString(session, row.getString("operators"));
+        route.setOperators(operators);
+
+        route.setStartStop(QueryUtilities.findBusStopWithID(session, row.getInt("start")));
+        route.setDestinationStop(QueryUtilities.findBusStopWithID(session, row.getInt("destination")));
+
+        session.save(route);
+
+        return session;
+    }
+
+    /**
+     * Inserts every row passed in, as insert(Map, Session) does, with the default batch size.
+     *
+     * @param rows the csv rows to insert.
+     * @param session the session to persist the new routes to.
+     * @return the session the routes were persisted to.
+     */
+    public static Session insertAll(Iterable<Map<String, String>> rows, Session session) {
+        return insertAll(rows, session, HibernateSettings.DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Inserts every row passed in, as insert(Map, Session) does, but flushes and clears the session every
+     * 'batchSize' rows so that the session's first-level cache does not grow without bound. The batch size should
+     * match the JDBC batch size applied by HibernateSettings.applyBatching(...), so that each flush sends full
+     * batches. The operator_route join rows are batched along with the routes themselves.
+     *
+     * Every operator and bus stop id is preloaded into a ReferenceResolver first, so that the routes' references
+     * are resolved in memory rather than with three or more queries per route.
+     *
+     * Entities belonging to the session before this method was called are detached by the clears.
+     *
+     * @param rows the csv rows to insert.
+     * @param session the session to persist the new routes to.
+     * @param batchSize the number of rows to insert between each flush and clear.
+     * @return the session the routes were persisted to.
+     * @throws IllegalArgumentException if the batch size is less than 1; no row is inserted.
+     */
+    public static Session insertAll(Iterable<Map<String, String>> rows, Session session, int batchSize) {
+        final ReferenceResolver resolver = ReferenceResolver.preload(session);
+
+        return QueryUtilities.insertAll(rows, session, batchSize, new QueryUtilities.RowInserter() {
+            @Override
+            public void insert(Map<String, String> row, Session session) {
+                RouteQueries.insert(row, session, resolver);
+            }
+        });
+    }
+
+    /**
+     * Updates the route with the number in the row passed in so that it matches the row, including replacing its
+     * set of operators.
+     *
+     * @param row the csv row holding the route's new values, keyed by column name.
+     * @param session the session to update the route within.
+     * @return the session the route was updated within.
+     * @throws IllegalArgumentException if there is no route with the row's number.
+     */
+    public static Session update(Map<String, String> row, Session session) {
+        String routeNumber = row.get("number");
+        Route route = (Route) session.get(Route.class, routeNumber);
+        if (route == null) {
+            throw new IllegalArgumentException("There is no route numbered '" + routeNumber + "' to update");
+        }
+
+        route.setFrequency(Integer.parseInt(row.get("frequency")));
+        route.setStartStop(QueryUtilities.findBusStopWithID(session, Integer.parseInt(row.get("start"))));
+        route.setDestinationStop(QueryUtilities.findBusStopWithID(session, Integer.parseInt(row.get("destination"))));
+
+        // Replace the contents of the existing set, so that Hibernate only rewrites the join rows that changed.
+        Set<Operator> operators = QueryUtilities.parseOperatorsFromEncodedString(session, row.get("operators"));
+        route.getOperators().retainAll(operators);
+        route.getOperators().addAll(operators);
+
+        return session;
+    }
+
+    /**
+     * Deletes the route with the number passed in, if it exists, along with its links to its operators. The
+     * route's stops and operators are left in place.
+     *
+     * @param number the number of the route to delete.
+     * @param session the session to delete the route within.
+     * @return the session the route was deleted within.
+     */
+    public static Session delete(String number, Session session) {
+        Route route = (Route) session.get(Route.class, number);
+        if (route != null) {
+            // Route's associations cascade removal, so detach them first to stop the stops and operators being
+            // deleted along with the route.
+            route.setStartStop(null);
+            route.setDestinationStop(null);
+            route.getOperators().clear();
+            session.delete(route);
+        }
+
+        return session;
+    }
+
     public static ExampleQuery selectAll() {
         return new ExampleQuery() {
             @Override
             public Query getQuery(Session session) {
-                return session.createQuery(Route.SELECT_ALL_HQL_QUERY);
+                return QueryUtilities.cacheable(session.createQuery(Route.SELECT_ALL_HQL_QUERY));
             }
 
             @Override
@@ -133,6 +283,66 @@ public class RouteQueries {
                 Criteria criteria = session.createCriteria(Route.class, "r");
                 Order ascendingOrder = Order.asc("r.number");
                 criteria.addOrder(ascendingOrder);
+                return QueryUtilities.cacheable(criteria);
+            }
+        };
+    }
+
+    /**
+     * Selects every route, as selectAll() does, loading each route's stops and operators as the fetch plan
+     * specifies, so that a listing which goes on to use them costs a fixed number of statements rather than a
+     * few per route. The stops are mapped eagerly, so both the JOIN and BATCH plans fetch them by join, in the
+     * same select as the routes.
+     *
+     * @param fetchPlan how the routes' stops and operators should be loaded.
+     * @return the queries selecting every route.
+     * @throws IllegalArgumentException if the fetch plan is null.
+     */
+    public static ExampleQuery selectAll(final FetchPlan fetchPlan) {
+        if (fetchPlan == null) {
+            throw new IllegalArgumentException("A fetch plan must be specified");
+        }
+        if (fetchPlan == FetchPlan.LAZY) {
+            return selectAll();
+        }
+
+        return new ExampleQuery() {
+            @Override
+            public Query getQuery(Session session) {
+                if (fetchPlan == FetchPlan.JOIN) {
+                    return session.createQuery(Route.SELECT_ALL_JOIN_FETCH_HQL_QUERY);
+                }
+                return session.createQuery(Route.SELECT_ALL_STOPS_JOIN_FETCH_HQL_QUERY)
+                        .setResultTransformer(FetchPlan.batchFetching(session, Route.FETCH_OPERATORS_HQL_QUERY));
+            }
+
+            @Override
+            public String getNamedQueryName() {
+                return fetchPlan == FetchPlan.JOIN ? Route.SELECT_ALL_JOIN_FETCH : Route.SELECT_ALL_STOPS_JOIN_FETCH;
+            }
+
+            @Override
+            public Query getNamedQuery(Session session) {
+                Query query = session.getNamedQuery(getNamedQueryName());
+                if (fetchPlan == FetchPlan.BATCH) {
+                    query.setResultTransformer(FetchPlan.batchFetching(session, Route.FETCH_OPERATORS_HQL_QUERY));
+                }
+                return query;
+            }
+
+            @Override
+            public Criteria getCriteria(Session session) {
+                Criteria criteria = session.createCriteria(Route.class, "r");
+                criteria.setFetchMode("startStop", FetchMode.JOIN);
+                criteria.setFetchMode("destinationStop", FetchMode.JOIN);
+                criteria.addOrder(Order.asc("r.number"));
+
+                if (fetchPlan == FetchPlan.JOIN) {
+                    criteria.setFetchMode("operators", FetchMode.JOIN);
+                    criteria.setResultTransformer(Criteria.DISTINCT_ROOT_ENTITY);
+                } else {
+                    criteria.setResultTransformer(FetchPlan.batchFetching(session, Route.FETCH_OPERATORS_HQL_QUERY));
+                }
                 return criteria;
             }
         };
@@ -143,7 +353,7 @@ public class RouteQueries {
         return new ExampleQuery() {
             @Override
             public Query getQuery(Session session) {
-                return session.createQuery(Route.SELECT_ALL_RAILWAY_STATION_ROUTES_HQL_QUERY);
+                return QueryUtilities.cacheable(session.createQuery(Route.SELECT_ALL_RAILWAY_STATION_ROUTES_HQL_QUERY));
 
             }
 
@@ -174,16 +384,23 @@ public class RouteQueries {
 
                 criteria.add(logicalOr);
 
-                return criteria;
+                return QueryUtilities.cacheable(criteria);
             }
         };
     }
 
+    /**
+     * Calculates OK Travel's cumulative frequency: the sum, over each of its routes, of the route's frequency
+     * divided by its number of operators. Each route's operators are counted by a correlated subquery; see
+     * OperatorFrequencies for a summary which maintains the total for every operator, to be read by primary key.
+     *
+     * @return the queries calculating OK Travel's cumulative frequency.
+     */
     public static ExampleQuery cumulativeFrequencyByOkTravel() {
         return new ExampleQuery() {
             @Override
             public Query getQuery(Session session) {
-                return session.createQuery(Route.SELECT_CUMULATIVE_FREQUENCY_FOR_OK_TRAVEL_HQL_QUERY);
+                return QueryUtilities.cacheable(session.createQuery(Route.SELECT_CUMULATIVE_FREQUENCY_FOR_OK_TRAVEL_HQL_QUERY));
 
             }
 
@@ -205,7 +422,219 @@ public class RouteQueries {
                 // Cumulative frequency for a given route is the total frequency divided by the number of operators...
                 criteria.setProjection(Projections.sqlProjection(CALCULATE_CUMULATIVE_OPERATOR_FREQUENCY_SQL_QUERY, new String[]{"operator_frequency"}, new Type[]{DoubleType.INSTANCE}));
 
-                return criteria;
+                return QueryUtilities.cacheable(criteria);
+            }
+        };
+    }
+
+    /**
+     * Selects the routes which start or end at a stop with the description specified, ordered by number; the
+     * routes that selectAllForRailwayStation() selects for the Railway Station, except that a route missing one of
+     * its stops is still selected by the other. The description is bound as a parameter in each form, so each
+     * form's query plan and JDBC statement are the same whichever stop is asked for, and can be reused rather than
+     * prepared again for each description.
+     *
+     * @param stopDescription the description of the stop.
+     * @return the queries selecting the routes serving the stop.
+     * @throws IllegalArgumentException if the description is null.
+     */
+    public static ExampleQuery routesServingStop(final String stopDescription) {
+        if (stopDescription == null) {
+            throw new IllegalArgumentException("A stop description is required");
+        }
+
+        return new ExampleQuery() {
+            @Override
+            public Query getQuery(Session session) {
+                return QueryUtilities.cacheable(session.createQuery(Route.SELECT_ROUTES_SERVING_STOP_HQL_QUERY)
+                        .setParameter("description", stopDescription));
+            }
+
+            @Override
+            public String getNamedQueryName() {
+                return Route.SELECT_ROUTES_SERVING_STOP;
+            }
+
+            @Override
+            public Query getNamedQuery(Session session) {
+                return session.getNamedQuery(getNamedQueryName()).setParameter("description", stopDescription);
+            }
+
+            @Override
+            public Criteria getCriteria(Session session) {
+                Criteria criteria = session.createCriteria(Route.class, "r");
+                criteria.createAlias("r.startStop", "s", JoinType.LEFT_OUTER_JOIN);
+                criteria.createAlias("r.destinationStop", "d", JoinType.LEFT_OUTER_JOIN);
+                criteria.add(Restrictions.or(Restrictions.eq("s.description", stopDescription),
+                        Restrictions.eq("d.description", stopDescription)));
+                criteria.addOrder(Order.asc("r.number"));
+                return QueryUtilities.cacheable(criteria);
+            }
+        };
+    }
+
+    /**
+     * Calculates the cumulative frequency of the operator with the name specified, as
+     * cumulativeFrequencyByOkTravel() does for OK Travel, as a Long. The name is bound as a parameter in each
+     * form, so the same query plan and JDBC statement serve every operator.
+     *
+     * @param operatorName the name of the operator.
+     * @return the queries calculating the operator's cumulative frequency.
+     * @throws IllegalArgumentException if the name is null.
+     */
+    public static ExampleQuery cumulativeFrequencyOfOperator(final String operatorName) {
+        if (operatorName == null) {
+            throw new IllegalArgumentException("An operator name is required");
+        }
+
+        return new ExampleQuery() {
+            @Override
+            public Query getQuery(Session session) {
+                return QueryUtilities.cacheable(session.createQuery(Route.SELECT_CUMULATIVE_FREQUENCY_OF_OPERATOR_HQL_QUERY)
+                        .setParameter("name", operatorName));
+            }
+
+            @Override
+            public String getNamedQueryName() {
+                return Route.CUMULATIVE_FREQUENCY_OF_OPERATOR;
+            }
+
+            @Override
+            public Query getNamedQuery(Session session) {
+                return session.getNamedQuery(getNamedQueryName()).setParameter("name", operatorName);
+            }
+
+            @Override
+            public Criteria getCriteria(Session session) {
+                Criteria criteria = session.createCriteria(Route.class, "r");
+                criteria.createAlias("r.operators", "o");
+                criteria.add(Restrictions.eq("o.name", operatorName));
+                criteria.setProjection(Projections.sqlProjection(CALCULATE_CUMULATIVE_FREQUENCY_BY_OPERATOR_SQL_QUERY,
+                        new String[]{"operator_frequency"}, new Type[]{LongType.INSTANCE}));
+                return QueryUtilities.cacheable(criteria);
+            }
+        };
+    }
+
+    /**
+     * Calculates the cumulative frequency of every operator which operates a route at once, as
+     * cumulativeFrequencyByOkTravel() does for OK Travel, in a single select grouped by operator rather than a
+     * select per operator. Each result is an Object[] of the operator's name and its cumulative frequency (a
+     * Long), ordered by name; see CumulativeFrequencyCalculator.toMap(List) for the results as a Map, and
+     * CumulativeFrequencyCalculator.calculate(Session) to calculate them in memory instead.
+     *
+     * @return the queries calculating every operator's cumulative frequency.
+     */
+    public static ExampleQuery cumulativeFrequencyByOperator() {
+        return new ExampleQuery() {
+            @Override
+            public Query getQuery(Session session) {
+                return QueryUtilities.cacheable(session.createQuery(Route.SELECT_CUMULATIVE_FREQUENCY_BY_OPERATOR_HQL_QUERY));
+            }
+
+            @Override
+            public String getNamedQueryName() {
+                return Route.CUMULATIVE_FREQUENCY_BY_OPERATOR;
+            }
+
+            @Override
+            public Criteria getCriteria(Session session) {
+                Criteria criteria = session.createCriteria(Route.class, "r");
+                criteria.createAlias("r.operators", "o");
+                criteria.setProjection(Projections.projectionList()
+                        .add(Projections.groupProperty("o.name"))
+                        .add(Projections.sqlProjection(CALCULATE_CUMULATIVE_FREQUENCY_BY_OPERATOR_SQL_QUERY,
+                                new String[]{"operator_frequency"}, new Type[]{LongType.INSTANCE})));
+                criteria.addOrder(Order.asc("o.name"));
+                return QueryUtilities.cacheable(criteria);
+            }
+        };
+    }
+
+    /**
+     * Selects a RouteSummary of every route, ordered by number, for listings which only need each route's
+     * frequency and the descriptions of its stops. The stops are joined into the same select, and the summaries
+     * are built straight from each row, so no Route, BusStop or Operator is loaded into the session.
+     *
+     * @return the queries selecting a summary of every route.
+     */
+    public static ExampleQuery selectAllSummaries() {
+        return new ExampleQuery() {
+            @Override
+            public Query getQuery(Session session) {
+                return QueryUtilities.cacheable(session.createQuery(Route.SELECT_ALL_SUMMARIES_HQL_QUERY));
+            }
+
+            @Override
+            public String getNamedQueryName() {
+                return Route.SELECT_ALL_SUMMARIES;
+            }
+
+            @Override
+            public Criteria getCriteria(Session session) {
+                Criteria criteria = session.createCriteria(Route.class, "r");
+                criteria.createAlias("r.startStop", "s", JoinType.LEFT_OUTER_JOIN);
+                criteria.createAlias("r.destinationStop", "d", JoinType.LEFT_OUTER_JOIN);
+                criteria.setProjection(Projections.projectionList()
+                        .add(Projections.property("r.number"))
+                        .add(Projections.property("r.frequency"))
+                        .add(Projections.property("s.description"))
+                        .add(Projections.property("d.description")));
+                criteria.addOrder(Order.asc("r.number"));
+                criteria.setResultTransformer(QueryUtilities.constructorTransformer(RouteSummary.class,
+                        String.class, int.class, String.class, String.class));
+                return QueryUtilities.cacheable(criteria);
+            }
+        };
+    }
+
+    /**
+     * Selects the page of routes which follows the route with the number specified, in the same order as
+     * selectAll(). Each page is found by seeking past the previous page's last number rather than by skipping an
+     * offset, so a page deep into the results costs no more than the first; pass the last number of each page to
+     * fetch the next, until a page comes back with fewer than pageSize results.
+     *
+     * @param afterNumber the number of the last route on the previous page, or null for the first page.
+     * @param pageSize the largest number of routes to select.
+     * @return the queries selecting the page of routes.
+     * @throws IllegalArgumentException if the page size is less than 1.
+     */
+    public static ExampleQuery selectPageAfter(final String afterNumber, final int pageSize) {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("The page size must be at least 1, not " + pageSize);
+        }
+
+        return new ExampleQuery() {
+            @Override
+            public Query getQuery(Session session) {
+                Query query = afterNumber == null ? session.createQuery(Route.SELECT_ALL_HQL_QUERY)
+                        : session.createQuery(Route.SELECT_PAGE_AFTER_HQL_QUERY).setParameter("after", afterNumber);
+                return QueryUtilities.cacheable(query.setMaxResults(pageSize));
+            }
+
+            @Override
+            public String getNamedQueryName() {
+                return afterNumber == null ? Route.SELECT_ALL : Route.SELECT_PAGE_AFTER;
+            }
+
+            @Override
+            public Query getNamedQuery(Session session) {
+                Query query = session.getNamedQuery(getNamedQueryName());
+                if (afterNumber != null) {
+                    query.setParameter("after", afterNumber);
+                }
+                return query.setMaxResults(pageSize);
+            }
+
+            @Override
+            public Criteria getCriteria(Session session) {
+                Criteria criteria = session.createCriteria(Route.class, "r");
+                if (afterNumber != null) {
+                    criteria.add(Restrictions.gt("r.number", afterNumber));
+                }
+                criteria.addOrder(Order.asc("r.number"));
+                criteria.setMaxResults(pageSize);
+                return QueryUtilities.cacheable(criteria);
             }
         };
     }
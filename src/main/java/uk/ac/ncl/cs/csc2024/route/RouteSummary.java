@@ -0,0 +1,117 @@
+/**
+ * csc2024-hibernate-assignment
+ *
+ * Copyright (c) 2015 Newcastle University
+ * Email: <h.firth@ncl.ac.uk/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ncl.cs.csc2024.route;
+
+import java.util.Objects;
+
+/**
+ * An immutable, read-only view of a route, projected straight from the route and bus_stop tables by the queries
+ * of RouteQueries.selectAllSummaries() rather than loaded as a managed Route entity. The start and destination
+ * stops are reduced to their descriptions, which are null for a stop that does not exist.
+ *
+ * @author Dylan McKee
+ */
+public final class RouteSummary {
+
+    private final String number;
+    private final int frequency;
+    private final String startStopDescription;
+    private final String destinationStopDescription;
+
+    /**
+     * Creates a summary of a route; called by Hibernate with the columns a summary query projects.
+     *
+     * @param number the number of the route.
+     * @param frequency the number of times the route is operated per hour.
+     * @param startStopDescription the description of the stop the route starts at, or null.
+     * @param destinationStopDescription the description of the stop the route finishes at, or null.
+     */
+    public RouteSummary(String number, int frequency, String startStopDescription,
+                        String destinationStopDescription) {
+        this.number = number;
+        this.frequency = frequency;
+        this.startStopDescription = startStopDescription;
+        this.destinationStopDescription = destinationStopDescription;
+    }
+
+    /**
+     * Returns the number of this route.
+     * @return the number of the route.
+     */
+    public String getNumber() {
+        return number;
+    }
+
+    /**
+     * Returns the number of times this route is operated per hour.
+     * @return the frequency of the route.
+     */
+    public int getFrequency() {
+        return frequency;
+    }
+
+    /**
+     * Returns the description of the stop this route starts at.
+     * @return the start stop's description, or null if the route has no start stop.
+     */
+    public String getStartStopDescription() {
+        return startStopDescription;
+    }
+
+    /**
+     * Returns the description of the stop this route finishes at.
+     * @return the destination stop's description, or null if the route has no destination stop.
+     */
+    public String getDestinationStopDescription() {
+        return destinationStopDescription;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+
+        RouteSummary that = (RouteSummary) o;
+
+        return frequency == that.frequency && Objects.equals(number, that.number) &&
+                Objects.equals(startStopDescription, that.startStopDescription) &&
+                Objects.equals(destinationStopDescription, that.destinationStopDescription);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(number, frequency, startStopDescription, destinationStopDescription);
+    }
+
+    @Override
+    public String toString() {
+        return "RouteSummary{" +
+                "number='" + number + '\'' +
+                ", frequency=" + frequency +
+                ", startStopDescription='" + startStopDescription + '\'' +
+                ", destinationStopDescription='" + destinationStopDescription + '\'' +
+                '}';
+    }
+
+}
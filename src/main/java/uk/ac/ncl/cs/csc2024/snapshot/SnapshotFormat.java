@@ -0,0 +1,144 @@
+/**
+ * csc2024-hibernate-assignment
+ *
+ * Copyright (c) 2015 Newcastle University
+ * Email: <h.firth@ncl.ac.uk/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ncl.cs.csc2024.snapshot;
+
+import uk.ac.ncl.cs.csc2024.busstop.BusStop;
+import uk.ac.ncl.cs.csc2024.operator.Operator;
+import uk.ac.ncl.cs.csc2024.route.Route;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Constants and primitive encodings shared by the SnapshotWriter and SnapshotLoader.
+ *
+ * A snapshot file is laid out as:
+ *
+ *   int    MAGIC
+ *   short  VERSION
+ *   then one section per table, in the order BUS_STOPS, OPERATORS, ROUTES, OPERATOR_ROUTES, each consisting of
+ *   byte   the section's tag
+ *   rows   each preceded by a ROW marker byte
+ *   byte   END_OF_SECTION
+ *
+ * Ids are written as primitive ints; Strings are written as an int byte length (-1 for null) followed by their
+ * UTF-8 bytes; nullable ints are written as a boolean presence flag followed by the int if present.
+ *
+ * @author Dylan McKee
+ */
+final class SnapshotFormat {
+
+    /**
+     * The first four bytes of every snapshot file ("BUSS").
+     */
+    static final int MAGIC = 0x42555353;
+
+    /**
+     * The version of the snapshot format written by this version of the code.
+     */
+    static final short VERSION = 1;
+
+    /**
+     * Section tags.
+     */
+    static final byte BUS_STOPS = 1;
+    static final byte OPERATORS = 2;
+    static final byte ROUTES = 3;
+    static final byte OPERATOR_ROUTES = 4;
+
+    /**
+     * Row markers.
+     */
+    static final byte ROW = 1;
+    static final byte END_OF_SECTION = 0;
+
+    /**
+     * The SQL used to read and write each table's rows; the columns are in the order they appear in the file.
+     */
+    static final String SELECT_BUS_STOPS_SQL = "select id, description from " + BusStop.TABLE_NAME + " order by id";
+    static final String INSERT_BUS_STOP_SQL = "insert into " + BusStop.TABLE_NAME + " (id, description) values (?, ?)";
+
+    static final String SELECT_OPERATORS_SQL = "select id, name, street, town, postcode, email, phone from " +
+            Operator.TABLE_NAME + " order by id";
+    static final String INSERT_OPERATOR_SQL = "insert into " + Operator.TABLE_NAME +
+            " (id, name, street, town, postcode, email, phone) values (?, ?, ?, ?, ?, ?, ?)";
+
+    static final String SELECT_ROUTES_SQL = "select number, frequency, start_stop_id, destination_stop_id from " +
+            Route.TABLE_NAME + " order by number";
+    static final String INSERT_ROUTE_SQL = "insert into " + Route.TABLE_NAME +
+            " (number, frequency, start_stop_id, destination_stop_id) values (?, ?, ?, ?)";
+
+    static final String SELECT_OPERATOR_ROUTES_SQL = "select operator_id, route_id from " +
+            Route.OPERATORS_JOIN_TABLE_NAME + " order by route_id, operator_id";
+    static final String INSERT_OPERATOR_ROUTE_SQL = "insert into " + Route.OPERATORS_JOIN_TABLE_NAME +
+            " (operator_id, route_id) values (?, ?)";
+
+    /**
+     * Constants only; not to be instantiated.
+     */
+    private SnapshotFormat() {
+    }
+
+    /**
+     * Writes a length-prefixed UTF-8 String, which may be null.
+     */
+    static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Reads a String written by writeString(...).
+     */
+    static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes an int which may be null.
+     */
+    static void writeNullableInt(DataOutputStream out, Integer value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeInt(value);
+        }
+    }
+
+    /**
+     * Reads an int written by writeNullableInt(...).
+     */
+    static Integer readNullableInt(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readInt() : null;
+    }
+
+}
@@ -0,0 +1,227 @@
+/**
+ * csc2024-hibernate-assignment
+ *
+ * Copyright (c) 2015 Newcastle University
+ * Email: <h.firth@ncl.ac.uk/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ncl.cs.csc2024.snapshot;
+
+import org.hibernate.Session;
+import org.hibernate.jdbc.Work;
+import uk.ac.ncl.cs.csc2024.config.PooledIdGenerator;
+import uk.ac.ncl.cs.csc2024.operator.Operator;
+import uk.ac.ncl.cs.csc2024.query.QueryUtilities;
+import uk.ac.ncl.cs.csc2024.route.OperatorFrequencies;
+import uk.ac.ncl.cs.csc2024.stats.TableStatistics;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+
+import static uk.ac.ncl.cs.csc2024.snapshot.SnapshotFormat.*;
+
+/**
+ * Restores a snapshot written by SnapshotWriter into the bus_stop, operator, route and operator_route tables.
+ *
+ * The rows are inserted with batched JDBC prepared statements on the session's connection, bypassing entity
+ * hydration, dirty checking and the first-level cache entirely, so restoring is bounded by disk and database
+ * bandwidth rather than ORM overhead. Operator ids are restored as they were written, so the join rows remain
+ * valid, and the operator id sequence is then moved past the highest restored id. Any cached entities and query results
+ * are evicted, as the second-level cache cannot see the restored rows, the operator frequency summary is
+ * rebuilt if it is maintained (see OperatorFrequencies), and any TableStatistics are invalidated.
+ *
+ * The tables are expected to be empty. The load runs within the caller's transaction; as the session's
+ * persistence context knows nothing of the restored rows, entities already loaded in the session should not be
+ * relied upon afterwards.
+ *
+ * @author Dylan McKee
+ */
+public final class SnapshotLoader {
+
+    /**
+     * The size of the input buffer.
+     */
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    /**
+     * The number of rows sent to the database per JDBC batch.
+     */
+    private static final int BATCH_SIZE = 1000;
+
+    /**
+     * Static methods only; not to be instantiated.
+     */
+    private SnapshotLoader() {
+    }
+
+    /**
+     * Restores the snapshot at the path specified using the session passed in.
+     *
+     * @param snapshot the path of the snapshot to restore.
+     * @param session the Hibernate session whose connection (and transaction) the rows should be inserted with.
+     * @return the session the snapshot was restored to.
+     * @throws IOException if the snapshot could not be read.
+     * @throws IllegalArgumentException if the file is not a snapshot, or was written by an unsupported version.
+     */
+    public static Session load(Path snapshot, Session session) throws IOException {
+        session.flush();
+
+        try (final DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(snapshot), BUFFER_SIZE))) {
+            if (in.readInt() != MAGIC) {
+                throw new IllegalArgumentException("The file at " + snapshot + " is not a snapshot");
+            }
+            short version = in.readShort();
+            if (version != VERSION) {
+                throw new IllegalArgumentException("The snapshot at " + snapshot + " is version " + version +
+                        ", but only version " + VERSION + " is supported");
+            }
+
+            session.doWork(new Work() {
+                @Override
+                public void execute(Connection connection) throws SQLException {
+                    try {
+                        expectSection(in, BUS_STOPS);
+                        loadBusStops(connection, in);
+                        expectSection(in, OPERATORS);
+                        loadOperators(connection, in);
+                        expectSection(in, ROUTES);
+                        loadRoutes(connection, in);
+                        expectSection(in, OPERATOR_ROUTES);
+                        loadOperatorRoutes(connection, in);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        PooledIdGenerator.advancePastMaxId(session, Operator.ID_GENERATOR_NAME, Operator.TABLE_NAME, "id");
+        OperatorFrequencies.rebuild(session);
+        TableStatistics.invalidate(session);
+        return QueryUtilities.evictCachedData(session);
+    }
+
+    private static void loadBusStops(Connection connection, DataInputStream in) throws SQLException, IOException {
+        try (PreparedStatement statement = connection.prepareStatement(INSERT_BUS_STOP_SQL)) {
+            int batched = 0;
+            while (nextRow(in)) {
+                statement.setInt(1, in.readInt());
+                statement.setString(2, readString(in));
+                batched = addToBatch(statement, batched);
+            }
+            statement.executeBatch();
+        }
+    }
+
+    private static void loadOperators(Connection connection, DataInputStream in) throws SQLException, IOException {
+        try (PreparedStatement statement = connection.prepareStatement(INSERT_OPERATOR_SQL)) {
+            int batched = 0;
+            while (nextRow(in)) {
+                statement.setInt(1, in.readInt());
+                for (int column = 2; column <= 7; column++) {
+                    statement.setString(column, readString(in));
+                }
+                batched = addToBatch(statement, batched);
+            }
+            statement.executeBatch();
+        }
+    }
+
+    private static void loadRoutes(Connection connection, DataInputStream in) throws SQLException, IOException {
+        try (PreparedStatement statement = connection.prepareStatement(INSERT_ROUTE_SQL)) {
+            int batched = 0;
+            while (nextRow(in)) {
+                statement.setString(1, readString(in));
+                statement.setInt(2, in.readInt());
+                setNullableInt(statement, 3, readNullableInt(in));
+                setNullableInt(statement, 4, readNullableInt(in));
+                batched = addToBatch(statement, batched);
+            }
+            statement.executeBatch();
+        }
+    }
+
+    private static void loadOperatorRoutes(Connection connection, DataInputStream in) throws SQLException, IOException {
+        try (PreparedStatement statement = connection.prepareStatement(INSERT_OPERATOR_ROUTE_SQL)) {
+            int batched = 0;
+            while (nextRow(in)) {
+                statement.setInt(1, in.readInt());
+                statement.setString(2, readString(in));
+                batched = addToBatch(statement, batched);
+            }
+            statement.executeBatch();
+        }
+    }
+
+    /**
+     * Adds the current parameters to the statement's batch, executing the batch once it is full.
+     *
+     * @return the number of rows now waiting in the batch.
+     */
+    private static int addToBatch(PreparedStatement statement, int batched) throws SQLException {
+        statement.addBatch();
+        if (++batched == BATCH_SIZE) {
+            statement.executeBatch();
+            return 0;
+        }
+        return batched;
+    }
+
+    private static void setNullableInt(PreparedStatement statement, int index, Integer value) throws SQLException {
+        if (value == null) {
+            statement.setNull(index, Types.INTEGER);
+        } else {
+            statement.setInt(index, value);
+        }
+    }
+
+    /**
+     * Reads the marker before each row of a section, failing if it is neither a row nor the end of the section.
+     *
+     * @return true if a row follows, or false if the section has ended.
+     */
+    private static boolean nextRow(DataInputStream in) throws IOException {
+        byte marker = in.readByte();
+        if (marker == ROW) {
+            return true;
+        }
+        if (marker == END_OF_SECTION) {
+            return false;
+        }
+        throw new IOException("Expected a snapshot row or the end of its section but found " + marker);
+    }
+
+    /**
+     * Reads a section tag, failing if it is not the one expected.
+     */
+    private static void expectSection(DataInputStream in, byte expected) throws IOException {
+        byte tag = in.readByte();
+        if (tag != expected) {
+            throw new IOException("Expected snapshot section " + expected + " but found " + tag);
+        }
+    }
+
+}
@@ -0,0 +1,178 @@
+/**
+ * csc2024-hibernate-assignment
+ *
+ * Copyright (c) 2015 Newcastle University
+ * Email: <h.firth@ncl.ac.uk/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ncl.cs.csc2024.snapshot;
+
+import org.hibernate.Session;
+import org.hibernate.jdbc.Work;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import static uk.ac.ncl.cs.csc2024.snapshot.SnapshotFormat.*;
+
+/**
+ * Dumps the contents of the bus_stop, operator, route and operator_route tables to a compact binary snapshot
+ * (see SnapshotFormat), which SnapshotLoader can restore far faster than rebuilding the database from the csv
+ * files through the 'Queries' classes' insert methods.
+ *
+ * Rows are streamed straight from JDBC result sets to the file, so no entities are hydrated and memory use does
+ * not grow with the size of the tables. The snapshot is written to a temporary file and moved into place once
+ * complete, so a crash part way through never leaves a truncated snapshot behind.
+ *
+ * @author Dylan McKee
+ */
+public final class SnapshotWriter {
+
+    /**
+     * The size of the output buffer.
+     */
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    /**
+     * The number of rows the JDBC driver should fetch per round trip when reading each table.
+     */
+    private static final int FETCH_SIZE = 1000;
+
+    /**
+     * Static methods only; not to be instantiated.
+     */
+    private SnapshotWriter() {
+    }
+
+    /**
+     * Writes a snapshot of the current database contents, as seen by the session passed in, to the path specified.
+     * Any pending changes in the session are flushed first so that they are included.
+     *
+     * @param session the Hibernate session to read the tables within.
+     * @param snapshot the path to write the snapshot to; replaced if it already exists.
+     * @throws IOException if the snapshot could not be written.
+     */
+    public static void write(Session session, Path snapshot) throws IOException {
+        session.flush();
+
+        Path absolute = snapshot.toAbsolutePath();
+        final Path temporary = Files.createTempFile(absolute.getParent(), absolute.getFileName().toString(), ".tmp");
+        try {
+            try (final DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(temporary), BUFFER_SIZE))) {
+                out.writeInt(MAGIC);
+                out.writeShort(VERSION);
+
+                session.doWork(new Work() {
+                    @Override
+                    public void execute(Connection connection) throws SQLException {
+                        try {
+                            writeBusStops(connection, out);
+                            writeOperators(connection, out);
+                            writeRoutes(connection, out);
+                            writeOperatorRoutes(connection, out);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+
+            Files.move(temporary, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    private static void writeBusStops(Connection connection, DataOutputStream out) throws SQLException, IOException {
+        out.writeByte(BUS_STOPS);
+        try (PreparedStatement statement = connection.prepareStatement(SELECT_BUS_STOPS_SQL)) {
+            statement.setFetchSize(FETCH_SIZE);
+            try (ResultSet results = statement.executeQuery()) {
+                while (results.next()) {
+                    out.writeByte(ROW);
+                    out.writeInt(results.getInt(1));
+                    writeString(out, results.getString(2));
+                }
+            }
+        }
+        out.writeByte(END_OF_SECTION);
+    }
+
+    private static void writeOperators(Connection connection, DataOutputStream out) throws SQLException, IOException {
+        out.writeByte(OPERATORS);
+        try (PreparedStatement statement = connection.prepareStatement(SELECT_OPERATORS_SQL)) {
+            statement.setFetchSize(FETCH_SIZE);
+            try (ResultSet results = statement.executeQuery()) {
+                while (results.next()) {
+                    out.writeByte(ROW);
+                    out.writeInt(results.getInt(1));
+                    for (int column = 2; column <= 7; column++) {
+                        writeString(out, results.getString(column));
+                    }
+                }
+            }
+        }
+        out.writeByte(END_OF_SECTION);
+    }
+
+    private static void writeRoutes(Connection connection, DataOutputStream out) throws SQLException, IOException {
+        out.writeByte(ROUTES);
+        try (PreparedStatement statement = connection.prepareStatement(SELECT_ROUTES_SQL)) {
+            statement.setFetchSize(FETCH_SIZE);
+            try (ResultSet results = statement.executeQuery()) {
+                while (results.next()) {
+                    out.writeByte(ROW);
+                    writeString(out, results.getString(1));
+                    out.writeInt(results.getInt(2));
+
+                    int startStopId = results.getInt(3);
+                    writeNullableInt(out, results.wasNull() ? null : startStopId);
+
+                    int destinationStopId = results.getInt(4);
+                    writeNullableInt(out, results.wasNull() ? null : destinationStopId);
+                }
+            }
+        }
+        out.writeByte(END_OF_SECTION);
+    }
+
+    private static void writeOperatorRoutes(Connection connection, DataOutputStream out) throws SQLException, IOException {
+        out.writeByte(OPERATOR_ROUTES);
+        try (PreparedStatement statement = connection.prepareStatement(SELECT_OPERATOR_ROUTES_SQL)) {
+            statement.setFetchSize(FETCH_SIZE);
+            try (ResultSet results = statement.executeQuery()) {
+                while (results.next()) {
+                    out.writeByte(ROW);
+                    out.writeInt(results.getInt(1));
+                    writeString(out, results.getString(2));
+                }
+            }
+        }
+        out.writeByte(END_OF_SECTION);
+    }
+
+}
@@ -0,0 +1,93 @@
+/**
+ * csc2024-hibernate-assignment
+ *
+ * Copyright (c) 2015 Newcastle University
+ * Email: <h.firth@ncl.ac.uk/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ncl.cs.csc2024.stats;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.SecondLevelCacheStatistics;
+import org.hibernate.stat.Statistics;
+
+import java.util.Arrays;
+
+/**
+ * Reports the hit and miss counts of a session factory's second-level cache regions and of its query cache, so
+ * that the regions configured by HibernateSettings.applyCaching(...) can be sized against real workloads.
+ *
+ * The counts are only collected while the session factory's statistics are enabled, which applyCaching(...)
+ * does.
+ *
+ * @author Dylan McKee
+ */
+public final class CacheStatistics {
+
+    /**
+     * Static methods only; not to be instantiated.
+     */
+    private CacheStatistics() {
+    }
+
+    /**
+     * Returns the proportion of lookups which were hits, or 0 if there have been no lookups.
+     *
+     * @param hits the number of lookups which found a cached value.
+     * @param misses the number of lookups which did not.
+     * @return the hit ratio, between 0 and 1.
+     */
+    public static double hitRatio(long hits, long misses) {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    /**
+     * Returns a report of every second-level cache region of the session factory passed in, one line per region
+     * in name order, followed by the query cache's totals.
+     *
+     * @param sessionFactory the session factory to report on.
+     * @return the report, one region per line.
+     */
+    public static String report(SessionFactory sessionFactory) {
+        Statistics statistics = sessionFactory.getStatistics();
+        StringBuilder report = new StringBuilder();
+
+        String[] regionNames = statistics.getSecondLevelCacheRegionNames();
+        Arrays.sort(regionNames);
+        for (String regionName : regionNames) {
+            SecondLevelCacheStatistics region = statistics.getSecondLevelCacheStatistics(regionName);
+            if (region == null) {
+                continue;
+            }
+            appendLine(report, regionName, region.getHitCount(), region.getMissCount(), region.getPutCount());
+            report.append(", elements=").append(region.getElementCountInMemory());
+        }
+
+        appendLine(report, "query cache", statistics.getQueryCacheHitCount(), statistics.getQueryCacheMissCount(),
+                statistics.getQueryCachePutCount());
+        return report.toString();
+    }
+
+    private static void appendLine(StringBuilder report, String name, long hits, long misses, long puts) {
+        if (report.length() > 0) {
+            report.append('\n');
+        }
+        report.append(name).append(": hits=").append(hits).append(", misses=").append(misses)
+                .append(", puts=").append(puts)
+                .append(String.format(", hit ratio=%.2f", hitRatio(hits, misses)));
+    }
+
+}
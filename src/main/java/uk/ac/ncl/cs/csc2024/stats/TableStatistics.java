@@ -0,0 +1,401 @@
+/**
+ * csc2024-hibernate-assignment
+ *
+ * Copyright (c) 2015 Newcastle University
+ * Email: <h.firth@ncl.ac.uk/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ncl.cs.csc2024.stats;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.action.spi.AfterTransactionCompletionProcess;
+import org.hibernate.action.spi.BeforeTransactionCompletionProcess;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.*;
+import uk.ac.ncl.cs.csc2024.busstop.BusStop;
+import uk.ac.ncl.cs.csc2024.operator.Operator;
+import uk.ac.ncl.cs.csc2024.route.Route;
+
+import java.io.Serializable;
+import java.util.*;
+
+/**
+ * Keeps the row count and the smallest and largest id of the bus_stop, operator and route tables in memory, so
+ * that they can be read (for example, to allocate the next bus stop id) without counting or scanning a table.
+ *
+ * The statistics are kept up to date by listeners on the session factory, which apply each BusStop, Operator or
+ * Route inserted or deleted through a Session once its transaction has committed. A table's statistics are read
+ * from the database (with a single aggregate select, in a session of their own) the first time they are needed,
+ * and again if the row holding the smallest or largest id is deleted, as the next one along cannot otherwise be
+ * known. Rows written with plain SQL (such as by a snapshot restore, a bulk load or an upsert) are not seen by the
+ * listeners, so those loaders invalidate the statistics once their transaction has completed.
+ *
+ * The statistics are those of the committed rows, as at the last commit to have been applied; a commit is
+ * applied just after it completes, so the statistics may briefly trail a transaction which has only just
+ * committed. Each commit which inserts or deletes rows of a table is counted as in flight from just before it
+ * completes until it has been applied, and statistics read from the database while any commit is in flight
+ * are returned but not kept, as they may already include a commit which is still to be applied to them.
+ *
+ * @author Dylan McKee
+ */
+public final class TableStatistics {
+
+    /**
+     * The statistics maintained for each session factory passed to maintain(...).
+     */
+    private static final Map<SessionFactory, TableStatistics> MAINTAINED =
+            Collections.synchronizedMap(new WeakHashMap<SessionFactory, TableStatistics>());
+
+    /**
+     * The statistics of each table, keyed by the name of the entity stored in it.
+     */
+    private final Map<String, EntityStatistics> entities = new HashMap<>();
+
+    private final SessionFactory sessionFactory;
+
+    private TableStatistics(SessionFactory sessionFactory) {
+        this.sessionFactory = sessionFactory;
+        for (Class<?> entityClass : new Class<?>[] {BusStop.class, Operator.class, Route.class}) {
+            entities.put(entityClass.getName(), new EntityStatistics(entityClass.getName()));
+        }
+    }
+
+    /**
+     * Starts maintaining the statistics of the session factory passed in, registering the listeners which keep
+     * them up to date; if they are already maintained, returns the existing statistics.
+     *
+     * @param sessionFactory the session factory whose tables to keep statistics of.
+     * @return the session factory's statistics.
+     */
+    public static TableStatistics maintain(SessionFactory sessionFactory) {
+        synchronized (MAINTAINED) {
+            TableStatistics statistics = MAINTAINED.get(sessionFactory);
+            if (statistics == null) {
+                statistics = new TableStatistics(sessionFactory);
+                Listener listener = statistics.new Listener();
+                EventListenerRegistry registry = ((SessionFactoryImplementor) sessionFactory).getServiceRegistry()
+                        .getService(EventListenerRegistry.class);
+                registry.appendListeners(EventType.POST_INSERT, listener);
+                registry.appendListeners(EventType.POST_DELETE, listener);
+                MAINTAINED.put(sessionFactory, statistics);
+            }
+            return statistics;
+        }
+    }
+
+    /**
+     * Returns the statistics maintained for the session factory passed in.
+     *
+     * @param sessionFactory the session factory.
+     * @return the session factory's statistics, or null if they are not maintained.
+     */
+    public static TableStatistics of(SessionFactory sessionFactory) {
+        return MAINTAINED.get(sessionFactory);
+    }
+
+    /**
+     * Invalidates the statistics of the session's session factory, now and once the session's current
+     * transaction has completed, for use after the tables have been written with plain SQL in that transaction.
+     * Has no effect if the statistics are not maintained.
+     *
+     * @param session the session the tables were written with.
+     * @return the session passed in.
+     */
+    public static Session invalidate(Session session) {
+        final TableStatistics statistics = of(session.getSessionFactory());
+        if (statistics == null) {
+            return session;
+        }
+
+        statistics.invalidate();
+        // The rows may be read back before they are committed, so invalidate them again once they have been.
+        ((EventSource) session).getActionQueue().registerProcess(new AfterTransactionCompletionProcess() {
+            @Override
+            public void doAfterTransactionCompletion(boolean success, SessionImplementor session) {
+                statistics.invalidate();
+            }
+        });
+        return session;
+    }
+
+    /**
+     * Discards the statistics of every table, so that they are read from the database when next needed.
+     */
+    public void invalidate() {
+        for (EntityStatistics entity : entities.values()) {
+            entity.invalidate();
+        }
+    }
+
+    /**
+     * Returns the number of rows in the table of the entity specified.
+     *
+     * @param entityClass BusStop, Operator or Route.
+     * @return the table's row count.
+     * @throws IllegalArgumentException if statistics are not kept for the entity.
+     */
+    public long rowCount(Class<?> entityClass) {
+        return statisticsOf(entityClass).current().rowCount;
+    }
+
+    /**
+     * Returns the smallest id in the table of the entity specified.
+     *
+     * @param entityClass BusStop, Operator or Route.
+     * @param <K> the type of the entity's id: Integer for BusStop and Operator, String for Route.
+     * @return the smallest id, or null if the table is empty.
+     * @throws IllegalArgumentException if statistics are not kept for the entity.
+     */
+    @SuppressWarnings("unchecked")
+    public <K extends Comparable<? super K>> K minId(Class<?> entityClass) {
+        return (K) statisticsOf(entityClass).current().minId;
+    }
+
+    /**
+     * Returns the largest id in the table of the entity specified.
+     *
+     * @param entityClass BusStop, Operator or Route.
+     * @param <K> the type of the entity's id: Integer for BusStop and Operator, String for Route.
+     * @return the largest id, or null if the table is empty.
+     * @throws IllegalArgumentException if statistics are not kept for the entity.
+     */
+    @SuppressWarnings("unchecked")
+    public <K extends Comparable<? super K>> K maxId(Class<?> entityClass) {
+        return (K) statisticsOf(entityClass).current().maxId;
+    }
+
+    private EntityStatistics statisticsOf(Class<?> entityClass) {
+        EntityStatistics entity = entities.get(entityClass.getName());
+        if (entity == null) {
+            throw new IllegalArgumentException("Statistics are not kept for " + entityClass.getName());
+        }
+        return entity;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder report = new StringBuilder("TableStatistics{");
+        for (EntityStatistics entity : entities.values()) {
+            report.append(entity).append(", ");
+        }
+        report.setLength(report.length() - 2);
+        return report.append('}').toString();
+    }
+
+    /**
+     * A table's row count and smallest and largest ids, at one point in time.
+     */
+    private static final class Values {
+        final long rowCount;
+        final Comparable<Object> minId;
+        final Comparable<Object> maxId;
+
+        Values(long rowCount, Comparable<Object> minId, Comparable<Object> maxId) {
+            this.rowCount = rowCount;
+            this.minId = minId;
+            this.maxId = maxId;
+        }
+    }
+
+    /**
+     * The statistics of one entity's table.
+     */
+    private final class EntityStatistics {
+
+        private final String entityName;
+
+        /**
+         * The statistics, or null if they must be read from the database.
+         */
+        private Values values;
+
+        /**
+         * The number of inserts, deletes and invalidations applied so far. Statistics read from the database are
+         * only kept if none were applied while they were being read, as they may or may not include it.
+         */
+        private long modificationCount;
+
+        /**
+         * The number of inserts and deletes whose transactions have started to complete but have not yet been
+         * applied. Statistics read from the database are only kept if there are none once the read has finished,
+         * as a commit may reach the database before the read but be applied after it.
+         */
+        private int inFlightCount;
+
+        EntityStatistics(String entityName) {
+            this.entityName = entityName;
+        }
+
+        Values current() {
+            long modificationCountBeforeRead;
+            synchronized (this) {
+                if (values != null) {
+                    return values;
+                }
+                modificationCountBeforeRead = modificationCount;
+            }
+
+            Values read = read();
+            synchronized (this) {
+                if (values == null && modificationCount == modificationCountBeforeRead && inFlightCount == 0) {
+                    values = read;
+                }
+            }
+            return read;
+        }
+
+        @SuppressWarnings("unchecked")
+        private Values read() {
+            StatelessSession session = sessionFactory.openStatelessSession();
+            try {
+                Object[] row = (Object[]) session.createQuery("select count(e), min(e.id), max(e.id) from " +
+                        entityName + " e").uniqueResult();
+                return new Values(((Number) row[0]).longValue(), (Comparable<Object>) row[1],
+                        (Comparable<Object>) row[2]);
+            } finally {
+                session.close();
+            }
+        }
+
+        synchronized void inserted(Serializable id) {
+            modificationCount++;
+            if (values == null) {
+                return;
+            }
+
+            @SuppressWarnings("unchecked")
+            Comparable<Object> insertedId = (Comparable<Object>) id;
+            values = new Values(values.rowCount + 1,
+                    values.minId == null || insertedId.compareTo(values.minId) < 0 ? insertedId : values.minId,
+                    values.maxId == null || insertedId.compareTo(values.maxId) > 0 ? insertedId : values.maxId);
+        }
+
+        synchronized void deleted(Serializable id) {
+            modificationCount++;
+            if (values == null) {
+                return;
+            }
+
+            if (id.equals(values.minId) || id.equals(values.maxId)) {
+                // The next smallest (or largest) id is not known, so it must be read again.
+                values = null;
+            } else {
+                values = new Values(values.rowCount - 1, values.minId, values.maxId);
+            }
+        }
+
+        synchronized void invalidate() {
+            modificationCount++;
+            values = null;
+        }
+
+        synchronized void completing() {
+            inFlightCount++;
+        }
+
+        synchronized void completed() {
+            inFlightCount--;
+        }
+
+        @Override
+        public synchronized String toString() {
+            String name = entityName.substring(entityName.lastIndexOf('.') + 1);
+            if (values == null) {
+                return name + "=not read";
+            }
+            return name + "{rowCount=" + values.rowCount + ", minId=" + values.minId + ", maxId=" +
+                    values.maxId + '}';
+        }
+    }
+
+    /**
+     * An insert or delete waiting for its transaction to complete, which is counted as in flight from just before
+     * the transaction completes, and applied (if the transaction committed) just after.
+     */
+    private static final class PendingChange
+            implements BeforeTransactionCompletionProcess, AfterTransactionCompletionProcess {
+
+        private final EntityStatistics entity;
+        private final Serializable id;
+        private final boolean insert;
+
+        /**
+         * Whether doBeforeTransactionCompletion(...) has run; it does not run when a transaction is rolled back.
+         */
+        private boolean completing;
+
+        PendingChange(EntityStatistics entity, Serializable id, boolean insert) {
+            this.entity = entity;
+            this.id = id;
+            this.insert = insert;
+        }
+
+        @Override
+        public void doBeforeTransactionCompletion(SessionImplementor session) {
+            entity.completing();
+            completing = true;
+        }
+
+        @Override
+        public void doAfterTransactionCompletion(boolean success, SessionImplementor session) {
+            // The change is applied before it stops being in flight, so a read never finds it as neither.
+            if (success) {
+                if (insert) {
+                    entity.inserted(id);
+                } else {
+                    entity.deleted(id);
+                }
+            }
+            if (completing) {
+                entity.completed();
+            }
+        }
+    }
+
+    /**
+     * Applies each BusStop, Operator and Route inserted or deleted to the statistics of its table, once its
+     * transaction has committed.
+     */
+    private final class Listener implements PostInsertEventListener, PostDeleteEventListener {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public void onPostInsert(PostInsertEvent event) {
+            register(event.getSession(), event.getPersister().getEntityName(), event.getId(), true);
+        }
+
+        @Override
+        public void onPostDelete(PostDeleteEvent event) {
+            register(event.getSession(), event.getPersister().getEntityName(), event.getId(), false);
+        }
+
+        private void register(EventSource session, String entityName, Serializable id, boolean insert) {
+            EntityStatistics entity = entities.get(entityName);
+            if (entity == null) {
+                return;
+            }
+
+            PendingChange change = new PendingChange(entity, id, insert);
+            session.getActionQueue().registerProcess((BeforeTransactionCompletionProcess) change);
+            session.getActionQueue().registerProcess((AfterTransactionCompletionProcess) change);
+        }
+    }
+
+}
@@ -0,0 +1,101 @@
+/**
+ * csc2024-hibernate-assignment
+ *
+ * Copyright (c) 2015 Newcastle University
+ * Email: <h.firth@ncl.ac.uk/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ncl.cs.csc2024.util;
+
+import java.util.*;
+
+/**
+ * The header line of a csv file, resolved once into a mapping of column name to column index so that every row
+ * read from the file can share it rather than holding its own copy of the column names.
+ *
+ * @author Dylan McKee
+ */
+public final class CSVHeader {
+
+    /**
+     * The column names, in the order they appear in the csv file.
+     */
+    private final List<String> names;
+
+    /**
+     * The index of each column, keyed by column name.
+     */
+    private final Map<String, Integer> indexes;
+
+    /**
+     * Creates a header from the column names passed in.
+     * @param names the column names, in the order they appear in the csv file.
+     */
+    public CSVHeader(List<String> names) {
+        this.names = Collections.unmodifiableList(new ArrayList<>(names));
+        this.indexes = new HashMap<>((names.size() * 4 / 3) + 1);
+        for (int i = 0; i < names.size(); i++) {
+            indexes.put(names.get(i), i);
+        }
+    }
+
+    /**
+     * Returns the number of columns in this header.
+     * @return the number of columns.
+     */
+    public int size() {
+        return names.size();
+    }
+
+    /**
+     * Returns the column names, in the order they appear in the csv file.
+     * @return an unmodifiable list of the column names.
+     */
+    public List<String> getNames() {
+        return names;
+    }
+
+    /**
+     * Returns the index of the column with the name passed in.
+     *
+     * @param name the name of the column to find.
+     * @return the zero-based index of the column.
+     * @throws IllegalArgumentException if there is no column with that name.
+     */
+    public int indexOf(String name) {
+        Integer index = indexes.get(name);
+        if (index == null) {
+            throw new IllegalArgumentException("There is no column named '" + name + "' in the csv header " + names);
+        }
+        return index;
+    }
+
+    /**
+     * Returns true iff this header contains a column with the name passed in.
+     * @param name the column name to look for.
+     * @return true iff there is a column with that name.
+     */
+    public boolean contains(String name) {
+        return indexes.containsKey(name);
+    }
+
+    @Override
+    public String toString() {
+        return "CSVHeader{" +
+                "names=" + names +
+                '}';
+    }
+
+}
@@ -0,0 +1,314 @@
+/**
+ * csc2024-hibernate-assignment
+ *
+ * Copyright (c) 2015 Newcastle University
+ * Email: <h.firth@ncl.ac.uk/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ncl.cs.csc2024.util;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A single row of a csv file, stored as a set of field offsets into a character buffer rather than as a Map of
+ * Strings.
+ *
+ * Column names are resolved through a CSVHeader shared by every row of the file, and integer columns are parsed
+ * straight from the buffer without creating an intermediate String. Rows returned by a CSVRowReader share the
+ * reader's buffer, and are only valid until the reader is next advanced; use copy() to keep a row for longer.
+ *
+ * Fields are split on ',' with the same rules as String.split(","), so a row contains exactly the same values as
+ * the equivalent row returned by FileUtils.readSimpleCSV(...).
+ *
+ * @author Dylan McKee
+ */
+public final class CSVRow {
+
+    /**
+     * The header of the csv file this row was read from.
+     */
+    private final CSVHeader header;
+
+    /**
+     * The buffer holding this row's characters.
+     */
+    private char[] buffer;
+
+    /**
+     * The offset of the first character of each field in the buffer.
+     */
+    private int[] starts;
+
+    /**
+     * The offset just past the last character of each field in the buffer.
+     */
+    private int[] ends;
+
+    /**
+     * The number of fields in this row.
+     */
+    private int fieldCount;
+
+    /**
+     * The (one-based) line number of this row in the csv file.
+     */
+    private long lineNumber;
+
+    /**
+     * Creates an empty row for the header passed in; populated by calling parse(...).
+     * @param header the header of the csv file the row belongs to.
+     */
+    CSVRow(CSVHeader header) {
+        this.header = header;
+        this.starts = new int[Math.max(header.size(), 1)];
+        this.ends = new int[Math.max(header.size(), 1)];
+    }
+
+    /**
+     * Points this row at the line held in buffer[from, to), splitting it into fields.
+     *
+     * @param buffer the buffer holding the line.
+     * @param from the offset of the first character of the line.
+     * @param to the offset just past the last character of the line (excluding any line terminator).
+     * @param lineNumber the line number of the line in the csv file.
+     */
+    void parse(char[] buffer, int from, int to, long lineNumber) {
+        this.buffer = buffer;
+        this.lineNumber = lineNumber;
+        this.fieldCount = 0;
+
+        int fieldStart = from;
+        for (int i = from; i < to; i++) {
+            if (buffer[i] == ',') {
+                addField(fieldStart, i);
+                fieldStart = i + 1;
+            }
+        }
+
+        if (fieldCount == 0) {
+            // No separators at all; String.split(",") returns the whole line, even if it is empty.
+            addField(from, to);
+            return;
+        }
+
+        addField(fieldStart, to);
+
+        // String.split(",") discards trailing empty fields, so do the same.
+        while (fieldCount > 0 && starts[fieldCount - 1] == ends[fieldCount - 1]) {
+            fieldCount--;
+        }
+    }
+
+    /**
+     * Records a field spanning buffer[start, end), growing the offset arrays if necessary.
+     */
+    private void addField(int start, int end) {
+        if (fieldCount == starts.length) {
+            starts = Arrays.copyOf(starts, fieldCount * 2);
+            ends = Arrays.copyOf(ends, fieldCount * 2);
+        }
+        starts[fieldCount] = start;
+        ends[fieldCount] = end;
+        fieldCount++;
+    }
+
+    /**
+     * Returns the header of the csv file this row was read from.
+     * @return the csv file's header.
+     */
+    public CSVHeader getHeader() {
+        return header;
+    }
+
+    /**
+     * Returns the number of fields in this row.
+     * @return the number of fields.
+     */
+    public int size() {
+        return fieldCount;
+    }
+
+    /**
+     * Returns the (one-based) line number of this row in the csv file it was read from.
+     * @return the line number of this row.
+     */
+    public long getLineNumber() {
+        return lineNumber;
+    }
+
+    /**
+     * Returns the value of the field at the index passed in as a String.
+     * @param index the index of the field.
+     * @return the field's value.
+     */
+    public String getString(int index) {
+        checkIndex(index);
+        return new String(buffer, starts[index], ends[index] - starts[index]);
+    }
+
+    /**
+     * Returns the value of the named column as a String.
+     * @param column the name of the column.
+     * @return the column's value in this row.
+     */
+    public String getString(String column) {
+        return getString(header.indexOf(column));
+    }
+
+    /**
+     * Parses the field at the index passed in as a base 10 int, directly from the row's buffer, with the same
+     * rules as Integer.parseInt(...).
+     *
+     * @param index the index of the field.
+     * @return the field's value as an int.
+     * @throws NumberFormatException if the field does not contain a parsable int.
+     */
+    public int getInt(int index) {
+        checkIndex(index);
+
+        int start = starts[index];
+        int end = ends[index];
+        if (start == end) {
+            throw new NumberFormatException("For input string: \"\" on line " + lineNumber);
+        }
+
+        boolean negative = false;
+        char first = buffer[start];
+        if (first == '-' || first == '+') {
+            negative = first == '-';
+            start++;
+            if (start == end) {
+                throw invalidInt(index);
+            }
+        }
+
+        // Accumulate negatively, as Integer.parseInt(...) does, so that Integer.MIN_VALUE can be represented.
+        int limit = negative ? Integer.MIN_VALUE : -Integer.MAX_VALUE;
+        int result = 0;
+        for (int i = start; i < end; i++) {
+            int digit = buffer[i] - '0';
+            if (digit < 0 || digit > 9 || result < limit / 10) {
+                throw invalidInt(index);
+            }
+            result *= 10;
+            if (result < limit + digit) {
+                throw invalidInt(index);
+            }
+            result -= digit;
+        }
+
+        return negative ? result : -result;
+    }
+
+    /**
+     * Parses the value of the named column as a base 10 int.
+     *
+     * @param column the name of the column.
+     * @return the column's value in this row as an int.
+     * @throws NumberFormatException if the column does not contain a parsable int.
+     */
+    public int getInt(String column) {
+        return getInt(header.indexOf(column));
+    }
+
+    /**
+     * Returns true iff the field at the index passed in is equal to the character sequence passed in, without
+     * creating a String for the field.
+     *
+     * @param index the index of the field.
+     * @param value the value to compare the field to.
+     * @return true iff the field contains exactly the characters of 'value'.
+     */
+    public boolean fieldEquals(int index, CharSequence value) {
+        checkIndex(index);
+        int length = ends[index] - starts[index];
+        if (length != value.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (buffer[starts[index] + i] != value.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns a copy of this row which has its own buffer, and so remains valid after the reader it came from has
+     * moved on to the next line.
+     *
+     * @return an independent copy of this row.
+     */
+    public CSVRow copy() {
+        int from = fieldCount == 0 ? 0 : starts[0];
+        int to = fieldCount == 0 ? 0 : ends[fieldCount - 1];
+
+        CSVRow copy = new CSVRow(header);
+        copy.buffer = Arrays.copyOfRange(buffer, from, to);
+        copy.starts = new int[fieldCount];
+        copy.ends = new int[fieldCount];
+        for (int i = 0; i < fieldCount; i++) {
+            copy.starts[i] = starts[i] - from;
+            copy.ends[i] = ends[i] - from;
+        }
+        copy.fieldCount = fieldCount;
+        copy.lineNumber = lineNumber;
+        return copy;
+    }
+
+    /**
+     * Converts this row to the Map form returned by FileUtils.readSimpleCSV(...).
+     * @return a Map of column name to value for this row.
+     */
+    public Map<String, String> toMap() {
+        Map<String, String> map = new HashMap<>((fieldCount * 4 / 3) + 1);
+        for (int i = 0; i < fieldCount && i < header.size(); i++) {
+            map.put(header.getNames().get(i), getString(i));
+        }
+        return map;
+    }
+
+    /**
+     * Throws an IndexOutOfBoundsException if the index passed in is not a field of this row.
+     */
+    private void checkIndex(int index) {
+        if (index < 0 || index >= fieldCount) {
+            throw new IndexOutOfBoundsException("Field " + index + " does not exist on line " + lineNumber +
+                    ", which has " + fieldCount + " fields");
+        }
+    }
+
+    /**
+     * Creates the exception thrown when a field cannot be parsed as an int.
+     */
+    private NumberFormatException invalidInt(int index) {
+        return new NumberFormatException("For input string: \"" + getString(index) + "\" on line " + lineNumber);
+    }
+
+    /**
+     * A human readable representation of the CSVRow class.
+     * @return a String describing this row.
+     */
+    @Override
+    public String toString() {
+        return "CSVRow{" +
+                "lineNumber=" + lineNumber +
+                ", values=" + toMap() +
+                '}';
+    }
+
+}
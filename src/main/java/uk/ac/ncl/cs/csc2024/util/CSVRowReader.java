@@ -0,0 +1,283 @@
+/**
+ * csc2024-hibernate-assignment
+ *
+ * Copyright (c) 2015 Newcastle University
+ * Email: <h.firth@ncl.ac.uk/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ncl.cs.csc2024.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads a csv file in the same limited format as FileUtils.readSimpleCSV(...) into typed, header-indexed CSVRow
+ * instances.
+ *
+ * The file is read incrementally into a single character buffer, and each row is a view of one line of that
+ * buffer. The same CSVRow instance is returned for every line, so no per-row Maps or Strings are created unless
+ * the caller asks for them; a row is only valid until the next call to hasNext() or next().
+ *
+ * @author Dylan McKee
+ */
+public final class CSVRowReader implements Iterator<CSVRow>, Closeable {
+
+    /**
+     * The initial size of the character buffer; grown if a single line does not fit.
+     */
+    private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The path to the csv file being read; kept for error messages.
+     */
+    private final Path csv;
+
+    /**
+     * The reader over the underlying csv file.
+     */
+    private final Reader reader;
+
+    /**
+     * The header read from the first line of the csv file.
+     */
+    private final CSVHeader header;
+
+    /**
+     * The row instance re-used for every line of the file.
+     */
+    private final CSVRow row;
+
+    /**
+     * The buffer that lines are read into.
+     */
+    private char[] buffer = new char[INITIAL_BUFFER_SIZE];
+
+    /**
+     * The offset of the first unconsumed character in the buffer.
+     */
+    private int position;
+
+    /**
+     * The offset just past the last valid character in the buffer.
+     */
+    private int limit;
+
+    /**
+     * True once the underlying reader has been exhausted.
+     */
+    private boolean endOfFile;
+
+    /**
+     * The start and end (excluding the line terminator) of the next line in the buffer, or -1 if it has not yet
+     * been located.
+     */
+    private int lineStart = -1;
+    private int lineEnd = -1;
+
+    /**
+     * The line number of the most recently located line.
+     */
+    private long lineNumber;
+
+    /**
+     * Opens the csv file at the path specified and reads its header line.
+     *
+     * @param csv the path of the csv file to read.
+     * @throws IOException if the file could not be opened or read.
+     * @throws IllegalArgumentException if the file does not have a recognisable header line.
+     */
+    public CSVRowReader(Path csv) throws IOException {
+        this.csv = csv;
+        this.reader = Files.newBufferedReader(csv, Charset.defaultCharset());
+
+        if (!locateNextLine()) {
+            reader.close();
+            throw unrecognisedFormat();
+        }
+
+        String headerLine = new String(buffer, lineStart, lineEnd - lineStart);
+        String[] keys = headerLine.split(",");
+        if (keys.length == 0) {
+            reader.close();
+            throw unrecognisedFormat();
+        }
+
+        List<String> names = new ArrayList<>(keys.length);
+        for (String key : keys) {
+            names.add(key);
+        }
+        this.header = new CSVHeader(names);
+        this.row = new CSVRow(header);
+        lineStart = -1;
+    }
+
+    /**
+     * Returns the header read from the first line of the csv file.
+     * @return the csv file's header.
+     */
+    public CSVHeader getHeader() {
+        return header;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (lineStart >= 0) {
+            return true;
+        }
+        try {
+            return locateNextLine();
+        } catch (IOException e) {
+            throw new UncheckedIOException("The csv at " + csv + " could not be read", e);
+        }
+    }
+
+    /**
+     * Parses the next line of the csv file into the shared row instance and returns it.
+     *
+     * @return the row for the next line of the file; only valid until this reader is next advanced.
+     * @throws NoSuchElementException if there are no more rows in the file.
+     * @throws IllegalArgumentException if the row does not have the same number of columns as the header.
+     */
+    @Override
+    public CSVRow next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException("There are no more rows in the csv at " + csv);
+        }
+
+        row.parse(buffer, lineStart, lineEnd, lineNumber);
+        lineStart = -1;
+
+        if (row.size() != header.size()) {
+            throw unrecognisedFormat();
+        }
+        return row;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException("Rows cannot be removed from a csv file");
+    }
+
+    @Override
+    public void close() throws IOException {
+        endOfFile = true;
+        position = limit;
+        lineStart = -1;
+        reader.close();
+    }
+
+    /**
+     * Finds the next line in the buffer, reading more of the file if necessary, and records its bounds in
+     * lineStart/lineEnd. Both '\n' and "\r\n" line terminators are recognised.
+     *
+     * @return true iff another line was found.
+     */
+    private boolean locateNextLine() throws IOException {
+        int scanFrom = position;
+        while (true) {
+            for (int i = scanFrom; i < limit; i++) {
+                if (buffer[i] == '\n') {
+                    setLine(position, i);
+                    position = i + 1;
+                    return true;
+                }
+            }
+
+            if (endOfFile) {
+                if (position < limit) {
+                    // The last line of the file has no terminator.
+                    setLine(position, limit);
+                    position = limit;
+                    return true;
+                }
+                return false;
+            }
+
+            scanFrom = limit - position;
+            fill();
+        }
+    }
+
+    /**
+     * Records the bounds of a located line, dropping a trailing '\r' if present.
+     */
+    private void setLine(int start, int end) {
+        if (end > start && buffer[end - 1] == '\r') {
+            end--;
+        }
+        lineStart = start;
+        lineEnd = end;
+        lineNumber++;
+    }
+
+    /**
+     * Moves any unconsumed characters to the start of the buffer (growing it if it is already full of them), and
+     * then reads as much of the file as will fit into the remaining space.
+     */
+    private void fill() throws IOException {
+        int remaining = limit - position;
+        if (remaining == buffer.length) {
+            char[] larger = new char[buffer.length * 2];
+            System.arraycopy(buffer, position, larger, 0, remaining);
+            buffer = larger;
+        } else if (position > 0) {
+            System.arraycopy(buffer, position, buffer, 0, remaining);
+        }
+        position = 0;
+        limit = remaining;
+
+        int read = reader.read(buffer, limit, buffer.length - limit);
+        if (read < 0) {
+            endOfFile = true;
+        } else {
+            limit += read;
+        }
+    }
+
+    /**
+     * Wraps the reader passed in as an Iterable, for use in a for-each loop. The returned Iterable may only be
+     * iterated once, and the reader it wraps should be closed by the caller.
+     *
+     * @param reader the reader to wrap.
+     * @return an Iterable that returns the reader passed in.
+     */
+    public static Iterable<CSVRow> iterable(final CSVRowReader reader) {
+        return new Iterable<CSVRow>() {
+            @Override
+            public Iterator<CSVRow> iterator() {
+                return reader;
+            }
+        };
+    }
+
+    /**
+     * Creates the exception thrown when the csv file is not in the expected format; using the same message as
+     * FileUtils.readSimpleCSV(...).
+     */
+    private IllegalArgumentException unrecognisedFormat() {
+        return new IllegalArgumentException("The csv at " + csv + " is of an unrecognised format and could " +
+                "not be parsed");
+    }
+
+}
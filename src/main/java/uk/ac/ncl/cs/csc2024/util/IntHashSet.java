@@ -0,0 +1,179 @@
+/**
+ * csc2024-hibernate-assignment
+ *
+ * Copyright (c) 2015 Newcastle University
+ * Email: <h.firth@ncl.ac.uk/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ncl.cs.csc2024.util;
+
+import java.util.Arrays;
+
+/**
+ * A set of primitive ints, stored in an open-addressed int array rather than as boxed Integers, so that holding
+ * millions of ids (such as every bus stop id) costs a few bytes per id rather than tens.
+ *
+ * Not thread safe.
+ *
+ * @author Dylan McKee
+ */
+public final class IntHashSet {
+
+    /**
+     * The value used to mark an empty slot. Zero itself is tracked separately by containsZero.
+     */
+    private static final int EMPTY = 0;
+
+    /**
+     * The maximum proportion of slots that may be occupied before the table is grown.
+     */
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private int[] slots;
+    private int size;
+    private boolean containsZero;
+
+    /**
+     * Creates an empty set.
+     */
+    public IntHashSet() {
+        this(16);
+    }
+
+    /**
+     * Creates an empty set sized to hold the number of values specified without growing.
+     * @param expectedSize the number of values the set is expected to hold.
+     */
+    public IntHashSet(int expectedSize) {
+        int capacity = 16;
+        while (capacity * LOAD_FACTOR < expectedSize) {
+            capacity <<= 1;
+        }
+        slots = new int[capacity];
+    }
+
+    /**
+     * Adds a value to the set.
+     * @param value the value to add.
+     * @return true iff the value was not already in the set.
+     */
+    public boolean add(int value) {
+        if (value == EMPTY) {
+            if (containsZero) {
+                return false;
+            }
+            containsZero = true;
+            size++;
+            return true;
+        }
+
+        int mask = slots.length - 1;
+        int index = mix(value) & mask;
+        while (slots[index] != EMPTY) {
+            if (slots[index] == value) {
+                return false;
+            }
+            index = (index + 1) & mask;
+        }
+
+        slots[index] = value;
+        size++;
+        if (size > slots.length * LOAD_FACTOR) {
+            grow();
+        }
+        return true;
+    }
+
+    /**
+     * Returns true iff the value is in the set.
+     * @param value the value to look for.
+     * @return true iff the set contains the value.
+     */
+    public boolean contains(int value) {
+        if (value == EMPTY) {
+            return containsZero;
+        }
+
+        int mask = slots.length - 1;
+        int index = mix(value) & mask;
+        while (slots[index] != EMPTY) {
+            if (slots[index] == value) {
+                return true;
+            }
+            index = (index + 1) & mask;
+        }
+        return false;
+    }
+
+    /**
+     * Returns the number of values in the set.
+     * @return the size of the set.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the values in the set, in no particular order.
+     * @return a new array containing every value in the set.
+     */
+    public int[] toArray() {
+        int[] values = new int[size];
+        int i = 0;
+        if (containsZero) {
+            values[i++] = 0;
+        }
+        for (int slot : slots) {
+            if (slot != EMPTY) {
+                values[i++] = slot;
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Doubles the size of the table and re-inserts every value.
+     */
+    private void grow() {
+        int[] old = slots;
+        slots = new int[old.length * 2];
+        int mask = slots.length - 1;
+        for (int value : old) {
+            if (value != EMPTY) {
+                int index = mix(value) & mask;
+                while (slots[index] != EMPTY) {
+                    index = (index + 1) & mask;
+                }
+                slots[index] = value;
+            }
+        }
+    }
+
+    /**
+     * Scrambles the bits of a value so that sequential ids spread evenly over the table.
+     */
+    private static int mix(int value) {
+        int h = value * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    @Override
+    public String toString() {
+        int[] values = toArray();
+        Arrays.sort(values);
+        return "IntHashSet" + Arrays.toString(values);
+    }
+
+}
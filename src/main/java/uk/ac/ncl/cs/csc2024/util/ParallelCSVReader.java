@@ -0,0 +1,311 @@
+/**
+ * csc2024-hibernate-assignment
+ *
+ * Copyright (c) 2015 Newcastle University
+ * Email: <h.firth@ncl.ac.uk/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ncl.cs.csc2024.util;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A parallel counterpart to FileUtils.readSimpleCSV(...) for large files.
+ *
+ * The body of the file is split into byte ranges whose boundaries are moved forward to the next line break, and
+ * each range is memory-mapped, decoded and tokenised as a separate task on a ForkJoinPool. The rows of each range
+ * are then concatenated in file order, so the result is exactly the List that FileUtils.readSimpleCSV(...) would
+ * return for the same file, with the same header and column count checks.
+ *
+ * Splitting on raw bytes relies on '\n' never appearing inside a multi-byte character, which holds for ASCII,
+ * UTF-8 and the ISO-8859 family; files in any other default charset are read sequentially instead.
+ *
+ * @author Dylan McKee
+ */
+public final class ParallelCSVReader {
+
+    /**
+     * The smallest byte range worth handing to a separate task.
+     */
+    private static final long MIN_CHUNK_SIZE = 1024 * 1024;
+
+    /**
+     * The largest byte range parsed by a single task; also keeps each mapping well below the 2GB mapping limit.
+     */
+    private static final long MAX_CHUNK_SIZE = 64 * 1024 * 1024;
+
+    /**
+     * The number of chunks to aim for per thread in the pool, so that threads which finish early can steal work.
+     */
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    /**
+     * The number of bytes read at a time when searching for a line break.
+     */
+    private static final int SCAN_BUFFER_SIZE = 8 * 1024;
+
+    /**
+     * Static methods only; not to be instantiated.
+     */
+    private ParallelCSVReader() {
+    }
+
+    /**
+     * Reads the csv file at the path specified on the common ForkJoinPool.
+     *
+     * @param csv the path of the csv file to read.
+     * @return the rows of the file, in file order, as Maps of column name to value.
+     * @throws IOException if the file could not be read.
+     * @throws IllegalArgumentException if the file is not in the expected format.
+     */
+    public static List<Map<String, String>> readSimpleCSV(Path csv) throws IOException {
+        return readSimpleCSV(csv, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Reads the csv file at the path specified, parsing its chunks on the pool passed in.
+     *
+     * @param csv the path of the csv file to read.
+     * @param pool the pool to parse the file's chunks on.
+     * @return the rows of the file, in file order, as Maps of column name to value.
+     * @throws IOException if the file could not be read.
+     * @throws IllegalArgumentException if the file is not in the expected format.
+     */
+    public static List<Map<String, String>> readSimpleCSV(Path csv, ForkJoinPool pool) throws IOException {
+        Charset charset = Charset.defaultCharset();
+        if (!isNewlineSafe(charset)) {
+            return FileUtils.readSimpleCSV(csv);
+        }
+
+        try (FileChannel channel = FileChannel.open(csv, StandardOpenOption.READ)) {
+            long size = channel.size();
+
+            // Read and validate the header line.
+            long headerEnd = findLineStart(channel, 0, size);
+            ByteBuffer headerBytes = ByteBuffer.allocate((int) headerEnd);
+            readFully(channel, headerBytes, 0);
+            headerBytes.flip();
+            String headerLine = stripLineTerminator(charset.decode(headerBytes).toString());
+            String[] keys = headerLine.split(",");
+            if (size == 0 || keys.length == 0) {
+                throw unrecognisedFormat(csv);
+            }
+            CSVHeader header = new CSVHeader(Arrays.asList(keys));
+
+            // Split the rest of the file into line-aligned chunks.
+            List<Long> boundaries = new ArrayList<>();
+            boundaries.add(headerEnd);
+            long bodySize = size - headerEnd;
+            long chunkSize = Math.min(MAX_CHUNK_SIZE,
+                    Math.max(MIN_CHUNK_SIZE, bodySize / (pool.getParallelism() * CHUNKS_PER_THREAD)));
+            long position = headerEnd;
+            while (position < size) {
+                position = position + chunkSize >= size ? size : findLineStart(channel, position + chunkSize, size);
+                boundaries.add(position);
+            }
+
+            int chunkCount = boundaries.size() - 1;
+            List<List<Map<String, String>>> results = new ArrayList<>(Collections.<List<Map<String, String>>>nCopies(chunkCount, null));
+            pool.invoke(new ParseChunksTask(csv, channel, charset, header, boundaries, results, 0, chunkCount));
+
+            int rowCount = 0;
+            for (List<Map<String, String>> chunkRows : results) {
+                rowCount += chunkRows.size();
+            }
+            List<Map<String, String>> rows = new ArrayList<>(rowCount);
+            for (List<Map<String, String>> chunkRows : results) {
+                rows.addAll(chunkRows);
+            }
+            return rows;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * A task which parses the chunks in the range [from, to), splitting itself in half until only one chunk
+     * remains. The rows of each chunk are stored in the results list at the chunk's index, so that file order can
+     * be restored once every chunk has been parsed.
+     */
+    private static final class ParseChunksTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Path csv;
+        private final FileChannel channel;
+        private final Charset charset;
+        private final CSVHeader header;
+        private final List<Long> boundaries;
+        private final List<List<Map<String, String>>> results;
+        private final int from;
+        private final int to;
+
+        ParseChunksTask(Path csv, FileChannel channel, Charset charset, CSVHeader header, List<Long> boundaries,
+                        List<List<Map<String, String>>> results, int from, int to) {
+            this.csv = csv;
+            this.channel = channel;
+            this.charset = charset;
+            this.header = header;
+            this.boundaries = boundaries;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new ParseChunksTask(csv, channel, charset, header, boundaries, results, from, middle),
+                        new ParseChunksTask(csv, channel, charset, header, boundaries, results, middle, to));
+                return;
+            }
+
+            long start = boundaries.get(from);
+            long end = boundaries.get(from + 1);
+            try {
+                MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+                CharBuffer chars = charset.decode(bytes);
+                results.set(from, parseLines(chars));
+            } catch (IOException e) {
+                throw new UncheckedIOException("The csv at " + csv + " could not be read", e);
+            }
+        }
+
+        /**
+         * Splits a decoded chunk into lines, and each line into a row, reusing CSVRow's tokenising so that fields
+         * are split exactly as String.split(",") would split them.
+         */
+        private List<Map<String, String>> parseLines(CharBuffer chars) {
+            char[] buffer;
+            int offset;
+            int length = chars.remaining();
+            if (chars.hasArray()) {
+                buffer = chars.array();
+                offset = chars.arrayOffset() + chars.position();
+            } else {
+                buffer = new char[length];
+                chars.get(buffer);
+                offset = 0;
+            }
+
+            List<Map<String, String>> rows = new ArrayList<>();
+            CSVRow row = new CSVRow(header);
+            int lineStart = offset;
+            int end = offset + length;
+            for (int i = offset; i <= end; i++) {
+                if (i < end && buffer[i] != '\n') {
+                    continue;
+                }
+                if (i == end && lineStart == end) {
+                    // Nothing after the final line break.
+                    break;
+                }
+
+                int lineEnd = i;
+                if (lineEnd > lineStart && buffer[lineEnd - 1] == '\r') {
+                    lineEnd--;
+                }
+                row.parse(buffer, lineStart, lineEnd, 0);
+                if (row.size() != header.size()) {
+                    throw unrecognisedFormat(csv);
+                }
+                rows.add(row.toMap());
+                lineStart = i + 1;
+            }
+            return rows;
+        }
+    }
+
+    /**
+     * Returns the offset just past the first '\n' at or after the position passed in, or the end of the file if
+     * there is no later line break.
+     */
+    private static long findLineStart(FileChannel channel, long position, long size) throws IOException {
+        ByteBuffer scan = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+        while (position < size) {
+            scan.clear();
+            int read = channel.read(scan, position);
+            if (read < 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (scan.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    /**
+     * Fills the buffer passed in from the channel, starting at the position specified.
+     */
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                break;
+            }
+            position += read;
+        }
+    }
+
+    /**
+     * Removes a trailing "\n" or "\r\n" from the line passed in.
+     */
+    private static String stripLineTerminator(String line) {
+        int end = line.length();
+        if (end > 0 && line.charAt(end - 1) == '\n') {
+            end--;
+        }
+        if (end > 0 && line.charAt(end - 1) == '\r') {
+            end--;
+        }
+        return line.substring(0, end);
+    }
+
+    /**
+     * Returns true iff the charset passed in encodes '\n' as the single byte 0x0A and never uses that byte within
+     * the encoding of another character.
+     */
+    private static boolean isNewlineSafe(Charset charset) {
+        String name = charset.name();
+        return name.equals("UTF-8") || name.equals("US-ASCII") || name.startsWith("ISO-8859-")
+                || name.startsWith("windows-125");
+    }
+
+    /**
+     * Creates the exception thrown when the csv file is not in the expected format; using the same message as
+     * FileUtils.readSimpleCSV(...).
+     */
+    private static IllegalArgumentException unrecognisedFormat(Path csv) {
+        return new IllegalArgumentException("The csv at " + csv + " is of an unrecognised format and could " +
+                "not be parsed");
+    }
+
+}
@@ -0,0 +1,190 @@
+/**
+ * csc2024-hibernate-assignment
+ *
+ * Copyright (c) 2015 Newcastle University
+ * Email: <h.firth@ncl.ac.uk/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ncl.cs.csc2024.util;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * A streaming counterpart to FileUtils.readSimpleCSV(...), which reads rows from a file in the same limited csv
+ * format one line at a time rather than loading the whole file into memory first.
+ *
+ * Rows are produced in the same Map form as FileUtils.readSimpleCSV(...), so they can be passed straight to the
+ * 'Queries' classes' insert methods, and the same header and column count checks are applied (lazily, as each
+ * line is read). Only the current line is held in memory, so heap usage does not grow with the size of the file.
+ *
+ * Readers should be closed when they are no longer needed, ideally via try-with-resources.
+ *
+ * @author Dylan McKee
+ */
+public final class SimpleCSVReader implements Iterator<Map<String, String>>, Closeable {
+
+    /**
+     * The size of the character buffer used when reading from the underlying file.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The path to the csv file being read; kept for error messages.
+     */
+    private final Path csv;
+
+    /**
+     * The reader over the underlying csv file.
+     */
+    private final BufferedReader reader;
+
+    /**
+     * The column names, as read from the header line of the csv file.
+     */
+    private final List<String> keys;
+
+    /**
+     * The next line to be parsed into a row, or null if the end of the file has been reached.
+     */
+    private String nextLine;
+
+    /**
+     * The number of rows returned by this reader so far.
+     */
+    private long rowCount;
+
+    /**
+     * Opens the csv file at the path specified and reads its header line.
+     *
+     * @param csv the path of the csv file to read.
+     * @throws IOException if the file could not be opened or read.
+     * @throws IllegalArgumentException if the file does not have a recognisable header line.
+     */
+    public SimpleCSVReader(Path csv) throws IOException {
+        this.csv = csv;
+        this.reader = Files.newBufferedReader(csv, Charset.defaultCharset());
+
+        String header = reader.readLine();
+        if (header == null || header.split(",").length == 0) {
+            reader.close();
+            throw unrecognisedFormat();
+        }
+
+        this.keys = Collections.unmodifiableList(Arrays.asList(header.split(",")));
+        this.nextLine = reader.readLine();
+    }
+
+    /**
+     * Returns the column names read from the header line of the csv file, in the order they appear in the file.
+     * @return an unmodifiable list of the csv file's column names.
+     */
+    public List<String> getKeys() {
+        return keys;
+    }
+
+    /**
+     * Returns the number of rows that have been read from the file so far.
+     * @return the number of rows returned by next() so far.
+     */
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return nextLine != null;
+    }
+
+    /**
+     * Parses and returns the next row of the csv file.
+     *
+     * @return a Map of column name to value for the next row in the file.
+     * @throws NoSuchElementException if there are no more rows in the file.
+     * @throws IllegalArgumentException if the row does not have the same number of columns as the header.
+     * @throws UncheckedIOException if the file could not be read.
+     */
+    @Override
+    public Map<String, String> next() {
+        if (nextLine == null) {
+            throw new NoSuchElementException("There are no more rows in the csv at " + csv);
+        }
+
+        String[] entries = nextLine.split(",");
+        if (entries.length != keys.size()) {
+            throw unrecognisedFormat();
+        }
+
+        // Size the map so that it never needs to be rehashed as the entries are added.
+        Map<String, String> row = new HashMap<>((keys.size() * 4 / 3) + 1);
+        for (int i = 0; i < entries.length; i++) {
+            row.put(keys.get(i), entries[i]);
+        }
+
+        try {
+            nextLine = reader.readLine();
+        } catch (IOException e) {
+            throw new UncheckedIOException("The csv at " + csv + " could not be read", e);
+        }
+
+        rowCount++;
+        return row;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException("Rows cannot be removed from a csv file");
+    }
+
+    @Override
+    public void close() throws IOException {
+        nextLine = null;
+        reader.close();
+    }
+
+    /**
+     * Wraps the reader passed in as an Iterable, for use in a for-each loop. The returned Iterable may only be
+     * iterated once, and the reader it wraps should be closed by the caller.
+     *
+     * @param reader the reader to wrap.
+     * @return an Iterable that returns the reader passed in.
+     */
+    public static Iterable<Map<String, String>> iterable(final SimpleCSVReader reader) {
+        return new Iterable<Map<String, String>>() {
+            @Override
+            public Iterator<Map<String, String>> iterator() {
+                return reader;
+            }
+        };
+    }
+
+    /**
+     * Creates the exception thrown when the csv file is not in the expected format; using the same message as
+     * FileUtils.readSimpleCSV(...).
+     *
+     * @return an IllegalArgumentException describing the problem.
+     */
+    private IllegalArgumentException unrecognisedFormat() {
+        return new IllegalArgumentException("The csv at " + csv + " is of an unrecognised format and could " +
+                "not be parsed");
+    }
+
+}
@@ -0,0 +1,161 @@
+/**
+ * csc2024-hibernate-assignment
+ *
+ * Copyright (c) 2015 Newcastle University
+ * Email: <h.firth@ncl.ac.uk/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ncl.cs.csc2024;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.service.ServiceRegistry;
+import org.hibernate.service.ServiceRegistryBuilder;
+import uk.ac.ncl.cs.csc2024.busstop.BusStop;
+import uk.ac.ncl.cs.csc2024.busstop.BusStopQueries;
+import uk.ac.ncl.cs.csc2024.operator.Operator;
+import uk.ac.ncl.cs.csc2024.operator.OperatorQueries;
+import uk.ac.ncl.cs.csc2024.route.OperatorFrequency;
+import uk.ac.ncl.cs.csc2024.route.Route;
+import uk.ac.ncl.cs.csc2024.route.RouteOperatorShare;
+import uk.ac.ncl.cs.csc2024.route.RouteQueries;
+import uk.ac.ncl.cs.csc2024.util.FileUtils;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Helpers shared by the tests which run against the database configured in hibernate.cfg.xml. That database
+ * should be empty when a test class starts, and each test class leaves it empty again with empty(...).
+ *
+ * @author Dylan McKee
+ */
+public final class TestDatabase {
+
+    /**
+     * Selects every row of the bus_stop, operator, route and operator_route tables, in a fixed order.
+     */
+    private static final String[] SELECT_TABLES_SQL = {
+            "select id, description from " + BusStop.TABLE_NAME + " order by id",
+            "select id, name, street, town, postcode, email, phone from " + Operator.TABLE_NAME + " order by id",
+            "select number, frequency, start_stop_id, destination_stop_id from " + Route.TABLE_NAME +
+                    " order by number",
+            "select operator_id, route_id from " + Route.OPERATORS_JOIN_TABLE_NAME + " order by route_id, operator_id"
+    };
+
+    /**
+     * Static methods only; not to be instantiated.
+     */
+    private TestDatabase() {
+    }
+
+    /**
+     * Returns the path of a test resource, such as "/routes.csv".
+     */
+    public static Path resource(String name) throws URISyntaxException {
+        return Paths.get(TestDatabase.class.getResource(name).toURI());
+    }
+
+    /**
+     * Builds a session factory from hibernate.cfg.xml.
+     */
+    public static SessionFactory buildSessionFactory() {
+        Configuration configuration = new Configuration();
+        configuration.configure();
+        return buildSessionFactory(configuration);
+    }
+
+    /**
+     * Builds a session factory from the configuration passed in, which should already have been configured.
+     */
+    public static SessionFactory buildSessionFactory(Configuration configuration) {
+        ServiceRegistry serviceRegistry = new ServiceRegistryBuilder()
+                .applySettings(configuration.getProperties())
+                .buildServiceRegistry();
+        return configuration.buildSessionFactory(serviceRegistry);
+    }
+
+    /**
+     * Inserts the bus stops, operators and routes in the test resources' csv files, and commits them.
+     */
+    public static void load(SessionFactory sessionFactory) throws IOException, URISyntaxException {
+        Session session = sessionFactory.openSession();
+        try {
+            session.beginTransaction();
+            BusStopQueries.insertAll(FileUtils.readSimpleCSV(resource("/busstops.csv")), session);
+            OperatorQueries.insertAll(FileUtils.readSimpleCSV(resource("/operators.csv")), session);
+            RouteQueries.insertAll(FileUtils.readSimpleCSV(resource("/routes.csv")), session);
+            session.getTransaction().commit();
+        } finally {
+            session.close();
+        }
+    }
+
+    /**
+     * Returns every row of the bus_stop, operator, route and operator_route tables, one String per row, so that
+     * the contents of two databases (or of one at two points in time) can be compared with assertEquals.
+     */
+    public static List<String> contents(Session session) {
+        List<String> rows = new ArrayList<>();
+        for (String sql : SELECT_TABLES_SQL) {
+            for (Object row : session.createSQLQuery(sql).list()) {
+                rows.add(Arrays.toString((Object[]) row));
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Deletes every row written by the tests, including the operator frequency summary if it is mapped.
+     */
+    public static void empty(Session session) {
+        List<String> tables = new ArrayList<>();
+        if (session.getSessionFactory().getClassMetadata(OperatorFrequency.class) != null) {
+            tables.add(RouteOperatorShare.TABLE_NAME);
+            tables.add(OperatorFrequency.TABLE_NAME);
+        }
+        tables.addAll(Arrays.asList(Route.OPERATORS_JOIN_TABLE_NAME, Route.TABLE_NAME, Operator.TABLE_NAME,
+                BusStop.TABLE_NAME));
+
+        for (String table : tables) {
+            session.createSQLQuery("delete from " + table).executeUpdate();
+        }
+    }
+
+    /**
+     * Empties the database (see empty(Session)) and closes the session factory.
+     */
+    public static void emptyAndClose(SessionFactory sessionFactory) {
+        if (sessionFactory == null) {
+            return;
+        }
+
+        Session session = sessionFactory.openSession();
+        try {
+            session.beginTransaction();
+            empty(session);
+            session.getTransaction().commit();
+        } finally {
+            session.close();
+            sessionFactory.close();
+        }
+    }
+}
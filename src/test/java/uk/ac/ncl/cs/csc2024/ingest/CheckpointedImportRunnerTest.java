@@ -0,0 +1,209 @@
+/**
+ * csc2024-hibernate-assignment
+ *
+ * Copyright (c) 2015 Newcastle University
+ * Email: <h.firth@ncl.ac.uk/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ncl.cs.csc2024.ingest;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+import uk.ac.ncl.cs.csc2024.TestDatabase;
+import uk.ac.ncl.cs.csc2024.busstop.BusStop;
+import uk.ac.ncl.cs.csc2024.operator.Operator;
+import uk.ac.ncl.cs.csc2024.route.Route;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Class containing tests of the checkpointed import runner.
+ *
+ * Should be run against an empty database, as configured in hibernate.cfg.xml.
+ *
+ * @author Dylan McKee
+ */
+public class CheckpointedImportRunnerTest {
+
+    private static SessionFactory sessionFactory;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path busStops;
+    private Path operators;
+    private Path stateDirectory;
+
+    @BeforeClass
+    public static void setUpClass() {
+        sessionFactory = TestDatabase.buildSessionFactory();
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        Session session = sessionFactory.openSession();
+        try {
+            session.beginTransaction();
+            session.createSQLQuery("drop table if exists " + CheckpointedImportRunner.CHECKPOINT_TABLE_NAME)
+                    .executeUpdate();
+            session.getTransaction().commit();
+        } finally {
+            session.close();
+        }
+        TestDatabase.emptyAndClose(sessionFactory);
+    }
+
+    private Path write(String name, String... lines) throws IOException {
+        Path file = folder.getRoot().toPath().resolve(name);
+        Files.write(file, Arrays.asList(lines), Charset.defaultCharset());
+        return file;
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        busStops = write("busstops.csv", "id,description", "1,Railway Station", "2,Park Gates");
+        operators = write("operators.csv", "name,street,town,postcode,email,phone",
+                "OK Travel,1 Street,Town,NE1,ok@example.com,0191",
+                "Diamond Buses,2 Street,Town,NE2,diamond@example.com,0192");
+        stateDirectory = folder.getRoot().toPath().resolve("state");
+    }
+
+    @After
+    public void tearDown() {
+        Session session = sessionFactory.openSession();
+        try {
+            session.beginTransaction();
+            TestDatabase.empty(session);
+            session.createSQLQuery("delete from " + CheckpointedImportRunner.CHECKPOINT_TABLE_NAME).executeUpdate();
+            session.getTransaction().commit();
+        } finally {
+            session.close();
+        }
+    }
+
+    private static long count(String table) {
+        Session session = sessionFactory.openSession();
+        try {
+            return ((Number) session.createSQLQuery("select count(*) from " + table).uniqueResult()).longValue();
+        } finally {
+            session.close();
+        }
+    }
+
+    private static List<?> checkpoints() {
+        Session session = sessionFactory.openSession();
+        try {
+            return session.createSQLQuery("select file_name, row_count from " +
+                    CheckpointedImportRunner.CHECKPOINT_TABLE_NAME).list();
+        } finally {
+            session.close();
+        }
+    }
+
+    private List<String> rejects(String csvName) throws IOException {
+        return Files.readAllLines(stateDirectory.resolve(csvName + CheckpointedImportRunner.REJECTS_FILE_SUFFIX),
+                Charset.defaultCharset());
+    }
+
+    @Test
+    public void testImportsEveryRowAndClearsTheCheckpoint() throws IOException {
+        Path routes = write("routes.csv", "number,start,destination,operators,frequency",
+                "1,1,2,OK Travel|Diamond Buses,6", "16A,2,1,OK Travel,4", "2,1,2,Diamond Buses,5");
+
+        CheckpointedImportRunner.Result result =
+                new CheckpointedImportRunner(sessionFactory, stateDirectory, 2).run(busStops, operators, routes);
+
+        assertEquals(7, result.getImported());
+        assertEquals(0, result.getRejected());
+        assertEquals(0, result.getSkipped());
+        assertEquals(2, count(BusStop.TABLE_NAME));
+        assertEquals(2, count(Operator.TABLE_NAME));
+        assertEquals(3, count(Route.TABLE_NAME));
+        assertEquals(Collections.emptyList(), checkpoints());
+        assertFalse(Files.exists(stateDirectory.resolve("routes.csv" + CheckpointedImportRunner.REJECTS_FILE_SUFFIX)));
+    }
+
+    @Test
+    public void testRejectsOnlyTheFailingRowsOfAChunk() throws IOException {
+        Path routes = write("routes.csv", "number,start,destination,operators,frequency",
+                "1,1,2,OK Travel,6", "16A,2,1,Nobody,4", "2,1,2,Diamond Buses,5");
+
+        CheckpointedImportRunner.Result result =
+                new CheckpointedImportRunner(sessionFactory, stateDirectory, 2).run(busStops, operators, routes);
+
+        assertEquals(6, result.getImported());
+        assertEquals(1, result.getRejected());
+        assertEquals(2, count(Route.TABLE_NAME));
+
+        List<String> rejects = rejects("routes.csv");
+        assertEquals(2, rejects.size());
+        assertEquals("number,start,destination,operators,frequency,line,reason", rejects.get(0));
+        assertTrue(rejects.get(1), rejects.get(1).startsWith("16A,2,1,Nobody,4,3,"));
+    }
+
+    @Test
+    public void testResumesFromTheCheckpointWithoutDuplicatingRejects() throws IOException {
+        Path routes = write("routes.csv", "number,start,destination,operators,frequency",
+                "1,1,2,OK Travel,6", "16A,2,1,Nobody,4", "2,1,2,Nobody,5", "not a route");
+
+        try {
+            new CheckpointedImportRunner(sessionFactory, stateDirectory, 2).run(busStops, operators, routes);
+            fail("A line which cannot be parsed should abort the load");
+        } catch (IllegalArgumentException e) {
+            // Expected; the checkpoint is left after the first chunk of routes.
+        }
+
+        List<?> checkpoints = checkpoints();
+        assertEquals(1, checkpoints.size());
+        Object[] checkpoint = (Object[]) checkpoints.get(0);
+        assertEquals("routes.csv", checkpoint[0]);
+        assertEquals(2, ((Number) checkpoint[1]).longValue());
+        assertEquals(1, count(Route.TABLE_NAME));
+
+        // A crash after a row's reject was written, but before the checkpoint moved past it, leaves this behind.
+        Files.write(stateDirectory.resolve("routes.csv" + CheckpointedImportRunner.REJECTS_FILE_SUFFIX),
+                Collections.singletonList("2,1,2,Nobody,5,4,before the crash"), Charset.defaultCharset(),
+                StandardOpenOption.APPEND);
+
+        write("routes.csv", "number,start,destination,operators,frequency",
+                "1,1,2,OK Travel,6", "16A,2,1,Nobody,4", "2,1,2,Nobody,5", "3,2,1,Diamond Buses,2");
+        CheckpointedImportRunner.Result result =
+                new CheckpointedImportRunner(sessionFactory, stateDirectory, 2).run(busStops, operators, routes);
+
+        assertEquals(2, result.getSkipped());
+        assertEquals(1, result.getImported());
+        assertEquals(1, result.getRejected());
+        assertEquals(2, count(Route.TABLE_NAME));
+        assertEquals(2, count(BusStop.TABLE_NAME));
+        assertEquals(Collections.emptyList(), checkpoints());
+
+        List<String> rejects = rejects("routes.csv");
+        assertEquals(rejects.toString(), 3, rejects.size());
+        assertTrue(rejects.get(1), rejects.get(1).startsWith("16A,2,1,Nobody,4,3,"));
+        assertTrue(rejects.get(2), rejects.get(2).startsWith("2,1,2,Nobody,5,4,"));
+        assertFalse(rejects.get(2), rejects.get(2).contains("before the crash"));
+    }
+}
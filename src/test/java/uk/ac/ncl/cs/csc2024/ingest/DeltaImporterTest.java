@@ -0,0 +1,197 @@
+/**
+ * csc2024-hibernate-assignment
+ *
+ * Copyright (c) 2015 Newcastle University
+ * Email: <h.firth@ncl.ac.uk/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ncl.cs.csc2024.ingest;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+import uk.ac.ncl.cs.csc2024.TestDatabase;
+import uk.ac.ncl.cs.csc2024.busstop.BusStop;
+import uk.ac.ncl.cs.csc2024.operator.Operator;
+import uk.ac.ncl.cs.csc2024.route.Route;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Class containing tests of delta imports: that each import applies only the changes since the previous one, and
+ * that the tables then hold the feed imported.
+ *
+ * Should be run against an empty database, as configured in hibernate.cfg.xml.
+ *
+ * @author Dylan McKee
+ */
+public class DeltaImporterTest {
+
+    private static final String SELECT_BUS_STOPS_SQL = "select id, description from " + BusStop.TABLE_NAME +
+            " order by id";
+
+    private static final String SELECT_OPERATORS_SQL = "select name, phone from " + Operator.TABLE_NAME +
+            " order by name";
+
+    private static final String SELECT_ROUTES_SQL = "select r.number, r.frequency, r.start_stop_id, " +
+            "r.destination_stop_id, o.name from " + Route.TABLE_NAME + " r left join " +
+            Route.OPERATORS_JOIN_TABLE_NAME + " j on j.route_id = r.number left join " + Operator.TABLE_NAME +
+            " o on o.id = j.operator_id order by r.number, o.name";
+
+    private static SessionFactory sessionFactory;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private DeltaImporter importer;
+
+    @BeforeClass
+    public static void setUpClass() {
+        sessionFactory = TestDatabase.buildSessionFactory();
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        TestDatabase.emptyAndClose(sessionFactory);
+    }
+
+    @Before
+    public void setUp() {
+        importer = new DeltaImporter(folder.getRoot().toPath().resolve("fingerprints.bin"));
+    }
+
+    @After
+    public void tearDown() {
+        Session session = sessionFactory.openSession();
+        try {
+            session.beginTransaction();
+            TestDatabase.empty(session);
+            session.getTransaction().commit();
+        } finally {
+            session.close();
+        }
+    }
+
+    private Path write(String name, String... lines) throws IOException {
+        Path file = folder.getRoot().toPath().resolve(name);
+        Files.write(file, Arrays.asList(lines), Charset.defaultCharset());
+        return file;
+    }
+
+    private DeltaImport importAndRecord(Path busStops, Path operators, Path routes) throws IOException {
+        Session session = sessionFactory.openSession();
+        try {
+            session.beginTransaction();
+            DeltaImport delta = importer.importDelta(busStops, operators, routes, session);
+            session.getTransaction().commit();
+            delta.recordAsPrevious();
+            return delta;
+        } finally {
+            session.close();
+        }
+    }
+
+    private static List<String> select(String sql) {
+        Session session = sessionFactory.openSession();
+        try {
+            List<String> rows = new ArrayList<>();
+            for (Object row : session.createSQLQuery(sql).list()) {
+                rows.add(Arrays.toString((Object[]) row));
+            }
+            return rows;
+        } finally {
+            session.close();
+        }
+    }
+
+    private static void assertCounts(DeltaImport.TableDelta counts, int inserted, int updated, int deleted,
+                                     int unchanged) {
+        assertEquals("inserted", inserted, counts.getInserted());
+        assertEquals("updated", updated, counts.getUpdated());
+        assertEquals("deleted", deleted, counts.getDeleted());
+        assertEquals("unchanged", unchanged, counts.getUnchanged());
+    }
+
+    @Test
+    public void testSecondImportAppliesOnlyTheChanges() throws IOException {
+        Path busStops = write("busstops.csv", "id,description", "1,Railway Station", "2,Park Gates", "3,Haymarket");
+        Path operators = write("operators.csv", "name,street,town,postcode,email,phone",
+                "OK Travel,1 Street,Town,NE1,ok@example.com,0191",
+                "Diamond Buses,2 Street,Town,NE2,diamond@example.com,0192",
+                "Go North East,3 Street,Town,NE3,gne@example.com,0193");
+        Path routes = write("routes.csv", "number,start,destination,operators,frequency",
+                "1,1,2,OK Travel|Diamond Buses,6",
+                "16A,2,3,Go North East,4",
+                "22,3,1,Diamond Buses,9");
+
+        DeltaImport first = importAndRecord(busStops, operators, routes);
+        assertCounts(first.getBusStops(), 3, 0, 0, 0);
+        assertCounts(first.getOperators(), 3, 0, 0, 0);
+        assertCounts(first.getRoutes(), 3, 0, 0, 0);
+
+        DeltaImport repeated = importAndRecord(busStops, operators, routes);
+        assertCounts(repeated.getBusStops(), 0, 0, 0, 3);
+        assertCounts(repeated.getOperators(), 0, 0, 0, 3);
+        assertCounts(repeated.getRoutes(), 0, 0, 0, 3);
+
+        // Renames a stop, adds a stop, changes an operator's phone, removes Go North East and route 16A, and
+        // changes route 1's operators.
+        write("busstops.csv", "id,description", "1,Central Station", "2,Park Gates", "3,Haymarket", "4,Monument");
+        write("operators.csv", "name,street,town,postcode,email,phone",
+                "OK Travel,1 Street,Town,NE1,ok@example.com,0191",
+                "Diamond Buses,2 Street,Town,NE2,diamond@example.com,0199");
+        write("routes.csv", "number,start,destination,operators,frequency",
+                "1,1,2,OK Travel,6",
+                "22,3,1,Diamond Buses,9");
+
+        DeltaImport changed = importAndRecord(busStops, operators, routes);
+        assertCounts(changed.getBusStops(), 1, 1, 0, 2);
+        assertCounts(changed.getOperators(), 0, 1, 1, 1);
+        assertCounts(changed.getRoutes(), 0, 1, 1, 1);
+
+        assertEquals(Arrays.asList("[1, Central Station]", "[2, Park Gates]", "[3, Haymarket]", "[4, Monument]"),
+                select(SELECT_BUS_STOPS_SQL));
+        assertEquals(Arrays.asList("[Diamond Buses, 0199]", "[OK Travel, 0191]"), select(SELECT_OPERATORS_SQL));
+        assertEquals(Arrays.asList("[1, 6, 1, 2, OK Travel]", "[22, 9, 3, 1, Diamond Buses]"),
+                select(SELECT_ROUTES_SQL));
+    }
+
+    @Test
+    public void testRemovedBusStopIsDeletedAfterItsRoutes() throws IOException {
+        Path busStops = write("busstops.csv", "id,description", "1,Railway Station", "2,Park Gates");
+        Path operators = write("operators.csv", "name,street,town,postcode,email,phone",
+                "OK Travel,1 Street,Town,NE1,ok@example.com,0191");
+        Path routes = write("routes.csv", "number,start,destination,operators,frequency", "1,1,2,OK Travel,6");
+        importAndRecord(busStops, operators, routes);
+
+        write("busstops.csv", "id,description", "1,Railway Station");
+        write("routes.csv", "number,start,destination,operators,frequency");
+
+        DeltaImport changed = importAndRecord(busStops, operators, routes);
+        assertCounts(changed.getBusStops(), 0, 0, 1, 1);
+        assertCounts(changed.getRoutes(), 0, 0, 1, 0);
+        assertEquals(Arrays.asList("[1, Railway Station]"), select(SELECT_BUS_STOPS_SQL));
+        assertEquals(new ArrayList<String>(), select(SELECT_ROUTES_SQL));
+    }
+}
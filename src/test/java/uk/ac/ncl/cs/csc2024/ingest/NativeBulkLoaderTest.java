@@ -0,0 +1,180 @@
+/**
+ * csc2024-hibernate-assignment
+ *
+ * Copyright (c) 2015 Newcastle University
+ * Email: <h.firth@ncl.ac.uk/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ncl.cs.csc2024.ingest;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+import uk.ac.ncl.cs.csc2024.TestDatabase;
+import uk.ac.ncl.cs.csc2024.busstop.BusStop;
+import uk.ac.ncl.cs.csc2024.operator.Operator;
+import uk.ac.ncl.cs.csc2024.route.Route;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Class containing tests of the native bulk loader, which compare the tables it loads, through both its CSVREAD
+ * and its JDBC paths, with those loaded by the 'Queries' classes' insertAll methods.
+ *
+ * Should be run against an empty database, as configured in hibernate.cfg.xml.
+ *
+ * @author Dylan McKee
+ */
+public class NativeBulkLoaderTest {
+
+    /**
+     * Selects every row of the tables, with each operator identified by name rather than id, as the ids given by
+     * insertAll depend on where the operator id generator has got to.
+     */
+    private static final String[] SELECT_TABLES_BY_NAME_SQL = {
+            "select id, description from " + BusStop.TABLE_NAME + " order by id",
+            "select name, street, town, postcode, email, phone from " + Operator.TABLE_NAME + " order by name",
+            "select number, frequency, start_stop_id, destination_stop_id from " + Route.TABLE_NAME +
+                    " order by number",
+            "select j.route_id, o.name from " + Route.OPERATORS_JOIN_TABLE_NAME + " j join " + Operator.TABLE_NAME +
+                    " o on o.id = j.operator_id order by j.route_id, o.name"
+    };
+
+    private static SessionFactory sessionFactory;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @BeforeClass
+    public static void setUpClass() {
+        sessionFactory = TestDatabase.buildSessionFactory();
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        TestDatabase.emptyAndClose(sessionFactory);
+    }
+
+    @After
+    public void tearDown() {
+        empty();
+    }
+
+    private static void empty() {
+        Session session = sessionFactory.openSession();
+        try {
+            session.beginTransaction();
+            TestDatabase.empty(session);
+            session.getTransaction().commit();
+        } finally {
+            session.close();
+        }
+    }
+
+    private static List<String> contentsByName() {
+        Session session = sessionFactory.openSession();
+        try {
+            List<String> rows = new ArrayList<>();
+            for (String sql : SELECT_TABLES_BY_NAME_SQL) {
+                for (Object row : session.createSQLQuery(sql).list()) {
+                    rows.add(Arrays.toString((Object[]) row));
+                }
+            }
+            return rows;
+        } finally {
+            session.close();
+        }
+    }
+
+    private static List<String> contents() {
+        Session session = sessionFactory.openSession();
+        try {
+            return TestDatabase.contents(session);
+        } finally {
+            session.close();
+        }
+    }
+
+    private static void bulkLoad(Path busStops, Path operators, Path routes, boolean csvRead) throws IOException {
+        Session session = sessionFactory.openSession();
+        try {
+            session.beginTransaction();
+            NativeBulkLoader.load(busStops, operators, routes, session, csvRead);
+            session.getTransaction().commit();
+        } finally {
+            if (session.getTransaction().isActive()) {
+                session.getTransaction().rollback();
+            }
+            session.close();
+        }
+    }
+
+    @Test
+    public void testBothPathsLoadTheSameTablesAsInsertAll() throws IOException, URISyntaxException {
+        Path busStops = TestDatabase.resource("/busstops.csv");
+        Path operators = TestDatabase.resource("/operators.csv");
+        Path routes = TestDatabase.resource("/routes.csv");
+
+        TestDatabase.load(sessionFactory);
+        List<String> inserted = contentsByName();
+        empty();
+
+        bulkLoad(busStops, operators, routes, true);
+        List<String> csvReadContents = contents();
+        assertEquals(inserted, contentsByName());
+        empty();
+
+        bulkLoad(busStops, operators, routes, false);
+        assertEquals(csvReadContents, contents());
+        assertEquals(inserted, contentsByName());
+
+        // Operators are numbered from 1 in file order.
+        String firstOperator = Files.readAllLines(operators, Charset.defaultCharset()).get(1);
+        assertTrue(csvReadContents.toString(), csvReadContents.contains("[1, " + firstOperator.replace(",", ", ") + "]"));
+    }
+
+    @Test
+    public void testRouteNamingAnUnknownOperatorFailsTheLoad() throws IOException {
+        Path busStops = folder.getRoot().toPath().resolve("busstops.csv");
+        Path operators = folder.getRoot().toPath().resolve("operators.csv");
+        Path routes = folder.getRoot().toPath().resolve("routes.csv");
+        Files.write(busStops, Arrays.asList("id,description", "1,Railway Station", "2,Park Gates"),
+                Charset.defaultCharset());
+        Files.write(operators, Arrays.asList("name,street,town,postcode,email,phone",
+                "OK Travel,1 Street,Town,NE1,ok@example.com,0191"), Charset.defaultCharset());
+        Files.write(routes, Arrays.asList("number,start,destination,operators,frequency",
+                "1,1,2,OK Travel|Nobody,6"), Charset.defaultCharset());
+
+        for (boolean csvRead : new boolean[] { true, false }) {
+            try {
+                bulkLoad(busStops, operators, routes, csvRead);
+                fail("A route naming an operator that does not exist should not be loaded");
+            } catch (IllegalArgumentException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains("Nobody"));
+            }
+            assertEquals(new ArrayList<String>(), contents());
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/**
+ * csc2024-hibernate-assignment
+ *
+ * Copyright (c) 2015 Newcastle University
+ * Email: <h.firth@ncl.ac.uk/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ncl.cs.csc2024.ingest;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+import uk.ac.ncl.cs.csc2024.TestDatabase;
+import uk.ac.ncl.cs.csc2024.route.Route;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Class containing tests of the pipelined loader.
+ *
+ * Should be run against an empty database, as configured in hibernate.cfg.xml.
+ *
+ * @author Dylan McKee
+ */
+public class PipelinedLoaderTest {
+
+    private static SessionFactory sessionFactory;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path busStops;
+    private Path operators;
+
+    @BeforeClass
+    public static void setUpClass() {
+        sessionFactory = TestDatabase.buildSessionFactory();
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        TestDatabase.emptyAndClose(sessionFactory);
+    }
+
+    private Path write(String name, String... lines) throws IOException {
+        Path file = folder.getRoot().toPath().resolve(name);
+        Files.write(file, Arrays.asList(lines), Charset.defaultCharset());
+        return file;
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        busStops = write("busstops.csv", "id,description", "1,Railway Station", "2,Park Gates");
+        operators = write("operators.csv", "name,street,town,postcode,email,phone",
+                "OK Travel,1 Street,Town,NE1,ok@example.com,0191",
+                "Diamond Buses,2 Street,Town,NE2,diamond@example.com,0192");
+    }
+
+    @After
+    public void tearDown() {
+        Session session = sessionFactory.openSession();
+        try {
+            session.beginTransaction();
+            TestDatabase.empty(session);
+            session.getTransaction().commit();
+        } finally {
+            session.close();
+        }
+    }
+
+    private static long count(String table) {
+        Session session = sessionFactory.openSession();
+        try {
+            return ((Number) session.createSQLQuery("select count(*) from " + table).uniqueResult()).longValue();
+        } finally {
+            session.close();
+        }
+    }
+
+    @Test
+    public void testLoadsEveryRow() throws IOException, InterruptedException {
+        Path routes = write("routes.csv", "number,start,destination,operators,frequency",
+                "1,1,2,OK Travel|Diamond Buses,6", "16A,2,1,OK Travel,4");
+
+        int loaded = new PipelinedLoader(sessionFactory, 2, 1, 2).load(busStops, operators, routes);
+
+        assertEquals(6, loaded);
+        assertEquals(2, count(Route.TABLE_NAME));
+        assertEquals(3, count(Route.OPERATORS_JOIN_TABLE_NAME));
+    }
+
+    @Test
+    public void testRouteNamingAnUnknownOperatorFailsTheLoad() throws IOException, InterruptedException {
+        Path routes = write("routes.csv", "number,start,destination,operators,frequency",
+                "1,1,2,Nobody|OK Travel,6");
+
+        try {
+            new PipelinedLoader(sessionFactory, 2, 1, 2).load(busStops, operators, routes);
+            fail("A route naming an operator that does not exist should not be loaded");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("Nobody"));
+        }
+        assertEquals(0, count(Route.TABLE_NAME));
+    }
+}
@@ -0,0 +1,97 @@
+/**
+ * csc2024-hibernate-assignment
+ *
+ * Copyright (c) 2015 Newcastle University
+ * Email: <h.firth@ncl.ac.uk/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ncl.cs.csc2024.ingest;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Class containing tests of the referential integrity checks run on a feed before it is loaded.
+ *
+ * @author Dylan McKee
+ */
+public class ReferentialIntegrityValidatorTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path busStops;
+    private Path operators;
+
+    private Path write(String name, String... lines) throws IOException {
+        Path file = folder.getRoot().toPath().resolve(name);
+        Files.write(file, Arrays.asList(lines), Charset.defaultCharset());
+        return file;
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        busStops = write("busstops.csv", "id,description", "1,Railway Station", "2,Park Gates");
+        operators = write("operators.csv", "name,street,town,postcode,email,phone",
+                "OK Travel,1 Street,Town,NE1,ok@example.com,0191",
+                "Diamond Buses,2 Street,Town,NE2,diamond@example.com,0192");
+    }
+
+    @Test
+    public void testValidRoutesHaveNoViolations() throws IOException {
+        Path routes = write("routes.csv", "number,start,destination,operators,frequency",
+                "16A,1,2,OK Travel|Diamond Buses,6");
+
+        assertTrue(ReferentialIntegrityValidator.validate(busStops, operators, routes).isEmpty());
+        ReferentialIntegrityValidator.requireValid(busStops, operators, routes);
+    }
+
+    @Test
+    public void testEveryViolationIsReportedWithItsLineNumber() throws IOException {
+        Path routes = write("routes.csv", "number,start,destination,operators,frequency",
+                "16A,1,2,OK Travel,6",
+                "17,3,2,OK Travel|Arriva,6",
+                "18,1,x,Diamond Buses,6");
+
+        List<ReferentialIntegrityValidator.Violation> violations =
+                ReferentialIntegrityValidator.validate(busStops, operators, routes);
+
+        assertEquals(3, violations.size());
+        assertEquals(3, violations.get(0).getLineNumber());
+        assertEquals("start", violations.get(0).getColumn());
+        assertEquals(3, violations.get(1).getLineNumber());
+        assertEquals("Arriva", violations.get(1).getValue());
+        assertEquals(4, violations.get(2).getLineNumber());
+        assertEquals("destination", violations.get(2).getColumn());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRequireValidRejectsMissingReferences() throws IOException {
+        Path routes = write("routes.csv", "number,start,destination,operators,frequency", "16A,1,9,OK Travel,6");
+
+        ReferentialIntegrityValidator.requireValid(busStops, operators, routes);
+    }
+}
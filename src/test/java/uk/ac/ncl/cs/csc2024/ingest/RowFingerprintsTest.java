@@ -0,0 +1,83 @@
+/**
+ * csc2024-hibernate-assignment
+ *
+ * Copyright (c) 2015 Newcastle University
+ * Email: <h.firth@ncl.ac.uk/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ncl.cs.csc2024.ingest;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Class containing tests of the row fingerprints used by delta imports.
+ *
+ * @author Dylan McKee
+ */
+public class RowFingerprintsTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static Map<String, String> route(String operators, String frequency) {
+        Map<String, String> row = new HashMap<>();
+        row.put("number", "16A");
+        row.put("start", "1");
+        row.put("destination", "2");
+        row.put("operators", operators);
+        row.put("frequency", frequency);
+        return row;
+    }
+
+    @Test
+    public void testOperatorOrderDoesNotChangeFingerprint() {
+        assertEquals(RowFingerprints.fingerprint(route("OK Travel|Diamond Buses", "6")),
+                RowFingerprints.fingerprint(route("Diamond Buses|OK Travel", "6")));
+    }
+
+    @Test
+    public void testChangedValuesChangeFingerprint() {
+        long original = RowFingerprints.fingerprint(route("OK Travel|Diamond Buses", "6"));
+
+        assertNotEquals(original, RowFingerprints.fingerprint(route("OK Travel|Diamond Buses", "7")));
+        assertNotEquals(original, RowFingerprints.fingerprint(route("OK Travel", "6")));
+    }
+
+    @Test
+    public void testSaveAndLoadRoundTrip() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("fingerprints.bin");
+        assertTrue(RowFingerprints.load(file).getRoutes().isEmpty());
+
+        RowFingerprints fingerprints = new RowFingerprints();
+        fingerprints.getBusStops().put("1", 11L);
+        fingerprints.getOperators().put("OK Travel", 22L);
+        fingerprints.getRoutes().put("16A", 33L);
+        fingerprints.save(file);
+
+        RowFingerprints loaded = RowFingerprints.load(file);
+        assertEquals(fingerprints.getBusStops(), loaded.getBusStops());
+        assertEquals(fingerprints.getOperators(), loaded.getOperators());
+        assertEquals(fingerprints.getRoutes(), loaded.getRoutes());
+    }
+}
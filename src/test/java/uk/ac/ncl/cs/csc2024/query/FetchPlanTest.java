@@ -0,0 +1,197 @@
+/**
+ * csc2024-hibernate-assignment
+ *
+ * Copyright (c) 2015 Newcastle University
+ * Email: <h.firth@ncl.ac.uk/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ncl.cs.csc2024.query;
+
+import org.hibernate.Hibernate;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.cfg.Environment;
+import org.hibernate.stat.Statistics;
+import org.junit.*;
+import uk.ac.ncl.cs.csc2024.TestDatabase;
+import uk.ac.ncl.cs.csc2024.busstop.BusStop;
+import uk.ac.ncl.cs.csc2024.operator.Operator;
+import uk.ac.ncl.cs.csc2024.operator.OperatorQueries;
+import uk.ac.ncl.cs.csc2024.route.Route;
+import uk.ac.ncl.cs.csc2024.route.RouteQueries;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Class containing tests that each fetch plan selects the same operators and routes as selectAll(), in each of
+ * the three query forms, and loads their associations in the number of statements the plan promises, as counted
+ * by Hibernate's statistics.
+ *
+ * Should be run against an empty database, as configured in hibernate.cfg.xml.
+ *
+ * @author Dylan McKee
+ */
+public class FetchPlanTest {
+
+    /**
+     * The three forms of an ExampleQuery.
+     */
+    private enum Form {
+        HQL, NAMED, CRITERIA;
+
+        List<?> list(ExampleQuery query, Session session) {
+            switch (this) {
+                case HQL:
+                    return query.getQuery(session).list();
+                case NAMED:
+                    return query.getNamedQuery(session).list();
+                default:
+                    return query.getCriteria(session).list();
+            }
+        }
+    }
+
+    private static SessionFactory sessionFactory;
+
+    @BeforeClass
+    public static void setUpClass() throws IOException, URISyntaxException {
+        Configuration configuration = new Configuration();
+        configuration.configure();
+        configuration.setProperty(Environment.GENERATE_STATISTICS, "true");
+        sessionFactory = TestDatabase.buildSessionFactory(configuration);
+        TestDatabase.load(sessionFactory);
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        TestDatabase.emptyAndClose(sessionFactory);
+    }
+
+    /**
+     * Describes an operator with every route (and stop) it operates, reading each association so that a LAZY
+     * plan has to load it.
+     */
+    private static String describe(Operator operator) {
+        List<String> routes = new ArrayList<>();
+        for (Route route : operator.getRoutes()) {
+            routes.add(route.getNumber() + " " + describe(route.getStartStop()) + "-" +
+                    describe(route.getDestinationStop()));
+        }
+        Collections.sort(routes);
+        return operator.getName() + routes;
+    }
+
+    /**
+     * Describes a route with its stops and every operator which operates it.
+     */
+    private static String describe(Route route) {
+        List<String> operators = new ArrayList<>();
+        for (Operator operator : route.getOperators()) {
+            operators.add(operator.getName());
+        }
+        Collections.sort(operators);
+        return route.getNumber() + " " + describe(route.getStartStop()) + "-" + describe(route.getDestinationStop()) +
+                operators;
+    }
+
+    private static String describe(BusStop stop) {
+        return stop == null ? "none" : stop.getDescription();
+    }
+
+    /**
+     * Runs a query in a session of its own and describes each of its results, counting the statements prepared.
+     *
+     * @param descriptions the list to add the results' descriptions to.
+     * @return the number of statements prepared.
+     */
+    private static long describeAll(ExampleQuery query, Form form, List<String> descriptions) {
+        Statistics statistics = sessionFactory.getStatistics();
+        Session session = sessionFactory.openSession();
+        try {
+            statistics.clear();
+            for (Object result : form.list(query, session)) {
+                descriptions.add(result instanceof Operator ? describe((Operator) result) : describe((Route) result));
+            }
+            return statistics.getPrepareStatementCount();
+        } finally {
+            session.close();
+        }
+    }
+
+    private static void assertStatementCounts(ExampleQuery lazy, ExampleQuery join, ExampleQuery batch) {
+        for (Form form : Form.values()) {
+            List<String> expected = new ArrayList<>();
+            long lazyCount = describeAll(lazy, form, expected);
+            assertTrue(form + " should select several results", expected.size() > 2);
+            // A LAZY plan loads each result's collection with a select of its own.
+            assertTrue(form + " LAZY prepared " + lazyCount, lazyCount >= 1 + expected.size());
+
+            List<String> joined = new ArrayList<>();
+            assertEquals(form + " JOIN", 1, describeAll(join, form, joined));
+            assertEquals(form + " JOIN", expected, joined);
+
+            List<String> batched = new ArrayList<>();
+            assertEquals(form + " BATCH", 2, describeAll(batch, form, batched));
+            assertEquals(form + " BATCH", expected, batched);
+        }
+    }
+
+    @Test
+    public void testOperatorFetchPlans() {
+        assertStatementCounts(OperatorQueries.selectAll(FetchPlan.LAZY), OperatorQueries.selectAll(FetchPlan.JOIN),
+                OperatorQueries.selectAll(FetchPlan.BATCH));
+    }
+
+    @Test
+    public void testRouteFetchPlans() {
+        assertStatementCounts(RouteQueries.selectAll(FetchPlan.LAZY), RouteQueries.selectAll(FetchPlan.JOIN),
+                RouteQueries.selectAll(FetchPlan.BATCH));
+    }
+
+    @Test
+    public void testBatchFetchingSplitsLongIdLists() {
+        List<Object> ids = new ArrayList<>();
+        Session session = sessionFactory.openSession();
+        try {
+            // The routes (and their stops) are loaded, as a BATCH plan's first select leaves them.
+            for (Object route : session.createQuery(Route.SELECT_ALL_STOPS_JOIN_FETCH_HQL_QUERY).list()) {
+                ids.add(((Route) route).getNumber());
+            }
+            // Repeats are dropped, so pad the list with unknown numbers to span two in-lists.
+            for (int i = 0; ids.size() <= QueryUtilities.MAX_IN_LIST_SIZE; i++) {
+                ids.add("unknown " + i);
+            }
+
+            Statistics statistics = sessionFactory.getStatistics();
+            statistics.clear();
+            List<?> routes = QueryUtilities.listByIds(session, Route.FETCH_OPERATORS_HQL_QUERY, ids);
+            assertEquals(2, statistics.getPrepareStatementCount());
+
+            assertFalse(routes.isEmpty());
+            for (Object route : routes) {
+                assertTrue(Hibernate.isInitialized(((Route) route).getOperators()));
+            }
+        } finally {
+            session.close();
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/**
+ * csc2024-hibernate-assignment
+ *
+ * Copyright (c) 2015 Newcastle University
+ * Email: <h.firth@ncl.ac.uk/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ncl.cs.csc2024.query;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.cfg.Environment;
+import org.hibernate.dialect.H2Dialect;
+import org.junit.*;
+import uk.ac.ncl.cs.csc2024.TestDatabase;
+import uk.ac.ncl.cs.csc2024.config.HibernateSettings;
+import uk.ac.ncl.cs.csc2024.operator.OperatorQueries;
+import uk.ac.ncl.cs.csc2024.route.RouteQueries;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Class containing tests of the plans H2 chooses for the filter queries once the indexes are applied, as reported
+ * by the IndexAdvisor.
+ *
+ * selectAllRoutesByDiamondBuses() is driven by the index on the operator's name in its query forms, but its
+ * Criteria form left outer joins each route to its eagerly fetched stops, which fixes route as the first table H2
+ * reads, so route is scanned. selectAllForRailwayStation() compares the descriptions of two different joined
+ * stops with an or, which no single index can drive, so route is scanned (or, in the Criteria form, read whole in
+ * primary key order for its order by). These scans are asserted here so that a change in either plan is noticed.
+ *
+ * Skipped unless hibernate.cfg.xml configures H2, whose plans these are. Should be run against an empty database.
+ *
+ * @author Dylan McKee
+ */
+public class IndexAdvisorTest {
+
+    private static SessionFactory sessionFactory;
+
+    @BeforeClass
+    public static void setUpClass() throws IOException, URISyntaxException {
+        Configuration configuration = new Configuration();
+        configuration.configure();
+        String dialect = configuration.getProperty(Environment.DIALECT);
+        assumeTrue(dialect != null && dialect.equals(H2Dialect.class.getName()));
+
+        HibernateSettings.applyIndexes(configuration);
+        sessionFactory = TestDatabase.buildSessionFactory(configuration);
+        TestDatabase.load(sessionFactory);
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        if (sessionFactory != null) {
+            TestDatabase.emptyAndClose(sessionFactory);
+        }
+    }
+
+    private static List<IndexAdvisor.Finding> explain(String queryName, ExampleQuery query) {
+        Session session = sessionFactory.openSession();
+        try {
+            return IndexAdvisor.explain(session, queryName, query);
+        } finally {
+            session.close();
+        }
+    }
+
+    @Test
+    public void testDiamondBusesQueriesStartFromTheOperatorNameIndex() {
+        for (IndexAdvisor.Finding finding : explain("diamond", OperatorQueries.selectAllRoutesByDiamondBuses())) {
+            if (finding.getForm() == IndexAdvisor.Form.CRITERIA) {
+                continue;
+            }
+            assertFalse(finding.toString(), finding.hasFullScan());
+            assertTrue(finding.getPlan(), finding.getPlan().contains(": NAME = 'Diamond Buses'"));
+            assertTrue(finding.getPlan(), finding.getPlan().contains(": OPERATOR_ID = OPERATOR2_.ID"));
+        }
+    }
+
+    @Test
+    public void testDiamondBusesCriteriaScansRouteBeforeItsOuterJoins() {
+        for (IndexAdvisor.Finding finding : explain("diamond", OperatorQueries.selectAllRoutesByDiamondBuses())) {
+            if (finding.getForm() != IndexAdvisor.Form.CRITERIA) {
+                continue;
+            }
+            assertEquals(finding.getPlan(), Collections.singletonList("route"), finding.getFullyScannedTables());
+            // Each scanned route still reaches its operators through the join table's route_id index.
+            assertTrue(finding.getPlan(), finding.getPlan().contains(": ROUTE_ID = THIS_.NUMBER"));
+        }
+    }
+
+    @Test
+    public void testRailwayStationQueriesScanRoute() {
+        for (IndexAdvisor.Finding finding : explain("railway", RouteQueries.selectAllForRailwayStation())) {
+            if (finding.getForm() == IndexAdvisor.Form.CRITERIA) {
+                // Reported as no scan, but the primary key is walked whole to avoid sorting for the order by.
+                assertFalse(finding.toString(), finding.hasFullScan());
+                assertTrue(finding.getPlan(), finding.getPlan().contains("index sorted"));
+            } else {
+                assertEquals(finding.getPlan(), Collections.singletonList("route"), finding.getFullyScannedTables());
+            }
+            assertFalse(finding.getPlan(), finding.getPlan().contains("BUS_STOP_DESCRIPTION_IDX"));
+        }
+    }
+
+}
@@ -0,0 +1,164 @@
+/**
+ * csc2024-hibernate-assignment
+ *
+ * Copyright (c) 2015 Newcastle University
+ * Email: <h.firth@ncl.ac.uk/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ncl.cs.csc2024.query;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.junit.*;
+import uk.ac.ncl.cs.csc2024.TestDatabase;
+import uk.ac.ncl.cs.csc2024.busstop.BusStop;
+import uk.ac.ncl.cs.csc2024.busstop.BusStopQueries;
+import uk.ac.ncl.cs.csc2024.operator.OperatorQueries;
+import uk.ac.ncl.cs.csc2024.route.Route;
+import uk.ac.ncl.cs.csc2024.route.RouteQueries;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Class containing tests that streaming a query's results keeps the session's persistence context small, and
+ * leaves the session's own entities and unflushed changes alone.
+ *
+ * Should be run against an empty database, as configured in hibernate.cfg.xml.
+ *
+ * @author Dylan McKee
+ */
+public class ResultStreamsTest {
+
+    /**
+     * The number of bus stops and of routes in the test data; several times the fetch sizes used.
+     */
+    private static final int ROW_COUNT = 60;
+
+    private static SessionFactory sessionFactory;
+
+    private Session session;
+
+    private static Map<String, String> row(String... keysAndValues) {
+        Map<String, String> row = new HashMap<>();
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            row.put(keysAndValues[i], keysAndValues[i + 1]);
+        }
+        return row;
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+        sessionFactory = TestDatabase.buildSessionFactory();
+
+        Session session = sessionFactory.openSession();
+        try {
+            session.beginTransaction();
+            OperatorQueries.insert(row("name", "OK Travel", "street", "1 Street", "town", "Town", "postcode", "NE1",
+                    "email", "ok@example.com", "phone", "0191"), session);
+            for (int i = 1; i <= ROW_COUNT; i++) {
+                BusStopQueries.insert(row("id", Integer.toString(i), "description", "Stop " + i), session);
+            }
+            for (int i = 1; i <= ROW_COUNT; i++) {
+                RouteQueries.insert(row("number", String.format("%03d", i), "start", Integer.toString(i),
+                        "destination", Integer.toString(i % ROW_COUNT + 1), "operators", "OK Travel",
+                        "frequency", "1"), session);
+            }
+            session.getTransaction().commit();
+        } finally {
+            session.close();
+        }
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        TestDatabase.emptyAndClose(sessionFactory);
+    }
+
+    @Before
+    public void setUp() {
+        session = sessionFactory.openSession();
+        session.beginTransaction();
+    }
+
+    @After
+    public void tearDown() {
+        if (session.getTransaction().isActive()) {
+            session.getTransaction().rollback();
+        }
+        session.close();
+    }
+
+    @Test
+    public void testPersistenceContextStaysBounded() {
+        int rows = 0;
+        int largestEntityCount = 0;
+        for (Iterator<Route> routes = ResultStreams.iterator(session.createQuery(Route.SELECT_ALL_HQL_QUERY),
+                session, 7); routes.hasNext(); ) {
+            routes.next();
+            rows++;
+            largestEntityCount = Math.max(largestEntityCount, session.getStatistics().getEntityCount());
+        }
+
+        assertEquals(ROW_COUNT, rows);
+        // At most the current route and its two stops.
+        assertTrue("Up to " + largestEntityCount + " entities were held", largestEntityCount <= 3);
+        assertEquals(0, session.getStatistics().getEntityCount());
+    }
+
+    @Test
+    public void testStreamingLeavesTheCallersChangesAlone() {
+        BusStop changed = (BusStop) session.get(BusStop.class, 1);
+        changed.setDescription("Changed");
+        BusStop added = new BusStop();
+        added.setId(ROW_COUNT + 1);
+        added.setDescription("Added");
+        session.save(added);
+
+        int rows = 0;
+        Iterator<Route> routes = RouteQueries.selectAll().<Route>stream(session, 2).iterator();
+        while (routes.hasNext()) {
+            Route route = routes.next();
+            if (route.getStartStop().getId() == 1) {
+                assertSame(changed, route.getStartStop());
+            }
+            rows++;
+        }
+
+        assertEquals(ROW_COUNT, rows);
+        assertTrue(session.contains(changed));
+        assertTrue(session.contains(added));
+        assertEquals(2, session.getStatistics().getEntityCount());
+        session.getTransaction().commit();
+
+        Session check = sessionFactory.openSession();
+        try {
+            assertEquals("Changed", ((BusStop) check.get(BusStop.class, 1)).getDescription());
+            assertNotNull(check.get(BusStop.class, ROW_COUNT + 1));
+
+            check.beginTransaction();
+            check.createSQLQuery("update " + BusStop.TABLE_NAME + " set description = 'Stop 1' where id = 1")
+                    .executeUpdate();
+            check.createSQLQuery("delete from " + BusStop.TABLE_NAME + " where id = " + (ROW_COUNT + 1))
+                    .executeUpdate();
+            check.getTransaction().commit();
+        } finally {
+            check.close();
+        }
+    }
+}
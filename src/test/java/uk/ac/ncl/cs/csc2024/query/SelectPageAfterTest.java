@@ -0,0 +1,188 @@
+/**
+ * csc2024-hibernate-assignment
+ *
+ * Copyright (c) 2015 Newcastle University
+ * Email: <h.firth@ncl.ac.uk/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ncl.cs.csc2024.query;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.junit.*;
+import uk.ac.ncl.cs.csc2024.TestDatabase;
+import uk.ac.ncl.cs.csc2024.busstop.BusStop;
+import uk.ac.ncl.cs.csc2024.busstop.BusStopQueries;
+import uk.ac.ncl.cs.csc2024.operator.Operator;
+import uk.ac.ncl.cs.csc2024.operator.OperatorQueries;
+import uk.ac.ncl.cs.csc2024.route.Route;
+import uk.ac.ncl.cs.csc2024.route.RouteQueries;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Class containing tests that paging through each entity with selectPageAfter(...), in each of its three forms,
+ * selects exactly what selectAll() selects, in the same order.
+ *
+ * Should be run against an empty database, as configured in hibernate.cfg.xml.
+ *
+ * @author Dylan McKee
+ */
+public class SelectPageAfterTest {
+
+    private static final int[] PAGE_SIZES = { 1, 2, 3, 100 };
+
+    /**
+     * The page queries of one entity, and how to read the key the next page seeks past.
+     */
+    private interface Pages {
+        ExampleQuery after(Object key, int pageSize);
+        Object keyOf(Object entity);
+    }
+
+    private static final Pages BUS_STOP_PAGES = new Pages() {
+        @Override
+        public ExampleQuery after(Object key, int pageSize) {
+            return BusStopQueries.selectPageAfter((Integer) key, pageSize);
+        }
+
+        @Override
+        public Object keyOf(Object entity) {
+            return ((BusStop) entity).getId();
+        }
+    };
+
+    private static final Pages OPERATOR_PAGES = new Pages() {
+        @Override
+        public ExampleQuery after(Object key, int pageSize) {
+            return OperatorQueries.selectPageAfter((String) key, pageSize);
+        }
+
+        @Override
+        public Object keyOf(Object entity) {
+            return ((Operator) entity).getName();
+        }
+    };
+
+    private static final Pages ROUTE_PAGES = new Pages() {
+        @Override
+        public ExampleQuery after(Object key, int pageSize) {
+            return RouteQueries.selectPageAfter((String) key, pageSize);
+        }
+
+        @Override
+        public Object keyOf(Object entity) {
+            return ((Route) entity).getNumber();
+        }
+    };
+
+    /**
+     * The three forms of an ExampleQuery.
+     */
+    private enum Form {
+        HQL, NAMED, CRITERIA;
+
+        List<?> list(ExampleQuery query, Session session) {
+            switch (this) {
+                case HQL:
+                    return query.getQuery(session).list();
+                case NAMED:
+                    return query.getNamedQuery(session).list();
+                default:
+                    return query.getCriteria(session).list();
+            }
+        }
+    }
+
+    private static SessionFactory sessionFactory;
+
+    private Session session;
+
+    @BeforeClass
+    public static void setUpClass() throws IOException, URISyntaxException {
+        sessionFactory = TestDatabase.buildSessionFactory();
+        TestDatabase.load(sessionFactory);
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        TestDatabase.emptyAndClose(sessionFactory);
+    }
+
+    @Before
+    public void setUp() {
+        session = sessionFactory.openSession();
+        session.beginTransaction();
+    }
+
+    @After
+    public void tearDown() {
+        session.getTransaction().rollback();
+        session.close();
+    }
+
+    /**
+     * Pages through every result, passing the last key of each page to fetch the next, until a short page.
+     */
+    private List<Object> pageThrough(Pages pages, Form form, int pageSize) {
+        List<Object> keys = new ArrayList<>();
+        Object after = null;
+        List<?> page;
+        do {
+            page = form.list(pages.after(after, pageSize), session);
+            assertTrue(form + " page of " + page.size() + " is larger than " + pageSize, page.size() <= pageSize);
+            for (Object entity : page) {
+                after = pages.keyOf(entity);
+                keys.add(after);
+            }
+        } while (page.size() == pageSize);
+        return keys;
+    }
+
+    private void assertPagesMatchSelectAll(Pages pages, ExampleQuery selectAll) {
+        List<Object> expected = new ArrayList<>();
+        for (Object entity : selectAll.getQuery(session).list()) {
+            expected.add(pages.keyOf(entity));
+        }
+        assertTrue("The test data should span several pages", expected.size() > 2);
+
+        for (Form form : Form.values()) {
+            for (int pageSize : PAGE_SIZES) {
+                assertEquals(form + " pages of " + pageSize, expected, pageThrough(pages, form, pageSize));
+            }
+        }
+    }
+
+    @Test
+    public void testBusStopPagesMatchSelectAll() {
+        assertPagesMatchSelectAll(BUS_STOP_PAGES, BusStopQueries.selectAll());
+    }
+
+    @Test
+    public void testOperatorPagesMatchSelectAll() {
+        assertPagesMatchSelectAll(OPERATOR_PAGES, OperatorQueries.selectAll());
+    }
+
+    @Test
+    public void testRoutePagesMatchSelectAll() {
+        assertPagesMatchSelectAll(ROUTE_PAGES, RouteQueries.selectAll());
+    }
+}
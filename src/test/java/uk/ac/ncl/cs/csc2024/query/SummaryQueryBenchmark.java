@@ -0,0 +1,175 @@
+/**
+ * csc2024-hibernate-assignment
+ *
+ * Copyright (c) 2015 Newcastle University
+ * Email: <h.firth@ncl.ac.uk/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ncl.cs.csc2024.query;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.service.ServiceRegistry;
+import org.hibernate.service.ServiceRegistryBuilder;
+import uk.ac.ncl.cs.csc2024.busstop.BusStopQueries;
+import uk.ac.ncl.cs.csc2024.operator.OperatorQueries;
+import uk.ac.ncl.cs.csc2024.route.RouteQueries;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares the selectAll queries, which load managed entities, with the selectAllSummaries queries, which
+ * project immutable summaries, on a generated data set: the time taken to list every row, and the heap retained
+ * by the results and the session holding them.
+ *
+ * Not a test; run its main method against the database configured in hibernate.cfg.xml, which should be empty.
+ * The number of bus stops generated (and of routes; there are a tenth as many operators) can be passed as the
+ * only argument.
+ *
+ * @author Dylan McKee
+ */
+public class SummaryQueryBenchmark {
+
+    private static final int DEFAULT_ROW_COUNT = 20000;
+
+    private static final int WARM_UP_RUNS = 5;
+
+    private static final int MEASURED_RUNS = 10;
+
+    public static void main(String[] args) {
+        int rowCount = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_ROW_COUNT;
+
+        Configuration configuration = new Configuration();
+        configuration.configure();
+        ServiceRegistry serviceRegistry = new ServiceRegistryBuilder()
+                .applySettings(configuration.getProperties())
+                .buildServiceRegistry();
+        SessionFactory sessionFactory = configuration.buildSessionFactory(serviceRegistry);
+
+        try {
+            populate(sessionFactory, rowCount);
+
+            System.out.println("Listing " + rowCount + " bus stops, " + Math.max(1, rowCount / 10) + " operators and " +
+                    rowCount + " routes, averaged over " + MEASURED_RUNS + " runs:");
+            measure(sessionFactory, "BusStop entities", BusStopQueries.selectAll());
+            measure(sessionFactory, "BusStopSummary", BusStopQueries.selectAllSummaries());
+            measure(sessionFactory, "Operator entities", OperatorQueries.selectAll());
+            measure(sessionFactory, "OperatorSummary", OperatorQueries.selectAllSummaries());
+            measure(sessionFactory, "Route entities", RouteQueries.selectAll());
+            measure(sessionFactory, "RouteSummary", RouteQueries.selectAllSummaries());
+        } finally {
+            sessionFactory.close();
+        }
+    }
+
+    private static void populate(SessionFactory sessionFactory, int rowCount) {
+        int operatorCount = Math.max(1, rowCount / 10);
+        List<Map<String, String>> busStops = new ArrayList<>(rowCount);
+        List<Map<String, String>> operators = new ArrayList<>(operatorCount);
+        List<Map<String, String>> routes = new ArrayList<>(rowCount);
+
+        for (int i = 1; i <= rowCount; i++) {
+            Map<String, String> busStop = new HashMap<>();
+            busStop.put("id", Integer.toString(i));
+            busStop.put("description", "Stop " + i);
+            busStops.add(busStop);
+        }
+        for (int i = 1; i <= operatorCount; i++) {
+            Map<String, String> operator = new HashMap<>();
+            operator.put("name", "Operator " + i);
+            operator.put("street", i + " High Street");
+            operator.put("town", "Newcastle");
+            operator.put("postcode", "NE1 " + i);
+            operator.put("email", "operator" + i + "@example.com");
+            operator.put("phone", "0191 " + i);
+            operators.add(operator);
+        }
+        for (int i = 1; i <= rowCount; i++) {
+            Map<String, String> route = new HashMap<>();
+            route.put("number", "R" + i);
+            route.put("start", Integer.toString(i));
+            route.put("destination", Integer.toString(i % rowCount + 1));
+            route.put("operators", "Operator " + (i % operatorCount + 1) + "|Operator " +
+                    ((i + 1) % operatorCount + 1));
+            route.put("frequency", Integer.toString(i % 12 + 1));
+            routes.add(route);
+        }
+
+        Session session = sessionFactory.openSession();
+        try {
+            session.beginTransaction();
+            BusStopQueries.insertAll(busStops, session);
+            OperatorQueries.insertAll(operators, session);
+            RouteQueries.insertAll(routes, session);
+            session.getTransaction().commit();
+        } finally {
+            session.close();
+        }
+    }
+
+    private static void measure(SessionFactory sessionFactory, String name, ExampleQuery query) {
+        for (int i = 0; i < WARM_UP_RUNS; i++) {
+            list(sessionFactory, query, false);
+        }
+
+        long totalNanos = 0;
+        long totalBytes = 0;
+        for (int i = 0; i < MEASURED_RUNS; i++) {
+            long[] nanosAndBytes = list(sessionFactory, query, true);
+            totalNanos += nanosAndBytes[0];
+            totalBytes += nanosAndBytes[1];
+        }
+
+        System.out.println(String.format("  %-18s %8.2f ms %10d KB retained", name,
+                totalNanos / (MEASURED_RUNS * 1e6), totalBytes / (MEASURED_RUNS * 1024L)));
+    }
+
+    /**
+     * Lists every result of the query in a new session, returning the time taken and, if asked, the heap
+     * retained by the results and the session's persistence context (measured while both are still reachable).
+     */
+    private static long[] list(SessionFactory sessionFactory, ExampleQuery query, boolean measureHeap) {
+        long before = measureHeap ? usedHeap() : 0;
+        Session session = sessionFactory.openSession();
+        try {
+            session.beginTransaction();
+            long start = System.nanoTime();
+            List<?> results = query.getQuery(session).list();
+            long nanos = System.nanoTime() - start;
+
+            long retained = measureHeap ? usedHeap() - before : 0;
+            if (results.isEmpty()) {
+                throw new IllegalStateException("The benchmark data was not inserted");
+            }
+            session.getTransaction().commit();
+            return new long[] {nanos, retained};
+        } finally {
+            session.close();
+        }
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+}
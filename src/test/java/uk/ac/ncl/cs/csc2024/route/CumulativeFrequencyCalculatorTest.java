@@ -0,0 +1,102 @@
+/**
+ * csc2024-hibernate-assignment
+ *
+ * Copyright (c) 2015 Newcastle University
+ * Email: <h.firth@ncl.ac.uk/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ncl.cs.csc2024.route;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.junit.*;
+import uk.ac.ncl.cs.csc2024.TestDatabase;
+import uk.ac.ncl.cs.csc2024.busstop.BusStop;
+import uk.ac.ncl.cs.csc2024.query.ExampleQuery;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.SortedMap;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+/**
+ * Class containing tests that the in-memory cumulative frequencies match those of the grouped select, and that
+ * calculating them leaves the session alone.
+ *
+ * Should be run against an empty database, as configured in hibernate.cfg.xml.
+ *
+ * @author Dylan McKee
+ */
+public class CumulativeFrequencyCalculatorTest {
+
+    private static SessionFactory sessionFactory;
+
+    private Session session;
+
+    @BeforeClass
+    public static void setUpClass() throws IOException, URISyntaxException {
+        sessionFactory = TestDatabase.buildSessionFactory();
+        TestDatabase.load(sessionFactory);
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        TestDatabase.emptyAndClose(sessionFactory);
+    }
+
+    @Before
+    public void setUp() {
+        session = sessionFactory.openSession();
+        session.beginTransaction();
+    }
+
+    @After
+    public void tearDown() {
+        session.getTransaction().rollback();
+        session.close();
+    }
+
+    @Test
+    public void testMatchesTheGroupedSelect() {
+        ExampleQuery q = RouteQueries.cumulativeFrequencyByOperator();
+        SortedMap<String, Long> expected = CumulativeFrequencyCalculator.toMap(q.getQuery(session).list());
+        assertFalse(expected.isEmpty());
+        assertEquals(expected, CumulativeFrequencyCalculator.toMap(q.getNamedQuery(session).list()));
+        assertEquals(expected, CumulativeFrequencyCalculator.toMap(q.getCriteria(session).list()));
+
+        assertEquals(expected, CumulativeFrequencyCalculator.calculate(session));
+        // One row per round trip, so a route with several operators spans several fetches.
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            assertEquals(expected, CumulativeFrequencyCalculator.calculate(session, 1, pool));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testLeavesTheSessionAlone() {
+        BusStop stop = (BusStop) session.get(BusStop.class, 1);
+        stop.setDescription("Changed");
+
+        CumulativeFrequencyCalculator.calculate(session, 1, ForkJoinPool.commonPool());
+
+        assertTrue(session.contains(stop));
+        assertTrue(session.isDirty());
+        assertEquals(1, session.getStatistics().getEntityCount());
+    }
+}
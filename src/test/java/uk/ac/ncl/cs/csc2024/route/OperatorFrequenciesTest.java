@@ -0,0 +1,238 @@
+/**
+ * csc2024-hibernate-assignment
+ *
+ * Copyright (c) 2015 Newcastle University
+ * Email: <h.firth@ncl.ac.uk/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ncl.cs.csc2024.route;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.service.ServiceRegistry;
+import org.hibernate.service.ServiceRegistryBuilder;
+import org.junit.*;
+import uk.ac.ncl.cs.csc2024.busstop.BusStop;
+import uk.ac.ncl.cs.csc2024.busstop.BusStopQueries;
+import uk.ac.ncl.cs.csc2024.operator.Operator;
+import uk.ac.ncl.cs.csc2024.operator.OperatorQueries;
+import uk.ac.ncl.cs.csc2024.util.FileUtils;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Class containing tests that the operator_frequency summary table maintained by OperatorFrequencies matches each
+ * operator's route count and cumulative frequency calculated from the routes themselves.
+ *
+ * Should be run against an empty database, as configured in hibernate.cfg.xml.
+ *
+ * @author Dylan McKee
+ */
+public class OperatorFrequenciesTest {
+
+    /**
+     * Calculates each operator's route count and cumulative frequency from the routes, as the summary holds them.
+     */
+    private static final String RECALCULATE_SQL = "select o.id, count(j.route_id), " +
+            "coalesce(sum(r.frequency / (select count(*) from " + Route.OPERATORS_JOIN_TABLE_NAME + " k " +
+            "where k.route_id = r.number)), 0) from " + Operator.TABLE_NAME + " o " +
+            "left join " + Route.OPERATORS_JOIN_TABLE_NAME + " j on j.operator_id = o.id " +
+            "left join " + Route.TABLE_NAME + " r on r.number = j.route_id group by o.id order by o.id";
+
+    private static final String SUMMARY_SQL = "select operator_id, route_count, cumulative_frequency from " +
+            OperatorFrequency.TABLE_NAME + " order by operator_id";
+
+    private static SessionFactory sessionFactory;
+
+    private Session session;
+
+    private static Path resource(String name) throws URISyntaxException {
+        return Paths.get(OperatorFrequenciesTest.class.getResource(name).toURI());
+    }
+
+    @BeforeClass
+    public static void setUpClass() throws IOException, URISyntaxException {
+        Configuration configuration = new Configuration();
+        configuration.configure();
+        OperatorFrequencies.addTo(configuration);
+        ServiceRegistry serviceRegistry = new ServiceRegistryBuilder()
+                .applySettings(configuration.getProperties())
+                .buildServiceRegistry();
+        sessionFactory = OperatorFrequencies.maintain(configuration.buildSessionFactory(serviceRegistry));
+
+        Session session = sessionFactory.openSession();
+        try {
+            session.beginTransaction();
+            BusStopQueries.insertAll(FileUtils.readSimpleCSV(resource("/busstops.csv")), session);
+            OperatorQueries.insertAll(FileUtils.readSimpleCSV(resource("/operators.csv")), session);
+            RouteQueries.insertAll(FileUtils.readSimpleCSV(resource("/routes.csv")), session);
+            session.getTransaction().commit();
+        } finally {
+            session.close();
+        }
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        if (sessionFactory == null) {
+            return;
+        }
+
+        // Leaves the database empty for the next test class.
+        Session session = sessionFactory.openSession();
+        try {
+            session.beginTransaction();
+            for (String table : new String[]{RouteOperatorShare.TABLE_NAME, OperatorFrequency.TABLE_NAME,
+                    Route.OPERATORS_JOIN_TABLE_NAME, Route.TABLE_NAME, Operator.TABLE_NAME, BusStop.TABLE_NAME}) {
+                session.createSQLQuery("delete from " + table).executeUpdate();
+            }
+            session.getTransaction().commit();
+        } finally {
+            session.close();
+            sessionFactory.close();
+        }
+    }
+
+    @Before
+    public void setUp() {
+        session = sessionFactory.openSession();
+    }
+
+    @After
+    public void tearDown() {
+        session.close();
+    }
+
+    private static List<List<Long>> rows(Session session, String sql) {
+        List<List<Long>> rows = new ArrayList<>();
+        for (Object row : session.createSQLQuery(sql).list()) {
+            List<Long> values = new ArrayList<>();
+            for (Object value : (Object[]) row) {
+                values.add(((Number) value).longValue());
+            }
+            rows.add(values);
+        }
+        return rows;
+    }
+
+    private static void assertSummaryMatchesRoutes() {
+        Session session = sessionFactory.openSession();
+        try {
+            assertEquals(rows(session, RECALCULATE_SQL), rows(session, SUMMARY_SQL));
+        } finally {
+            session.close();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Route> routes() {
+        return session.createQuery("from Route r order by r.number").list();
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Operator> operators() {
+        return session.createQuery("from Operator o order by o.name").list();
+    }
+
+    @Test
+    public void testSummaryMatchesLoadedRoutes() {
+        assertSummaryMatchesRoutes();
+    }
+
+    @Test
+    public void testSummaryFollowsFrequencyChanges() {
+        session.beginTransaction();
+        for (Route route : routes()) {
+            route.setFrequency(route.getFrequency() * 3 + 1);
+        }
+        session.getTransaction().commit();
+
+        assertSummaryMatchesRoutes();
+    }
+
+    @Test
+    public void testSummaryFollowsOperatorSetChanges() {
+        session.beginTransaction();
+        List<Route> routes = routes();
+        List<Operator> operators = operators();
+        // Moves each route's operators along by one, so that every route loses one operator and gains another.
+        for (int i = 0; i < routes.size(); i++) {
+            Route route = routes.get(i);
+            Iterator<Operator> routeOperators = route.getOperators().iterator();
+            if (routeOperators.hasNext()) {
+                routeOperators.next();
+                routeOperators.remove();
+            }
+            route.getOperators().add(operators.get(i % operators.size()));
+        }
+        session.getTransaction().commit();
+
+        assertSummaryMatchesRoutes();
+    }
+
+    @Test
+    public void testSummaryFollowsNewOperatorsAndRoutes() {
+        session.beginTransaction();
+        Map<String, String> operatorRow = new HashMap<>();
+        operatorRow.put("name", "Test Travel");
+        operatorRow.put("street", "1 Test Street");
+        operatorRow.put("town", "Test Town");
+        operatorRow.put("postcode", "NE1 1AA");
+        operatorRow.put("email", "test@example.com");
+        operatorRow.put("phone", "0191 000 0000");
+        OperatorQueries.insert(operatorRow, session);
+        session.getTransaction().commit();
+        assertSummaryMatchesRoutes();
+
+        session.beginTransaction();
+        Route route = new Route();
+        route.setNumber("~test");
+        route.setFrequency(7);
+        route.getOperators().addAll(operators());
+        session.save(route);
+        session.getTransaction().commit();
+        assertSummaryMatchesRoutes();
+
+        session.beginTransaction();
+        route.getOperators().clear();
+        session.delete(route);
+        session.getTransaction().commit();
+        assertSummaryMatchesRoutes();
+    }
+
+    @Test
+    public void testSummaryIgnoresRolledBackChanges() {
+        List<List<Long>> before = rows(session, SUMMARY_SQL);
+
+        session.beginTransaction();
+        List<Operator> operators = operators();
+        for (Route route : routes()) {
+            route.setFrequency(route.getFrequency() + 100);
+            route.getOperators().add(operators.get(0));
+        }
+        session.flush();
+        session.getTransaction().rollback();
+
+        assertEquals(before, rows(session, SUMMARY_SQL));
+        assertSummaryMatchesRoutes();
+    }
+}
@@ -0,0 +1,143 @@
+/**
+ * csc2024-hibernate-assignment
+ *
+ * Copyright (c) 2015 Newcastle University
+ * Email: <h.firth@ncl.ac.uk/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ncl.cs.csc2024.route;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.service.ServiceRegistry;
+import org.hibernate.service.ServiceRegistryBuilder;
+import org.junit.*;
+import uk.ac.ncl.cs.csc2024.busstop.BusStop;
+import uk.ac.ncl.cs.csc2024.busstop.BusStopQueries;
+import uk.ac.ncl.cs.csc2024.operator.Operator;
+import uk.ac.ncl.cs.csc2024.operator.OperatorQueries;
+import uk.ac.ncl.cs.csc2024.query.ExampleQuery;
+import uk.ac.ncl.cs.csc2024.util.FileUtils;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Class containing tests that the parameterised Route queries select what their hard-coded counterparts select.
+ *
+ * Should be run against an empty database, as configured in hibernate.cfg.xml.
+ *
+ * @author Dylan McKee
+ */
+public class RouteParameterisedQueryTest {
+
+    private static SessionFactory sessionFactory;
+
+    private Session session;
+
+    private static Path resource(String name) throws URISyntaxException {
+        return Paths.get(RouteParameterisedQueryTest.class.getResource(name).toURI());
+    }
+
+    @BeforeClass
+    public static void setUpClass() throws IOException, URISyntaxException {
+        Configuration configuration = new Configuration();
+        configuration.configure();
+        ServiceRegistry serviceRegistry = new ServiceRegistryBuilder()
+                .applySettings(configuration.getProperties())
+                .buildServiceRegistry();
+        sessionFactory = configuration.buildSessionFactory(serviceRegistry);
+
+        Session session = sessionFactory.openSession();
+        try {
+            session.beginTransaction();
+            BusStopQueries.insertAll(FileUtils.readSimpleCSV(resource("/busstops.csv")), session);
+            OperatorQueries.insertAll(FileUtils.readSimpleCSV(resource("/operators.csv")), session);
+            RouteQueries.insertAll(FileUtils.readSimpleCSV(resource("/routes.csv")), session);
+            session.getTransaction().commit();
+        } finally {
+            session.close();
+        }
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        if (sessionFactory == null) {
+            return;
+        }
+
+        // Leaves the database empty for the next test class.
+        Session session = sessionFactory.openSession();
+        try {
+            session.beginTransaction();
+            for (String table : new String[]{Route.OPERATORS_JOIN_TABLE_NAME, Route.TABLE_NAME, Operator.TABLE_NAME,
+                    BusStop.TABLE_NAME}) {
+                session.createSQLQuery("delete from " + table).executeUpdate();
+            }
+            session.getTransaction().commit();
+        } finally {
+            session.close();
+            sessionFactory.close();
+        }
+    }
+
+    @Before
+    public void setUp() {
+        session = sessionFactory.openSession();
+        session.beginTransaction();
+    }
+
+    @After
+    public void tearDown() {
+        session.getTransaction().rollback();
+        session.close();
+    }
+
+    private static List<String> routeNumbers(List<?> routes) {
+        List<String> numbers = new ArrayList<>();
+        for (Object route : routes) {
+            numbers.add(((Route) route).getNumber());
+        }
+        Collections.sort(numbers);
+        return numbers;
+    }
+
+    @Test
+    public void testRoutesServingStopMatchesRailwayStationQuery() {
+        List<String> expected = routeNumbers(RouteQueries.selectAllForRailwayStation().getQuery(session).list());
+
+        ExampleQuery q = RouteQueries.routesServingStop("Railway Station");
+        assertEquals(expected, routeNumbers(q.getQuery(session).list()));
+        assertEquals(expected, routeNumbers(q.getNamedQuery(session).list()));
+        assertEquals(expected, routeNumbers(q.getCriteria(session).list()));
+    }
+
+    @Test
+    public void testCumulativeFrequencyOfOperatorMatchesOkTravelQuery() {
+        long expected = ((Number) RouteQueries.cumulativeFrequencyByOkTravel().getQuery(session).uniqueResult())
+                .longValue();
+
+        ExampleQuery q = RouteQueries.cumulativeFrequencyOfOperator("OK Travel");
+        assertEquals(expected, ((Number) q.getQuery(session).uniqueResult()).longValue());
+        assertEquals(expected, ((Number) q.getNamedQuery(session).uniqueResult()).longValue());
+        assertEquals(expected, ((Number) q.getCriteria(session).uniqueResult()).longValue());
+    }
+}
@@ -0,0 +1,114 @@
+/**
+ * csc2024-hibernate-assignment
+ *
+ * Copyright (c) 2015 Newcastle University
+ * Email: <h.firth@ncl.ac.uk/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ncl.cs.csc2024.snapshot;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+import uk.ac.ncl.cs.csc2024.TestDatabase;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Class containing tests that a snapshot written by SnapshotWriter restores, with SnapshotLoader, to the tables it
+ * was written from.
+ *
+ * Should be run against an empty database, as configured in hibernate.cfg.xml.
+ *
+ * @author Dylan McKee
+ */
+public class SnapshotTest {
+
+    /**
+     * The offset of the marker before the first bus stop row: the magic number, the version and the section tag.
+     */
+    private static final int FIRST_ROW_MARKER_OFFSET = 4 + 2 + 1;
+
+    private static SessionFactory sessionFactory;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Session session;
+
+    @BeforeClass
+    public static void setUpClass() throws IOException, URISyntaxException {
+        sessionFactory = TestDatabase.buildSessionFactory();
+        TestDatabase.load(sessionFactory);
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        TestDatabase.emptyAndClose(sessionFactory);
+    }
+
+    @Before
+    public void setUp() {
+        session = sessionFactory.openSession();
+        session.beginTransaction();
+    }
+
+    @After
+    public void tearDown() {
+        // Every test leaves the loaded rows as they were.
+        session.getTransaction().rollback();
+        session.close();
+    }
+
+    @Test
+    public void testRestoreReproducesTheTables() throws IOException {
+        List<String> expected = TestDatabase.contents(session);
+        Path snapshot = folder.getRoot().toPath().resolve("snapshot.bin");
+        SnapshotWriter.write(session, snapshot);
+
+        TestDatabase.empty(session);
+        assertTrue(TestDatabase.contents(session).isEmpty());
+
+        SnapshotLoader.load(snapshot, session);
+        assertEquals(expected, TestDatabase.contents(session));
+    }
+
+    @Test
+    public void testCorruptRowMarkerIsRejected() throws IOException {
+        Path snapshot = folder.getRoot().toPath().resolve("snapshot.bin");
+        SnapshotWriter.write(session, snapshot);
+        byte[] bytes = Files.readAllBytes(snapshot);
+        assertEquals(SnapshotFormat.ROW, bytes[FIRST_ROW_MARKER_OFFSET]);
+        bytes[FIRST_ROW_MARKER_OFFSET] = 7;
+        Files.write(snapshot, bytes);
+
+        TestDatabase.empty(session);
+        try {
+            SnapshotLoader.load(snapshot, session);
+            fail("A corrupt row marker should not be read as the end of the section");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("found 7"));
+        }
+    }
+}
@@ -0,0 +1,300 @@
+/**
+ * csc2024-hibernate-assignment
+ *
+ * Copyright (c) 2015 Newcastle University
+ * Email: <h.firth@ncl.ac.uk/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ncl.cs.csc2024.stats;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.action.spi.AfterTransactionCompletionProcess;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.event.spi.EventSource;
+import org.hibernate.service.ServiceRegistry;
+import org.hibernate.service.ServiceRegistryBuilder;
+import org.junit.*;
+import uk.ac.ncl.cs.csc2024.busstop.BusStop;
+import uk.ac.ncl.cs.csc2024.busstop.BusStopQueries;
+import uk.ac.ncl.cs.csc2024.operator.Operator;
+import uk.ac.ncl.cs.csc2024.operator.OperatorQueries;
+import uk.ac.ncl.cs.csc2024.route.Route;
+import uk.ac.ncl.cs.csc2024.route.RouteQueries;
+import uk.ac.ncl.cs.csc2024.util.FileUtils;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * Class containing tests that the statistics kept in memory by TableStatistics match the row counts and id bounds
+ * of the tables themselves.
+ *
+ * Should be run against an empty database, as configured in hibernate.cfg.xml.
+ *
+ * @author Dylan McKee
+ */
+public class TableStatisticsTest {
+
+    private static SessionFactory sessionFactory;
+
+    private static TableStatistics statistics;
+
+    private static Path resource(String name) throws URISyntaxException {
+        return Paths.get(TableStatisticsTest.class.getResource(name).toURI());
+    }
+
+    @BeforeClass
+    public static void setUpClass() throws IOException, URISyntaxException {
+        Configuration configuration = new Configuration();
+        configuration.configure();
+        ServiceRegistry serviceRegistry = new ServiceRegistryBuilder()
+                .applySettings(configuration.getProperties())
+                .buildServiceRegistry();
+        sessionFactory = configuration.buildSessionFactory(serviceRegistry);
+        statistics = TableStatistics.maintain(sessionFactory);
+
+        Session session = sessionFactory.openSession();
+        try {
+            session.beginTransaction();
+            BusStopQueries.insertAll(FileUtils.readSimpleCSV(resource("/busstops.csv")), session);
+            OperatorQueries.insertAll(FileUtils.readSimpleCSV(resource("/operators.csv")), session);
+            RouteQueries.insertAll(FileUtils.readSimpleCSV(resource("/routes.csv")), session);
+            session.getTransaction().commit();
+        } finally {
+            session.close();
+        }
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        if (sessionFactory == null) {
+            return;
+        }
+
+        // Leaves the database empty for the next test class.
+        Session session = sessionFactory.openSession();
+        try {
+            session.beginTransaction();
+            for (String table : new String[]{Route.OPERATORS_JOIN_TABLE_NAME, Route.TABLE_NAME, Operator.TABLE_NAME,
+                    BusStop.TABLE_NAME}) {
+                session.createSQLQuery("delete from " + table).executeUpdate();
+            }
+            session.getTransaction().commit();
+        } finally {
+            session.close();
+            sessionFactory.close();
+        }
+    }
+
+    /**
+     * Asserts that the statistics of the entity's table match a count, min and max of the table.
+     */
+    private static void assertMatchesTable(Class<?> entityClass, String table, String idColumn) {
+        Session session = sessionFactory.openSession();
+        try {
+            Object[] expected = (Object[]) session.createSQLQuery("select count(*), min(" + idColumn + "), max(" +
+                    idColumn + ") from " + table).uniqueResult();
+            Comparable<?> minId = statistics.minId(entityClass);
+            Comparable<?> maxId = statistics.maxId(entityClass);
+
+            assertEquals(((Number) expected[0]).longValue(), statistics.rowCount(entityClass));
+            assertEquals(expected[1], minId);
+            assertEquals(expected[2], maxId);
+        } finally {
+            session.close();
+        }
+    }
+
+    private static void assertMatchesTables() {
+        assertMatchesTable(BusStop.class, BusStop.TABLE_NAME, "id");
+        assertMatchesTable(Operator.class, Operator.TABLE_NAME, "id");
+        assertMatchesTable(Route.class, Route.TABLE_NAME, "number");
+    }
+
+    private static Map<String, String> busStopRow(int id) {
+        Map<String, String> row = new HashMap<>();
+        row.put("id", Integer.toString(id));
+        row.put("description", "Test Stop " + id);
+        return row;
+    }
+
+    private static Route route(String number) {
+        Route route = new Route();
+        route.setNumber(number);
+        route.setFrequency(1);
+        return route;
+    }
+
+    @Test
+    public void testRolledBackInsertIsNotCounted() {
+        assertMatchesTables();
+        Integer maxId = statistics.maxId(BusStop.class);
+
+        Session session = sessionFactory.openSession();
+        try {
+            session.beginTransaction();
+            BusStopQueries.insert(busStopRow(maxId + 1), session);
+            session.save(route("~rolled back"));
+            session.flush();
+            session.getTransaction().rollback();
+        } finally {
+            session.close();
+        }
+
+        assertEquals(maxId, statistics.maxId(BusStop.class));
+        assertMatchesTables();
+    }
+
+    @Test
+    public void testDeletingTheMaxIdRowRereadsTheBounds() {
+        Integer maxId = statistics.maxId(BusStop.class);
+        String maxNumber = statistics.maxId(Route.class);
+
+        Session session = sessionFactory.openSession();
+        try {
+            session.beginTransaction();
+            BusStopQueries.insert(busStopRow(maxId + 1), session);
+            session.save(route(maxNumber + "~"));
+            session.getTransaction().commit();
+        } finally {
+            session.close();
+        }
+        assertEquals(Integer.valueOf(maxId + 1), statistics.maxId(BusStop.class));
+        assertMatchesTables();
+
+        session = sessionFactory.openSession();
+        try {
+            session.beginTransaction();
+            session.delete(session.get(BusStop.class, maxId + 1));
+            session.delete(session.get(Route.class, maxNumber + "~"));
+            session.getTransaction().commit();
+        } finally {
+            session.close();
+        }
+
+        assertEquals(maxId, statistics.maxId(BusStop.class));
+        assertEquals(maxNumber, statistics.maxId(Route.class));
+        assertMatchesTables();
+    }
+
+    @Test
+    public void testInvalidateRereadsRowsWrittenWithPlainSql() {
+        assertMatchesTables();
+        Integer maxId = statistics.maxId(BusStop.class);
+        long rowCount = statistics.rowCount(BusStop.class);
+
+        Session session = sessionFactory.openSession();
+        try {
+            session.beginTransaction();
+            session.createSQLQuery("insert into " + BusStop.TABLE_NAME + " (id, description) values (:id, 'Test')")
+                    .setParameter("id", maxId + 10)
+                    .executeUpdate();
+            TableStatistics.invalidate(session);
+            session.getTransaction().commit();
+        } finally {
+            session.close();
+        }
+
+        assertNotEquals(rowCount, statistics.rowCount(BusStop.class));
+        assertEquals(Integer.valueOf(maxId + 10), statistics.maxId(BusStop.class));
+        assertMatchesTables();
+
+        session = sessionFactory.openSession();
+        try {
+            session.beginTransaction();
+            session.createSQLQuery("delete from " + BusStop.TABLE_NAME + " where id = :id")
+                    .setParameter("id", maxId + 10)
+                    .executeUpdate();
+            TableStatistics.invalidate(session);
+            session.getTransaction().commit();
+        } finally {
+            session.close();
+        }
+
+        assertMatchesTables();
+    }
+
+    @Test
+    public void testReadWhileACommitIsInFlightIsNotKept() throws InterruptedException {
+        assertMatchesTables();
+        final int id = statistics.<Integer>maxId(BusStop.class) + 1;
+
+        final CountDownLatch committed = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Session session = sessionFactory.openSession();
+                try {
+                    session.beginTransaction();
+                    // Registered before the insert, so it runs (and holds up the statistics) just after the commit.
+                    ((EventSource) session).getActionQueue().registerProcess(new AfterTransactionCompletionProcess() {
+                        @Override
+                        public void doAfterTransactionCompletion(boolean success, SessionImplementor session) {
+                            committed.countDown();
+                            try {
+                                release.await();
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                            }
+                        }
+                    });
+                    BusStopQueries.insert(busStopRow(id), session);
+                    session.getTransaction().commit();
+                } catch (Throwable e) {
+                    failure.set(e);
+                } finally {
+                    committed.countDown();
+                    session.close();
+                }
+            }
+        });
+
+        // The next read is taken from the database after the commit, but before it is applied.
+        statistics.invalidate();
+        writer.start();
+        try {
+            assertTrue(committed.await(10, TimeUnit.SECONDS));
+            assertEquals(Integer.valueOf(id), statistics.maxId(BusStop.class));
+        } finally {
+            release.countDown();
+            writer.join();
+        }
+        assertNull(failure.get());
+        assertMatchesTables();
+
+        Session session = sessionFactory.openSession();
+        try {
+            session.beginTransaction();
+            session.delete(session.get(BusStop.class, id));
+            session.getTransaction().commit();
+        } finally {
+            session.close();
+        }
+        assertMatchesTables();
+    }
+}
@@ -0,0 +1,115 @@
+/**
+ * csc2024-hibernate-assignment
+ *
+ * Copyright (c) 2015 Newcastle University
+ * Email: <h.firth@ncl.ac.uk/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ncl.cs.csc2024.util;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Class containing tests of the typed, header-indexed CSVRowReader.
+ *
+ * @author Dylan McKee
+ */
+public class CSVRowReaderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path writeCsv(String... lines) throws IOException {
+        Path csv = folder.newFile().toPath();
+        Files.write(csv, Arrays.asList(lines), Charset.defaultCharset());
+        return csv;
+    }
+
+    @Test
+    public void testRowsMatchReadSimpleCSV() throws IOException {
+        Path csv = writeCsv("number,start,destination,operators,frequency",
+                "1,4,2,Go North East|Stagecoach,6",
+                "16A,7,3,OK Travel,-2");
+
+        List<Map<String, String>> rows = new ArrayList<>();
+        try (CSVRowReader reader = new CSVRowReader(csv)) {
+            for (CSVRow row : CSVRowReader.iterable(reader)) {
+                rows.add(row.toMap());
+            }
+        }
+
+        assertEquals(FileUtils.readSimpleCSV(csv), rows);
+    }
+
+    @Test
+    public void testParsesIntegerColumns() throws IOException {
+        Path csv = writeCsv("id,frequency", "2147483647,-2147483648", "+12,007");
+
+        try (CSVRowReader reader = new CSVRowReader(csv)) {
+            CSVRow row = reader.next();
+            assertEquals(Integer.MAX_VALUE, row.getInt("id"));
+            assertEquals(Integer.MIN_VALUE, row.getInt("frequency"));
+            assertEquals(2, row.getLineNumber());
+
+            row = reader.next();
+            assertEquals(12, row.getInt(0));
+            assertEquals(7, row.getInt(1));
+            assertFalse(reader.hasNext());
+        }
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void testRejectsOverflowingInteger() throws IOException {
+        Path csv = writeCsv("id,description", "2147483648,Haymarket");
+
+        try (CSVRowReader reader = new CSVRowReader(csv)) {
+            reader.next().getInt("id");
+        }
+    }
+
+    @Test
+    public void testCopySurvivesAdvancingTheReader() throws IOException {
+        Path csv = writeCsv("id,description", "1,Railway Station", "2,Park Gates");
+
+        try (CSVRowReader reader = new CSVRowReader(csv)) {
+            CSVRow first = reader.next().copy();
+            reader.next();
+            assertEquals("Railway Station", first.getString("description"));
+            assertTrue(first.fieldEquals(0, "1"));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsRowWithWrongColumnCount() throws IOException {
+        Path csv = writeCsv("id,description", "1");
+
+        try (CSVRowReader reader = new CSVRowReader(csv)) {
+            reader.next();
+        }
+    }
+}
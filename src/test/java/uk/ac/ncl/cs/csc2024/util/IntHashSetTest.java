@@ -0,0 +1,71 @@
+/**
+ * csc2024-hibernate-assignment
+ *
+ * Copyright (c) 2015 Newcastle University
+ * Email: <h.firth@ncl.ac.uk/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ncl.cs.csc2024.util;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Class containing tests of the primitive IntHashSet.
+ *
+ * @author Dylan McKee
+ */
+public class IntHashSetTest {
+
+    @Test
+    public void testAddAndContains() {
+        IntHashSet set = new IntHashSet();
+        assertTrue(set.add(0));
+        assertTrue(set.add(-7));
+        assertTrue(set.add(42));
+        assertFalse(set.add(42));
+
+        assertEquals(3, set.size());
+        assertTrue(set.contains(0));
+        assertTrue(set.contains(-7));
+        assertFalse(set.contains(7));
+
+        int[] values = set.toArray();
+        Arrays.sort(values);
+        assertArrayEquals(new int[]{-7, 0, 42}, values);
+    }
+
+    @Test
+    public void testMatchesHashSetWhileGrowing() {
+        IntHashSet set = new IntHashSet();
+        Set<Integer> expected = new HashSet<>();
+        Random random = new Random(2024);
+        for (int i = 0; i < 100000; i++) {
+            int value = random.nextInt(50000);
+            assertEquals(expected.add(value), set.add(value));
+        }
+
+        assertEquals(expected.size(), set.size());
+        for (int value = 0; value < 50000; value++) {
+            assertEquals(expected.contains(value), set.contains(value));
+        }
+    }
+}
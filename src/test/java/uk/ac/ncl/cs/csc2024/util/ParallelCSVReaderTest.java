@@ -0,0 +1,84 @@
+/**
+ * csc2024-hibernate-assignment
+ *
+ * Copyright (c) 2015 Newcastle University
+ * Email: <h.firth@ncl.ac.uk/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ncl.cs.csc2024.util;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+/**
+ * Class containing tests of the fork-join ParallelCSVReader.
+ *
+ * @author Dylan McKee
+ */
+public class ParallelCSVReaderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path writeCsv(List<String> lines) throws IOException {
+        Path csv = folder.newFile().toPath();
+        Files.write(csv, lines, Charset.defaultCharset());
+        return csv;
+    }
+
+    @Test
+    public void testSmallFileMatchesReadSimpleCSV() throws IOException {
+        Path csv = writeCsv(Arrays.asList("id,description", "1,Railway Station", "2,Park Gates"));
+
+        assertEquals(FileUtils.readSimpleCSV(csv), ParallelCSVReader.readSimpleCSV(csv));
+    }
+
+    @Test
+    public void testMultiChunkFileKeepsRowOrder() throws IOException {
+        // Comfortably over the minimum chunk size, so that the file is split across several tasks.
+        List<String> lines = new ArrayList<>();
+        lines.add("number,start,destination,operators,frequency");
+        for (int i = 0; i < 100000; i++) {
+            lines.add(i + "A," + (i % 97) + "," + (i % 89) + ",Go North East|Operator " + i + "," + (i % 13));
+        }
+        Path csv = writeCsv(lines);
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            assertEquals(FileUtils.readSimpleCSV(csv), ParallelCSVReader.readSimpleCSV(csv, pool));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsRowWithWrongColumnCount() throws IOException {
+        Path csv = writeCsv(Arrays.asList("id,description", "1,Railway Station,Extra"));
+
+        ParallelCSVReader.readSimpleCSV(csv);
+    }
+}
@@ -0,0 +1,93 @@
+/**
+ * csc2024-hibernate-assignment
+ *
+ * Copyright (c) 2015 Newcastle University
+ * Email: <h.firth@ncl.ac.uk/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ncl.cs.csc2024.util;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Class containing tests of the streaming SimpleCSVReader.
+ *
+ * @author Dylan McKee
+ */
+public class SimpleCSVReaderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path writeCsv(String... lines) throws IOException {
+        Path csv = folder.newFile().toPath();
+        Files.write(csv, Arrays.asList(lines), Charset.defaultCharset());
+        return csv;
+    }
+
+    @Test
+    public void testReadsSameRowsAsReadSimpleCSV() throws IOException {
+        Path csv = writeCsv("id,description", "1,Railway Station", "2,Park Gates", "3,Haymarket");
+
+        List<Map<String, String>> streamed = new ArrayList<>();
+        try (SimpleCSVReader reader = new SimpleCSVReader(csv)) {
+            assertEquals(Arrays.asList("id", "description"), reader.getKeys());
+            for (Map<String, String> row : SimpleCSVReader.iterable(reader)) {
+                streamed.add(row);
+            }
+            assertEquals(3, reader.getRowCount());
+        }
+
+        assertEquals(FileUtils.readSimpleCSV(csv), streamed);
+    }
+
+    @Test
+    public void testHeaderOnlyFileHasNoRows() throws IOException {
+        Path csv = writeCsv("id,description");
+
+        try (SimpleCSVReader reader = new SimpleCSVReader(csv)) {
+            assertFalse(reader.hasNext());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsRowWithWrongColumnCount() throws IOException {
+        Path csv = writeCsv("id,description", "1,Railway Station", "2,Park Gates,Extra");
+
+        try (SimpleCSVReader reader = new SimpleCSVReader(csv)) {
+            reader.next();
+            reader.next();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsEmptyFile() throws IOException {
+        Path csv = writeCsv();
+        new SimpleCSVReader(csv).close();
+    }
+}